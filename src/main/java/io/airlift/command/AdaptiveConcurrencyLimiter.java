@@ -0,0 +1,270 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.airlift.command.system.stats.HostLoad;
+import io.airlift.command.system.stats.HostLoadReader;
+import io.airlift.units.Duration;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A {@link ConcurrencyLimit} that follows an additive-increase/multiplicative-decrease policy.
+ * <p>
+ * Every period the limiter reads the {@link HostLoad} and looks at the commands completed since the previous period. The limit is
+ * multiplied by the backoff ratio when the host is saturated (load per processor or available memory beyond their thresholds), when a
+ * command timed out, or when the recent latency exceeds the long-term latency by more than the tolerated ratio. Otherwise, if commands
+ * completed during the period and the scheduler ran as many commands as the limit allowed, the limit grows by one: a limit that is not
+ * reached says nothing about whether the host could take more.
+ */
+@ThreadSafe
+public class AdaptiveConcurrencyLimiter implements ConcurrencyLimit
+{
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    private static final double RECENT_LATENCY_WEIGHT = 0.2;
+    private static final double BASELINE_LATENCY_WEIGHT = 0.01;
+
+    private final HostLoadReader hostLoadReader;
+    private final int minLimit;
+    private final int maxLimit;
+
+    private volatile int limit;
+
+    private volatile double maxLoadPerCpu = 1.0;
+    private volatile double minAvailableMemoryRatio = 0.1;
+    private volatile double latencyTolerance = 2.0;
+    private volatile double backoffRatio = 0.9;
+
+    @GuardedBy("this")
+    private double recentLatency;
+
+    @GuardedBy("this")
+    private double baselineLatency;
+
+    @GuardedBy("this")
+    private int completed;
+
+    @GuardedBy("this")
+    private int timedOut;
+
+    @GuardedBy("this")
+    private boolean limited;
+
+    @GuardedBy("this")
+    private ScheduledFuture<?> updater;
+
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    public AdaptiveConcurrencyLimiter(HostLoadReader hostLoadReader, int initialLimit, int minLimit, int maxLimit)
+    {
+        checkArgument(minLimit > 0, "minLimit must be greater than zero");
+        checkArgument(minLimit <= initialLimit && initialLimit <= maxLimit, "initialLimit must be between minLimit and maxLimit");
+
+        this.hostLoadReader = requireNonNull(hostLoadReader, "hostLoadReader is null");
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+    }
+
+    /**
+     * @param maxLoadPerCpu the one-minute load average per processor above which the host is considered saturated
+     */
+    public AdaptiveConcurrencyLimiter setMaxLoadPerCpu(double maxLoadPerCpu)
+    {
+        checkArgument(maxLoadPerCpu > 0, "maxLoadPerCpu must be greater than zero");
+        this.maxLoadPerCpu = maxLoadPerCpu;
+        return this;
+    }
+
+    /**
+     * @param minAvailableMemoryRatio the fraction of available physical memory below which the host is considered saturated
+     */
+    public AdaptiveConcurrencyLimiter setMinAvailableMemoryRatio(double minAvailableMemoryRatio)
+    {
+        checkArgument(minAvailableMemoryRatio >= 0 && minAvailableMemoryRatio < 1, "minAvailableMemoryRatio must be in [0, 1)");
+        this.minAvailableMemoryRatio = minAvailableMemoryRatio;
+        return this;
+    }
+
+    /**
+     * @param latencyTolerance how many times the long-term latency the recent latency may reach before the limit is decreased
+     */
+    public AdaptiveConcurrencyLimiter setLatencyTolerance(double latencyTolerance)
+    {
+        checkArgument(latencyTolerance > 1, "latencyTolerance must be greater than one");
+        this.latencyTolerance = latencyTolerance;
+        return this;
+    }
+
+    public AdaptiveConcurrencyLimiter setBackoffRatio(double backoffRatio)
+    {
+        checkArgument(backoffRatio > 0 && backoffRatio < 1, "backoffRatio must be in (0, 1)");
+        this.backoffRatio = backoffRatio;
+        return this;
+    }
+
+    @Override
+    public int getLimit()
+    {
+        return limit;
+    }
+
+    @Override
+    public synchronized void onCompleted(long latency, boolean timedOut)
+    {
+        if (timedOut)
+        {
+            this.timedOut++;
+            return;
+        }
+
+        if (completed++ == 0 && baselineLatency == 0)
+        {
+            recentLatency = latency;
+            baselineLatency = latency;
+        }
+        else
+        {
+            recentLatency += RECENT_LATENCY_WEIGHT * (latency - recentLatency);
+            baselineLatency += BASELINE_LATENCY_WEIGHT * (latency - baselineLatency);
+        }
+    }
+
+    @Override
+    public synchronized void onDispatched(int running)
+    {
+        if (running >= limit)
+        {
+            limited = true;
+        }
+    }
+
+    @Override
+    public void addListener(Runnable listener)
+    {
+        listeners.add(requireNonNull(listener, "listener is null"));
+    }
+
+    /**
+     * Adjusts the limit every <code>period</code> until {@link #stop()} is called.
+     */
+    public synchronized AdaptiveConcurrencyLimiter start(ScheduledExecutorService scheduler, Duration period)
+    {
+        requireNonNull(scheduler, "scheduler is null");
+        requireNonNull(period, "period is null");
+
+        if (updater == null)
+        {
+            updater = scheduler.scheduleWithFixedDelay(this::update, period.toMillis(), period.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    public synchronized void stop()
+    {
+        if (updater != null)
+        {
+            updater.cancel(false);
+            updater = null;
+        }
+    }
+
+    public void update()
+    {
+        HostLoad load;
+
+        try
+        {
+            load = hostLoadReader.read();
+        }
+        catch (RuntimeException e)
+        {
+            LOG.warn("Error on reading the host load", e);
+            return;
+        }
+
+        update(load);
+    }
+
+    void update(HostLoad load)
+    {
+        boolean changed;
+
+        synchronized (this)
+        {
+            int previous = limit;
+            boolean saturated = load.getLoadPerCpu() > maxLoadPerCpu ||
+                                load.getAvailableMemoryRatio() < minAvailableMemoryRatio ||
+                                timedOut > 0 ||
+                                (completed > 0 && recentLatency > baselineLatency * latencyTolerance);
+
+            if (saturated)
+            {
+                limit = Math.max(minLimit, (int) (limit * backoffRatio));
+            }
+            else if (completed > 0 && limited)
+            {
+                limit = Math.min(maxLimit, limit + 1);
+            }
+
+            completed = 0;
+            timedOut = 0;
+            limited = false;
+            changed = limit != previous;
+        }
+
+        // outside of the lock, so that a scheduler dispatching from a listener can call back into this limiter
+        if (changed)
+        {
+            for (Runnable listener : listeners)
+            {
+                try
+                {
+                    listener.run();
+                }
+                catch (RuntimeException e)
+                {
+                    LOG.warn("Error on notifying a change of the limit", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return toStringHelper(this)
+                .add("limit", limit)
+                .add("minLimit", minLimit)
+                .add("maxLimit", maxLimit)
+                .add("recentLatency", recentLatency)
+                .add("baselineLatency", baselineLatency)
+                .toString();
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.Immutable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.base.Utf8;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Splits a long list of arguments into runs that each fit on the command line of one process, like <code>xargs</code> does.
+ * <p>
+ * Each argument costs its size in UTF-8, its terminating NUL and the pointer to it, as the kernel counts them against <code>ARG_MAX</code>,
+ * which is shared by the arguments and the environment of the process. The runs are views of the given list, in order.
+ */
+@Immutable
+public final class ArgumentPartitioner
+{
+    private static final Logger LOG = LoggerFactory.getLogger(ArgumentPartitioner.class);
+
+    /**
+     * The size of the pointer to every argument and environment variable.
+     */
+    private static final int POINTER_SIZE = 8;
+
+    /**
+     * The space left for what the kernel and the JVM launcher add to the command line, as <code>xargs</code> does.
+     */
+    private static final int HEADROOM = 2048;
+
+    /**
+     * The largest single argument Linux accepts (<code>MAX_ARG_STRLEN</code>).
+     */
+    static final int MAX_ARGUMENT_SIZE = 32 * 4096;
+
+    /**
+     * The <code>ARG_MAX</code> of POSIX systems that do not report theirs.
+     */
+    private static final long DEFAULT_ARG_MAX = 128 * 1024;
+
+    private static final Supplier<Long> ARG_MAX = Suppliers.memoize(ArgumentPartitioner::readArgMax);
+
+    private final long maxBytes;
+    private final int maxArgs;
+
+    /**
+     * @param maxBytes the maximum size of the arguments of a run, as counted against <code>ARG_MAX</code>
+     * @param maxArgs the maximum number of arguments of a run
+     */
+    public ArgumentPartitioner(long maxBytes, int maxArgs)
+    {
+        checkArgument(maxBytes > 0, "maxBytes must be positive");
+        checkArgument(maxArgs > 0, "maxArgs must be positive");
+        this.maxBytes = maxBytes;
+        this.maxArgs = maxArgs;
+    }
+
+    /**
+     * @return a partitioner filling the space <code>ARG_MAX</code> leaves once the arguments and the environment of the given command are
+     *         counted, with at most <code>maxArgs</code> arguments per run
+     * @throws IllegalArgumentException if the command alone does not leave room for any argument
+     */
+    public static ArgumentPartitioner forCommand(Command command, int maxArgs)
+    {
+        requireNonNull(command, "command is null");
+
+        long used = HEADROOM;
+        for (String argument : command.getCommand())
+        {
+            used += sizeOf(argument);
+        }
+        // the environment the process gets, inherited or not
+        EnvironmentSnapshot environment = command.getEnvironmentSnapshot();
+        used += environment.getEncodedSize() + (long) environment.getVariables().size() * POINTER_SIZE;
+
+        long available = argMax() - used;
+        checkArgument(available > 0, "command %s leaves no room for arguments", command.getCommand());
+        return new ArgumentPartitioner(available, maxArgs);
+    }
+
+    /**
+     * @return the <code>ARG_MAX</code> of this system, read once from <code>getconf</code>
+     */
+    public static long argMax()
+    {
+        return ARG_MAX.get();
+    }
+
+    private static long readArgMax()
+    {
+        try
+        {
+            Process process = new ProcessBuilder("getconf", "ARG_MAX").redirectErrorStream(true).start();
+            try (InputStream output = process.getInputStream())
+            {
+                String value = new String(ByteStreams.toByteArray(output), US_ASCII).trim();
+                if (process.waitFor(10, TimeUnit.SECONDS) && process.exitValue() == 0)
+                {
+                    return Long.parseLong(value);
+                }
+            }
+            finally
+            {
+                process.destroy();
+            }
+        }
+        catch (IOException | NumberFormatException e)
+        {
+            LOG.debug("Cannot read ARG_MAX", e);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        return DEFAULT_ARG_MAX;
+    }
+
+    /**
+     * @return the space the given argument takes on a command line
+     */
+    @VisibleForTesting
+    static long sizeOf(String argument)
+    {
+        return Utf8.encodedLength(argument) + 1 + POINTER_SIZE;
+    }
+
+    /**
+     * @throws IllegalArgumentException if an argument alone is larger than a run, or than the system accepts
+     */
+    public List<List<String>> partition(List<String> arguments)
+    {
+        requireNonNull(arguments, "arguments is null");
+
+        ImmutableList.Builder<List<String>> runs = ImmutableList.builder();
+        int start = 0;
+        long bytes = 0;
+
+        for (int i = 0; i < arguments.size(); i++)
+        {
+            String argument = requireNonNull(arguments.get(i), "argument is null");
+            long size = sizeOf(argument);
+            checkArgument(size <= maxBytes && size - POINTER_SIZE <= MAX_ARGUMENT_SIZE, "argument %s is too long: %s bytes", i, size - POINTER_SIZE - 1);
+
+            if (i > start && (bytes + size > maxBytes || i - start == maxArgs))
+            {
+                runs.add(arguments.subList(start, i));
+                start = i;
+                bytes = 0;
+            }
+            bytes += size;
+        }
+
+        if (start < arguments.size())
+        {
+            runs.add(arguments.subList(start, arguments.size()));
+        }
+        return runs.build();
+    }
+
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    public int getMaxArgs()
+    {
+        return maxArgs;
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("maxBytes", maxBytes)
+                .add("maxArgs", maxArgs)
+                .toString();
+    }
+}
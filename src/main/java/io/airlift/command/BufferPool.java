@@ -0,0 +1,234 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A bounded pool of byte arrays shared by the output readers of all running commands.
+ * <p>
+ * Arrays are grouped in power-of-two size classes from {@value #MIN_BUFFER_SIZE} bytes to {@value #MAX_BUFFER_SIZE} bytes, and every class
+ * retains at most an equal share of the pool's size; a class whose share is smaller than its arrays retains none, so a pool of size zero
+ * retains nothing. The bytes retained by all classes are accounted against the size of the pool as well. Requests larger than the largest
+ * class are allocated and never retained. Acquiring and releasing does not allocate once the pool is warm.
+ */
+@ThreadSafe
+public final class BufferPool
+{
+    static final int MIN_BUFFER_SIZE = 4 * 1024;
+    static final int MAX_BUFFER_SIZE = 256 * 1024;
+
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+    private static final int SIZE_CLASSES = Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE) - MIN_SHIFT + 1;
+
+    private static final long DEFAULT_MAX_RETAINED_BYTES = 16L * 1024 * 1024;
+
+    private static final BufferPool SHARED = new BufferPool(DEFAULT_MAX_RETAINED_BYTES);
+
+    private final ArrayBlockingQueue<byte[]>[] classes;
+    private final long maxRetainedBytes;
+
+    private final AtomicLong retainedBytes = new AtomicLong();
+
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicLong released = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    public BufferPool(long maxRetainedBytes)
+    {
+        checkArgument(maxRetainedBytes >= 0, "maxRetainedBytes is negative");
+
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.classes = new ArrayBlockingQueue[SIZE_CLASSES];
+
+        for (int i = 0; i < SIZE_CLASSES; i++)
+        {
+            long capacity = maxRetainedBytes / SIZE_CLASSES / sizeOf(i);
+            // a class without room for a single array retains nothing
+            classes[i] = capacity > 0 ? new ArrayBlockingQueue<>((int) Math.min(capacity, Integer.MAX_VALUE)) : null;
+        }
+    }
+
+    /**
+     * @return the pool used by default by every {@link OutputProcessor}
+     */
+    public static BufferPool shared()
+    {
+        return SHARED;
+    }
+
+    /**
+     * @return an array of at least <code>size</code> bytes, which should be given back with {@link #release(byte[])} once it is no longer used
+     */
+    public byte[] acquire(int size)
+    {
+        checkArgument(size >= 0, "size is negative");
+        acquired.incrementAndGet();
+
+        if (size > MAX_BUFFER_SIZE)
+        {
+            allocated.incrementAndGet();
+            return new byte[size];
+        }
+
+        int sizeClass = sizeClassOf(size);
+        byte[] buffer = classes[sizeClass] != null ? classes[sizeClass].poll() : null;
+
+        if (buffer != null)
+        {
+            retainedBytes.addAndGet(-buffer.length);
+        }
+        else
+        {
+            allocated.incrementAndGet();
+            buffer = new byte[sizeOf(sizeClass)];
+        }
+        return buffer;
+    }
+
+    /**
+     * Gives an array back to the pool. Arrays that were not acquired from a size class, or that do not fit in the pool, are left to the garbage collector.
+     */
+    public void release(byte[] buffer)
+    {
+        if (buffer == null)
+        {
+            return;
+        }
+
+        released.incrementAndGet();
+
+        int length = buffer.length;
+
+        if (length < MIN_BUFFER_SIZE || length > MAX_BUFFER_SIZE || Integer.bitCount(length) != 1 || !retain(buffer))
+        {
+            discarded.incrementAndGet();
+        }
+    }
+
+    private boolean retain(byte[] buffer)
+    {
+        ArrayBlockingQueue<byte[]> sizeClass = classes[sizeClassOf(buffer.length)];
+        if (sizeClass == null)
+        {
+            return false;
+        }
+
+        // the bytes are reserved before the array is offered, so that racing releases never retain more than the pool's size
+        if (retainedBytes.addAndGet(buffer.length) > maxRetainedBytes || !sizeClass.offer(buffer))
+        {
+            retainedBytes.addAndGet(-buffer.length);
+            return false;
+        }
+        return true;
+    }
+
+    @VisibleForTesting
+    static int sizeClassOf(int size)
+    {
+        if (size <= MIN_BUFFER_SIZE)
+        {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+
+    private static int sizeOf(int sizeClass)
+    {
+        return MIN_BUFFER_SIZE << sizeClass;
+    }
+
+    public long getMaxRetainedBytes()
+    {
+        return maxRetainedBytes;
+    }
+
+    /**
+     * @return the number of arrays currently held by the pool
+     */
+    public int getRetainedBuffers()
+    {
+        int retained = 0;
+        for (ArrayBlockingQueue<byte[]> sizeClass : classes)
+        {
+            retained += sizeClass != null ? sizeClass.size() : 0;
+        }
+        return retained;
+    }
+
+    /**
+     * @return the number of bytes currently held by the pool
+     */
+    public long getRetainedBytes()
+    {
+        return retainedBytes.get();
+    }
+
+    /**
+     * @return the number of arrays acquired and not released yet
+     */
+    public long getBuffersInUse()
+    {
+        return acquired.get() - released.get();
+    }
+
+    public long getAcquired()
+    {
+        return acquired.get();
+    }
+
+    /**
+     * @return the number of acquisitions that could not be served from the pool
+     */
+    public long getAllocated()
+    {
+        return allocated.get();
+    }
+
+    public long getReleased()
+    {
+        return released.get();
+    }
+
+    /**
+     * @return the number of released arrays that the pool did not retain
+     */
+    public long getDiscarded()
+    {
+        return discarded.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("maxRetainedBytes", maxRetainedBytes)
+                .add("retainedBytes", getRetainedBytes())
+                .add("buffersInUse", getBuffersInUse())
+                .add("acquired", getAcquired())
+                .add("allocated", getAllocated())
+                .add("discarded", getDiscarded())
+                .toString();
+    }
+}
@@ -19,14 +19,17 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListenableFutureTask;
 
+import io.airlift.command.system.stats.SystemProbe;
 import io.airlift.units.Duration;
 
 import javax.annotation.concurrent.Immutable;
 
 import java.io.File;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -34,11 +37,12 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.google.common.base.MoreObjects.toStringHelper;
 import static com.google.common.base.Preconditions.checkArgument;
@@ -50,6 +54,8 @@ public class Command
     private static final ImmutableSet<Integer> DEFAULT_SUCCESSFUL_EXIT_CODES = ImmutableSet.of(0);
     private static final File DEFAULT_DIRECTORY = new File(".").getAbsoluteFile();
     private static final Duration DEFAULT_TIME_LIMIT = new Duration(365, TimeUnit.DAYS);
+    static final CommandPriority DEFAULT_PRIORITY = CommandPriority.NORMAL;
+    static final String DEFAULT_TENANT = "default";
 
     private final String id;
     private final List<String> command;
@@ -59,11 +65,52 @@ public class Command
     private final Duration timeLimit;
     private final List<Object> listeners;
 	private final boolean includeEnvVariables;
+    private final CommandPriority priority;
+    private final String tenant;
+    private final LineListener lineListener;
+    private final int maxLineLength;
+    private final CommandInput input;
+    private final CommandInstrumentation instrumentation;
+    private final SystemProbe systemProbe;
+    private final ProcessLauncher launcher;
+
+    /**
+     * The environment resolved on the first spawn. Racing threads may resolve it twice, but always to an equal snapshot.
+     */
+    private EnvironmentSnapshot environmentSnapshot;
     
+    /**
+     * A command that completes at once without spawning a process, on every path but {@link ExecutionEngine#submit(Command, CommandContext)},
+     * which rejects it.
+     */
     public static Command NULL_COMMAND = new Command(UUID.randomUUID().toString(), "") 
     {
     	@Override
-    	public CommandResult execute(Executor executor) throws CommandFailedException 
+    	CommandResult execute(Executor executor, long queuedAt, CommandContext context) throws CommandFailedException 
+    	{
+    		return nullResult();
+    	}
+
+    	@Override
+    	public CommandResult execute(ExecutionEngine engine) throws CommandFailedException
+    	{
+    		requireNonNull(engine, "engine is null");
+    		return nullResult();
+    	}
+
+    	@Override
+    	RunningCommand start(Executor executor, ScheduledExecutorService scheduler, ReadinessCheck readinessCheck, CommandContext context,
+    			int tailSize, long queuedAt)
+    	{
+    		requireNonNull(executor, "executor is null");
+    		checkArgument(tailSize > 0, "tailSize must be positive");
+
+    		RunningCommand running = new RunningCommand(this, tailSize, readinessCheck, context);
+    		running.start(Futures.immediateFuture(nullResult()), scheduler);
+    		return running;
+    	}
+
+    	private CommandResult nullResult()
     	{
     		return new CommandResult(this.getId(), -1L, 0, "NULL_OUTPUT", 0L);
     	}
@@ -85,6 +132,19 @@ public class Command
     }
 
     public Command(String id, List<String> command, Set<Integer> successfulExitCodes, File directory, Map<String, String> environment, Duration timeLimit, List<Object> listeners, boolean includeEnvVariables)
+    {
+        this(id, command, successfulExitCodes, directory, environment, timeLimit, listeners, includeEnvVariables, DEFAULT_PRIORITY, DEFAULT_TENANT);
+    }
+
+    public Command(String id, List<String> command, Set<Integer> successfulExitCodes, File directory, Map<String, String> environment, Duration timeLimit, List<Object> listeners, boolean includeEnvVariables,
+            CommandPriority priority, String tenant)
+    {
+        this(id, command, successfulExitCodes, directory, environment, timeLimit, listeners, includeEnvVariables, priority, tenant, null, 0, null, CommandInstrumentation.NONE, null, ProcessLauncher.PROCESS_BUILDER);
+    }
+
+    Command(String id, List<String> command, Set<Integer> successfulExitCodes, File directory, Map<String, String> environment, Duration timeLimit, List<Object> listeners, boolean includeEnvVariables,
+            CommandPriority priority, String tenant, LineListener lineListener, int maxLineLength, CommandInput input, CommandInstrumentation instrumentation,
+            SystemProbe systemProbe, ProcessLauncher launcher)
     {
         requireNonNull(command, "command is null");
         checkArgument(!command.isEmpty(), "command is empty");
@@ -92,6 +152,11 @@ public class Command
         checkArgument(!successfulExitCodes.isEmpty(), "successfulExitCodes is empty");
         requireNonNull(directory, "directory is null");
         requireNonNull(timeLimit, "timeLimit is null");
+        requireNonNull(priority, "priority is null");
+        checkArgument(!Strings.isNullOrEmpty(tenant), "tenant is null or empty");
+        checkArgument(maxLineLength >= 0, "maxLineLength is negative");
+        requireNonNull(instrumentation, "instrumentation is null");
+        requireNonNull(launcher, "launcher is null");
         
         checkArgument(!Strings.isNullOrEmpty(id), "ID is null or empty");
 
@@ -105,6 +170,14 @@ public class Command
         
         this.listeners = listeners != null ? ImmutableList.copyOf(listeners) : ImmutableList.of().asList();
         this.includeEnvVariables = includeEnvVariables;
+        this.priority = priority;
+        this.tenant = tenant;
+        this.lineListener = lineListener;
+        this.maxLineLength = maxLineLength;
+        this.input = input;
+        this.instrumentation = instrumentation;
+        this.systemProbe = systemProbe;
+        this.launcher = launcher;
     }
     
     /**
@@ -130,12 +203,20 @@ public class Command
     {
         requireNonNull(args, "args is null");
         ImmutableList.Builder<String> command = ImmutableList.<String>builder().addAll(this.command).addAll(args);
-        return new Command(id, command.build(), successfulExitCodes, directory, environment, timeLimit, listeners, includeEnvVariables);
+        return new Command(id, command.build(), successfulExitCodes, directory, environment, timeLimit, listeners, includeEnvVariables, priority, tenant, lineListener, maxLineLength, input, instrumentation, systemProbe, launcher);
     }
     
     public Command registerListeners(List<Object> listeners)
     {
-    	return new Command(id, command, successfulExitCodes, directory, environment, timeLimit, listeners, includeEnvVariables);
+    	return new Command(id, command, successfulExitCodes, directory, environment, timeLimit, listeners, includeEnvVariables, priority, tenant, lineListener, maxLineLength, input, instrumentation, systemProbe, launcher);
+    }
+
+    /**
+     * @return the event bus listeners registered with {@link #registerListeners(List)}
+     */
+    List<Object> getListeners()
+    {
+        return listeners;
     }
 
     public Map<String, String> getEnvironment()
@@ -148,14 +229,14 @@ public class Command
         requireNonNull(name, "name is null");
         requireNonNull(value, "value is null");
         ImmutableMap.Builder<String, String> builder = ImmutableMap.<String, String>builder().putAll(this.environment).put(name, value);
-        return new Command(id, command, successfulExitCodes, directory, builder.build(), timeLimit, listeners, includeEnvVariables);
+        return new Command(id, command, successfulExitCodes, directory, builder.build(), timeLimit, listeners, includeEnvVariables, priority, tenant, lineListener, maxLineLength, input, instrumentation, systemProbe, launcher);
     }
 
     public Command addEnvironment(Map<String, String> environment)
     {
         requireNonNull(environment, "environment is null");
         ImmutableMap.Builder<String, String> builder = ImmutableMap.<String, String>builder().putAll(this.environment).putAll(environment);
-        return new Command(id, command, successfulExitCodes, directory, builder.build(), timeLimit, listeners, includeEnvVariables);
+        return new Command(id, command, successfulExitCodes, directory, builder.build(), timeLimit, listeners, includeEnvVariables, priority, tenant, lineListener, maxLineLength, input, instrumentation, systemProbe, launcher);
     }
 
     public Set<Integer> getSuccessfulExitCodes()
@@ -173,7 +254,7 @@ public class Command
     {
         requireNonNull(successfulExitCodes, "successfulExitCodes is null");
         checkArgument(!successfulExitCodes.isEmpty(), "successfulExitCodes is empty");
-        return new Command(id, command, successfulExitCodes, directory, environment, timeLimit, listeners, includeEnvVariables);
+        return new Command(id, command, successfulExitCodes, directory, environment, timeLimit, listeners, includeEnvVariables, priority, tenant, lineListener, maxLineLength, input, instrumentation, systemProbe, launcher);
     }
 
     public File getDirectory()
@@ -190,7 +271,7 @@ public class Command
     public Command setDirectory(File directory)
     {
         requireNonNull(directory, "directory is null");
-        return new Command(id, command, successfulExitCodes, directory, environment, timeLimit, listeners, includeEnvVariables);
+        return new Command(id, command, successfulExitCodes, directory, environment, timeLimit, listeners, includeEnvVariables, priority, tenant, lineListener, maxLineLength, input, instrumentation, systemProbe, launcher);
     }
 
     public Duration getTimeLimit()
@@ -206,17 +287,17 @@ public class Command
     public Command setTimeLimit(Duration timeLimit)
     {
         requireNonNull(timeLimit, "timeLimit is null");
-        return new Command(id, command, successfulExitCodes, directory, environment, timeLimit, listeners, includeEnvVariables);
+        return new Command(id, command, successfulExitCodes, directory, environment, timeLimit, listeners, includeEnvVariables, priority, tenant, lineListener, maxLineLength, input, instrumentation, systemProbe, launcher);
     }
     
     public Command includeEnvironmentVariables()
     {
-    	return new Command(id, command, successfulExitCodes, directory, environment, timeLimit, listeners, true);
+    	return new Command(id, command, successfulExitCodes, directory, environment, timeLimit, listeners, true, priority, tenant, lineListener, maxLineLength, input, instrumentation, systemProbe, launcher);
     }
     
     public Command excludeEnvironmentVariables()
     {
-    	return new Command(id, command, successfulExitCodes, directory, environment, timeLimit, listeners, false);
+    	return new Command(id, command, successfulExitCodes, directory, environment, timeLimit, listeners, false, priority, tenant, lineListener, maxLineLength, input, instrumentation, systemProbe, launcher);
     }
     
 	public boolean isIncludeEnvironmentVariables() 
@@ -224,31 +305,351 @@ public class Command
 		return includeEnvVariables;
 	}
 
+    /**
+     * @return the environment the process gets, resolved once per command and reused by all its spawns
+     * @throws IllegalArgumentException if a name or a value of the environment cannot be part of an environment
+     */
+    public EnvironmentSnapshot getEnvironmentSnapshot()
+    {
+        EnvironmentSnapshot snapshot = environmentSnapshot;
+
+        if (snapshot == null)
+        {
+            snapshot = includeEnvVariables ? EnvironmentSnapshot.inheritedWith(environment) : EnvironmentSnapshot.of(environment);
+            environmentSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * @param environment a prepared environment, which replaces the environment of this command and the choice to include the variables
+     *        of the JVM, and is reused as is by every spawn
+     */
+    public Command setEnvironment(EnvironmentSnapshot environment)
+    {
+        requireNonNull(environment, "environment is null");
+        Command copy = new Command(id, command, successfulExitCodes, directory, environment.getChanges(), timeLimit, listeners, environment.isInherited(), priority, tenant, lineListener, maxLineLength, input, instrumentation, systemProbe, launcher);
+        copy.environmentSnapshot = environment;
+        return copy;
+    }
+
+    /**
+     * Shares the resolved environment of the given command, which must have the same environment as this one, with this command.
+     */
+    Command shareEnvironmentSnapshot(Command other)
+    {
+        environmentSnapshot = other.getEnvironmentSnapshot();
+        return this;
+    }
+
+    public CommandPriority getPriority()
+    {
+        return priority;
+    }
+
+    public Command setPriority(CommandPriority priority)
+    {
+        requireNonNull(priority, "priority is null");
+        return new Command(id, command, successfulExitCodes, directory, environment, timeLimit, listeners, includeEnvVariables, priority, tenant, lineListener, maxLineLength, input, instrumentation, systemProbe, launcher);
+    }
+
+    /**
+     * @return the tenant this command is accounted to by the {@link CommandScheduler}'s fair-share policy
+     */
+    public String getTenant()
+    {
+        return tenant;
+    }
+
+    public Command setTenant(String tenant)
+    {
+        checkArgument(!Strings.isNullOrEmpty(tenant), "tenant is null or empty");
+        return new Command(id, command, successfulExitCodes, directory, environment, timeLimit, listeners, includeEnvVariables, priority, tenant, lineListener, maxLineLength, input, instrumentation, systemProbe, launcher);
+    }
+
+    /**
+     * @return the listener that receives the output line by line while the process runs, or <code>null</code>
+     */
+    public LineListener getLineListener()
+    {
+        return lineListener;
+    }
+
+    /**
+     * @return the maximum number of characters of a line passed to the {@link LineListener}, or zero if lines are never truncated
+     */
+    public int getMaxLineLength()
+    {
+        return maxLineLength;
+    }
+
+    public Command setLineListener(LineListener lineListener)
+    {
+        requireNonNull(lineListener, "lineListener is null");
+        return new Command(id, command, successfulExitCodes, directory, environment, timeLimit, listeners, includeEnvVariables, priority, tenant, lineListener, maxLineLength, input, instrumentation, systemProbe, launcher);
+    }
+
+    /**
+     * @param maxLineLength the maximum number of characters of a line passed to the {@link LineListener}; longer lines are truncated, zero disables truncation
+     */
+    public Command setMaxLineLength(int maxLineLength)
+    {
+        checkArgument(maxLineLength >= 0, "maxLineLength is negative");
+        return new Command(id, command, successfulExitCodes, directory, environment, timeLimit, listeners, includeEnvVariables, priority, tenant, lineListener, maxLineLength, input, instrumentation, systemProbe, launcher);
+    }
+
+    /**
+     * @return the standard input of the process, or <code>null</code> if its standard input is closed right after it starts
+     */
+    public CommandInput getInput()
+    {
+        return input;
+    }
+
+    public Command setInput(CommandInput input)
+    {
+        requireNonNull(input, "input is null");
+        return new Command(id, command, successfulExitCodes, directory, environment, timeLimit, listeners, includeEnvVariables, priority, tenant, lineListener, maxLineLength, input, instrumentation, systemProbe, launcher);
+    }
+
+    public Command setInput(byte[] input)
+    {
+        return setInput(CommandInput.ofBytes(input));
+    }
+
+    public Command setInput(Path input)
+    {
+        return setInput(CommandInput.ofFile(input));
+    }
+
+    public CommandInstrumentation getInstrumentation()
+    {
+        return instrumentation;
+    }
+
+    /**
+     * @param instrumentation observes every execution of the command, for instance to collect metrics
+     */
+    public Command setInstrumentation(CommandInstrumentation instrumentation)
+    {
+        requireNonNull(instrumentation, "instrumentation is null");
+        return new Command(id, command, successfulExitCodes, directory, environment, timeLimit, listeners, includeEnvVariables, priority, tenant, lineListener, maxLineLength, input, instrumentation, systemProbe, launcher);
+    }
+
+    /**
+     * @return the probe whose samples tag the results with the state of the host when the command started and ended, or <code>null</code>
+     */
+    public SystemProbe getSystemProbe()
+    {
+        return systemProbe;
+    }
+
+    public Command setSystemProbe(SystemProbe systemProbe)
+    {
+        requireNonNull(systemProbe, "systemProbe is null");
+        return new Command(id, command, successfulExitCodes, directory, environment, timeLimit, listeners, includeEnvVariables, priority, tenant, lineListener, maxLineLength, input, instrumentation, systemProbe, launcher);
+    }
+
+    /**
+     * @return the launcher starting the processes of this command, {@link ProcessLauncher#PROCESS_BUILDER} unless set
+     */
+    public ProcessLauncher getLauncher()
+    {
+        return launcher;
+    }
+
+    /**
+     * @param launcher the launcher starting the processes of this command, such as {@link ProcessLauncher#preferred()}
+     */
+    public Command setLauncher(ProcessLauncher launcher)
+    {
+        requireNonNull(launcher, "launcher is null");
+        return new Command(id, command, successfulExitCodes, directory, environment, timeLimit, listeners, includeEnvVariables, priority, tenant, lineListener, maxLineLength, input, instrumentation, systemProbe, launcher);
+    }
+
 	public CommandResult execute(Executor executor) throws CommandFailedException
     {
-        ProcessCallable processCallable = new ProcessCallable(this, executor, listeners);
-        Future<CommandResult> future = submit(executor, processCallable);
+        return execute(executor, System.nanoTime());
+    }
+
+    /**
+     * Executes this command on the given engine, which follows its process from a shared loop thread rather than from threads of its own.
+     */
+    public CommandResult execute(ExecutionEngine engine) throws CommandFailedException
+    {
+        requireNonNull(engine, "engine is null");
+        return engine.execute(this);
+    }
+
+    /**
+     * Executes this command under the given context, which stops the process if it is cancelled or reaches its deadline first.
+     *
+     * @throws CommandCancelledException if the context is cancelled before the command completes
+     * @throws CommandTimeoutException if the context reaches its deadline, or the command its time limit, before the command completes
+     */
+    public CommandResult execute(Executor executor, CommandContext context) throws CommandFailedException
+    {
+        requireNonNull(context, "context is null");
+        return execute(executor, System.nanoTime(), context);
+    }
+
+    /**
+     * @param queuedAt the {@link System#nanoTime()} at which this command was handed to its scheduler; used to report the queue wait time
+     */
+    CommandResult execute(Executor executor, long queuedAt) throws CommandFailedException
+    {
+        return execute(executor, queuedAt, null);
+    }
+
+    /**
+     * @param context the context the command runs under, or <code>null</code>
+     */
+    CommandResult execute(Executor executor, long queuedAt, CommandContext context) throws CommandFailedException
+    {
+        instrumentation.onStarted(this);
+
+        try
+        {
+            CommandResult result = await(executor, queuedAt, context);
+            instrumentation.onCompleted(this, result);
+            return result;
+        }
+        catch (CommandFailedException e)
+        {
+            instrumentation.onFailed(this, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Starts this command on the given executor without waiting for it, keeping the last {@value OutputTail#DEFAULT_SIZE} bytes of its output.
+     *
+     * @return a handle to watch and control the process while it runs
+     */
+    public RunningCommand start(Executor executor)
+    {
+        return start(executor, OutputTail.DEFAULT_SIZE);
+    }
+
+    /**
+     * Starts this command on the given executor without waiting for it.
+     *
+     * @param tailSize the number of bytes of the end of the output the handle keeps while the process runs
+     * @return a handle to watch and control the process while it runs
+     */
+    public RunningCommand start(Executor executor, int tailSize)
+    {
+        return start(executor, null, null, null, tailSize, System.nanoTime());
+    }
+
+    /**
+     * Starts this command under the given context without waiting for it; the process is stopped if the context is cancelled or reaches
+     * its deadline first.
+     *
+     * @return a handle to watch and control the process while it runs
+     */
+    public RunningCommand start(Executor executor, CommandContext context)
+    {
+        requireNonNull(context, "context is null");
+        return start(executor, null, null, context, OutputTail.DEFAULT_SIZE, System.nanoTime());
+    }
+
+    /**
+     * Starts this command, typically a server, on the given executor without waiting for it, and completes the
+     * {@link RunningCommand#getReadiness() readiness} of the returned handle once the given check passes.
+     *
+     * @param scheduler runs the connection attempts of a port check
+     * @return a handle to wait for the command to be ready, and to watch and control its process while it runs
+     */
+    public RunningCommand start(Executor executor, ScheduledExecutorService scheduler, ReadinessCheck readinessCheck)
+    {
+        requireNonNull(scheduler, "scheduler is null");
+        requireNonNull(readinessCheck, "readinessCheck is null");
+        return start(executor, scheduler, readinessCheck, null, OutputTail.DEFAULT_SIZE, System.nanoTime());
+    }
+
+    /**
+     * Starts this command without waiting for it, like {@link #start(Executor, CommandContext)}.
+     *
+     * @param queuedAt the {@link System#nanoTime()} at which this command was handed to its scheduler; used to report the queue wait time
+     * @param context the context the command runs under, or <code>null</code>
+     */
+    RunningCommand start(Executor executor, long queuedAt, CommandContext context)
+    {
+        return start(executor, null, null, context, OutputTail.DEFAULT_SIZE, queuedAt);
+    }
+
+    /**
+     * The path shared by every start method, and by the {@link CommandScheduler}.
+     */
+    RunningCommand start(Executor executor, ScheduledExecutorService scheduler, ReadinessCheck readinessCheck, CommandContext context, int tailSize,
+            long queuedAt)
+    {
+        requireNonNull(executor, "executor is null");
+        checkArgument(tailSize > 0, "tailSize must be positive");
+
+        instrumentation.onStarted(this);
+
+        RunningCommand running = new RunningCommand(this, tailSize, readinessCheck, context);
+        running.start(submit(executor, new ProcessCallable(this, executor, listeners, queuedAt, running)), scheduler);
+        return running;
+    }
+
+    private CommandResult await(Executor executor, long queuedAt, CommandContext context) throws CommandFailedException
+    {
+        ProcessCallable processCallable = new ProcessCallable(this, executor, listeners, queuedAt);
+        return await(submit(executor, processCallable), this, timeLimit, context);
+    }
+
+    /**
+     * Waits for the given future, which is cancelled once the time limit is reached, from the {@link TimeoutService#shared() shared timing
+     * wheel} rather than from a timed wait, when the context is cancelled, and when the wait ends.
+     *
+     * @param command the command to report failures for
+     * @param context the context the future runs under, or <code>null</code>
+     */
+    static <T> T await(ListenableFuture<T> future, Command command, Duration timeLimit, CommandContext context) throws CommandFailedException
+    {
+        AtomicBoolean timedOut = new AtomicBoolean();
+        TimeoutService.Timeout timeout = TimeoutService.shared().schedule(() -> {
+            timedOut.set(true);
+            future.cancel(true);
+        }, timeLimit);
+        CommandContext.Registration registration = context != null ? context.onCancel(() -> future.cancel(true)) : null;
 
         try 
         {
-            return future.get(timeLimit.toMillis(), TimeUnit.MILLISECONDS);
+            return future.get();
         }
         catch (ExecutionException e) 
         {
             Throwables.propagateIfPossible(e.getCause(), CommandFailedException.class);
-            throw new CommandFailedException(this, "unexpected exception", e.getCause());
+            throw new CommandFailedException(command, "unexpected exception", e.getCause());
         }
-        catch (InterruptedException e) 
+        catch (CancellationException e)
         {
-            Thread.currentThread().interrupt();
-            throw new CommandFailedException(this, "interrupted", e);
+            if (timedOut.get())
+            {
+                throw new CommandTimeoutException(command, timeLimit);
+            }
+            if (context != null && context.isCancelled())
+            {
+                throw context.failureOf(command);
+            }
+            throw new CommandFailedException(command, "cancelled", e);
         }
-        catch (TimeoutException e) 
+        catch (InterruptedException e) 
         {
-            throw new CommandTimeoutException(this);
+            Thread.currentThread().interrupt();
+            throw new CommandFailedException(command, "interrupted", e);
         }
         finally 
         {
+            timeout.cancel();
+            if (registration != null)
+            {
+                registration.unregister();
+            }
             future.cancel(true);
         }
     }
@@ -288,6 +689,9 @@ public class Command
                 .add("directory", directory)
                 .add("timeLimit", timeLimit)
                 .add("includeEnvVariables", includeEnvVariables)
+                .add("priority", priority)
+                .add("tenant", tenant)
+                .add("input", input)
                 .toString();
     }
 
@@ -27,6 +27,7 @@ import java.util.concurrent.TimeUnit;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableSet;
 
+import io.airlift.command.system.stats.SystemProbe;
 import io.airlift.units.Duration;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -41,6 +42,14 @@ public final class CommandBuilder
     private Duration timeLimit;
     private List<Object> listeners = new ArrayList<>();
     private boolean includeSystemEnvVariables = true;
+    private CommandPriority priority = Command.DEFAULT_PRIORITY;
+    private String tenant = Command.DEFAULT_TENANT;
+    private LineListener lineListener;
+    private int maxLineLength;
+    private CommandInput input;
+    private CommandInstrumentation instrumentation = CommandInstrumentation.NONE;
+    private SystemProbe systemProbe;
+    private ProcessLauncher launcher = ProcessLauncher.PROCESS_BUILDER;
     
     private CommandBuilder(){}
     
@@ -136,6 +145,54 @@ public final class CommandBuilder
     	return this;
     }
     
+    public CommandBuilder setPriority(CommandPriority priority)
+    {
+    	this.priority = priority;
+    	return this;
+    }
+    
+    public CommandBuilder setTenant(String tenant)
+    {
+    	this.tenant = tenant;
+    	return this;
+    }
+    
+    public CommandBuilder setLineListener(LineListener lineListener)
+    {
+    	this.lineListener = lineListener;
+    	return this;
+    }
+    
+    public CommandBuilder setMaxLineLength(int maxLineLength)
+    {
+    	this.maxLineLength = maxLineLength;
+    	return this;
+    }
+    
+    public CommandBuilder setInput(CommandInput input)
+    {
+    	this.input = input;
+    	return this;
+    }
+    
+    public CommandBuilder setInstrumentation(CommandInstrumentation instrumentation)
+    {
+    	this.instrumentation = instrumentation;
+    	return this;
+    }
+    
+    public CommandBuilder setSystemProbe(SystemProbe systemProbe)
+    {
+    	this.systemProbe = systemProbe;
+    	return this;
+    }
+    
+    public CommandBuilder setLauncher(ProcessLauncher launcher)
+    {
+    	this.launcher = launcher;
+    	return this;
+    }
+    
     public CommandBuilder includeEnvVariables()
     {
     	includeSystemEnvVariables = true;
@@ -160,6 +217,6 @@ public final class CommandBuilder
     		this.timeLimit = new Duration(365, TimeUnit.DAYS);
     	}
     	
-		return new Command(id, command, successfulExitCodes, directory, environment, timeLimit, listeners, includeSystemEnvVariables);
+		return new Command(id, command, successfulExitCodes, directory, environment, timeLimit, listeners, includeSystemEnvVariables, priority, tenant, lineListener, maxLineLength, input, instrumentation, systemProbe, launcher);
     }
 }
@@ -0,0 +1,30 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+/**
+ * Thrown when a command is stopped because the {@link CommandContext} it runs under was cancelled.
+ */
+public class CommandCancelledException extends CommandFailedException
+{
+    /**
+	 * Serial code version <code>serialVersionUID</code> for serialization.
+	 */
+	private static final long serialVersionUID = 4170925468186335710L;
+
+	public CommandCancelledException(Command command)
+    {
+        super(command, "was cancelled", null);
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.airlift.units.Duration;
+
+/**
+ * A cancellation scope with an optional deadline, shared by all the commands, pipelines and child contexts started under it, typically for
+ * one request: cancelling it, closing it or reaching its deadline stops every process still running under it at once, through the same
+ * path as a command reaching its time limit.
+ * <p>
+ * A child context is cancelled with its parent, and its deadline is never later than the one of its parent. Cancelling a child leaves its
+ * parent running. The commands themselves still stop at their own time limit, if it comes first.
+ * <p>
+ * Commands started under a cancelled context fail with a {@link CommandCancelledException}, or a {@link CommandTimeoutException} if the
+ * context reached its deadline.
+ */
+@ThreadSafe
+public final class CommandContext
+        implements AutoCloseable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(CommandContext.class);
+
+    private final CommandContext parent;
+    private final boolean hasDeadline;
+    private final long deadline;
+    private final Duration timeout;
+    private final Registration parentRegistration;
+    private final TimeoutService.Timeout deadlineTimeout;
+
+    @GuardedBy("this")
+    private Set<Runnable> hooks = new LinkedHashSet<>();
+
+    /**
+     * The timeout that expired, if the context reached a deadline, possibly the one of an ancestor.
+     */
+    private volatile Duration expiredTimeout;
+
+    private CommandContext(CommandContext parent, Duration timeout)
+    {
+        this.parent = parent;
+
+        long ownDeadline = timeout == null ? 0 : System.nanoTime() + timeout.roundTo(TimeUnit.NANOSECONDS);
+        boolean parentHasDeadline = parent != null && parent.hasDeadline;
+
+        // the parent enforces its own deadline on its children, so a child only needs a timer when its deadline comes first
+        boolean ownDeadlineFirst = timeout != null && (!parentHasDeadline || ownDeadline - parent.deadline < 0);
+        this.hasDeadline = timeout != null || parentHasDeadline;
+        this.deadline = ownDeadlineFirst ? ownDeadline : parentHasDeadline ? parent.deadline : 0;
+        this.timeout = ownDeadlineFirst ? timeout : parentHasDeadline ? parent.timeout : null;
+
+        this.deadlineTimeout = ownDeadlineFirst ? TimeoutService.shared().schedule(() -> cancel(timeout), timeout) : null;
+        this.parentRegistration = parent == null ? null : parent.onCancel(() -> cancel(parent.expiredTimeout));
+    }
+
+    /**
+     * @return a context without deadline, cancelled only explicitly
+     */
+    public static CommandContext create()
+    {
+        return new CommandContext(null, null);
+    }
+
+    /**
+     * @return a context cancelled once the given time elapsed
+     */
+    public static CommandContext withTimeout(Duration timeout)
+    {
+        requireNonNull(timeout, "timeout is null");
+        return new CommandContext(null, timeout);
+    }
+
+    /**
+     * @return a context cancelled with this one
+     */
+    public CommandContext newChild()
+    {
+        return new CommandContext(this, null);
+    }
+
+    /**
+     * @return a context cancelled with this one, or once the given time elapsed if that comes first
+     */
+    public CommandContext newChild(Duration timeout)
+    {
+        requireNonNull(timeout, "timeout is null");
+        return new CommandContext(this, timeout);
+    }
+
+    /**
+     * Stops all the commands running under this context and its children, and fails the ones started later.
+     *
+     * @return whether this call cancelled the context
+     */
+    public boolean cancel()
+    {
+        return cancel(null);
+    }
+
+    private boolean cancel(Duration expiredTimeout)
+    {
+        List<Runnable> cancelled;
+        synchronized (this)
+        {
+            if (hooks == null)
+            {
+                return false;
+            }
+
+            this.expiredTimeout = expiredTimeout;
+            cancelled = new ArrayList<>(hooks);
+            hooks = null;
+        }
+
+        if (deadlineTimeout != null)
+        {
+            deadlineTimeout.cancel();
+        }
+        if (parentRegistration != null)
+        {
+            parentRegistration.unregister();
+        }
+
+        for (Runnable hook : cancelled)
+        {
+            try
+            {
+                hook.run();
+            }
+            catch (RuntimeException e)
+            {
+                LOG.warn("Cancellation hook failed", e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Cancels this context; see {@link #cancel()}.
+     */
+    @Override
+    public void close()
+    {
+        cancel();
+    }
+
+    public synchronized boolean isCancelled()
+    {
+        return hooks == null;
+    }
+
+    /**
+     * @return whether this context was cancelled because it, or one of its ancestors, reached its deadline
+     */
+    public boolean isDeadlineExceeded()
+    {
+        return isCancelled() && expiredTimeout != null;
+    }
+
+    public Optional<CommandContext> getParent()
+    {
+        return Optional.ofNullable(parent);
+    }
+
+    /**
+     * @return the time left before the deadline of this context, or nothing if it has none
+     */
+    public Optional<Duration> getRemainingTime()
+    {
+        if (!hasDeadline)
+        {
+            return Optional.empty();
+        }
+        return Optional.of(Duration.succinctNanos(Math.max(0, deadline - System.nanoTime())));
+    }
+
+    /**
+     * Runs the given hook when this context is cancelled, or right away if it already is.
+     *
+     * @return a registration to unregister the hook once what it stops completed
+     */
+    public Registration onCancel(Runnable hook)
+    {
+        requireNonNull(hook, "hook is null");
+
+        synchronized (this)
+        {
+            if (hooks != null)
+            {
+                hooks.add(hook);
+                return () -> unregister(hook);
+            }
+        }
+
+        hook.run();
+        return () -> { };
+    }
+
+    private synchronized void unregister(Runnable hook)
+    {
+        if (hooks != null)
+        {
+            hooks.remove(hook);
+        }
+    }
+
+    /**
+     * @return the failure of a command stopped by the cancellation of this context
+     */
+    CommandFailedException failureOf(Command command)
+    {
+        Duration timeout = expiredTimeout;
+        return timeout != null ? new CommandTimeoutException(command, timeout) : new CommandCancelledException(command);
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("cancelled", isCancelled())
+                .add("timeout", timeout)
+                .add("remainingTime", getRemainingTime().orElse(null))
+                .omitNullValues()
+                .toString();
+    }
+
+    /**
+     * The registration of a cancellation hook.
+     */
+    @FunctionalInterface
+    public interface Registration
+    {
+        void unregister();
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The standard input of a {@link Command}.
+ * <p>
+ * Except for files, which the process reads directly, the input is written by an executor thread while the output is drained, so inputs
+ * larger than the pipe buffer cannot deadlock with a process that writes before it has read everything.
+ */
+@Immutable
+public abstract class CommandInput
+{
+    /**
+     * Writes data generated on the fly to the standard input of a process.
+     */
+    @FunctionalInterface
+    public interface InputWriter
+    {
+        /**
+         * @param out the standard input of the process; it is closed once this method returns
+         */
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    CommandInput()
+    {
+    }
+
+    public static CommandInput ofBytes(byte[] bytes)
+    {
+        byte[] copy = requireNonNull(bytes, "bytes is null").clone();
+        return new PipedInput("bytes", out -> out.write(copy));
+    }
+
+    /**
+     * The process reads the file itself: its content never goes through the JVM.
+     */
+    public static CommandInput ofFile(Path file)
+    {
+        return new FileInput(requireNonNull(file, "file is null"));
+    }
+
+    /**
+     * @param writer called on an executor thread for every execution of the command
+     */
+    public static CommandInput ofWriter(InputWriter writer)
+    {
+        return new PipedInput("writer", requireNonNull(writer, "writer is null"));
+    }
+
+    /**
+     * Copies a stream to the standard input of the process and closes it. A stream can only be read once, so a command with this input
+     * can only be executed once.
+     */
+    public static CommandInput ofStream(InputStream in)
+    {
+        requireNonNull(in, "in is null");
+        AtomicBoolean consumed = new AtomicBoolean();
+
+        return new PipedInput("stream", out ->
+        {
+            if (!consumed.compareAndSet(false, true))
+            {
+                throw new IOException("input stream has already been consumed");
+            }
+
+            try (InputStream input = in)
+            {
+                copy(input, out);
+            }
+        });
+    }
+
+    /**
+     * @return whether the input has to be written to the process through a pipe
+     */
+    abstract boolean isPiped();
+
+    abstract void configure(ProcessBuilder processBuilder);
+
+    /**
+     * Writes the whole input to the given stream, whether or not it is {@link #isPiped() piped}.
+     */
+    abstract void writeTo(OutputStream out) throws IOException;
+
+    private static void copy(InputStream in, OutputStream out) throws IOException
+    {
+        BufferPool pool = BufferPool.shared();
+        byte[] buffer = pool.acquire(BufferPool.MIN_BUFFER_SIZE * 2);
+
+        try
+        {
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+                out.write(buffer, 0, read);
+            }
+        }
+        finally
+        {
+            pool.release(buffer);
+        }
+    }
+
+    private static final class PipedInput extends CommandInput
+    {
+        private final String type;
+        private final InputWriter writer;
+
+        PipedInput(String type, InputWriter writer)
+        {
+            this.type = type;
+            this.writer = writer;
+        }
+
+        @Override
+        boolean isPiped()
+        {
+            return true;
+        }
+
+        @Override
+        void configure(ProcessBuilder processBuilder)
+        {
+            processBuilder.redirectInput(Redirect.PIPE);
+        }
+
+        @Override
+        void writeTo(OutputStream out) throws IOException
+        {
+            writer.writeTo(out);
+        }
+
+        @Override
+        public String toString()
+        {
+            return toStringHelper(this).add("type", type).toString();
+        }
+    }
+
+    private static final class FileInput extends CommandInput
+    {
+        private final Path file;
+
+        FileInput(Path file)
+        {
+            this.file = file;
+        }
+
+        @Override
+        boolean isPiped()
+        {
+            return false;
+        }
+
+        @Override
+        void configure(ProcessBuilder processBuilder)
+        {
+            processBuilder.redirectInput(file.toFile());
+        }
+
+        /**
+         * Streams the file, for the callers that cannot redirect the input of the process to it; a configured process reads it itself.
+         */
+        @Override
+        void writeTo(OutputStream out) throws IOException
+        {
+            try (InputStream in = Files.newInputStream(file))
+            {
+                copy(in, out);
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return toStringHelper(this).add("file", file).toString();
+        }
+    }
+}
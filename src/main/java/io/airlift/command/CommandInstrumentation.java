@@ -0,0 +1,100 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Observes the executions of a {@link Command}.
+ * <p>
+ * Every call to {@link Command#execute(java.util.concurrent.Executor)} reports {@link #onStarted(Command)} once, then
+ * {@link #onSpawned(Command, int)} if the process was created, and ends with exactly one of {@link #onCompleted(Command, CommandResult)}
+ * or {@link #onFailed(Command, CommandFailedException)}; a timeout is reported as a failure with a {@link CommandTimeoutException}.
+ * If the process was still running when the execution ended, {@link #onKilled(Command, int)} is reported as well, by the thread destroying
+ * it, so possibly after the end of the execution.
+ * <p>
+ * The methods are called on the threads running the command, so implementations must be thread safe, cheap and must not throw.
+ */
+public interface CommandInstrumentation
+{
+    CommandInstrumentation NONE = new CommandInstrumentation()
+    {
+    };
+
+    /**
+     * @return an instrumentation that reports every event to all the given ones, in order
+     */
+    static CommandInstrumentation combine(CommandInstrumentation... instrumentations)
+    {
+        List<CommandInstrumentation> all = ImmutableList.copyOf(instrumentations);
+
+        return new CommandInstrumentation()
+        {
+            @Override
+            public void onStarted(Command command)
+            {
+                all.forEach(instrumentation -> instrumentation.onStarted(command));
+            }
+
+            @Override
+            public void onSpawned(Command command, int pid)
+            {
+                all.forEach(instrumentation -> instrumentation.onSpawned(command, pid));
+            }
+
+            @Override
+            public void onKilled(Command command, int pid)
+            {
+                all.forEach(instrumentation -> instrumentation.onKilled(command, pid));
+            }
+
+            @Override
+            public void onCompleted(Command command, CommandResult result)
+            {
+                all.forEach(instrumentation -> instrumentation.onCompleted(command, result));
+            }
+
+            @Override
+            public void onFailed(Command command, CommandFailedException failure)
+            {
+                all.forEach(instrumentation -> instrumentation.onFailed(command, failure));
+            }
+        };
+    }
+
+    default void onStarted(Command command)
+    {
+    }
+
+    default void onSpawned(Command command, int pid)
+    {
+    }
+
+    /**
+     * The process was still running when the execution ended, because it timed out or was interrupted, and is being destroyed.
+     */
+    default void onKilled(Command command, int pid)
+    {
+    }
+
+    default void onCompleted(Command command, CommandResult result)
+    {
+    }
+
+    default void onFailed(Command command, CommandFailedException failure)
+    {
+    }
+}
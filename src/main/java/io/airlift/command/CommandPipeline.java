@@ -0,0 +1,404 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import io.airlift.units.Duration;
+
+/**
+ * Runs {@link Command}s connected by pipes, like <code>cmd1 | cmd2 | cmd3</code> without a shell.
+ * <p>
+ * On Java 9 and later the stages are started with <code>ProcessBuilder.startPipeline</code> and the data flows between them through OS
+ * pipes without going through the JVM. On Java 8, which has no way to connect two child processes, or when a stage has its own
+ * {@link ProcessLauncher}, every link is relayed by an executor thread with a pooled buffer.
+ * <p>
+ * Only the data written to the output of a stage goes to the next stage. The error stream of every stage but the last is captured on its own
+ * and becomes the output of its {@link CommandResult}, while the last stage merges it into its output like a single command. The input of
+ * the first stage and the line listener of the last stage are honored. The pipeline fails if any stage exits with a code that its command
+ * does not consider successful.
+ * <p>
+ * Besides the task running the pipeline and any relays, the executor runs a task per stage waiting for its process to exit, and the readers
+ * of the outputs and the writer of the input.
+ */
+@Immutable
+public class CommandPipeline
+{
+    private static final Duration DEFAULT_TIME_LIMIT = new Duration(365, TimeUnit.DAYS);
+    private static final byte[] NO_OUTPUT = new byte[0];
+
+    private static final Method START_PIPELINE = findStartPipeline();
+
+    private final List<Command> stages;
+    private final Duration timeLimit;
+    private final boolean osPipes;
+
+    public CommandPipeline(Command first, Command... rest)
+    {
+        this(ImmutableList.<Command>builder().add(requireNonNull(first, "first is null")).add(requireNonNull(rest, "rest is null")).build(), DEFAULT_TIME_LIMIT);
+    }
+
+    public CommandPipeline(List<Command> stages, Duration timeLimit)
+    {
+        this(stages, timeLimit, START_PIPELINE != null);
+    }
+
+    private CommandPipeline(List<Command> stages, Duration timeLimit, boolean osPipes)
+    {
+        requireNonNull(stages, "stages is null");
+        checkArgument(!stages.isEmpty(), "stages is empty");
+
+        this.stages = ImmutableList.copyOf(stages);
+        this.timeLimit = requireNonNull(timeLimit, "timeLimit is null");
+        // the stages are only started together when they all start their processes with a ProcessBuilder
+        this.osPipes = osPipes && this.stages.stream().allMatch(stage -> stage.getLauncher() == ProcessLauncher.PROCESS_BUILDER);
+    }
+
+    public List<Command> getStages()
+    {
+        return stages;
+    }
+
+    public CommandPipeline pipe(Command next)
+    {
+        requireNonNull(next, "next is null");
+        return new CommandPipeline(ImmutableList.<Command>builder().addAll(stages).add(next).build(), timeLimit, osPipes);
+    }
+
+    public Duration getTimeLimit()
+    {
+        return timeLimit;
+    }
+
+    public CommandPipeline setTimeLimit(double value, TimeUnit timeUnit)
+    {
+        return setTimeLimit(new Duration(value, timeUnit));
+    }
+
+    public CommandPipeline setTimeLimit(Duration timeLimit)
+    {
+        return new CommandPipeline(stages, timeLimit, osPipes);
+    }
+
+    /**
+     * @return a copy of this pipeline that relays the data between the stages itself, as on Java 8
+     */
+    @VisibleForTesting
+    CommandPipeline withRelayedPipes()
+    {
+        return new CommandPipeline(stages, timeLimit, false);
+    }
+
+    public PipelineResult execute(Executor executor) throws CommandFailedException
+    {
+        return execute(executor, null);
+    }
+
+    /**
+     * Executes the pipeline under the given context, which stops all its processes if it is cancelled or reaches its deadline first.
+     *
+     * @param context the context to run under, or <code>null</code>
+     */
+    public PipelineResult execute(Executor executor, CommandContext context) throws CommandFailedException
+    {
+        requireNonNull(executor, "executor is null");
+
+        long queuedAt = System.nanoTime();
+        ListenableFuture<PipelineResult> future = Command.submit(executor, () -> run(executor, queuedAt));
+        return Command.await(future, stages.get(stages.size() - 1), timeLimit, context);
+    }
+
+    private PipelineResult run(Executor executor, long queuedAt) throws CommandFailedException, InterruptedException
+    {
+        long queueTime = System.nanoTime() - queuedAt;
+
+        Command first = stages.get(0);
+        Command last = stages.get(stages.size() - 1);
+
+        List<ProcessBuilder> builders = new ArrayList<>(stages.size());
+        for (Command stage : stages)
+        {
+            // the error stream of a stage must not be piped into the next stage
+            builders.add(ProcessCallable.newProcessBuilder(stage).redirectErrorStream(stage == last));
+        }
+
+        if (first.getInput() != null)
+        {
+            first.getInput().configure(builders.get(0));
+        }
+
+        long spawnedAt = System.nanoTime();
+        List<Process> processes = new ArrayList<>(stages.size());
+        List<Future<?>> relays = new ArrayList<>();
+
+        List<OutputProcessor> errorProcessors = new ArrayList<>();
+        OutputProcessor outputProcessor = null;
+        InputProcessor inputProcessor = null;
+
+        try
+        {
+            try
+            {
+                if (osPipes)
+                {
+                    try
+                    {
+                        processes.addAll(startPipeline(builders));
+                    }
+                    catch (IOException e)
+                    {
+                        throw failedToStart(e);
+                    }
+                }
+                else
+                {
+                    for (int i = 0; i < builders.size(); i++)
+                    {
+                        processes.add(stages.get(i).getLauncher().launch(builders.get(i)));
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                throw new CommandFailedException(stages.get(processes.size()), "failed to start", e);
+            }
+            long startTime = System.nanoTime();
+
+            if (!osPipes)
+            {
+                for (int i = 0; i < processes.size() - 1; i++)
+                {
+                    relays.add(relay(executor, processes.get(i), processes.get(i + 1)));
+                }
+            }
+
+            for (Process process : processes.subList(0, processes.size() - 1))
+            {
+                OutputProcessor errorProcessor = new OutputProcessor(process.getErrorStream(), executor, null, 0, BufferPool.shared(), null);
+                errorProcessor.start();
+                errorProcessors.add(errorProcessor);
+            }
+
+            outputProcessor = new OutputProcessor(processes.get(processes.size() - 1), executor, last.getLineListener(), last.getMaxLineLength());
+            outputProcessor.start();
+
+            inputProcessor = new InputProcessor(processes.get(0), executor, first.getInput());
+            inputProcessor.start();
+
+            int[] exitCodes = new int[processes.size()];
+            long[] elapsedTimes = new long[processes.size()];
+            awaitExits(executor, processes, startTime, exitCodes, elapsedTimes);
+
+            byte[] output = outputProcessor.getOutputBytes();
+            long drainedAt = System.nanoTime();
+            long firstOutputAt = outputProcessor.getFirstOutputTime();
+
+            inputProcessor.awaitDone();
+            IOException inputFailure = inputProcessor.getFailure();
+            if (inputFailure != null)
+            {
+                throw new CommandFailedException(first, "failed to write the input", inputFailure);
+            }
+
+            ImmutableList.Builder<CommandResult> results = ImmutableList.builder();
+
+            for (int i = 0; i < processes.size(); i++)
+            {
+                Command stage = stages.get(i);
+                int pid = stages.get(i).getLauncher().pidOf(processes.get(i));
+                boolean isLast = i == processes.size() - 1;
+
+                byte[] stageOutput = isLast ? output : errorProcessors.get(i).getOutputBytes();
+
+                if (!stage.getSuccessfulExitCodes().contains(exitCodes[i]))
+                {
+                    throw new CommandFailedException(stage, exitCodes[i], pid, stageOutput != null ? new String(stageOutput, UTF_8) : null);
+                }
+
+                // the stages are spawned together, so they share the spawn time
+                CommandTimings timings = new CommandTimings(
+                        queueTime,
+                        startTime - spawnedAt,
+                        isLast && firstOutputAt != -1 ? Math.max(0, firstOutputAt - startTime) : CommandTimings.NO_OUTPUT,
+                        elapsedTimes[i],
+                        isLast ? drainedAt - startTime - elapsedTimes[i] : 0,
+                        drainedAt - queuedAt);
+
+                results.add(new CommandResult(stage.getId(), (long) pid, exitCodes[i], stageOutput != null ? stageOutput : NO_OUTPUT, timings, ImmutableList.of()));
+            }
+
+            return new PipelineResult(results.build(), System.nanoTime() - startTime);
+        }
+        finally
+        {
+            processes.forEach(Process::destroy);
+            relays.forEach(relay -> relay.cancel(true));
+            errorProcessors.forEach(OutputProcessor::destroy);
+
+            if (outputProcessor != null)
+            {
+                outputProcessor.destroy();
+            }
+
+            if (inputProcessor != null)
+            {
+                inputProcessor.destroy();
+            }
+        }
+    }
+
+    /**
+     * Waits for all the processes to exit, taking the time of every exit on its own since the stages can exit in any order. Every stage is
+     * waited for by a task of the executor, which takes the time as soon as its process exits.
+     */
+    private static void awaitExits(Executor executor, List<Process> processes, long startTime, int[] exitCodes, long[] elapsedTimes)
+            throws InterruptedException
+    {
+        List<ListenableFuture<?>> waiters = new ArrayList<>(processes.size());
+
+        try
+        {
+            for (int i = 0; i < processes.size(); i++)
+            {
+                int stage = i;
+                Process process = processes.get(i);
+                waiters.add(Command.submit(executor, () ->
+                {
+                    exitCodes[stage] = process.waitFor();
+                    elapsedTimes[stage] = System.nanoTime() - startTime;
+                    return null;
+                }));
+            }
+
+            // completing the futures publishes the exit codes and times written by the waiters
+            Futures.allAsList(waiters).get();
+        }
+        catch (ExecutionException e)
+        {
+            Throwables.propagateIfPossible(e.getCause(), InterruptedException.class);
+            throw new RuntimeException(e.getCause());
+        }
+        finally
+        {
+            waiters.forEach(waiter -> waiter.cancel(true));
+        }
+    }
+
+    private static Future<?> relay(Executor executor, Process from, Process to)
+    {
+        return Command.submit(executor, () ->
+        {
+            BufferPool pool = BufferPool.shared();
+            byte[] buffer = pool.acquire(BufferPool.MIN_BUFFER_SIZE * 2);
+
+            try (InputStream in = from.getInputStream(); OutputStream out = to.getOutputStream())
+            {
+                int read;
+                while ((read = in.read(buffer)) != -1)
+                {
+                    out.write(buffer, 0, read);
+                }
+            }
+            catch (IOException ignored)
+            {
+                // the next stage exited before reading everything, as with a shell pipeline
+            }
+            finally
+            {
+                pool.release(buffer);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * @return the failure to start the stages together, reported for the stage named by the error, or for the last stage, like the other
+     * failures of the pipeline, if the error names none
+     */
+    private CommandFailedException failedToStart(IOException e)
+    {
+        String message = String.valueOf(e.getMessage());
+        for (Command stage : stages)
+        {
+            // ProcessBuilder reports the program it could not run as: Cannot run program "name"
+            if (message.contains("\"" + stage.getCommand().get(0) + "\""))
+            {
+                return new CommandFailedException(stage, "failed to start", e);
+            }
+        }
+        return new CommandFailedException(stages.get(stages.size() - 1), "failed to start the pipeline", e);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Process> startPipeline(List<ProcessBuilder> builders) throws IOException
+    {
+        try
+        {
+            return (List<Process>) START_PIPELINE.invoke(null, builders);
+        }
+        catch (InvocationTargetException e)
+        {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw new IOException(e.getCause());
+        }
+        catch (IllegalAccessException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Method findStartPipeline()
+    {
+        try
+        {
+            return ProcessBuilder.class.getMethod("startPipeline", List.class);
+        }
+        catch (NoSuchMethodException e)
+        {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("stages", stages)
+                .add("timeLimit", timeLimit)
+                .toString();
+    }
+}
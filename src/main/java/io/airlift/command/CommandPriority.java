@@ -0,0 +1,36 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+/**
+ * Scheduling class of a {@link Command}. Classes are served in declaration order by the {@link CommandScheduler}:
+ * a queued {@link #HIGH} command is always dispatched before any {@link #NORMAL} or {@link #LOW} one.
+ */
+public enum CommandPriority
+{
+    /**
+     * Latency-sensitive commands.
+     */
+    HIGH,
+
+    /**
+     * Default class.
+     */
+    NORMAL,
+
+    /**
+     * Batch commands that may wait for capacity.
+     */
+    LOW;
+}
@@ -16,8 +16,14 @@ package io.airlift.command;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
 
+import io.airlift.command.system.stats.SystemState;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 
@@ -29,9 +35,18 @@ public class CommandResult
 	private final String id;
 	private final Long pid;
     private final Integer exitCode;
-    private final String commandOutput;
+    private final byte[] output;
 	private final ImmutableList<ProcessState> stats;
 	private final Long elapsedTime;
+	private final Long queueTime;
+	private final CommandTimings timings;
+	private final SystemState hostStateAtStart;
+	private final SystemState hostStateAtEnd;
+
+	/**
+	 * The output decoded on the first call to {@link #getCommandOutput()}. Racing threads may decode it twice, but always to an equal string.
+	 */
+	private String commandOutput;
 
     public CommandResult(String id, Long pid, Integer exitCode, String commandOutput, Long elapsedTime)
     {
@@ -39,14 +54,66 @@ public class CommandResult
     }
     
     public CommandResult(String id, Long pid, Integer exitCode, String commandOutput, Long elapsedTime, List<ProcessState> monitorData)
+    {
+        this(id, pid, exitCode, commandOutput, elapsedTime, 0L, monitorData);
+    }
+
+    CommandResult(String id, Long pid, Integer exitCode, String commandOutput, Long elapsedTime, Long queueTime, List<ProcessState> monitorData)
+    {
+        this(id, pid, exitCode, requireNonNull(commandOutput, "commandOutput is null").getBytes(UTF_8), elapsedTime, queueTime, monitorData);
+        this.commandOutput = commandOutput;
+    }
+
+    /**
+     * @param output the raw output of the process, which the result takes over: it is neither copied nor decoded until {@link #getCommandOutput()}
+     *        is called, so the caller must not change it afterwards
+     */
+    CommandResult(String id, Long pid, Integer exitCode, byte[] output, Long elapsedTime, Long queueTime, List<ProcessState> monitorData)
+    {
+        this(id, pid, exitCode, output, elapsedTime, queueTime, timingsOf(elapsedTime, queueTime), monitorData, null, null);
+    }
+
+    /**
+     * @param output the raw output of the process, which the result takes over; see {@link #CommandResult(String, Long, Integer, byte[], Long, Long, List)}
+     */
+    CommandResult(String id, Long pid, Integer exitCode, byte[] output, CommandTimings timings, List<ProcessState> monitorData)
+    {
+        this(id, pid, exitCode, output, timings, monitorData, null, null);
+    }
+
+    /**
+     * @param output the raw output of the process, which the result takes over; see {@link #CommandResult(String, Long, Integer, byte[], Long, Long, List)}
+     * @param hostStateAtStart the state of the host when the process was spawned, or <code>null</code>
+     * @param hostStateAtEnd the state of the host when the output of the process was drained, or <code>null</code>
+     */
+    CommandResult(String id, Long pid, Integer exitCode, byte[] output, CommandTimings timings, List<ProcessState> monitorData, SystemState hostStateAtStart,
+            SystemState hostStateAtEnd)
+    {
+        this(id, pid, exitCode, output, requireNonNull(timings, "timings is null").getRunTime(), timings.getQueueTime(), timings, monitorData, hostStateAtStart,
+                hostStateAtEnd);
+    }
+
+    private CommandResult(String id, Long pid, Integer exitCode, byte[] output, Long elapsedTime, Long queueTime, CommandTimings timings, List<ProcessState> monitorData,
+            SystemState hostStateAtStart, SystemState hostStateAtEnd)
     {
     	this.id = id;
     	this.pid = pid;
     	this.exitCode = exitCode;
     	this.elapsedTime = elapsedTime;
-        this.commandOutput = requireNonNull(commandOutput, "commandOutput is null");
+    	this.queueTime = queueTime;
+    	this.timings = timings;
+    	this.hostStateAtStart = hostStateAtStart;
+    	this.hostStateAtEnd = hostStateAtEnd;
+        this.output = requireNonNull(output, "output is null");
         this.stats = monitorData == null ? ImmutableList.of() : ImmutableList.copyOf(monitorData);
     }
+
+    private static CommandTimings timingsOf(Long elapsedTime, Long queueTime)
+    {
+        long run = elapsedTime == null ? 0 : elapsedTime;
+        long queue = queueTime == null ? 0 : queueTime;
+        return new CommandTimings(queue, 0, CommandTimings.NO_OUTPUT, run, 0, queue + run);
+    }
     
     /**
 	 * @return the id
@@ -61,9 +128,48 @@ public class CommandResult
         return exitCode;
     }
 
+    /**
+     * @return the output of the process decoded as UTF-8
+     */
     public String getCommandOutput()
     {
-        return commandOutput;
+        String decoded = commandOutput;
+
+        if (decoded == null)
+        {
+            decoded = new String(output, UTF_8);
+            commandOutput = decoded;
+        }
+        return decoded;
+    }
+
+    /**
+     * @return a copy of the raw output of the process
+     */
+    public byte[] getOutputBytes()
+    {
+        return output.clone();
+    }
+
+    /**
+     * @return a stream over the raw output of the process that neither decodes nor copies it
+     */
+    public InputStream asInputStream()
+    {
+        return new ByteArrayInputStream(output);
+    }
+
+    /**
+     * @return the size in bytes of the output of the process
+     */
+    public int getOutputSize()
+    {
+        return output.length;
+    }
+
+    public boolean hasOutput()
+    {
+        return output.length > 0;
     }
     
     
@@ -75,6 +181,38 @@ public class CommandResult
 		return elapsedTime;
 	}
 
+	/**
+	 * @return the time in nanoseconds the command waited for an executor thread (and for the {@link CommandScheduler}, if any) before it was spawned
+	 */
+	public Long getQueueTime()
+	{
+		return queueTime;
+	}
+
+	/**
+	 * @return the breakdown of the time of the execution by phase; results built without one only know their queue and run times
+	 */
+	public CommandTimings getTimings()
+	{
+		return timings;
+	}
+
+	/**
+	 * @return the state of the host when the process was spawned, or <code>null</code> if the command has no {@link Command#getSystemProbe() system probe}
+	 */
+	public SystemState getHostStateAtStart()
+	{
+		return hostStateAtStart;
+	}
+
+	/**
+	 * @return the state of the host when the process had exited and its output was drained, or <code>null</code> if the command has no system probe
+	 */
+	public SystemState getHostStateAtEnd()
+	{
+		return hostStateAtEnd;
+	}
+
 	public ImmutableList<ProcessState> getProcessStats()
     {
     	return stats;
@@ -106,13 +244,13 @@ public class CommandResult
 		return Objects.equals(getId(), other.getId()) &&
 			   Objects.equals(getPid(), other.getPid()) &&
 			   Objects.equals(getExitCode(), other.getExitCode()) &&
-			   Objects.equals(getCommandOutput(), other.getCommandOutput());
+			   Arrays.equals(output, other.output);
 	}
 	
 	@Override
 	public int hashCode() 
 	{
-		return Objects.hash(getId(), getPid(), getExitCode(), getCommandOutput());
+		return Objects.hash(getId(), getPid(), getExitCode(), Arrays.hashCode(output));
 	}
 	
 	@Override
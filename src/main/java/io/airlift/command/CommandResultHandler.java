@@ -0,0 +1,33 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+/**
+ * Receives the outcome of every command run by a {@link StreamingCommandExecutor}, together with the parameters it was bound from.
+ * <p>
+ * The methods are called on the threads running the commands, as they complete, so implementations must be thread safe. The next command
+ * only takes the place of the one reported once the method returns, which slows the stream down to the pace of the handler.
+ *
+ * @param <P> the type of the parameters of the commands
+ */
+public interface CommandResultHandler<P>
+{
+    void onCompleted(P parameters, CommandResult result);
+
+    /**
+     * @param failure the failure of the command, which is a {@link CommandTimeoutException} if it reached its time limit, or a
+     * {@link CommandCancelledException} if the stream was cancelled
+     */
+    void onFailed(P parameters, CommandFailedException failure);
+}
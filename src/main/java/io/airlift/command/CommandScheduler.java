@@ -0,0 +1,486 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Dispatches {@link Command}s to an {@link Executor} according to their {@link CommandPriority} and tenant.
+ * <p>
+ * Priority classes are served strictly in order, each one bounded by its own limit of running processes, so that a burst of
+ * {@link CommandPriority#LOW} commands cannot occupy the slots needed by {@link CommandPriority#HIGH} ones. Within a class, tenants
+ * share the class in proportion to their weights (weighted fair queuing over the number of dispatched commands).
+ * <p>
+ * The commands are {@link Command#start(Executor) started} rather than executed, so no thread of the executor waits for a command: the
+ * executor runs the process, its output reader and the writer of its piped input if any, and must be able to run two tasks per running
+ * command, three for a command with a piped input.
+ */
+@ThreadSafe
+public class CommandScheduler
+{
+    private static final double DEFAULT_TENANT_WEIGHT = 1.0;
+
+    private final Executor executor;
+
+    @GuardedBy("this")
+    private final Map<CommandPriority, PriorityClass> classes = new EnumMap<>(CommandPriority.class);
+
+    @GuardedBy("this")
+    private final Map<String, Double> tenantWeights = new HashMap<>();
+
+    @GuardedBy("this")
+    private ConcurrencyLimit limit;
+
+    @GuardedBy("this")
+    private int running;
+
+    public CommandScheduler(Executor executor, int maxConcurrentCommands)
+    {
+        this(executor, fixedLimit(maxConcurrentCommands));
+    }
+
+    /**
+     * @param limit the limit of running commands, for instance an {@link AdaptiveConcurrencyLimiter}
+     */
+    public CommandScheduler(Executor executor, ConcurrencyLimit limit)
+    {
+        this.executor = requireNonNull(executor, "executor is null");
+        this.limit = requireNonNull(limit, "limit is null");
+
+        for (CommandPriority priority : CommandPriority.values())
+        {
+            classes.put(priority, new PriorityClass(Integer.MAX_VALUE));
+        }
+
+        // a limit growing on its own makes room for queued commands without waiting for a running one to complete
+        limit.addListener(this::dispatch);
+    }
+
+    /**
+     * Replaces the current {@link ConcurrencyLimit} by a fixed limit.
+     */
+    public CommandScheduler setMaxConcurrentCommands(int maxConcurrentCommands)
+    {
+        ConcurrencyLimit limit = fixedLimit(maxConcurrentCommands);
+
+        synchronized (this)
+        {
+            this.limit = limit;
+        }
+
+        dispatch();
+        return this;
+    }
+
+    /**
+     * Limits the number of processes of the given class that may run at the same time.
+     */
+    public CommandScheduler setMaxConcurrentCommands(CommandPriority priority, int maxConcurrentCommands)
+    {
+        requireNonNull(priority, "priority is null");
+        checkArgument(maxConcurrentCommands > 0, "maxConcurrentCommands must be greater than zero");
+
+        synchronized (this)
+        {
+            classes.get(priority).limit = maxConcurrentCommands;
+        }
+
+        dispatch();
+        return this;
+    }
+
+    /**
+     * Sets the share of a tenant relative to the other tenants of the same priority class. Tenants without an explicit weight have a weight of one.
+     */
+    public synchronized CommandScheduler setTenantWeight(String tenant, double weight)
+    {
+        checkArgument(!Strings.isNullOrEmpty(tenant), "tenant is null or empty");
+        checkArgument(weight > 0, "weight must be greater than zero");
+
+        tenantWeights.put(tenant, weight);
+        return this;
+    }
+
+    public synchronized int getMaxConcurrentCommands()
+    {
+        return limit.getLimit();
+    }
+
+    public synchronized int getRunningCommands()
+    {
+        return running;
+    }
+
+    public synchronized int getRunningCommands(CommandPriority priority)
+    {
+        return classes.get(requireNonNull(priority, "priority is null")).running;
+    }
+
+    public synchronized int getQueuedCommands()
+    {
+        int queued = 0;
+        for (PriorityClass priorityClass : classes.values())
+        {
+            queued += priorityClass.queued;
+        }
+        return queued;
+    }
+
+    public synchronized int getQueuedCommands(CommandPriority priority)
+    {
+        return classes.get(requireNonNull(priority, "priority is null")).queued;
+    }
+
+    /**
+     * Queues the command. Cancelling the returned future removes a queued command from the queue, or kills its process if it is already running.
+     */
+    public ListenableFuture<CommandResult> submit(Command command)
+    {
+        return submit(command, null);
+    }
+
+    /**
+     * Queues the command under the given context. Cancelling the context fails a queued command with a {@link CommandCancelledException},
+     * or stops its process if it is already running.
+     *
+     * @param context the context to run the command under, or <code>null</code>
+     */
+    public ListenableFuture<CommandResult> submit(Command command, CommandContext context)
+    {
+        requireNonNull(command, "command is null");
+
+        QueuedCommand queued = new QueuedCommand(command, System.nanoTime(), context);
+
+        synchronized (this)
+        {
+            classes.get(command.getPriority()).add(queued);
+        }
+
+        queued.result.addListener(() ->
+        {
+            if (queued.result.isCancelled())
+            {
+                remove(queued);
+            }
+        }, directExecutor());
+
+        if (context != null)
+        {
+            // once started, the command stops itself when the context is cancelled
+            CommandContext.Registration registration = context.onCancel(() ->
+            {
+                if (queued.result.setException(context.failureOf(command)))
+                {
+                    remove(queued);
+                }
+            });
+            queued.result.addListener(registration::unregister, directExecutor());
+        }
+
+        dispatch();
+        return queued.result;
+    }
+
+    public CommandResult execute(Command command) throws CommandFailedException
+    {
+        return execute(command, null);
+    }
+
+    /**
+     * @param context the context to run the command under, or <code>null</code>
+     */
+    public CommandResult execute(Command command, CommandContext context) throws CommandFailedException
+    {
+        ListenableFuture<CommandResult> future = submit(command, context);
+
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException e)
+        {
+            Throwables.propagateIfPossible(e.getCause(), CommandFailedException.class);
+            throw new CommandFailedException(command, "unexpected exception", e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new CommandFailedException(command, "interrupted", e);
+        }
+        finally
+        {
+            future.cancel(true);
+        }
+    }
+
+    private synchronized void remove(QueuedCommand queued)
+    {
+        classes.get(queued.command.getPriority()).remove(queued);
+    }
+
+    private void dispatch()
+    {
+        List<QueuedCommand> ready = new ArrayList<>();
+        ConcurrencyLimit current;
+        int dispatched;
+
+        synchronized (this)
+        {
+            while (running < limit.getLimit())
+            {
+                QueuedCommand next = pollNext();
+
+                if (next == null)
+                {
+                    break;
+                }
+
+                running++;
+                classes.get(next.command.getPriority()).running++;
+                ready.add(next);
+            }
+            current = limit;
+            dispatched = running;
+        }
+
+        if (!ready.isEmpty())
+        {
+            current.onDispatched(dispatched);
+        }
+        ready.forEach(this::start);
+    }
+
+    @GuardedBy("this")
+    private QueuedCommand pollNext()
+    {
+        for (PriorityClass priorityClass : classes.values())
+        {
+            if (priorityClass.queued > 0 && priorityClass.running < priorityClass.limit)
+            {
+                return priorityClass.poll();
+            }
+        }
+        return null;
+    }
+
+    private void start(QueuedCommand queued)
+    {
+        if (queued.result.isDone())
+        {
+            release(queued);
+            dispatch();
+            return;
+        }
+
+        RunningCommand running;
+
+        try
+        {
+            // the process runs on the executor, but nothing waits for it there
+            running = queued.command.start(executor, queued.queuedAt, queued.context);
+        }
+        catch (RejectedExecutionException e)
+        {
+            release(queued);
+            queued.result.setException(new CommandFailedException(queued.command, "rejected by the executor", e));
+            // the freed slot goes to the next queued command, as when a command completes
+            dispatch();
+            return;
+        }
+
+        long startedAt = System.nanoTime();
+        ListenableFuture<CommandResult> future = running.getFuture();
+
+        Futures.addCallback(future, new FutureCallback<CommandResult>()
+        {
+            @Override
+            public void onSuccess(CommandResult result)
+            {
+                completed(false);
+                queued.result.set(result);
+                dispatch();
+            }
+
+            @Override
+            public void onFailure(Throwable failure)
+            {
+                CommandFailedException commandFailure = running.failureOf(failure);
+                completed(commandFailure instanceof CommandTimeoutException);
+                queued.result.setException(commandFailure);
+                dispatch();
+            }
+
+            private void completed(boolean timedOut)
+            {
+                ConcurrencyLimit current = release(queued);
+                current.onCompleted(System.nanoTime() - startedAt, timedOut);
+            }
+        }, directExecutor());
+
+        queued.result.addListener(() ->
+        {
+            if (queued.result.isCancelled())
+            {
+                future.cancel(true);
+            }
+        }, directExecutor());
+    }
+
+    private synchronized ConcurrencyLimit release(QueuedCommand queued)
+    {
+        running--;
+        classes.get(queued.command.getPriority()).running--;
+        return limit;
+    }
+
+    private static ConcurrencyLimit fixedLimit(int maxConcurrentCommands)
+    {
+        checkArgument(maxConcurrentCommands > 0, "maxConcurrentCommands must be greater than zero");
+        return () -> maxConcurrentCommands;
+    }
+
+    @GuardedBy("this")
+    private double weightOf(String tenant)
+    {
+        return tenantWeights.getOrDefault(tenant, DEFAULT_TENANT_WEIGHT);
+    }
+
+    private final class PriorityClass
+    {
+        /**
+         * The tenants with queued commands, and those without whose virtual time is still ahead of the class, so that a tenant queueing one
+         * command at a time keeps the lead its dispatched commands gave it.
+         */
+        private final Map<String, TenantQueue> tenants = new HashMap<>();
+
+        private int limit;
+        private int running;
+        private int queued;
+
+        /**
+         * Virtual time of the last dispatched command. A tenant that becomes active starts from it, so idle periods do not accumulate credit.
+         */
+        private double virtualTime;
+
+        PriorityClass(int limit)
+        {
+            this.limit = limit;
+        }
+
+        void add(QueuedCommand command)
+        {
+            TenantQueue tenant = tenants.computeIfAbsent(command.command.getTenant(), name -> new TenantQueue());
+
+            if (tenant.commands.isEmpty())
+            {
+                tenant.virtualTime = Math.max(tenant.virtualTime, virtualTime);
+            }
+
+            tenant.commands.add(command);
+            queued++;
+        }
+
+        void remove(QueuedCommand command)
+        {
+            TenantQueue tenant = tenants.get(command.command.getTenant());
+
+            if (tenant != null && tenant.commands.remove(command))
+            {
+                queued--;
+            }
+        }
+
+        QueuedCommand poll()
+        {
+            String selected = null;
+            TenantQueue next = null;
+
+            for (Iterator<Map.Entry<String, TenantQueue>> tenants = this.tenants.entrySet().iterator(); tenants.hasNext(); )
+            {
+                Map.Entry<String, TenantQueue> tenant = tenants.next();
+                TenantQueue candidate = tenant.getValue();
+
+                if (candidate.commands.isEmpty())
+                {
+                    // a drained tenant no longer ahead of the class would be rebased on its virtual time anyway
+                    if (candidate.virtualTime <= virtualTime)
+                    {
+                        tenants.remove();
+                    }
+                }
+                else if (next == null || candidate.virtualTime < next.virtualTime)
+                {
+                    selected = tenant.getKey();
+                    next = candidate;
+                }
+            }
+
+            if (next == null)
+            {
+                return null;
+            }
+
+            virtualTime = next.virtualTime;
+            next.virtualTime += 1.0 / weightOf(selected);
+            queued--;
+
+            return next.commands.poll();
+        }
+    }
+
+    private static final class TenantQueue
+    {
+        private final Deque<QueuedCommand> commands = new ArrayDeque<>();
+        private double virtualTime;
+    }
+
+    private static final class QueuedCommand
+    {
+        private final Command command;
+        private final long queuedAt;
+        private final CommandContext context;
+        private final SettableFuture<CommandResult> result = SettableFuture.create();
+
+        QueuedCommand(Command command, long queuedAt, CommandContext context)
+        {
+            this.command = command;
+            this.queuedAt = queuedAt;
+            this.context = context;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.Ints;
+
+/**
+ * A command whose arguments and environment values hold <code>{name}</code> placeholders, to run the same command over many inputs.
+ * <p>
+ * The command is parsed once, when the template is created, into the constant text and the placeholders of every argument and
+ * environment value. {@link #bind(String...) Binding} values then only renders the strings holding placeholders: the constant arguments
+ * are reused as they are, and the exit codes, the environment when it holds no placeholder, along with its resolved
+ * {@link EnvironmentSnapshot}, the listeners and every other setting of the command are shared with the template rather than copied, as
+ * they are immutable already.
+ * <p>
+ * A placeholder is a name made of letters, digits and underscores, not starting with a digit, between braces. Any other text between
+ * braces, like the <code>{1..3}</code> or <code>{ cmd; }</code> of a shell script, is left as is, and so are the <code>${HOME}</code>
+ * parameter expansions of a shell. Braces are escaped by doubling them: <code>awk '{{print}}'</code> gives <code>awk '{print}'</code>.
+ */
+@ThreadSafe
+public final class CommandTemplate
+{
+    // the escaped braces and the shell parameters are matched too, so that they are never taken for a placeholder
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{\\{|\\}\\}|\\$\\{[^}]*\\}|\\{([A-Za-z_][A-Za-z0-9_]*)\\}");
+
+    private final Command command;
+    private final ImmutableList<String> placeholders;
+    private final Map<String, Integer> indexes;
+    private final Text[] arguments;
+    private final boolean constantEnvironment;
+    private final Map<String, Text> environment;
+    private final AtomicLong sequence = new AtomicLong();
+
+    private CommandTemplate(Command command)
+    {
+        this.command = requireNonNull(command, "command is null");
+
+        Map<String, Integer> indexes = new LinkedHashMap<>();
+        List<String> arguments = command.getCommand();
+        this.arguments = new Text[arguments.size()];
+        for (int i = 0; i < arguments.size(); i++)
+        {
+            this.arguments[i] = Text.parse(arguments.get(i), indexes);
+        }
+
+        ImmutableMap.Builder<String, Text> environment = ImmutableMap.builder();
+        boolean constantEnvironment = true;
+        for (Map.Entry<String, String> variable : command.getEnvironment().entrySet())
+        {
+            Text value = Text.parse(variable.getValue(), indexes);
+            constantEnvironment &= value.isConstant();
+            environment.put(variable.getKey(), value);
+        }
+        this.environment = environment.build();
+        this.constantEnvironment = constantEnvironment;
+
+        this.indexes = ImmutableMap.copyOf(indexes);
+        this.placeholders = ImmutableList.copyOf(indexes.keySet());
+    }
+
+    /**
+     * @param command the command whose arguments and environment values hold the placeholders; the commands bound from the template have
+     * its settings, and ids made of its id followed by a sequence number
+     */
+    public static CommandTemplate of(Command command)
+    {
+        return new CommandTemplate(command);
+    }
+
+    /**
+     * @param arguments the arguments of the command, which hold the placeholders
+     */
+    public static CommandTemplate of(String id, String... arguments)
+    {
+        return new CommandTemplate(new Command(id, arguments));
+    }
+
+    /**
+     * @return the command the template was created from, with its placeholders
+     */
+    public Command getCommand()
+    {
+        return command;
+    }
+
+    /**
+     * @return the names of the placeholders, in the order they first appear in the arguments, then in the environment values
+     */
+    public List<String> getPlaceholders()
+    {
+        return placeholders;
+    }
+
+    /**
+     * Binds the placeholders by position, which avoids looking them up by name.
+     *
+     * @param values the value of every placeholder, in the order of {@link #getPlaceholders()}
+     * @throws IllegalArgumentException if the number of values is not the number of placeholders
+     */
+    public Command bind(String... values)
+    {
+        requireNonNull(values, "values is null");
+        checkArgument(values.length == placeholders.size(), "expected %s values for %s, but got %s", placeholders.size(), placeholders, values.length);
+        for (int i = 0; i < values.length; i++)
+        {
+            String placeholder = placeholders.get(i);
+            requireNonNull(values[i], () -> "value of " + placeholder + " is null");
+        }
+        return render(values);
+    }
+
+    /**
+     * @param values the value of every placeholder by name
+     * @throws IllegalArgumentException if a placeholder has no value, or a value is not for a placeholder of the template
+     */
+    public Command bind(Map<String, String> values)
+    {
+        requireNonNull(values, "values is null");
+
+        String[] bound = new String[placeholders.size()];
+        for (Map.Entry<String, String> value : values.entrySet())
+        {
+            Integer index = indexes.get(value.getKey());
+            checkArgument(index != null, "%s is not a placeholder of the template, which has %s", value.getKey(), placeholders);
+            bound[index] = requireNonNull(value.getValue(), () -> "value of " + value.getKey() + " is null");
+        }
+        checkArgument(values.size() == bound.length, "expected values for %s, but got %s", placeholders, values.keySet());
+        return render(bound);
+    }
+
+    private Command render(String[] values)
+    {
+        String[] arguments = new String[this.arguments.length];
+        for (int i = 0; i < arguments.length; i++)
+        {
+            arguments[i] = this.arguments[i].render(values);
+        }
+
+        Map<String, String> environment = command.getEnvironment();
+        if (!constantEnvironment)
+        {
+            ImmutableMap.Builder<String, String> rendered = ImmutableMap.builder();
+            this.environment.forEach((name, value) -> rendered.put(name, value.render(values)));
+            environment = rendered.build();
+        }
+
+        // the already immutable settings of the command are not copied again by the constructor
+        Command bound = new Command(command.getId() + "-" + sequence.incrementAndGet(), ImmutableList.copyOf(arguments), command.getSuccessfulExitCodes(),
+                command.getDirectory(), environment, command.getTimeLimit(), command.getListeners(), command.isIncludeEnvironmentVariables(),
+                command.getPriority(), command.getTenant(), command.getLineListener(), command.getMaxLineLength(), command.getInput(),
+                command.getInstrumentation(), command.getSystemProbe(), command.getLauncher());
+        return constantEnvironment ? bound.shareEnvironmentSnapshot(command) : bound;
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("command", command.getCommand())
+                .add("placeholders", placeholders)
+                .toString();
+    }
+
+    /**
+     * A string split into the constant text around its placeholders: the value of the placeholder at <code>slots[i]</code> goes between
+     * <code>literals[i]</code> and <code>literals[i + 1]</code>.
+     */
+    private static final class Text
+    {
+        private final String[] literals;
+        private final int[] slots;
+        private final int constantLength;
+
+        private Text(String[] literals, int[] slots)
+        {
+            this.literals = literals;
+            this.slots = slots;
+
+            int length = 0;
+            for (String literal : literals)
+            {
+                length += literal.length();
+            }
+            this.constantLength = length;
+        }
+
+        /**
+         * @param indexes the index of every placeholder found so far, by name, to which the new ones are added
+         */
+        static Text parse(String text, Map<String, Integer> indexes)
+        {
+            List<String> literals = new ArrayList<>();
+            List<Integer> slots = new ArrayList<>();
+
+            Matcher matcher = PLACEHOLDER.matcher(text);
+            StringBuilder literal = new StringBuilder();
+            int end = 0;
+            while (matcher.find())
+            {
+                literal.append(text, end, matcher.start());
+                end = matcher.end();
+
+                if (matcher.group(1) == null)
+                {
+                    // an escaped brace stands for one brace, and a shell parameter for itself
+                    String match = matcher.group();
+                    literal.append(match.length() == 2 ? match.substring(1) : match);
+                    continue;
+                }
+
+                literals.add(literal.toString());
+                literal.setLength(0);
+                slots.add(indexes.computeIfAbsent(matcher.group(1), name -> indexes.size()));
+            }
+            literals.add(end == 0 ? text : literal.append(text, end, text.length()).toString());
+
+            return new Text(literals.toArray(new String[0]), Ints.toArray(slots));
+        }
+
+        boolean isConstant()
+        {
+            return slots.length == 0;
+        }
+
+        String render(String[] values)
+        {
+            if (slots.length == 0)
+            {
+                return literals[0];
+            }
+            if (slots.length == 1 && constantLength == 0)
+            {
+                return values[slots[0]];
+            }
+
+            int length = constantLength;
+            for (int slot : slots)
+            {
+                length += values[slot].length();
+            }
+
+            StringBuilder rendered = new StringBuilder(length).append(literals[0]);
+            for (int i = 0; i < slots.length; i++)
+            {
+                rendered.append(values[slots[i]]).append(literals[i + 1]);
+            }
+            return rendered.toString();
+        }
+    }
+}
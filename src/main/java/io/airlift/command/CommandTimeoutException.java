@@ -13,6 +13,8 @@
  */
 package io.airlift.command;
 
+import io.airlift.units.Duration;
+
 public class CommandTimeoutException extends CommandFailedException
 {
     /**
@@ -22,6 +24,11 @@ public class CommandTimeoutException extends CommandFailedException
 
 	public CommandTimeoutException(Command command)
     {
-        super(command, "did not complete in " + command.getTimeLimit(), null);
+        this(command, command.getTimeLimit());
+    }
+
+	public CommandTimeoutException(Command command, Duration timeLimit)
+    {
+        super(command, "did not complete in " + timeLimit, null);
     }
 }
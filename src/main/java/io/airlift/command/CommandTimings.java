@@ -0,0 +1,119 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static io.airlift.units.Duration.succinctNanos;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Where the time of one execution of a command went, in nanoseconds:
+ *
+ * <pre>
+ * queued    spawned   started        first output      exited      drained
+ *   |-queue---|-spawn---|-------------run---------------|---drain---|
+ *   |                   |-time to first output-|                    |
+ *   |----------------------------- total ---------------------------|
+ * </pre>
+ *
+ * The spawn time is the cost of <code>ProcessBuilder.start()</code>, so spawn overhead can be told apart from the time the command itself takes.
+ */
+@Immutable
+public class CommandTimings
+{
+    /**
+     * The value of {@link #getTimeToFirstOutput()} when the process wrote nothing.
+     */
+    public static final long NO_OUTPUT = -1;
+
+    private final long queueTime;
+    private final long spawnTime;
+    private final long timeToFirstOutput;
+    private final long runTime;
+    private final long drainTime;
+    private final long totalTime;
+
+    public CommandTimings(long queueTime, long spawnTime, long timeToFirstOutput, long runTime, long drainTime, long totalTime)
+    {
+        this.queueTime = queueTime;
+        this.spawnTime = spawnTime;
+        this.timeToFirstOutput = timeToFirstOutput;
+        this.runTime = runTime;
+        this.drainTime = drainTime;
+        this.totalTime = totalTime;
+    }
+
+    /**
+     * @return the time the command waited for an executor thread (and for the {@link CommandScheduler}, if any) before it was spawned
+     */
+    public long getQueueTime()
+    {
+        return queueTime;
+    }
+
+    /**
+     * @return the time <code>ProcessBuilder.start()</code> took to create the process
+     */
+    public long getSpawnTime()
+    {
+        return spawnTime;
+    }
+
+    /**
+     * @return the time from the start of the process to the first byte of its output, or {@link #NO_OUTPUT}
+     */
+    public long getTimeToFirstOutput()
+    {
+        return timeToFirstOutput;
+    }
+
+    /**
+     * @return the time from the start of the process to its exit
+     */
+    public long getRunTime()
+    {
+        return runTime;
+    }
+
+    /**
+     * @return the time from the exit of the process until its output was fully read
+     */
+    public long getDrainTime()
+    {
+        return drainTime;
+    }
+
+    /**
+     * @return the wall time from the submission of the command to its result
+     */
+    public long getTotalTime()
+    {
+        return totalTime;
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("queueTime", succinctNanos(queueTime))
+                .add("spawnTime", succinctNanos(spawnTime))
+                .add("timeToFirstOutput", timeToFirstOutput == NO_OUTPUT ? null : succinctNanos(timeToFirstOutput))
+                .add("runTime", succinctNanos(runTime))
+                .add("drainTime", succinctNanos(drainTime))
+                .add("totalTime", succinctNanos(totalTime))
+                .omitNullValues()
+                .toString();
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+/**
+ * The number of commands a {@link CommandScheduler} may run at the same time. The scheduler reads the limit every time it dispatches,
+ * so implementations may change it at any moment, and tell the {@link #addListener(Runnable) listeners} when they do so on their own.
+ */
+@FunctionalInterface
+public interface ConcurrencyLimit
+{
+    int getLimit();
+
+    /**
+     * Called by the scheduler every time a command it dispatched completes.
+     *
+     * @param latency the time in nanoseconds from dispatch to completion
+     * @param timedOut whether the command was killed for exceeding its time limit
+     */
+    default void onCompleted(long latency, boolean timedOut)
+    {
+    }
+
+    /**
+     * Called by the scheduler every time it dispatches commands.
+     *
+     * @param running the number of commands running once they are dispatched
+     */
+    default void onDispatched(int running)
+    {
+    }
+
+    /**
+     * Registers a listener to call whenever the limit changes other than on a call of the scheduler, such as the scheduler dispatching
+     * queued commands as soon as the limit grows rather than once a running command completes.
+     */
+    default void addListener(Runnable listener)
+    {
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.Strings;
+import com.google.common.base.Utf8;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * The environment of a process, resolved and validated once so that it can be reused by any number of spawns.
+ * <p>
+ * A process started by a {@link ProcessBuilder} whose environment is never asked for inherits the environment of the JVM as is: the JVM
+ * neither copies it into a map nor encodes it again for the child. A snapshot remembers whether it is that environment, in which case
+ * spawning leaves the environment of the builder alone, and otherwise keeps the fewest changes to make to it: only the variables that
+ * differ from the inherited ones, or the full set of variables when the environment of the JVM is not inherited.
+ *
+ * @see Command#setEnvironment(EnvironmentSnapshot)
+ */
+@Immutable
+public final class EnvironmentSnapshot
+{
+    private static final EnvironmentSnapshot INHERITED = new EnvironmentSnapshot(true, ImmutableMap.of());
+
+    private final boolean inherited;
+    private final ImmutableMap<String, String> changes;
+    // only needed to size an argument list, so resolved on first use like the hash code of a string
+    private ImmutableMap<String, String> variables;
+    private volatile long encodedSize = -1;
+
+    /**
+     * @param changes the variables to set on top of the inherited environment, or the only variables of the environment if it is not inherited
+     */
+    private EnvironmentSnapshot(boolean inherited, Map<String, String> changes)
+    {
+        // a view of the environment of the JVM, which is not copied to find the changes
+        Map<String, String> jvm = inherited ? System.getenv() : ImmutableMap.of();
+
+        ImmutableMap.Builder<String, String> effective = ImmutableMap.builder();
+        changes.forEach((name, value) -> {
+            checkArgument(!Strings.isNullOrEmpty(name), "name of environment variable is null or empty");
+            checkArgument(name.indexOf('=') < 0 && name.indexOf('\u0000') < 0, "invalid name of environment variable: %s", name);
+            requireNonNull(value, () -> "value of " + name + " is null");
+            checkArgument(value.indexOf('\u0000') < 0, "invalid value of environment variable %s", name);
+
+            if (!value.equals(jvm.get(name)))
+            {
+                effective.put(name, value);
+            }
+        });
+
+        this.inherited = inherited;
+        this.changes = effective.build();
+    }
+
+    /**
+     * @return the environment of the JVM, as a process inherits it
+     */
+    public static EnvironmentSnapshot inherited()
+    {
+        return INHERITED;
+    }
+
+    /**
+     * @return the environment of the JVM with the given variables added or replaced
+     * @throws IllegalArgumentException if a name or a value cannot be part of an environment
+     */
+    public static EnvironmentSnapshot inheritedWith(Map<String, String> variables)
+    {
+        requireNonNull(variables, "variables is null");
+        return variables.isEmpty() ? INHERITED : new EnvironmentSnapshot(true, variables);
+    }
+
+    /**
+     * @return an environment made of the given variables only
+     * @throws IllegalArgumentException if a name or a value cannot be part of an environment
+     */
+    public static EnvironmentSnapshot of(Map<String, String> variables)
+    {
+        requireNonNull(variables, "variables is null");
+        return new EnvironmentSnapshot(false, variables);
+    }
+
+    /**
+     * @return whether the environment of the JVM is the base of this environment
+     */
+    public boolean isInherited()
+    {
+        return inherited;
+    }
+
+    /**
+     * @return the variables to set on top of the environment of the JVM if it is inherited, without those it already has, or else all the
+     *         variables of the environment
+     */
+    public Map<String, String> getChanges()
+    {
+        return changes;
+    }
+
+    /**
+     * @return all the variables of the environment the process gets
+     */
+    public Map<String, String> getVariables()
+    {
+        ImmutableMap<String, String> variables = this.variables;
+
+        if (variables == null)
+        {
+            if (!inherited)
+            {
+                variables = changes;
+            }
+            else if (changes.isEmpty())
+            {
+                variables = ImmutableMap.copyOf(System.getenv());
+            }
+            else
+            {
+                Map<String, String> merged = new LinkedHashMap<>(System.getenv());
+                merged.putAll(changes);
+                variables = ImmutableMap.copyOf(merged);
+            }
+            this.variables = variables;
+        }
+        return variables;
+    }
+
+    /**
+     * @return the size in bytes of the variables once encoded as <code>name=value</code> strings terminated by a NUL, in UTF-8, as the
+     *         process gets them
+     */
+    public long getEncodedSize()
+    {
+        long encodedSize = this.encodedSize;
+
+        if (encodedSize == -1)
+        {
+            encodedSize = 0;
+            for (Map.Entry<String, String> variable : getVariables().entrySet())
+            {
+                // as in the environment block of the process: name=value\0
+                encodedSize += Utf8.encodedLength(variable.getKey()) + 1 + Utf8.encodedLength(variable.getValue()) + 1;
+            }
+            this.encodedSize = encodedSize;
+        }
+        return encodedSize;
+    }
+
+    /**
+     * Sets the environment of the given builder, which must not have been changed yet. The environment of a builder for an inherited
+     * snapshot without changes is left alone, so that it is neither copied nor encoded again.
+     */
+    void configure(ProcessBuilder processBuilder)
+    {
+        if (inherited && changes.isEmpty())
+        {
+            return;
+        }
+
+        Map<String, String> environment = processBuilder.environment();
+        if (!inherited)
+        {
+            environment.clear();
+        }
+        environment.putAll(changes);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj)
+        {
+            return true;
+        }
+
+        if (obj == null || getClass() != obj.getClass())
+        {
+            return false;
+        }
+
+        EnvironmentSnapshot other = (EnvironmentSnapshot) obj;
+        return inherited == other.inherited && changes.equals(other.changes);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(inherited, changes);
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("inherited", inherited)
+                .add("changes", changes)
+                .toString();
+    }
+}
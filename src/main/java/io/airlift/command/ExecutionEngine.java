@@ -0,0 +1,590 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import io.airlift.command.system.stats.SystemProbe;
+import io.airlift.command.system.stats.SystemState;
+import io.airlift.command.system.stats.process.ProcessProbe;
+import io.airlift.command.system.stats.process.ProcessProbeFactory;
+import io.airlift.units.Duration;
+
+/**
+ * Runs commands without a thread per command: one loop thread drains the output of all the running processes and notices their exits.
+ * <p>
+ * {@link Command#execute(Executor)} ties up a thread waiting for the exit of the process and another reading its output, for as long as
+ * it runs. The engine instead spawns the process on the thread submitting the command, then hands it to its loop, which reads whatever
+ * output every process has ready without blocking, and completes the commands whose process exited. When no process makes progress, the
+ * loop backs off from {@value #MIN_IDLE_MICROS} microseconds up to {@value #MAX_IDLE_MILLIS} milliseconds, so the exit of a process is
+ * noticed, and its run time measured, up to that late. Time limits are enforced by the {@link TimeoutService#shared() shared timing wheel}.
+ * <p>
+ * Piped inputs are written by the given executor, as a write to a process cannot be done without blocking; commands without input, or
+ * reading it from a file, do not use it. The line listeners of the commands are called on the loop thread, and must be quick.
+ * <p>
+ * Given a scheduler and a period, the engine samples every process like {@link RunningCommand#monitor(ScheduledExecutorService, Duration)}:
+ * the samples are posted to the listeners of the command and kept in its {@link CommandResult#getProcessStats() result}. Otherwise the
+ * results have no samples.
+ */
+@ThreadSafe
+public class ExecutionEngine implements Closeable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(ExecutionEngine.class);
+
+    private static final int BUFFER_SIZE = 8192;
+    // the bytes read from a process per pass of the loop, so that a process writing a lot does not hold up the others
+    private static final int MAX_READ_PER_PASS = 64 * 1024;
+    private static final long MIN_IDLE_MICROS = 100;
+    private static final long MAX_IDLE_MILLIS = 10;
+
+    private final Executor inputExecutor;
+    private final ScheduledExecutorService probeScheduler;
+    private final Duration probePeriod;
+    private final Thread loop;
+    private final Queue<Child> registered = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger running = new AtomicInteger();
+
+    private volatile boolean closed;
+
+    /**
+     * The processes handed to the loop, which only the loop thread touches, like the read buffer.
+     */
+    private final List<Child> children = new ArrayList<>();
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * @param inputExecutor writes the piped inputs of the commands
+     */
+    public ExecutionEngine(Executor inputExecutor)
+    {
+        this(inputExecutor, daemonThreadsNamed("command-engine-%s"));
+    }
+
+    /**
+     * @param inputExecutor writes the piped inputs of the commands
+     * @param threadFactory creates the loop thread
+     */
+    public ExecutionEngine(Executor inputExecutor, ThreadFactory threadFactory)
+    {
+        this(inputExecutor, threadFactory, null, null);
+    }
+
+    /**
+     * @param inputExecutor writes the piped inputs of the commands
+     * @param probeScheduler samples the processes
+     * @param probePeriod the time between two samples of a process
+     */
+    public ExecutionEngine(Executor inputExecutor, ScheduledExecutorService probeScheduler, Duration probePeriod)
+    {
+        this(inputExecutor, daemonThreadsNamed("command-engine-%s"), requireNonNull(probeScheduler, "probeScheduler is null"),
+                requireNonNull(probePeriod, "probePeriod is null"));
+    }
+
+    private ExecutionEngine(Executor inputExecutor, ThreadFactory threadFactory, ScheduledExecutorService probeScheduler, Duration probePeriod)
+    {
+        this.inputExecutor = requireNonNull(inputExecutor, "inputExecutor is null");
+        requireNonNull(threadFactory, "threadFactory is null");
+        this.probeScheduler = probeScheduler;
+        this.probePeriod = probePeriod;
+
+        this.loop = threadFactory.newThread(this::run);
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    /**
+     * Executes the command and waits for it.
+     */
+    public CommandResult execute(Command command) throws CommandFailedException
+    {
+        return execute(command, null);
+    }
+
+    /**
+     * Executes the command under the given context and waits for it.
+     *
+     * @param context the context to run under, or <code>null</code>
+     * @throws CommandCancelledException if the context is cancelled before the command completes
+     * @throws CommandTimeoutException if the context reaches its deadline, or the command its time limit, before the command completes
+     */
+    public CommandResult execute(Command command, CommandContext context) throws CommandFailedException
+    {
+        ListenableFuture<CommandResult> future = submit(command, context);
+
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException e)
+        {
+            Throwables.propagateIfPossible(e.getCause(), CommandFailedException.class);
+            throw new CommandFailedException(command, "unexpected exception", e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new CommandFailedException(command, "interrupted", e);
+        }
+        finally
+        {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * See {@link #submit(Command, CommandContext)}.
+     */
+    public ListenableFuture<CommandResult> submit(Command command)
+    {
+        return submit(command, null);
+    }
+
+    /**
+     * Spawns the process of the command on the calling thread, and hands it to the loop. Cancelling the returned future destroys the process.
+     *
+     * @param context the context to run under, or <code>null</code>
+     * @return the result of the command, which fails with a {@link CommandFailedException}
+     * @throws IllegalArgumentException if the command is {@link Command#NULL_COMMAND}, which has no process to follow
+     * @throws IllegalStateException if the engine is closed
+     */
+    public ListenableFuture<CommandResult> submit(Command command, CommandContext context)
+    {
+        requireNonNull(command, "command is null");
+        checkArgument(command != Command.NULL_COMMAND, "NULL_COMMAND has no process to run on the engine");
+        checkState(!closed, "engine is closed");
+
+        long queuedAt = System.nanoTime();
+        command.getInstrumentation().onStarted(command);
+
+        SettableFuture<CommandResult> result = SettableFuture.create();
+        Futures.addCallback(result, new FutureCallback<CommandResult>()
+        {
+            @Override
+            public void onSuccess(CommandResult commandResult)
+            {
+                command.getInstrumentation().onCompleted(command, commandResult);
+            }
+
+            @Override
+            public void onFailure(Throwable failure)
+            {
+                command.getInstrumentation().onFailed(command, failure instanceof CommandFailedException ?
+                        (CommandFailedException) failure : new CommandFailedException(command, "cancelled", failure));
+            }
+        }, directExecutor());
+
+        if (context != null && context.isCancelled())
+        {
+            result.setException(context.failureOf(command));
+            return result;
+        }
+
+        ProcessBuilder processBuilder = ProcessCallable.newProcessBuilder(command);
+        if (command.getInput() != null)
+        {
+            command.getInput().configure(processBuilder);
+        }
+
+        SystemProbe systemProbe = command.getSystemProbe();
+        SystemState hostStateAtStart = systemProbe != null ? systemProbe.latest() : null;
+
+        long spawnedAt = System.nanoTime();
+        Process process;
+        try
+        {
+            process = command.getLauncher().launch(processBuilder);
+        }
+        catch (IOException e)
+        {
+            result.setException(new CommandFailedException(command, "failed to start", e));
+            return result;
+        }
+        long startTime = System.nanoTime();
+        int pid = command.getLauncher().pidOf(process);
+        command.getInstrumentation().onSpawned(command, pid);
+
+        Child child = new Child(command, process, pid, result, queuedAt, spawnedAt, startTime, hostStateAtStart);
+        child.start(context);
+        running.incrementAndGet();
+
+        synchronized (this)
+        {
+            if (!closed)
+            {
+                registered.add(child);
+                LockSupport.unpark(loop);
+                return result;
+            }
+        }
+
+        result.setException(new CommandFailedException(command, "engine closed", null));
+        child.abort();
+        return result;
+    }
+
+    /**
+     * @return the number of commands whose process was spawned and not reaped yet
+     */
+    public int getRunning()
+    {
+        return running.get();
+    }
+
+    /**
+     * Fails all the running commands, destroying their processes, and stops the loop.
+     */
+    @Override
+    public void close()
+    {
+        synchronized (this)
+        {
+            closed = true;
+        }
+        LockSupport.unpark(loop);
+    }
+
+    private void run()
+    {
+        long idleNanos = TimeUnit.MICROSECONDS.toNanos(MIN_IDLE_MICROS);
+
+        while (true)
+        {
+            Child child;
+            while ((child = registered.poll()) != null)
+            {
+                children.add(child);
+            }
+
+            if (closed)
+            {
+                // a command registered after the drain above, before the engine was closed, is aborted too: none is registered after
+                while ((child = registered.poll()) != null)
+                {
+                    children.add(child);
+                }
+                children.forEach(this::abortOnClose);
+                children.clear();
+                return;
+            }
+
+            boolean progress = false;
+            for (int i = children.size() - 1; i >= 0; i--)
+            {
+                child = children.get(i);
+
+                boolean done;
+                try
+                {
+                    int before = child.getOutputSize();
+                    done = child.poll(buffer);
+                    progress |= done || child.getOutputSize() != before;
+                }
+                catch (RuntimeException e)
+                {
+                    LOG.warn("Failed to follow the process of {}", child.command, e);
+                    child.result.setException(new CommandFailedException(child.command, "unexpected exception", e));
+                    child.abort();
+                    done = true;
+                }
+
+                if (done)
+                {
+                    // the order of the children does not matter, so the last one takes the place of the removed one
+                    Child last = children.remove(children.size() - 1);
+                    if (last != child)
+                    {
+                        children.set(i, last);
+                    }
+                }
+            }
+
+            if (progress)
+            {
+                idleNanos = TimeUnit.MICROSECONDS.toNanos(MIN_IDLE_MICROS);
+            }
+            else if (children.isEmpty())
+            {
+                // until a command is submitted or the engine is closed
+                LockSupport.park(this);
+            }
+            else
+            {
+                LockSupport.parkNanos(this, idleNanos);
+                idleNanos = Math.min(idleNanos * 2, TimeUnit.MILLISECONDS.toNanos(MAX_IDLE_MILLIS));
+            }
+        }
+    }
+
+    private void abortOnClose(Child child)
+    {
+        child.result.setException(new CommandFailedException(child.command, "engine closed", null));
+        child.abort();
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("running", getRunning())
+                .add("closed", closed)
+                .toString();
+    }
+
+    /**
+     * A process followed by the loop. The output is only read by the loop thread; the result is completed by the loop once the process
+     * exits, or before by a timeout, a cancellation, or its context, in which case the loop destroys the process.
+     */
+    private final class Child
+    {
+        private final Command command;
+        private final Process process;
+        private final int pid;
+        private final SettableFuture<CommandResult> result;
+        private final long queuedAt;
+        private final long spawnedAt;
+        private final long startTime;
+        private final SystemState hostStateAtStart;
+
+        private final InputStream output;
+        private final PooledOutputBuffer captured = new PooledOutputBuffer(BufferPool.shared());
+        private final LineDecoder lines;
+        private long firstOutputAt = -1;
+
+        // written by the threads of the probe
+        private final List<ProcessState> samples = new CopyOnWriteArrayList<>();
+
+        private InputProcessor input;
+        private ProcessProbe probe;
+        private TimeoutService.Timeout timeout;
+        private CommandContext.Registration registration;
+
+        Child(Command command, Process process, int pid, SettableFuture<CommandResult> result, long queuedAt, long spawnedAt, long startTime,
+                SystemState hostStateAtStart)
+        {
+            this.command = command;
+            this.process = process;
+            this.pid = pid;
+            this.result = result;
+            this.queuedAt = queuedAt;
+            this.spawnedAt = spawnedAt;
+            this.startTime = startTime;
+            this.hostStateAtStart = hostStateAtStart;
+            this.output = process.getInputStream();
+            this.lines = command.getLineListener() != null ? new LineDecoder(command.getLineListener(), command.getMaxLineLength()) : null;
+        }
+
+        void start(CommandContext context)
+        {
+            input = new InputProcessor(process, inputExecutor, command.getInput());
+            input.start();
+
+            if (probePeriod != null)
+            {
+                probe = ProcessProbeFactory.getProcessProbe(command.getId(), pid, probeScheduler);
+                probe.registerListener(this);
+                command.getListeners().forEach(probe::registerListener);
+                probe.start(0, probePeriod.toMillis(), TimeUnit.MILLISECONDS);
+            }
+
+            timeout = TimeoutService.shared().schedule(() -> result.setException(new CommandTimeoutException(command, command.getTimeLimit())),
+                    command.getTimeLimit());
+            if (context != null)
+            {
+                registration = context.onCancel(() -> result.setException(context.failureOf(command)));
+            }
+            // the loop destroys the process of a command completed by anything but itself
+            result.addListener(() -> LockSupport.unpark(loop), directExecutor());
+        }
+
+        @Subscribe
+        public void onProcessState(ProcessState state)
+        {
+            samples.add(state);
+        }
+
+        int getOutputSize()
+        {
+            return (int) captured.size();
+        }
+
+        /**
+         * Reads the output the process has ready, and completes the command if the process exited.
+         *
+         * @return whether the loop is done with the process
+         */
+        boolean poll(byte[] buffer)
+        {
+            if (result.isDone())
+            {
+                abort();
+                return true;
+            }
+
+            // checked before reading, so that once the process exited, the reads below get all of its output
+            boolean exited = !process.isAlive();
+            read(buffer, exited ? Integer.MAX_VALUE : MAX_READ_PER_PASS);
+
+            // the input fails or ends once the process exited; waiting for it lets a failure to write it fail the command
+            if (exited && input.isDone())
+            {
+                complete();
+                return true;
+            }
+            return false;
+        }
+
+        private void read(byte[] buffer, int budget)
+        {
+            try
+            {
+                int available;
+                while (budget > 0 && (available = output.available()) > 0)
+                {
+                    int read = output.read(buffer, 0, Math.min(Math.min(available, buffer.length), budget));
+                    if (read <= 0)
+                    {
+                        return;
+                    }
+
+                    if (firstOutputAt == -1)
+                    {
+                        firstOutputAt = System.nanoTime();
+                    }
+                    captured.write(buffer, 0, read);
+                    if (lines != null)
+                    {
+                        lines.decode(buffer, 0, read);
+                    }
+                    budget -= read;
+                }
+            }
+            catch (IOException e)
+            {
+                // the stream was closed, which only happens once the process is destroyed
+                LOG.debug("Error on reading the output of {}", command, e);
+            }
+        }
+
+        private void complete()
+        {
+            long exitedAt = System.nanoTime();
+            int exitCode = process.exitValue();
+
+            if (lines != null)
+            {
+                lines.finish();
+            }
+            byte[] out = captured.toByteArray();
+            long drainedAt = System.nanoTime();
+            release();
+
+            IOException inputFailure = input.getFailure();
+            if (inputFailure != null)
+            {
+                result.setException(new CommandFailedException(command, "failed to write the input", inputFailure));
+                return;
+            }
+
+            if (!command.getSuccessfulExitCodes().contains(exitCode))
+            {
+                result.setException(new CommandFailedException(command, exitCode, pid, new String(out, UTF_8)));
+                return;
+            }
+
+            CommandTimings timings = new CommandTimings(
+                    spawnedAt - queuedAt,
+                    startTime - spawnedAt,
+                    firstOutputAt == -1 ? CommandTimings.NO_OUTPUT : Math.max(0, firstOutputAt - startTime),
+                    exitedAt - startTime,
+                    drainedAt - exitedAt,
+                    drainedAt - queuedAt);
+
+            SystemProbe systemProbe = command.getSystemProbe();
+            SystemState hostStateAtEnd = systemProbe != null ? systemProbe.latest() : null;
+
+            result.set(new CommandResult(command.getId(), (long) pid, exitCode, out, timings, ImmutableList.copyOf(samples), hostStateAtStart, hostStateAtEnd));
+        }
+
+        /**
+         * Destroys the process of a command that already failed.
+         */
+        void abort()
+        {
+            if (process.isAlive())
+            {
+                command.getInstrumentation().onKilled(command, pid);
+            }
+            release();
+        }
+
+        private void release()
+        {
+            if (timeout != null)
+            {
+                timeout.cancel();
+            }
+            if (registration != null)
+            {
+                registration.unregister();
+            }
+            if (input != null)
+            {
+                input.destroy();
+            }
+            if (probe != null)
+            {
+                probe.stop();
+            }
+            // kills the process if the command failed, and closes its streams
+            process.destroy();
+            captured.release();
+            running.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import static io.airlift.command.Command.submit;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Writes the {@link CommandInput} of a command to the standard input of its process, then closes it. Without a piped input the standard
+ * input is closed right away, so a process that reads it sees the end of the stream instead of waiting forever.
+ * <p>
+ * A piped input is written by a task of the executor, on top of the tasks running the process and draining its output.
+ */
+public class InputProcessor
+{
+    private static final Logger LOG = LoggerFactory.getLogger(InputProcessor.class);
+
+    private final OutputStream outputStream;
+    private final Executor executor;
+    private final CommandInput input;
+    private volatile ListenableFuture<Void> inputFuture;
+
+    /**
+     * @param input the input to write, or <code>null</code>
+     */
+    public InputProcessor(Process process, Executor executor, CommandInput input)
+    {
+        this.outputStream = requireNonNull(process, "process is null").getOutputStream();
+        this.executor = requireNonNull(executor, "executor is null");
+        this.input = input;
+    }
+
+    public void start()
+    {
+        if (input == null || !input.isPiped())
+        {
+            close();
+            return;
+        }
+
+        inputFuture = submit(executor, this::write);
+    }
+
+    private Void write() throws IOException
+    {
+        try (OutputStream out = outputStream)
+        {
+            input.writeTo(out);
+        }
+        catch (IOException e)
+        {
+            if (!isBrokenPipe(e))
+            {
+                throw e;
+            }
+            // the process exited, or closed its input, before reading all of it
+            LOG.debug("Process did not read all of its input", e);
+        }
+        return null;
+    }
+
+    /**
+     * @return whether the input is written, or failed to be; the write of an input the process did not read ends once the process exits
+     */
+    public boolean isDone()
+    {
+        return inputFuture == null || inputFuture.isDone();
+    }
+
+    /**
+     * Waits for the input to be written, or to fail to be.
+     */
+    public void awaitDone() throws InterruptedException
+    {
+        if (inputFuture == null)
+        {
+            return;
+        }
+
+        try
+        {
+            inputFuture.get();
+        }
+        catch (ExecutionException | CancellationException ignored)
+        {
+            // reported by getFailure()
+        }
+    }
+
+    /**
+     * @return the failure to write the input once {@link #isDone() done}, or <code>null</code> if it was written, or the process did not read
+     * all of it
+     */
+    public IOException getFailure()
+    {
+        if (inputFuture == null || !inputFuture.isDone() || inputFuture.isCancelled())
+        {
+            return null;
+        }
+
+        try
+        {
+            Futures.getDone(inputFuture);
+            return null;
+        }
+        catch (ExecutionException e)
+        {
+            return e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    public void destroy()
+    {
+        close();
+
+        if (inputFuture != null)
+        {
+            inputFuture.cancel(true);
+        }
+    }
+
+    /**
+     * @return whether the write failed because the read end of the pipe is closed, or the stream was closed as the process exited
+     */
+    private static boolean isBrokenPipe(IOException e)
+    {
+        String message = e.getMessage();
+        return message != null && (message.contains("Broken pipe") || message.contains("Stream closed"));
+    }
+
+    private void close()
+    {
+        try
+        {
+            outputStream.close();
+        }
+        catch (IOException ignored)
+        {
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decodes UTF-8 bytes as they arrive and passes every complete line to a {@link LineListener}. Multi-byte sequences and lines split
+ * across two chunks are carried over to the next call, so chunks may be cut anywhere.
+ */
+@NotThreadSafe
+final class LineDecoder
+{
+    private static final Logger LOG = LoggerFactory.getLogger(LineDecoder.class);
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final LineListener listener;
+    private final int maxLineLength;
+
+    private final CharsetDecoder decoder = UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private final ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    private final StringBuilder line = new StringBuilder();
+
+    LineDecoder(LineListener listener, int maxLineLength)
+    {
+        this.listener = requireNonNull(listener, "listener is null");
+        this.maxLineLength = maxLineLength;
+    }
+
+    void decode(byte[] bytes, int offset, int length)
+    {
+        while (length > 0)
+        {
+            int count = Math.min(length, input.remaining());
+            input.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+
+            input.flip();
+            decode(false);
+            input.compact();
+        }
+    }
+
+    /**
+     * Decodes the remaining bytes and passes the last line to the listener, even if it is not terminated.
+     */
+    void finish()
+    {
+        input.flip();
+        decode(true);
+        input.clear();
+
+        CoderResult result;
+        do
+        {
+            result = decoder.flush(chars);
+            split();
+        }
+        while (result.isOverflow());
+
+        if (line.length() > 0)
+        {
+            emit();
+        }
+
+        decoder.reset();
+    }
+
+    private void decode(boolean endOfInput)
+    {
+        CoderResult result;
+        do
+        {
+            result = decoder.decode(input, chars, endOfInput);
+            split();
+        }
+        while (result.isOverflow());
+    }
+
+    private void split()
+    {
+        chars.flip();
+
+        while (chars.hasRemaining())
+        {
+            char c = chars.get();
+
+            if (c == '\n')
+            {
+                int length = line.length();
+
+                if (length > 0 && line.charAt(length - 1) == '\r')
+                {
+                    line.setLength(length - 1);
+                }
+                emit();
+            }
+            else if (maxLineLength == 0 || line.length() < maxLineLength)
+            {
+                line.append(c);
+            }
+        }
+
+        chars.clear();
+    }
+
+    private void emit()
+    {
+        try
+        {
+            listener.onLine(line.toString());
+        }
+        catch (RuntimeException e)
+        {
+            // keep draining: the process blocks when nobody reads its output
+            LOG.warn("Line listener failed", e);
+        }
+
+        line.setLength(0);
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+/**
+ * Receives the output of a running {@link Command} one line at a time.
+ * <p>
+ * Lines are delivered in order on the thread draining the process output, so a slow listener slows down the process once its pipe buffer is full.
+ */
+@FunctionalInterface
+public interface LineListener
+{
+    /**
+     * @param line the line without its terminator (<code>\n</code> or <code>\r\n</code>), truncated to the command's maximum line length
+     */
+    void onLine(String line);
+}
@@ -13,11 +13,8 @@
  */
 package io.airlift.command;
 
-import com.google.common.io.CharStreams;
-
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
@@ -28,22 +25,129 @@ import static java.util.Objects.requireNonNull;
 
 public class OutputProcessor
 {
+    private static final int BUFFER_SIZE = 8192;
+
     private final InputStream inputStream;
     private final Executor executor;
-    private Future<String> outputFuture;
+    private final LineListener lineListener;
+    private final int maxLineLength;
+    private final BufferPool bufferPool;
+    private final OutputTail tail;
+    private Future<byte[]> outputFuture;
+    private volatile long firstOutputTime = -1;
 
     public OutputProcessor(Process process, Executor executor)
     {
-        this.inputStream = requireNonNull(process, "process is null").getInputStream();
+        this(process, executor, null, 0);
+    }
+
+    /**
+     * @param lineListener receives every line as soon as it is read, or <code>null</code>
+     * @param maxLineLength the maximum number of characters of a line passed to the listener, zero for no limit
+     */
+    public OutputProcessor(Process process, Executor executor, LineListener lineListener, int maxLineLength)
+    {
+        this(process, executor, lineListener, maxLineLength, BufferPool.shared());
+    }
+
+    /**
+     * @param bufferPool the pool the read buffer and the captured output are borrowed from
+     */
+    public OutputProcessor(Process process, Executor executor, LineListener lineListener, int maxLineLength, BufferPool bufferPool)
+    {
+        this(process, executor, lineListener, maxLineLength, bufferPool, null);
+    }
+
+    /**
+     * @param tail keeps the last bytes of the output while the process runs, or <code>null</code>
+     */
+    OutputProcessor(Process process, Executor executor, LineListener lineListener, int maxLineLength, BufferPool bufferPool, OutputTail tail)
+    {
+        this(requireNonNull(process, "process is null").getInputStream(), executor, lineListener, maxLineLength, bufferPool, tail);
+    }
+
+    /**
+     * @param inputStream the stream of the process to drain, such as its error stream when it is not merged into the output
+     */
+    OutputProcessor(InputStream inputStream, Executor executor, LineListener lineListener, int maxLineLength, BufferPool bufferPool, OutputTail tail)
+    {
+        this.inputStream = requireNonNull(inputStream, "inputStream is null");
         this.executor = requireNonNull(executor, "executor is null");
+        this.lineListener = lineListener;
+        this.maxLineLength = maxLineLength;
+        this.bufferPool = requireNonNull(bufferPool, "bufferPool is null");
+        this.tail = tail;
     }
 
     public void start()
     {
-        outputFuture = submit(executor, () -> CharStreams.toString(new InputStreamReader(inputStream, UTF_8)));
+        outputFuture = submit(executor, this::drain);
     }
 
+    private byte[] drain() throws IOException
+    {
+        LineDecoder lines = lineListener != null ? new LineDecoder(lineListener, maxLineLength) : null;
+        PooledOutputBuffer output = new PooledOutputBuffer(bufferPool);
+        byte[] buffer = bufferPool.acquire(BUFFER_SIZE);
+
+        try
+        {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1)
+            {
+                if (firstOutputTime == -1 && read > 0)
+                {
+                    firstOutputTime = System.nanoTime();
+                }
+
+                output.write(buffer, 0, read);
+
+                if (tail != null)
+                {
+                    tail.write(buffer, 0, read);
+                }
+
+                if (lines != null)
+                {
+                    lines.decode(buffer, 0, read);
+                }
+            }
+
+            if (lines != null)
+            {
+                lines.finish();
+            }
+
+            return output.toByteArray();
+        }
+        finally
+        {
+            bufferPool.release(buffer);
+            output.release();
+        }
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} at which the first byte of output was read, or -1 if none was read yet
+     */
+    public long getFirstOutputTime()
+    {
+        return firstOutputTime;
+    }
+
+    /**
+     * @return the output decoded as UTF-8, or <code>null</code> if it could not be read
+     */
     public String getOutput()
+    {
+        byte[] output = getOutputBytes();
+        return output != null ? new String(output, UTF_8) : null;
+    }
+
+    /**
+     * @return the raw output, or <code>null</code> if it could not be read
+     */
+    public byte[] getOutputBytes()
     {
         if ((outputFuture != null) && !outputFuture.isCancelled()) 
         {
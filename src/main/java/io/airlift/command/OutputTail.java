@@ -0,0 +1,91 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Keeps the last bytes of the output of a process in a fixed ring buffer, so it can be looked at while the process runs.
+ */
+@ThreadSafe
+final class OutputTail
+{
+    static final int DEFAULT_SIZE = 4096;
+
+    @GuardedBy("this")
+    private final byte[] ring;
+
+    @GuardedBy("this")
+    private long written;
+
+    OutputTail(int size)
+    {
+        checkArgument(size > 0, "size must be positive");
+        this.ring = new byte[size];
+    }
+
+    synchronized void write(byte[] bytes, int offset, int length)
+    {
+        if (length > ring.length)
+        {
+            offset += length - ring.length;
+            written += length - ring.length;
+            length = ring.length;
+        }
+
+        int start = (int) (written % ring.length);
+        int first = Math.min(length, ring.length - start);
+        System.arraycopy(bytes, offset, ring, start, first);
+        System.arraycopy(bytes, offset + first, ring, 0, length - first);
+        written += length;
+    }
+
+    /**
+     * @return the total number of bytes written, including those no longer kept
+     */
+    synchronized long getWritten()
+    {
+        return written;
+    }
+
+    /**
+     * @return a copy of the bytes kept; when older bytes were dropped, the copy starts at the next UTF-8 character
+     */
+    synchronized byte[] toByteArray()
+    {
+        int length = (int) Math.min(written, ring.length);
+        int start = (int) ((written - length) % ring.length);
+
+        byte[] tail = new byte[length];
+        int first = Math.min(length, ring.length - start);
+        System.arraycopy(ring, start, tail, 0, first);
+        System.arraycopy(ring, 0, tail, first, length - first);
+
+        int skip = 0;
+        if (written > ring.length)
+        {
+            // skip the continuation bytes of a character cut in the middle
+            while (skip < tail.length && skip < 3 && (tail[skip] & 0xC0) == 0x80)
+            {
+                skip++;
+            }
+        }
+        return skip == 0 ? tail : Arrays.copyOfRange(tail, skip, tail.length);
+    }
+}
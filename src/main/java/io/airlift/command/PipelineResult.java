@@ -0,0 +1,110 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import java.util.List;
+import java.util.Objects;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The result of a {@link CommandPipeline}: one {@link CommandResult} per stage, in pipeline order. Only the last stage has an output.
+ */
+@Immutable
+public class PipelineResult
+{
+	private final ImmutableList<CommandResult> stages;
+	private final Long elapsedTime;
+
+	public PipelineResult(List<CommandResult> stages, Long elapsedTime)
+	{
+		checkArgument(stages != null && !stages.isEmpty(), "stages is null or empty");
+
+		this.stages = ImmutableList.copyOf(stages);
+		this.elapsedTime = elapsedTime;
+	}
+
+	public ImmutableList<CommandResult> getStageResults()
+	{
+		return stages;
+	}
+
+	public CommandResult getLastStageResult()
+	{
+		return stages.get(stages.size() - 1);
+	}
+
+	public ImmutableList<Integer> getExitCodes()
+	{
+		return stages.stream().map(CommandResult::getExitCode).collect(toImmutableList());
+	}
+
+	public ImmutableList<Long> getPids()
+	{
+		return stages.stream().map(CommandResult::getPid).collect(toImmutableList());
+	}
+
+	/**
+	 * @return the output of the last stage
+	 */
+	public String getCommandOutput()
+	{
+		return getLastStageResult().getCommandOutput();
+	}
+
+	/**
+	 * @return the wall time in nanoseconds from the start of the first stage to the exit of the last one
+	 */
+	public Long getElapsedTime()
+	{
+		return elapsedTime;
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+		{
+			return true;
+		}
+
+		if (obj == null || getClass() != obj.getClass())
+		{
+			return false;
+		}
+
+		return Objects.equals(stages, ((PipelineResult) obj).stages);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return stages.hashCode();
+	}
+
+	@Override
+	public String toString()
+	{
+		return MoreObjects.toStringHelper(this)
+				.add("stages", stages)
+				.add("elapsedTime", elapsedTime)
+				.toString();
+	}
+}
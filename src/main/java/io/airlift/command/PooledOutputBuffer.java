@@ -0,0 +1,101 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Accumulates output in chunks borrowed from a {@link BufferPool}. Chunks double in size up to the pool's largest class, so small outputs
+ * hold a single small chunk, and the only allocation left is the exactly sized array returned by {@link #toByteArray()}.
+ */
+@NotThreadSafe
+final class PooledOutputBuffer
+{
+    private static final byte[] EMPTY = new byte[0];
+
+    private final BufferPool pool;
+    private final List<byte[]> chunks = new ArrayList<>(4);
+
+    private byte[] current;
+    private int position;
+    private long size;
+
+    PooledOutputBuffer(BufferPool pool)
+    {
+        this.pool = requireNonNull(pool, "pool is null");
+    }
+
+    void write(byte[] bytes, int offset, int length)
+    {
+        while (length > 0)
+        {
+            if (current == null || position == current.length)
+            {
+                int next = current == null ? BufferPool.MIN_BUFFER_SIZE : Math.min(current.length * 2, BufferPool.MAX_BUFFER_SIZE);
+                current = pool.acquire(next);
+                chunks.add(current);
+                position = 0;
+            }
+
+            int count = Math.min(length, current.length - position);
+            System.arraycopy(bytes, offset, current, position, count);
+
+            position += count;
+            offset += count;
+            length -= count;
+            size += count;
+        }
+    }
+
+    long size()
+    {
+        return size;
+    }
+
+    byte[] toByteArray()
+    {
+        if (size == 0)
+        {
+            return EMPTY;
+        }
+
+        byte[] bytes = new byte[Math.toIntExact(size)];
+        int offset = 0;
+
+        for (byte[] chunk : chunks)
+        {
+            int count = (int) Math.min(chunk.length, size - offset);
+            System.arraycopy(chunk, 0, bytes, offset, count);
+            offset += count;
+        }
+        return bytes;
+    }
+
+    /**
+     * Gives the chunks back to the pool. The buffer is empty afterwards.
+     */
+    void release()
+    {
+        chunks.forEach(pool::release);
+        chunks.clear();
+        current = null;
+        position = 0;
+        size = 0;
+    }
+}
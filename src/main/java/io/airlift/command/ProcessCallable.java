@@ -13,6 +13,7 @@
  */
 package io.airlift.command;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
 
 import java.io.IOException;
@@ -24,6 +25,8 @@ import java.util.concurrent.Executor;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 
+import io.airlift.command.system.stats.SystemProbe;
+import io.airlift.command.system.stats.SystemState;
 import net.vidageek.mirror.dsl.Mirror;
 
 class ProcessCallable implements Callable<CommandResult>
@@ -32,11 +35,28 @@ class ProcessCallable implements Callable<CommandResult>
     private final Executor executor;
     
     private final EventBus eventbus;
+    private final long queuedAt;
+    private final RunningCommand running;
 
     public ProcessCallable(Command command, Executor executor, List<Object> listeners)
+    {
+        this(command, executor, listeners, System.nanoTime());
+    }
+
+    public ProcessCallable(Command command, Executor executor, List<Object> listeners, long queuedAt)
+    {
+        this(command, executor, listeners, queuedAt, null);
+    }
+
+    /**
+     * @param running the handle to report the process and its output to, or <code>null</code>
+     */
+    ProcessCallable(Command command, Executor executor, List<Object> listeners, long queuedAt, RunningCommand running)
     {
         this.command = requireNonNull(command, "command is null");
         this.executor = requireNonNull(executor, "executor is null");
+        this.queuedAt = queuedAt;
+        this.running = running;
         this.eventbus = new EventBus();
         
         if (listeners != null)
@@ -49,28 +69,35 @@ class ProcessCallable implements Callable<CommandResult>
     @Override
     public CommandResult call() throws CommandFailedException, InterruptedException
     {
-        ProcessBuilder processBuilder = new ProcessBuilder(command.getCommand());
-        processBuilder.directory(command.getDirectory());
-        processBuilder.redirectErrorStream(true);
+        final long queueTime = System.nanoTime() - queuedAt;
         
-        if (!command.isIncludeEnvironmentVariables())
+        ProcessBuilder processBuilder = newProcessBuilder(command);
+        
+        if (command.getInput() != null)
         {
-        	processBuilder.environment().clear();
+        	command.getInput().configure(processBuilder);
         }
         
-        processBuilder.environment().putAll(command.getEnvironment());
+        SystemProbe systemProbe = command.getSystemProbe();
+        SystemState hostStateAtStart = systemProbe != null ? systemProbe.latest() : null;
         
         // start the process
         Process process;
         
+        final long spawnedAt = System.nanoTime();
         final long startTime;
         
         final int pid;
         try 
         {
-            process = processBuilder.start();
+            process = command.getLauncher().launch(processBuilder);
             startTime = System.nanoTime();
-            pid = (int) new Mirror().on(process).get().field("pid");
+            pid = command.getLauncher().pidOf(process);
+            if (running != null)
+            {
+                running.spawned(process, pid, startTime);
+            }
+            command.getInstrumentation().onSpawned(command, pid);
             System.out.printf("Running without probe. PID is: %s\n", pid);
            
         }
@@ -80,6 +107,7 @@ class ProcessCallable implements Callable<CommandResult>
         }
         
         OutputProcessor outputProcessor = null;
+        InputProcessor inputProcessor = null;
         
 
         ProcessStatsListener listener = new ProcessStatsListener();
@@ -88,29 +116,61 @@ class ProcessCallable implements Callable<CommandResult>
         try 
         {
             // start the output processor
-            outputProcessor = new OutputProcessor(process, executor);
+            outputProcessor = new OutputProcessor(process, executor, lineListener(), command.getMaxLineLength(), BufferPool.shared(),
+                    running != null ? running.tail() : null);
             outputProcessor.start();
             
+            // write the input concurrently with the output draining
+            inputProcessor = new InputProcessor(process, executor, command.getInput());
+            inputProcessor.start();
+            
 
             // wait for command to exit
             int exitCode = process.waitFor();
             
-            long elapsedTime = System.nanoTime() - startTime;
+            long exitedAt = System.nanoTime();
+            if (running != null)
+            {
+                running.exited(exitedAt);
+            }
             
-            String out = outputProcessor.getOutput();
+            byte[] out = outputProcessor.getOutputBytes();
+            long drainedAt = System.nanoTime();
             
+            inputProcessor.awaitDone();
+            IOException inputFailure = inputProcessor.getFailure();
+            if (inputFailure != null)
+            {
+                throw new CommandFailedException(command, "failed to write the input", inputFailure);
+            }
+
             // validate exit code
             if (!command.getSuccessfulExitCodes().contains(exitCode)) 
             {
-                throw new CommandFailedException(command, exitCode, pid, out);
+                throw new CommandFailedException(command, exitCode, pid, out != null ? new String(out, UTF_8) : null);
             }
             
-            return new CommandResult(command.getId(), Long.valueOf(pid), exitCode, out, elapsedTime, listener.stats);
+            long firstOutputAt = outputProcessor.getFirstOutputTime();
+            CommandTimings timings = new CommandTimings(
+                    queueTime,
+                    startTime - spawnedAt,
+                    firstOutputAt == -1 ? CommandTimings.NO_OUTPUT : Math.max(0, firstOutputAt - startTime),
+                    exitedAt - startTime,
+                    drainedAt - exitedAt,
+                    drainedAt - queuedAt);
+            
+            SystemState hostStateAtEnd = systemProbe != null ? systemProbe.latest() : null;
+            
+            return new CommandResult(command.getId(), Long.valueOf(pid), exitCode, out, timings, listener.stats, hostStateAtStart, hostStateAtEnd);
         }
         finally 
         {
             try 
             {
+                if (process.isAlive())
+                {
+                    command.getInstrumentation().onKilled(command, pid);
+                }
                 process.destroy();
             }
             finally 
@@ -120,11 +180,52 @@ class ProcessCallable implements Callable<CommandResult>
                     outputProcessor.destroy();
                 }
                 
+                if (inputProcessor != null)
+                {
+                	inputProcessor.destroy();
+                }
+                
 
             }
         }
     }
+
+    /**
+     * @return the readiness listener of the handle, if any, followed by the listener of the command, so that a listener of the command that
+     * throws, which the line decoder logs and skips, cannot keep the handle from seeing the line
+     */
+    private LineListener lineListener()
+    {
+        LineListener commandListener = command.getLineListener();
+        LineListener readinessListener = running != null ? running.readinessListener() : null;
+
+        if (readinessListener == null)
+        {
+            return commandListener;
+        }
+        if (commandListener == null)
+        {
+            return readinessListener;
+        }
+        return line -> {
+            readinessListener.onLine(line);
+            commandListener.onLine(line);
+        };
+    }
+
+    static ProcessBuilder newProcessBuilder(Command command)
+    {
+        ProcessBuilder processBuilder = new ProcessBuilder(command.getCommand());
+        processBuilder.directory(command.getDirectory());
+        processBuilder.redirectErrorStream(true);
+        command.getEnvironmentSnapshot().configure(processBuilder);
+        return processBuilder;
+    }
     
+    static int pidOf(Process process)
+    {
+    	return (int) new Mirror().on(process).get().field("pid");
+    }
   
 	class ProcessStatsListener 
     {
@@ -0,0 +1,386 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static java.time.Instant.ofEpochMilli;
+import static java.time.ZoneOffset.UTC;
+import static java.time.temporal.ChronoUnit.SECONDS;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * The disk and scheduler activity of a process: the counters since it started, read from <code>/proc/&lt;pid&gt;/io</code>,
+ * <code>/proc/&lt;pid&gt;/task/*&#47;schedstat</code> and <code>/proc/&lt;pid&gt;/task/*&#47;status</code>, and their rates per second since
+ * the previous sample of the probe, which are zero on its first sample.
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlRootElement(name="process-io")
+public final class ProcessIoState implements Serializable, Cloneable
+{
+	/**
+     * Serial code version <code>serialVersionUID</code> for serialization.
+     */
+	private static final long serialVersionUID = 6462871546233305421L;
+
+	@XmlElement(name = "pid")
+	private long pid;
+
+	@XmlElement(name = "datetime")
+	private long datetime;
+
+	@XmlElement(name = "read-bytes")
+	private long readBytes;
+
+	@XmlElement(name = "write-bytes")
+	private long writeBytes;
+
+	@XmlElement(name = "read-syscalls")
+	private long readSyscalls;
+
+	@XmlElement(name = "write-syscalls")
+	private long writeSyscalls;
+
+	@XmlElement(name = "voluntary-context-switches")
+	private long voluntaryContextSwitches;
+
+	@XmlElement(name = "involuntary-context-switches")
+	private long involuntaryContextSwitches;
+
+	@XmlElement(name = "run-queue-delay")
+	private long runQueueDelay;
+
+	@XmlElement(name = "read-bytes-per-second")
+	private double readBytesPerSecond;
+
+	@XmlElement(name = "write-bytes-per-second")
+	private double writeBytesPerSecond;
+
+	@XmlElement(name = "read-syscalls-per-second")
+	private double readSyscallsPerSecond;
+
+	@XmlElement(name = "write-syscalls-per-second")
+	private double writeSyscallsPerSecond;
+
+	@XmlElement(name = "voluntary-context-switches-per-second")
+	private double voluntaryContextSwitchesPerSecond;
+
+	@XmlElement(name = "involuntary-context-switches-per-second")
+	private double involuntaryContextSwitchesPerSecond;
+
+	@XmlElement(name = "run-queue-delay-per-second")
+	private double runQueueDelayPerSecond;
+
+	public ProcessIoState()
+	{
+		super();
+	}
+
+	/**
+	 * @return the pid
+	 */
+	public long getPid()
+	{
+		return pid;
+	}
+
+	public ProcessIoState setPid(long pid)
+	{
+		this.pid = pid;
+		return this;
+	}
+
+	/**
+	 * @return the datetime
+	 */
+	public long getDatetime()
+	{
+		return datetime;
+	}
+
+	public ProcessIoState setDatetime(long datetime)
+	{
+		this.datetime = datetime;
+		return this;
+	}
+
+	/**
+	 * @return the bytes the process has read from storage, or zero if it is not available
+	 */
+	public long getReadBytes()
+	{
+		return readBytes;
+	}
+
+	public ProcessIoState setReadBytes(long readBytes)
+	{
+		this.readBytes = readBytes;
+		return this;
+	}
+
+	/**
+	 * @return the bytes the process has written to storage, or zero if it is not available
+	 */
+	public long getWriteBytes()
+	{
+		return writeBytes;
+	}
+
+	public ProcessIoState setWriteBytes(long writeBytes)
+	{
+		this.writeBytes = writeBytes;
+		return this;
+	}
+
+	/**
+	 * @return the number of read system calls of the process
+	 */
+	public long getReadSyscalls()
+	{
+		return readSyscalls;
+	}
+
+	public ProcessIoState setReadSyscalls(long readSyscalls)
+	{
+		this.readSyscalls = readSyscalls;
+		return this;
+	}
+
+	/**
+	 * @return the number of write system calls of the process
+	 */
+	public long getWriteSyscalls()
+	{
+		return writeSyscalls;
+	}
+
+	public ProcessIoState setWriteSyscalls(long writeSyscalls)
+	{
+		this.writeSyscalls = writeSyscalls;
+		return this;
+	}
+
+	/**
+	 * @return the number of times the threads of the process gave up their CPU, mostly to wait for I/O or a lock
+	 */
+	public long getVoluntaryContextSwitches()
+	{
+		return voluntaryContextSwitches;
+	}
+
+	public ProcessIoState setVoluntaryContextSwitches(long voluntaryContextSwitches)
+	{
+		this.voluntaryContextSwitches = voluntaryContextSwitches;
+		return this;
+	}
+
+	/**
+	 * @return the number of times the threads of the process were preempted by the scheduler
+	 */
+	public long getInvoluntaryContextSwitches()
+	{
+		return involuntaryContextSwitches;
+	}
+
+	public ProcessIoState setInvoluntaryContextSwitches(long involuntaryContextSwitches)
+	{
+		this.involuntaryContextSwitches = involuntaryContextSwitches;
+		return this;
+	}
+
+	/**
+	 * @return the nanoseconds the threads of the process spent runnable, waiting for a CPU
+	 */
+	public long getRunQueueDelay()
+	{
+		return runQueueDelay;
+	}
+
+	public ProcessIoState setRunQueueDelay(long runQueueDelay)
+	{
+		this.runQueueDelay = runQueueDelay;
+		return this;
+	}
+
+	/**
+	 * @return the rate of {@link #getReadBytes()} per second since the previous sample
+	 */
+	public double getReadBytesPerSecond()
+	{
+		return readBytesPerSecond;
+	}
+
+	public ProcessIoState setReadBytesPerSecond(double readBytesPerSecond)
+	{
+		this.readBytesPerSecond = readBytesPerSecond;
+		return this;
+	}
+
+	/**
+	 * @return the rate of {@link #getWriteBytes()} per second since the previous sample
+	 */
+	public double getWriteBytesPerSecond()
+	{
+		return writeBytesPerSecond;
+	}
+
+	public ProcessIoState setWriteBytesPerSecond(double writeBytesPerSecond)
+	{
+		this.writeBytesPerSecond = writeBytesPerSecond;
+		return this;
+	}
+
+	/**
+	 * @return the rate of {@link #getReadSyscalls()} per second since the previous sample
+	 */
+	public double getReadSyscallsPerSecond()
+	{
+		return readSyscallsPerSecond;
+	}
+
+	public ProcessIoState setReadSyscallsPerSecond(double readSyscallsPerSecond)
+	{
+		this.readSyscallsPerSecond = readSyscallsPerSecond;
+		return this;
+	}
+
+	/**
+	 * @return the rate of {@link #getWriteSyscalls()} per second since the previous sample
+	 */
+	public double getWriteSyscallsPerSecond()
+	{
+		return writeSyscallsPerSecond;
+	}
+
+	public ProcessIoState setWriteSyscallsPerSecond(double writeSyscallsPerSecond)
+	{
+		this.writeSyscallsPerSecond = writeSyscallsPerSecond;
+		return this;
+	}
+
+	/**
+	 * @return the rate of {@link #getVoluntaryContextSwitches()} per second since the previous sample
+	 */
+	public double getVoluntaryContextSwitchesPerSecond()
+	{
+		return voluntaryContextSwitchesPerSecond;
+	}
+
+	public ProcessIoState setVoluntaryContextSwitchesPerSecond(double voluntaryContextSwitchesPerSecond)
+	{
+		this.voluntaryContextSwitchesPerSecond = voluntaryContextSwitchesPerSecond;
+		return this;
+	}
+
+	/**
+	 * @return the rate of {@link #getInvoluntaryContextSwitches()} per second since the previous sample
+	 */
+	public double getInvoluntaryContextSwitchesPerSecond()
+	{
+		return involuntaryContextSwitchesPerSecond;
+	}
+
+	public ProcessIoState setInvoluntaryContextSwitchesPerSecond(double involuntaryContextSwitchesPerSecond)
+	{
+		this.involuntaryContextSwitchesPerSecond = involuntaryContextSwitchesPerSecond;
+		return this;
+	}
+
+	/**
+	 * @return the nanoseconds per second the threads of the process waited for a CPU since the previous sample; one billion means one thread was always waiting
+	 */
+	public double getRunQueueDelayPerSecond()
+	{
+		return runQueueDelayPerSecond;
+	}
+
+	public ProcessIoState setRunQueueDelayPerSecond(double runQueueDelayPerSecond)
+	{
+		this.runQueueDelayPerSecond = runQueueDelayPerSecond;
+		return this;
+	}
+
+	@Override
+    public int hashCode()
+    {
+        return Objects.hash(getPid(), ofEpochMilli(getDatetime()).truncatedTo(SECONDS).atZone(UTC), getReadBytes(), getWriteBytes(), getReadSyscalls(), getWriteSyscalls(), getVoluntaryContextSwitches(), getInvoluntaryContextSwitches(), getRunQueueDelay(), getReadBytesPerSecond(), getWriteBytesPerSecond(), getReadSyscallsPerSecond(), getWriteSyscallsPerSecond(), getVoluntaryContextSwitchesPerSecond(), getInvoluntaryContextSwitchesPerSecond(), getRunQueueDelayPerSecond());
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+    	if (this == obj)
+    	{
+    		return true;
+    	}
+    	
+    	if (obj == null || getClass() != obj.getClass())
+    	{
+    		return false;
+    	}
+    	
+    	ProcessIoState other = (ProcessIoState)obj;
+    	
+        return Objects.equals(getPid(), other.getPid()) &&
+        	   Objects.equals(ofEpochMilli(getDatetime()).truncatedTo(SECONDS).atZone(UTC), ofEpochMilli(other.getDatetime()).truncatedTo(SECONDS).atZone(UTC)) &&
+        	   Objects.equals(getReadBytes(), other.getReadBytes()) &&
+        	   Objects.equals(getWriteBytes(), other.getWriteBytes()) &&
+        	   Objects.equals(getReadSyscalls(), other.getReadSyscalls()) &&
+        	   Objects.equals(getWriteSyscalls(), other.getWriteSyscalls()) &&
+        	   Objects.equals(getVoluntaryContextSwitches(), other.getVoluntaryContextSwitches()) &&
+        	   Objects.equals(getInvoluntaryContextSwitches(), other.getInvoluntaryContextSwitches()) &&
+        	   Objects.equals(getRunQueueDelay(), other.getRunQueueDelay()) &&
+        	   Objects.equals(getReadBytesPerSecond(), other.getReadBytesPerSecond()) &&
+        	   Objects.equals(getWriteBytesPerSecond(), other.getWriteBytesPerSecond()) &&
+        	   Objects.equals(getReadSyscallsPerSecond(), other.getReadSyscallsPerSecond()) &&
+        	   Objects.equals(getWriteSyscallsPerSecond(), other.getWriteSyscallsPerSecond()) &&
+        	   Objects.equals(getVoluntaryContextSwitchesPerSecond(), other.getVoluntaryContextSwitchesPerSecond()) &&
+        	   Objects.equals(getInvoluntaryContextSwitchesPerSecond(), other.getInvoluntaryContextSwitchesPerSecond()) &&
+        	   Objects.equals(getRunQueueDelayPerSecond(), other.getRunQueueDelayPerSecond());
+    }
+
+    @Override
+    public String toString()
+    {
+        return MoreObjects.toStringHelper(this)
+        		          .add("pid", getPid())
+        		          .add("datetime", ofEpochMilli(getDatetime()).truncatedTo(SECONDS).atZone(UTC))
+        		          .add("readBytesPerSecond", getReadBytesPerSecond())
+        		          .add("writeBytesPerSecond", getWriteBytesPerSecond())
+        		          .add("voluntaryContextSwitchesPerSecond", getVoluntaryContextSwitchesPerSecond())
+        		          .add("involuntaryContextSwitchesPerSecond", getInvoluntaryContextSwitchesPerSecond())
+        		          .add("runQueueDelayPerSecond", getRunQueueDelayPerSecond())
+        		          .toString();
+    }
+    
+    @Override
+    protected ProcessIoState clone() 
+    {
+		try 
+		{
+			return (ProcessIoState) super.clone();
+		} 
+		catch (CloneNotSupportedException e) 
+		{
+			throw new AssertionError(e);
+		}
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import java.io.IOException;
+
+/**
+ * Starts the processes of a {@link Command}, from a {@link ProcessBuilder} configured with its arguments, directory, environment and
+ * redirects.
+ * <p>
+ * The JDK starts processes from a <code>fork</code> or <code>vfork</code> of the JVM, which gets slower as the JVM gets larger. Faster
+ * launchers, such as one calling <code>posix_spawn</code> through native code, need more than this library can depend on, so they are
+ * provided by other jars as services: {@link #preferred()} loads them with a {@link java.util.ServiceLoader} and falls back to
+ * {@link #PROCESS_BUILDER} if none is available.
+ * <p>
+ * Implementations must be thread safe.
+ */
+public interface ProcessLauncher
+{
+    /**
+     * Starts processes with {@link ProcessBuilder#start()}.
+     */
+    ProcessLauncher PROCESS_BUILDER = new ProcessLauncher()
+    {
+        @Override
+        public Process launch(ProcessBuilder processBuilder) throws IOException
+        {
+            return processBuilder.start();
+        }
+
+        @Override
+        public String toString()
+        {
+            return "ProcessBuilder";
+        }
+    };
+
+    /**
+     * @return the first available launcher provided as a service, or {@link #PROCESS_BUILDER} if there is none; the launchers are looked
+     *         up once
+     */
+    static ProcessLauncher preferred()
+    {
+        return ProcessLaunchers.PREFERRED;
+    }
+
+    /**
+     * Starts the process described by the given builder, with its error stream merged into its output.
+     */
+    Process launch(ProcessBuilder processBuilder) throws IOException;
+
+    /**
+     * @return whether this launcher can start processes on this system and JVM; {@link #preferred()} skips the launchers that cannot
+     */
+    default boolean isAvailable()
+    {
+        return true;
+    }
+
+    /**
+     * @return the id of a process this launcher started
+     */
+    default int pidOf(Process process)
+    {
+        return ProcessCallable.pidOf(process);
+    }
+}
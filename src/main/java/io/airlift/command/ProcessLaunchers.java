@@ -0,0 +1,64 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Looks up the {@link ProcessLauncher#preferred() preferred launcher} when it is first used.
+ */
+final class ProcessLaunchers
+{
+    private static final Logger LOG = LoggerFactory.getLogger(ProcessLaunchers.class);
+
+    static final ProcessLauncher PREFERRED = load();
+
+    private ProcessLaunchers()
+    {
+    }
+
+    private static ProcessLauncher load()
+    {
+        Iterator<ProcessLauncher> launchers = ServiceLoader.load(ProcessLauncher.class).iterator();
+
+        while (true)
+        {
+            try
+            {
+                if (!launchers.hasNext())
+                {
+                    return ProcessLauncher.PROCESS_BUILDER;
+                }
+
+                ProcessLauncher launcher = launchers.next();
+                if (launcher.isAvailable())
+                {
+                    LOG.debug("Launching processes with {}", launcher);
+                    return launcher;
+                }
+                LOG.debug("{} is not available on this system", launcher);
+            }
+            // a launcher built for a later JVM, or missing its native library, cannot even be loaded
+            catch (ServiceConfigurationError | LinkageError e)
+            {
+                LOG.debug("Skipping a process launcher that failed to load", e);
+            }
+        }
+    }
+}
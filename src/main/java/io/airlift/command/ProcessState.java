@@ -138,6 +138,31 @@ public class ProcessState implements Serializable, Cloneable
      */
     private ProcessTime processTime;
 
+    /**
+     * The disk and scheduler activity, on Linux.
+     */
+    private ProcessIoState ioState;
+
+    /**
+     * The number of CPUs kept busy by the process since the previous sample, e.g. 1.5 for one and a half cores.
+     */
+    private double cpuCores;
+
+    /**
+     * The page faults, minor and major, per second since the previous sample.
+     */
+    private double pageFaultsPerSecond;
+
+    /**
+     * The major page faults, which needed a disk read, per second since the previous sample.
+     */
+    private double majorFaultsPerSecond;
+
+    /**
+     * The change of the number of open file descriptors per second since the previous sample; negative when descriptors are closed.
+     */
+    private double fdGrowthPerSecond;
+
     /**
      * 
      */
@@ -408,6 +433,101 @@ public class ProcessState implements Serializable, Cloneable
 	}
 
 
+	/**
+	 * @return the disk and scheduler activity, or <code>null</code> if the probe cannot read it
+	 */
+	public ProcessIoState getIoState() 
+	{
+		return ioState;
+	}
+
+
+	/**
+	 * @param ioState the ioState to set
+	 */
+	public ProcessState setIoState(ProcessIoState ioState) 
+	{
+		this.ioState = ioState;
+		return this;
+	}
+
+
+	/**
+	 * @return the number of CPUs kept busy by the process since the previous sample, or zero on the first sample
+	 */
+	public double getCpuCores() 
+	{
+		return cpuCores;
+	}
+
+
+	/**
+	 * @param cpuCores the cpuCores to set
+	 */
+	public ProcessState setCpuCores(double cpuCores) 
+	{
+		this.cpuCores = cpuCores;
+		return this;
+	}
+
+
+	/**
+	 * @return the page faults, minor and major, per second since the previous sample, or zero on the first sample
+	 */
+	public double getPageFaultsPerSecond() 
+	{
+		return pageFaultsPerSecond;
+	}
+
+
+	/**
+	 * @param pageFaultsPerSecond the pageFaultsPerSecond to set
+	 */
+	public ProcessState setPageFaultsPerSecond(double pageFaultsPerSecond) 
+	{
+		this.pageFaultsPerSecond = pageFaultsPerSecond;
+		return this;
+	}
+
+
+	/**
+	 * @return the major page faults per second since the previous sample, or zero on the first sample
+	 */
+	public double getMajorFaultsPerSecond() 
+	{
+		return majorFaultsPerSecond;
+	}
+
+
+	/**
+	 * @param majorFaultsPerSecond the majorFaultsPerSecond to set
+	 */
+	public ProcessState setMajorFaultsPerSecond(double majorFaultsPerSecond) 
+	{
+		this.majorFaultsPerSecond = majorFaultsPerSecond;
+		return this;
+	}
+
+
+	/**
+	 * @return the change of the number of open file descriptors per second since the previous sample, or zero on the first sample
+	 */
+	public double getFdGrowthPerSecond() 
+	{
+		return fdGrowthPerSecond;
+	}
+
+
+	/**
+	 * @param fdGrowthPerSecond the fdGrowthPerSecond to set
+	 */
+	public ProcessState setFdGrowthPerSecond(double fdGrowthPerSecond) 
+	{
+		this.fdGrowthPerSecond = fdGrowthPerSecond;
+		return this;
+	}
+
+
 	/**
 	 * @return the state
 	 */
@@ -431,7 +551,8 @@ public class ProcessState implements Serializable, Cloneable
     {
     	return Objects.hash(getId(), getPid(), ofEpochMilli(getDatetime()).truncatedTo(SECONDS).atZone(UTC),
     			getNumberOfActiveThreads(), getKernelSchedulingPriority(), getTty(), getProcessor(),
-    			getPriority(), getNice(), getFd(), getCpuState(), getMemoryState(), getProcessTime(), getState());
+    			getPriority(), getNice(), getFd(), getCpuState(), getMemoryState(), getProcessTime(), getIoState(), getCpuCores(), getPageFaultsPerSecond(),
+    			getMajorFaultsPerSecond(), getFdGrowthPerSecond(), getState());
     }
 
     @Override
@@ -462,6 +583,11 @@ public class ProcessState implements Serializable, Cloneable
         	   Objects.equals(getCpuState(), other.getCpuState()) &&
         	   Objects.equals(getMemoryState(), other.getMemoryState()) &&
         	   Objects.equals(getProcessTime(), other.getProcessTime()) &&
+        	   Objects.equals(getIoState(), other.getIoState()) &&
+        	   Objects.equals(getCpuCores(), other.getCpuCores()) &&
+        	   Objects.equals(getPageFaultsPerSecond(), other.getPageFaultsPerSecond()) &&
+        	   Objects.equals(getMajorFaultsPerSecond(), other.getMajorFaultsPerSecond()) &&
+        	   Objects.equals(getFdGrowthPerSecond(), other.getFdGrowthPerSecond()) &&
         	   Objects.equals(getState(), other.getState());
     }
 
@@ -482,6 +608,10 @@ public class ProcessState implements Serializable, Cloneable
         		          .add("cpuState", getCpuState())
         		          .add("memoryState", getMemoryState())
         		          .add("processTime", getProcessTime())
+        		          .add("ioState", getIoState())
+        		          .add("cpuCores", getCpuCores())
+        		          .add("pageFaultsPerSecond", getPageFaultsPerSecond())
+        		          .add("fdGrowthPerSecond", getFdGrowthPerSecond())
         		          .add("state", getState())
         		          .omitNullValues()
         		          .toString();
@@ -498,7 +628,12 @@ public class ProcessState implements Serializable, Cloneable
 		} 
 		catch (CloneNotSupportedException e) 
 		{
-			clone = new ProcessState(id, pid, datetime, numberOfActiveThreads, tty, processor, priority, nice, fd, kernelSchedulingPriority, state, cpuState !=  null ? cpuState.clone() : null, memoryState != null ? memoryState.clone() : null, processTime);
+			clone = new ProcessState(id, pid, datetime, numberOfActiveThreads, tty, processor, priority, nice, fd, kernelSchedulingPriority, state, cpuState !=  null ? cpuState.clone() : null, memoryState != null ? memoryState.clone() : null, processTime)
+					.setIoState(ioState)
+					.setCpuCores(cpuCores)
+					.setPageFaultsPerSecond(pageFaultsPerSecond)
+					.setMajorFaultsPerSecond(majorFaultsPerSecond)
+					.setFdGrowthPerSecond(fdGrowthPerSecond);
 		}
 		
     	return clone;
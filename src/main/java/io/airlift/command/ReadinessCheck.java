@@ -0,0 +1,127 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import javax.annotation.concurrent.Immutable;
+
+import io.airlift.units.Duration;
+
+/**
+ * Tells when a long-running command, such as a server, is ready to be used: either once a line of its output matches a pattern, or once
+ * a TCP port accepts connections.
+ *
+ * @see Command#start(java.util.concurrent.Executor, java.util.concurrent.ScheduledExecutorService, ReadinessCheck)
+ */
+@Immutable
+public final class ReadinessCheck
+{
+    private static final Duration DEFAULT_POLL_INTERVAL = new Duration(20, TimeUnit.MILLISECONDS);
+
+    private final Pattern pattern;
+    private final InetSocketAddress address;
+    private final Duration pollInterval;
+
+    private ReadinessCheck(Pattern pattern, InetSocketAddress address, Duration pollInterval)
+    {
+        this.pattern = pattern;
+        this.address = address;
+        this.pollInterval = requireNonNull(pollInterval, "pollInterval is null");
+    }
+
+    /**
+     * @return a check passing once a line of the output contains a match of the given regular expression
+     */
+    public static ReadinessCheck outputMatches(String regex)
+    {
+        return outputMatches(Pattern.compile(regex));
+    }
+
+    /**
+     * @return a check passing once a line of the output contains a match of the given pattern; the lines are truncated to the maximum line
+     *         length of the command, if any, before they are matched
+     */
+    public static ReadinessCheck outputMatches(Pattern pattern)
+    {
+        return new ReadinessCheck(requireNonNull(pattern, "pattern is null"), null, DEFAULT_POLL_INTERVAL);
+    }
+
+    /**
+     * @return a check passing once the given port of the loopback address accepts connections
+     */
+    public static ReadinessCheck portOpen(int port)
+    {
+        return portOpen(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * @return a check passing once the given address accepts connections
+     */
+    public static ReadinessCheck portOpen(InetSocketAddress address)
+    {
+        requireNonNull(address, "address is null");
+        checkArgument(!address.isUnresolved(), "address is unresolved: %s", address);
+        return new ReadinessCheck(null, address, DEFAULT_POLL_INTERVAL);
+    }
+
+    /**
+     * @param pollInterval the delay between two connection attempts of a port check, and the timeout of each attempt
+     */
+    public ReadinessCheck withPollInterval(Duration pollInterval)
+    {
+        requireNonNull(pollInterval, "pollInterval is null");
+        checkArgument(pollInterval.toMillis() > 0, "pollInterval must be at least one millisecond");
+        return new ReadinessCheck(pattern, address, pollInterval);
+    }
+
+    /**
+     * @return the pattern of an output check, or <code>null</code>
+     */
+    public Pattern getPattern()
+    {
+        return pattern;
+    }
+
+    /**
+     * @return the address of a port check, or <code>null</code>
+     */
+    public InetSocketAddress getAddress()
+    {
+        return address;
+    }
+
+    public Duration getPollInterval()
+    {
+        return pollInterval;
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("pattern", pattern)
+                .add("address", address)
+                .add("pollInterval", pollInterval)
+                .omitNullValues()
+                .toString();
+    }
+}
@@ -0,0 +1,537 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import io.airlift.command.system.stats.process.ProcessProbe;
+import io.airlift.command.system.stats.process.ProcessProbeFactory;
+import io.airlift.units.Duration;
+
+/**
+ * A handle on a command started with {@link Command#start(java.util.concurrent.Executor)}, to watch and control its process while it runs.
+ * <p>
+ * The handle holds no thread: the process runs on the executor the command was started on, and the handle only keeps the last bytes of
+ * the output, the last {@link ProcessState} sample and a few timestamps, so thousands of commands can be in flight at once.
+ * <p>
+ * The time limit of the command is enforced by the {@link TimeoutService#shared() shared timing wheel}, which destroys the process once it
+ * is reached, whether or not anyone waits for the result, and so does the cancellation of the {@link CommandContext} it was started under.
+ * <p>
+ * A command started with a {@link ReadinessCheck} completes its {@link #getReadiness() readiness} future once the check passes, for instance
+ * once a server logs that it is listening; a command started without one is ready as soon as its process is created.
+ */
+@ThreadSafe
+public class RunningCommand
+{
+    private final Command command;
+    private final long startedAt;
+    private final OutputTail tail;
+    private final ReadinessCheck readinessCheck;
+    private final CommandContext context;
+    private final SettableFuture<Duration> readiness = SettableFuture.create();
+
+    private volatile ListenableFuture<CommandResult> future;
+    private volatile Process process;
+    private volatile int pid = -1;
+    private volatile long spawnedAt = -1;
+    private volatile long exitedAt = -1;
+    private volatile boolean timedOut;
+    private volatile boolean ready;
+    private volatile ProcessState latestState;
+    private volatile ProcessProbe probe;
+    private volatile TimeoutService.Timeout timeout;
+    private volatile CommandContext.Registration registration;
+
+    /**
+     * @param readinessCheck tells when the command is ready, or <code>null</code> if it is ready once spawned
+     * @param context the context the command runs under, or <code>null</code>
+     */
+    RunningCommand(Command command, int tailSize, ReadinessCheck readinessCheck, CommandContext context)
+    {
+        this.command = requireNonNull(command, "command is null");
+        this.startedAt = System.nanoTime();
+        this.tail = new OutputTail(tailSize);
+        this.readinessCheck = readinessCheck;
+        this.context = context;
+    }
+
+    /**
+     * @param scheduler runs the connection attempts of a port check, or <code>null</code> if the command has no such check
+     */
+    void start(ListenableFuture<CommandResult> future, ScheduledExecutorService scheduler)
+    {
+        this.future = future;
+        this.timeout = TimeoutService.shared().schedule(this::timeLimitReached, command.getTimeLimit());
+        if (context != null)
+        {
+            this.registration = context.onCancel(() -> future.cancel(true));
+        }
+
+        if (readinessCheck != null && readinessCheck.getAddress() != null)
+        {
+            requireNonNull(scheduler, "scheduler is null");
+            long interval = readinessCheck.getPollInterval().toMillis();
+            ScheduledFuture<?> poll = scheduler.scheduleWithFixedDelay(this::pollPort, 0, interval, TimeUnit.MILLISECONDS);
+            readiness.addListener(() -> poll.cancel(false), directExecutor());
+        }
+
+        Futures.addCallback(future, new FutureCallback<CommandResult>()
+        {
+            @Override
+            public void onSuccess(CommandResult result)
+            {
+                finished(null);
+                command.getInstrumentation().onCompleted(command, result);
+            }
+
+            @Override
+            public void onFailure(Throwable failure)
+            {
+                finished(failure);
+                command.getInstrumentation().onFailed(command, failureOf(failure));
+            }
+        }, directExecutor());
+    }
+
+    /**
+     * Called by the thread running the command once the process is created.
+     */
+    void spawned(Process process, int pid, long spawnedAt)
+    {
+        this.process = process;
+        this.pid = pid;
+        this.spawnedAt = spawnedAt;
+
+        if (readinessCheck == null)
+        {
+            ready();
+        }
+    }
+
+    /**
+     * Called by the thread running the command once the process exited.
+     */
+    void exited(long exitedAt)
+    {
+        this.exitedAt = exitedAt;
+    }
+
+    OutputTail tail()
+    {
+        return tail;
+    }
+
+    /**
+     * @return the listener matching the lines of the output against the pattern of the readiness check, or <code>null</code> if there is none
+     */
+    LineListener readinessListener()
+    {
+        if (readinessCheck == null || readinessCheck.getPattern() == null)
+        {
+            return null;
+        }
+
+        Pattern pattern = readinessCheck.getPattern();
+        return line -> {
+            if (!readiness.isDone() && pattern.matcher(line).find())
+            {
+                ready();
+            }
+        };
+    }
+
+    private void pollPort()
+    {
+        if (process == null || readiness.isDone())
+        {
+            return;
+        }
+
+        try (Socket socket = new Socket())
+        {
+            socket.connect(readinessCheck.getAddress(), (int) readinessCheck.getPollInterval().toMillis());
+            ready();
+        }
+        catch (IOException ignored)
+        {
+            // not listening yet
+        }
+    }
+
+    private void ready()
+    {
+        synchronized (readiness)
+        {
+            if (!readiness.isDone())
+            {
+                ready = true;
+                readiness.set(Duration.succinctNanos(System.nanoTime() - startedAt));
+            }
+        }
+    }
+
+    private void finished(Throwable failure)
+    {
+        timeout.cancel();
+        if (registration != null)
+        {
+            registration.unregister();
+        }
+
+        synchronized (readiness)
+        {
+            if (!readiness.isDone())
+            {
+                readiness.setException(new CommandFailedException(command, "exited before it was ready", failure));
+            }
+        }
+
+        if (exitedAt == -1)
+        {
+            exitedAt = System.nanoTime();
+        }
+
+        ProcessProbe probe = this.probe;
+        if (probe != null)
+        {
+            probe.stop();
+        }
+    }
+
+    public Command getCommand()
+    {
+        return command;
+    }
+
+    /**
+     * @return the id of the process, or nothing if it is not created yet
+     */
+    public OptionalInt getPid()
+    {
+        int pid = this.pid;
+        return pid == -1 ? OptionalInt.empty() : OptionalInt.of(pid);
+    }
+
+    /**
+     * @return whether the process was created and is still running
+     */
+    public boolean isAlive()
+    {
+        Process process = this.process;
+        return process != null && process.isAlive();
+    }
+
+    /**
+     * @return whether the command completed, failed or was cancelled
+     */
+    public boolean isDone()
+    {
+        return future.isDone();
+    }
+
+    /**
+     * @return the time since the command was started, or the time it took if it is done
+     */
+    public Duration getElapsedTime()
+    {
+        long end = exitedAt;
+        return Duration.succinctNanos((end == -1 ? System.nanoTime() : end) - startedAt);
+    }
+
+    /**
+     * @return the time since the process was created, or the time it ran if it is done, or nothing if it is not created yet
+     */
+    public Optional<Duration> getRunTime()
+    {
+        long start = spawnedAt;
+        long end = exitedAt;
+        return start == -1 ? Optional.empty() : Optional.of(Duration.succinctNanos((end == -1 ? System.nanoTime() : end) - start));
+    }
+
+    /**
+     * @return the last bytes of the output read so far, up to the tail size the command was started with, decoded as UTF-8
+     */
+    public String getOutputTail()
+    {
+        return new String(tail.toByteArray(), UTF_8);
+    }
+
+    public byte[] getOutputTailBytes()
+    {
+        return tail.toByteArray();
+    }
+
+    /**
+     * @return the number of bytes of output read so far
+     */
+    public long getOutputSize()
+    {
+        return tail.getWritten();
+    }
+
+    /**
+     * @return the last sample of the process, from the probe started by {@link #monitor(ScheduledExecutorService, Duration)} or from any
+     *         probe this handle is registered on as a listener
+     */
+    public Optional<ProcessState> getLatestState()
+    {
+        return Optional.ofNullable(latestState);
+    }
+
+    @Subscribe
+    public void onProcessState(ProcessState state)
+    {
+        if (state != null && state.getPid() == pid)
+        {
+            latestState = state;
+        }
+    }
+
+    /**
+     * Samples the process every <code>period</code> on the given scheduler until it exits. Does nothing if the process is not created yet
+     * or is already monitored.
+     *
+     * @return whether the process is monitored
+     */
+    public boolean monitor(ScheduledExecutorService scheduler, Duration period)
+    {
+        return monitor(scheduler, period, ImmutableList.of());
+    }
+
+    /**
+     * Samples the process like {@link #monitor(ScheduledExecutorService, Duration)}, and posts every sample to the given listeners as well.
+     *
+     * @return whether the process is monitored
+     */
+    public synchronized boolean monitor(ScheduledExecutorService scheduler, Duration period, Iterable<?> listeners)
+    {
+        requireNonNull(scheduler, "scheduler is null");
+        requireNonNull(period, "period is null");
+        requireNonNull(listeners, "listeners is null");
+
+        if (probe != null)
+        {
+            return true;
+        }
+
+        if (!isAlive())
+        {
+            return false;
+        }
+
+        ProcessProbe probe = ProcessProbeFactory.getProcessProbe(command.getId(), pid, scheduler);
+        probe.registerListener(this);
+        listeners.forEach(probe::registerListener);
+        probe.start(0, period.toMillis(), TimeUnit.MILLISECONDS);
+        this.probe = probe;
+
+        if (isDone())
+        {
+            probe.stop();
+        }
+        return true;
+    }
+
+    /**
+     * Asks the process to terminate (SIGTERM on Unix), or prevents it from being created if the command did not start yet.
+     *
+     * @return whether the process was running or the command was cancelled
+     */
+    public boolean terminate()
+    {
+        Process process = this.process;
+        if (process == null)
+        {
+            return future.cancel(true);
+        }
+
+        if (!process.isAlive())
+        {
+            return false;
+        }
+        process.destroy();
+        return true;
+    }
+
+    /**
+     * Kills the process (SIGKILL on Unix), or prevents it from being created if the command did not start yet.
+     *
+     * @return whether the process was running or the command was cancelled
+     */
+    public boolean kill()
+    {
+        Process process = this.process;
+        if (process == null)
+        {
+            return future.cancel(true);
+        }
+
+        if (!process.isAlive())
+        {
+            return false;
+        }
+        process.destroyForcibly();
+        return true;
+    }
+
+    /**
+     * @return a future completed with the time it took for the command to be ready, or failed with a {@link CommandFailedException} if it
+     *         exited or could not be started before
+     */
+    public ListenableFuture<Duration> getReadiness()
+    {
+        return readiness;
+    }
+
+    public boolean isReady()
+    {
+        return ready;
+    }
+
+    /**
+     * Waits for the command to be ready. The process is left running if it is not ready in time.
+     *
+     * @return the time it took for the command to be ready
+     * @throws CommandFailedException if the command is not ready in the given time, or exited or could not be started before
+     */
+    public Duration awaitReady(Duration timeout) throws CommandFailedException
+    {
+        requireNonNull(timeout, "timeout is null");
+
+        try
+        {
+            return readiness.get(timeout.roundTo(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+        }
+        catch (ExecutionException e)
+        {
+            // the readiness future only fails with the exception built by finished()
+            throw (CommandFailedException) e.getCause();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new CommandFailedException(command, "interrupted", e);
+        }
+        catch (TimeoutException e)
+        {
+            throw new CommandFailedException(command, "was not ready in " + timeout, null);
+        }
+    }
+
+    public ListenableFuture<CommandResult> getFuture()
+    {
+        return future;
+    }
+
+    /**
+     * Waits for the command to complete.
+     *
+     * @throws CommandTimeoutException if the time limit of the command was reached, in which case the process was destroyed
+     * @throws CommandFailedException if the command fails, is killed or cancelled
+     */
+    public CommandResult getResult() throws CommandFailedException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException e)
+        {
+            // like execute(), which propagates unchecked exceptions as is
+            Throwables.throwIfUnchecked(e.getCause());
+            throw failureOf(e.getCause());
+        }
+        catch (CancellationException e)
+        {
+            throw failureOf(e);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new CommandFailedException(command, "interrupted", e);
+        }
+    }
+
+    private void timeLimitReached()
+    {
+        timedOut = true;
+        // interrupts the thread running the command, which destroys the process like when execute() times out
+        future.cancel(true);
+    }
+
+    /**
+     * @return the failure to report for the given cause of the failure of the future of this handle, never throws so that callbacks
+     * releasing resources on failure always run
+     */
+    CommandFailedException failureOf(Throwable failure)
+    {
+        if (timedOut)
+        {
+            return new CommandTimeoutException(command);
+        }
+
+        if (failure instanceof CancellationException && context != null && context.isCancelled())
+        {
+            return context.failureOf(command);
+        }
+
+        if (failure instanceof CancellationException)
+        {
+            return new CommandFailedException(command, "cancelled", failure);
+        }
+
+        if (failure instanceof CommandFailedException)
+        {
+            return (CommandFailedException) failure;
+        }
+
+        return new CommandFailedException(command, "unexpected exception", failure);
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("command", command)
+                .add("pid", pid)
+                .add("elapsedTime", getElapsedTime())
+                .add("done", isDone())
+                .toString();
+    }
+}
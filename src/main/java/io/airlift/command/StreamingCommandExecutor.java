@@ -0,0 +1,194 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+
+/**
+ * Runs a command for every element of a stream of parameters, typically bound to a {@link CommandTemplate}, with at most
+ * <code>maxConcurrency</code> commands running at once.
+ * <p>
+ * The parameters are pulled from the stream only as running commands complete, and every outcome is handed to a
+ * {@link CommandResultHandler} rather than collected, so at most <code>maxConcurrency</code> parameters, commands and results are held at
+ * any time, however long the stream. The outcomes are reported in the order the commands complete, and a failed command does not stop the
+ * others.
+ */
+@ThreadSafe
+public class StreamingCommandExecutor
+{
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingCommandExecutor.class);
+
+    private final Executor executor;
+    private final int maxConcurrency;
+
+    /**
+     * @param maxConcurrency the maximum number of commands running at once
+     */
+    public StreamingCommandExecutor(Executor executor, int maxConcurrency)
+    {
+        this.executor = requireNonNull(executor, "executor is null");
+        checkArgument(maxConcurrency > 0, "maxConcurrency must be positive");
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Runs the command of the template for every set of values of its placeholders; see {@link #execute(Iterator, Function, CommandResultHandler, CommandContext)}.
+     */
+    public long execute(CommandTemplate template, Stream<String[]> values, CommandResultHandler<? super String[]> handler) throws InterruptedException
+    {
+        requireNonNull(template, "template is null");
+        requireNonNull(values, "values is null");
+        return execute(values.iterator(), template::bind, handler, null);
+    }
+
+    /**
+     * See {@link #execute(Iterator, Function, CommandResultHandler, CommandContext)}.
+     */
+    public <P> long execute(Stream<P> parameters, Function<? super P, Command> binder, CommandResultHandler<? super P> handler) throws InterruptedException
+    {
+        requireNonNull(parameters, "parameters is null");
+        return execute(parameters.iterator(), binder, handler, null);
+    }
+
+    /**
+     * Runs the command bound from every element of the given parameters, and returns once all of them completed. The calling thread pulls
+     * the parameters and binds them, then waits for a running command to complete before pulling the next ones.
+     * <p>
+     * If the parameters or the binder throw, or the calling thread is interrupted, the running commands are cancelled, and reported as
+     * failed, before the exception is thrown.
+     *
+     * @param binder creates the command to run for an element of the parameters, such as {@link CommandTemplate#bind(java.util.Map)}
+     * @param context the context to run under, or <code>null</code>; once it is cancelled, no more parameters are pulled
+     * @return the number of commands run
+     */
+    public <P> long execute(Iterator<P> parameters, Function<? super P, Command> binder, CommandResultHandler<? super P> handler, CommandContext context)
+            throws InterruptedException
+    {
+        requireNonNull(parameters, "parameters is null");
+        requireNonNull(binder, "binder is null");
+        requireNonNull(handler, "handler is null");
+
+        CommandContext stream = context != null ? context.newChild() : CommandContext.create();
+        Semaphore running = new Semaphore(maxConcurrency);
+        long count = 0;
+        boolean completed = false;
+
+        try
+        {
+            while (true)
+            {
+                // waits for a slot before pulling, as pulling may compute the next element
+                running.acquire();
+
+                P element;
+                Command bound;
+                RunningCommand command;
+                try
+                {
+                    if (stream.isCancelled() || !parameters.hasNext())
+                    {
+                        running.release();
+                        break;
+                    }
+                    element = parameters.next();
+                    bound = binder.apply(element);
+                    command = bound.start(executor, stream);
+                }
+                catch (RuntimeException | Error e)
+                {
+                    running.release();
+                    throw e;
+                }
+                count++;
+
+                Futures.addCallback(command.getFuture(), new FutureCallback<CommandResult>()
+                {
+                    @Override
+                    public void onSuccess(CommandResult result)
+                    {
+                        try
+                        {
+                            handler.onCompleted(element, result);
+                        }
+                        catch (RuntimeException e)
+                        {
+                            LOG.warn("Handler failed on the result of {}", command, e);
+                        }
+                        finally
+                        {
+                            running.release();
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Throwable failure)
+                    {
+                        CommandFailedException commandFailure = command.failureOf(failure);
+
+                        try
+                        {
+                            handler.onFailed(element, commandFailure);
+                        }
+                        catch (RuntimeException e)
+                        {
+                            LOG.warn("Handler failed on the failure of {}", command, e);
+                        }
+                        finally
+                        {
+                            running.release();
+                        }
+                    }
+                }, directExecutor());
+            }
+            completed = true;
+        }
+        finally
+        {
+            if (!completed)
+            {
+                stream.cancel();
+            }
+            // cancelled commands complete promptly, so this does not hold an interrupted caller for long
+            running.acquireUninterruptibly(maxConcurrency);
+            // forgets the stream in the parent context
+            stream.cancel();
+        }
+        return count;
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("maxConcurrency", maxConcurrency)
+                .toString();
+    }
+}
@@ -0,0 +1,438 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+
+import io.airlift.units.Duration;
+
+/**
+ * Runs tasks once their deadline passes, from a hierarchical timing wheel driven by a single thread, so that the time limits of any number of
+ * running commands cost one thread rather than one timed wait each.
+ * <p>
+ * The wheel has {@value #LEVELS} levels of {@value #SLOTS} slots. A slot of the first level spans one tick, and a slot of every other level
+ * spans a whole turn of the level below it; with the default tick of 10 milliseconds the wheel covers more than 300 years. A deadline is put
+ * in the slot of the lowest level its distance fits in, and moved down one level whenever the wheel reaches its slot, so scheduling and
+ * cancelling are constant time, and every tick only looks at one slot per level. Deadlines are rounded up to the next tick.
+ * <p>
+ * Expired tasks are handed off to an executor rather than run on the thread of the wheel, so a slow task, such as a listener of a cancelled
+ * future run by a direct executor, does not delay the other deadlines.
+ */
+@ThreadSafe
+public final class TimeoutService
+{
+    private static final Logger LOG = LoggerFactory.getLogger(TimeoutService.class);
+
+    private static final int SLOT_BITS = 6;
+    static final int SLOTS = 1 << SLOT_BITS;
+    static final int LEVELS = 6;
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    private static final Duration DEFAULT_TICK = new Duration(10, TimeUnit.MILLISECONDS);
+
+    private static final TimeoutService SHARED = new TimeoutService(DEFAULT_TICK, daemonThreadsNamed("command-timeouts-%s"));
+
+    private final long tickNanos;
+    private final Ticker ticker;
+    private final long origin;
+    private final Executor taskExecutor;
+
+    /**
+     * The sentinels of the slots, by level then slot.
+     */
+    @GuardedBy("this")
+    private final Timeout[][] wheel = new Timeout[LEVELS][SLOTS];
+
+    /**
+     * The last tick processed.
+     */
+    @GuardedBy("this")
+    private long currentTick;
+
+    /**
+     * The number of timeouts in each level, to skip the ticks on which nothing happens.
+     */
+    @GuardedBy("this")
+    private final int[] levelSizes = new int[LEVELS];
+
+    @GuardedBy("this")
+    private int pending;
+
+    /**
+     * Creates a service running the expired tasks on a pool of threads created by the given factory, which also creates the thread of the
+     * wheel.
+     */
+    public TimeoutService(Duration tick, ThreadFactory threadFactory)
+    {
+        this(tick, threadFactory, newCachedThreadPool(runnable -> {
+            Thread thread = threadFactory.newThread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * @param taskExecutor runs the expired tasks; a task it rejects runs on the thread of the wheel, so that its deadline is still enforced
+     */
+    public TimeoutService(Duration tick, ThreadFactory threadFactory, Executor taskExecutor)
+    {
+        this(tick, Ticker.systemTicker(), taskExecutor);
+
+        Thread worker = threadFactory.newThread(this::run);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Creates a service without a thread, whose wheel only turns when {@link #expire()} is called, and which runs the expired tasks from there.
+     */
+    @VisibleForTesting
+    TimeoutService(Duration tick, Ticker ticker)
+    {
+        this(tick, ticker, directExecutor());
+    }
+
+    @VisibleForTesting
+    TimeoutService(Duration tick, Ticker ticker, Executor taskExecutor)
+    {
+        requireNonNull(tick, "tick is null");
+        this.tickNanos = tick.roundTo(TimeUnit.NANOSECONDS);
+        checkArgument(tickNanos > 0, "tick must be positive");
+        this.ticker = requireNonNull(ticker, "ticker is null");
+        this.origin = ticker.read();
+        this.taskExecutor = requireNonNull(taskExecutor, "taskExecutor is null");
+
+        for (Timeout[] level : wheel)
+        {
+            for (int slot = 0; slot < SLOTS; slot++)
+            {
+                Timeout sentinel = new Timeout(this, null, 0);
+                sentinel.previous = sentinel;
+                sentinel.next = sentinel;
+                level[slot] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * @return the service used by default to enforce the time limits of commands, ticking every 10 milliseconds
+     */
+    public static TimeoutService shared()
+    {
+        return SHARED;
+    }
+
+    /**
+     * Runs the given task once the given delay elapsed, unless the returned timeout is cancelled before.
+     */
+    public Timeout schedule(Runnable task, Duration delay)
+    {
+        requireNonNull(delay, "delay is null");
+        return schedule(task, delay.roundTo(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Runs the given task once the given delay elapsed, unless the returned timeout is cancelled before.
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit)
+    {
+        requireNonNull(task, "task is null");
+        requireNonNull(unit, "unit is null");
+
+        long nanos = Math.max(0, unit.toNanos(delay));
+        long elapsed = ticker.read() - origin;
+        // round up, and never overflow for the huge delays used as "no limit"
+        long deadline = nanos >= Long.MAX_VALUE - elapsed ? Long.MAX_VALUE : (elapsed + nanos + tickNanos - 1) / tickNanos;
+
+        Timeout timeout = new Timeout(this, task, deadline);
+        synchronized (this)
+        {
+            // the slot of the current tick was already processed
+            add(timeout, currentTick + 1);
+            pending++;
+            if (pending == 1)
+            {
+                notifyAll();
+            }
+        }
+        return timeout;
+    }
+
+    /**
+     * @return the number of timeouts neither expired nor cancelled
+     */
+    public synchronized int getPending()
+    {
+        return pending;
+    }
+
+    /**
+     * @param earliest the first tick whose slot the timeout may be put in
+     */
+    @GuardedBy("this")
+    private void add(Timeout timeout, long earliest)
+    {
+        long deadline = Math.max(timeout.deadline, earliest);
+        long distance = deadline - currentTick;
+
+        int level = 0;
+        while (level < LEVELS - 1 && distance >= 1L << (SLOT_BITS * (level + 1)))
+        {
+            level++;
+        }
+
+        if (level == LEVELS - 1 && distance >= 1L << (SLOT_BITS * LEVELS))
+        {
+            // beyond the wheel: park in the farthest slot, from which it is moved down again
+            deadline = currentTick + (1L << (SLOT_BITS * LEVELS)) - 1;
+        }
+
+        Timeout sentinel = wheel[level][(int) (deadline >>> (SLOT_BITS * level)) & SLOT_MASK];
+        timeout.level = level;
+        levelSizes[level]++;
+        timeout.previous = sentinel.previous;
+        timeout.next = sentinel;
+        sentinel.previous.next = timeout;
+        sentinel.previous = timeout;
+    }
+
+    private synchronized boolean cancel(Timeout timeout)
+    {
+        if (timeout.next == null)
+        {
+            return false;
+        }
+
+        unlink(timeout);
+        pending--;
+        return true;
+    }
+
+    @GuardedBy("this")
+    private void unlink(Timeout timeout)
+    {
+        levelSizes[timeout.level]--;
+        timeout.previous.next = timeout.next;
+        timeout.next.previous = timeout.previous;
+        timeout.previous = null;
+        timeout.next = null;
+    }
+
+    private void run()
+    {
+        while (!Thread.currentThread().isInterrupted())
+        {
+            try
+            {
+                synchronized (this)
+                {
+                    while (pending == 0)
+                    {
+                        wait();
+                    }
+
+                    long sleep = (currentTick + 1) * tickNanos - (ticker.read() - origin);
+                    if (sleep > 0)
+                    {
+                        TimeUnit.NANOSECONDS.timedWait(this, sleep);
+                    }
+                }
+                expire();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Turns the wheel up to the current time, and hands off the tasks whose deadline passed to the executor of the tasks.
+     *
+     * @return the number of tasks expired
+     */
+    @VisibleForTesting
+    int expire()
+    {
+        List<Timeout> expired = new ArrayList<>();
+
+        synchronized (this)
+        {
+            long now = (ticker.read() - origin) / tickNanos;
+
+            if (pending == 0)
+            {
+                // nothing to move down or expire on the way
+                currentTick = Math.max(currentTick, now);
+            }
+
+            while (currentTick < now)
+            {
+                skipIdleTicks(now);
+                currentTick++;
+                cascade();
+
+                Timeout sentinel = wheel[0][(int) currentTick & SLOT_MASK];
+                while (sentinel.next != sentinel)
+                {
+                    Timeout timeout = sentinel.next;
+                    unlink(timeout);
+                    pending--;
+                    expired.add(timeout);
+                }
+            }
+        }
+
+        for (Timeout timeout : expired)
+        {
+            try
+            {
+                taskExecutor.execute(timeout::run);
+            }
+            catch (RejectedExecutionException e)
+            {
+                LOG.warn("Timeout task rejected, running it on the timing wheel", e);
+                timeout.run();
+            }
+        }
+        return expired.size();
+    }
+
+    /**
+     * Moves the wheel just before the next tick on which a timeout may expire or move down, when the lowest levels are empty.
+     */
+    @GuardedBy("this")
+    private void skipIdleTicks(long now)
+    {
+        int level = 0;
+        while (level < LEVELS && levelSizes[level] == 0)
+        {
+            level++;
+        }
+
+        if (level == 0)
+        {
+            return;
+        }
+        if (level == LEVELS)
+        {
+            currentTick = now - 1;
+            return;
+        }
+
+        int shift = SLOT_BITS * level;
+        long next = ((currentTick >>> shift) + 1) << shift;
+        currentTick = Math.max(currentTick, Math.min(now, next) - 1);
+    }
+
+    /**
+     * Moves the timeouts of the slots the wheel just reached on the upper levels down to the lower levels.
+     */
+    @GuardedBy("this")
+    private void cascade()
+    {
+        for (int level = 1; level < LEVELS; level++)
+        {
+            int shift = SLOT_BITS * level;
+            if ((currentTick & ((1L << shift) - 1)) != 0)
+            {
+                return;
+            }
+
+            Timeout sentinel = wheel[level][(int) (currentTick >>> shift) & SLOT_MASK];
+            Timeout timeout = sentinel.next;
+            sentinel.next = sentinel;
+            sentinel.previous = sentinel;
+
+            while (timeout != sentinel)
+            {
+                Timeout next = timeout.next;
+                levelSizes[level]--;
+                // the slot of the current tick is processed right after
+                add(timeout, currentTick);
+                timeout = next;
+            }
+        }
+    }
+
+    /**
+     * A task waiting for its deadline.
+     */
+    @ThreadSafe
+    public static final class Timeout
+    {
+        private final TimeoutService service;
+        private final Runnable task;
+        private final long deadline;
+
+        @GuardedBy("service")
+        private int level;
+
+        /**
+         * The neighbours in the slot, both <code>null</code> once the timeout expired or was cancelled.
+         */
+        @GuardedBy("service")
+        private Timeout previous;
+
+        @GuardedBy("service")
+        private Timeout next;
+
+        private Timeout(TimeoutService service, Runnable task, long deadline)
+        {
+            this.service = service;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return whether the task was prevented from running; <code>false</code> if it already ran or was cancelled
+         */
+        public boolean cancel()
+        {
+            return service.cancel(this);
+        }
+
+        private void run()
+        {
+            try
+            {
+                task.run();
+            }
+            catch (RuntimeException e)
+            {
+                LOG.warn("Timeout task failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Runs a command over a list of arguments too long for one command line, like <code>xargs</code>: the arguments are split into runs that
+ * fit the <code>ARG_MAX</code> of the system once the command and its environment are counted, and hold at most <code>maxArgs</code>
+ * arguments, and every run is appended to the arguments of the command and executed on a {@link CommandScheduler}, which bounds how many
+ * run at once.
+ * <p>
+ * The first run that fails stops all the others, through a child of the {@link CommandContext} the arguments are submitted under.
+ */
+@ThreadSafe
+public class XargsExecutor
+{
+    private final CommandScheduler scheduler;
+    private final int maxArgs;
+
+    /**
+     * @param maxConcurrency the maximum number of runs executing at once
+     * @param maxArgs the maximum number of arguments of a run
+     */
+    public XargsExecutor(Executor executor, int maxConcurrency, int maxArgs)
+    {
+        this(new CommandScheduler(executor, maxConcurrency), maxArgs);
+    }
+
+    /**
+     * @param scheduler the scheduler the runs are submitted to, which may be shared with other commands
+     * @param maxArgs the maximum number of arguments of a run
+     */
+    public XargsExecutor(CommandScheduler scheduler, int maxArgs)
+    {
+        this.scheduler = requireNonNull(scheduler, "scheduler is null");
+        checkArgument(maxArgs > 0, "maxArgs must be positive");
+        this.maxArgs = maxArgs;
+    }
+
+    /**
+     * Runs the command over the given arguments; nothing is run if there are none.
+     *
+     * @throws CommandFailedException the failure of the first run that failed
+     */
+    public XargsResult execute(Command command, List<String> arguments) throws CommandFailedException
+    {
+        ListenableFuture<XargsResult> future = submit(command, arguments, null);
+
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException e)
+        {
+            Throwables.propagateIfPossible(e.getCause(), CommandFailedException.class);
+            throw new CommandFailedException(command, "unexpected exception", e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new CommandFailedException(command, "interrupted", e);
+        }
+        finally
+        {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Submits the runs of the command over the given arguments; nothing is run if there are none. Cancelling the returned future stops all
+     * the runs.
+     *
+     * @param context the context to run under, or <code>null</code>
+     * @throws IllegalArgumentException if an argument does not fit on a command line
+     */
+    public ListenableFuture<XargsResult> submit(Command command, List<String> arguments, CommandContext context)
+    {
+        requireNonNull(command, "command is null");
+        requireNonNull(arguments, "arguments is null");
+
+        long start = System.nanoTime();
+        List<List<String>> runs = ArgumentPartitioner.forCommand(command, maxArgs).partition(arguments);
+        CommandContext batch = context != null ? context.newChild() : CommandContext.create();
+
+        List<ListenableFuture<CommandResult>> results = new ArrayList<>(runs.size());
+        for (List<String> run : runs)
+        {
+            results.add(scheduler.submit(command.addArgs(run), batch));
+        }
+
+        SettableFuture<XargsResult> result = SettableFuture.create();
+        AtomicInteger remaining = new AtomicInteger(results.size());
+
+        FutureCallback<CommandResult> collect = new FutureCallback<CommandResult>()
+        {
+            @Override
+            public void onSuccess(CommandResult ignored)
+            {
+                if (remaining.decrementAndGet() == 0)
+                {
+                    result.set(new XargsResult(Lists.transform(results, Futures::getUnchecked), System.nanoTime() - start));
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable failure)
+            {
+                // the runs stopped by the cancellation of the batch fail after this one, and are ignored
+                result.setException(failure);
+            }
+        };
+        results.forEach(run -> Futures.addCallback(run, collect, directExecutor()));
+
+        if (results.isEmpty())
+        {
+            result.set(new XargsResult(ImmutableList.of(), System.nanoTime() - start));
+        }
+
+        // stops what is left after a failure or a cancellation, and forgets the batch in the parent context
+        result.addListener(batch::cancel, directExecutor());
+        return result;
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("scheduler", scheduler)
+                .add("maxArgs", maxArgs)
+                .toString();
+    }
+}
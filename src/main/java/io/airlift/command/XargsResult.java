@@ -0,0 +1,111 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.util.Objects.requireNonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Objects;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The result of an {@link XargsExecutor}: one {@link CommandResult} per run of arguments, in the order of the arguments.
+ */
+@Immutable
+public class XargsResult
+{
+	private final ImmutableList<CommandResult> results;
+	private final Long elapsedTime;
+
+	public XargsResult(List<CommandResult> results, Long elapsedTime)
+	{
+		this.results = ImmutableList.copyOf(requireNonNull(results, "results is null"));
+		this.elapsedTime = elapsedTime;
+	}
+
+	public ImmutableList<CommandResult> getResults()
+	{
+		return results;
+	}
+
+	public ImmutableList<Integer> getExitCodes()
+	{
+		return results.stream().map(CommandResult::getExitCode).collect(toImmutableList());
+	}
+
+	/**
+	 * @return the outputs of all the runs, concatenated in order
+	 */
+	public byte[] getOutputBytes()
+	{
+		ByteArrayOutputStream output = new ByteArrayOutputStream(results.stream().mapToInt(CommandResult::getOutputSize).sum());
+		results.forEach(result -> output.write(result.getOutputBytes(), 0, result.getOutputSize()));
+		return output.toByteArray();
+	}
+
+	/**
+	 * @return the outputs of all the runs, concatenated in order and decoded as UTF-8
+	 */
+	public String getCommandOutput()
+	{
+		StringBuilder output = new StringBuilder();
+		results.forEach(result -> output.append(result.getCommandOutput()));
+		return output.toString();
+	}
+
+	/**
+	 * @return the wall time in nanoseconds from the submission of the first run to the end of the last one
+	 */
+	public Long getElapsedTime()
+	{
+		return elapsedTime;
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+		{
+			return true;
+		}
+
+		if (obj == null || getClass() != obj.getClass())
+		{
+			return false;
+		}
+
+		return Objects.equals(results, ((XargsResult) obj).results);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return results.hashCode();
+	}
+
+	@Override
+	public String toString()
+	{
+		return MoreObjects.toStringHelper(this)
+				.add("runs", results.size())
+				.add("elapsedTime", elapsedTime)
+				.toString();
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+import io.airlift.command.ProcessState;
+
+/**
+ * A compact binary format for series of {@link ProcessState} samples, much smaller and faster than their JAXB or Java serialization forms.
+ * <p>
+ * A stream starts with a 4-byte header: the magic bytes <code>PSC</code> and the version of the format. Each sample then starts with a
+ * byte of flags telling which optional parts are present, followed by its fields. Integer fields are written as the zig-zag varint of their
+ * difference with the same field of the previous sample, so counters and timestamps that move slowly take one or two bytes. Floating point
+ * fields that hold whole numbers, like most sizes and counters, are written the same way with a low tag bit of zero; other values are
+ * written as a tag byte of one followed by the bit-reversed XOR with the previous value, which is small when they share their high bits.
+ * The id is only written when it changes.
+ * <p>
+ * Version 2 added the optional {@link io.airlift.command.ProcessIoState}, and version 3 the rates derived by the probes, at the end of each
+ * sample; streams of the older versions are still read.
+ * <p>
+ * See {@link ProcessStateEncoder} and {@link ProcessStateDecoder} for the streaming API.
+ */
+public final class ProcessStateCodec
+{
+    static final byte[] MAGIC = {'P', 'S', 'C'};
+    static final int VERSION = 3;
+
+    // sample flags
+    static final int ID_CHANGED = 1;
+    static final int NULL_ID = 1 << 1;
+    static final int CPU_STATE = 1 << 2;
+    static final int CPU_DATETIME = 1 << 3;
+    static final int MEMORY_STATE = 1 << 4;
+    static final int MEMORY_DATETIME = 1 << 5;
+    static final int PROCESS_TIME = 1 << 6;
+    static final int IO_STATE = 1 << 7;
+
+    // the slots of the fields whose previous value is kept
+    static final int PID = 0;
+    static final int DATETIME = 1;
+    static final int THREADS = 2;
+    static final int KERNEL_SCHEDULING_PRIORITY = 3;
+    static final int TTY = 4;
+    static final int PROCESSOR = 5;
+    static final int PRIORITY = 6;
+    static final int NICE = 7;
+    static final int FD = 8;
+    static final int STATE = 9;
+
+    static final int CPU_PID = 10;
+    static final int CPU_TIME = 11;
+    static final int CPU_USER = 12;
+    static final int CPU_LAST_TIME = 13;
+    static final int CPU_PERCENT = 14;
+    static final int CPU_START_TIME = 15;
+    static final int CPU_TOTAL = 16;
+    static final int CPU_SYS = 17;
+
+    static final int MEMORY_PID = 18;
+    static final int MEMORY_TIME = 19;
+    static final int MEMORY_RESIDENT = 20;
+    static final int MEMORY_PAGE_FAULTS = 21;
+    static final int MEMORY_MAJOR_FAULTS = 22;
+    static final int MEMORY_SHARE = 23;
+    static final int MEMORY_MINOR_FAULTS = 24;
+    static final int MEMORY_SIZE = 25;
+
+    static final int TIME_PID = 26;
+    static final int TIME_DATETIME = 27;
+    static final int TIME_USER = 28;
+    static final int TIME_START_TIME = 29;
+    static final int TIME_TOTAL = 30;
+    static final int TIME_SYS = 31;
+
+    static final int IO_PID = 32;
+    static final int IO_DATETIME = 33;
+    static final int IO_READ_BYTES = 34;
+    static final int IO_WRITE_BYTES = 35;
+    static final int IO_READ_SYSCALLS = 36;
+    static final int IO_WRITE_SYSCALLS = 37;
+    static final int IO_VOLUNTARY_SWITCHES = 38;
+    static final int IO_INVOLUNTARY_SWITCHES = 39;
+    static final int IO_RUN_QUEUE_DELAY = 40;
+    static final int IO_READ_BYTES_RATE = 41;
+    static final int IO_WRITE_BYTES_RATE = 42;
+    static final int IO_READ_SYSCALLS_RATE = 43;
+    static final int IO_WRITE_SYSCALLS_RATE = 44;
+    static final int IO_VOLUNTARY_SWITCHES_RATE = 45;
+    static final int IO_INVOLUNTARY_SWITCHES_RATE = 46;
+    static final int IO_RUN_QUEUE_DELAY_RATE = 47;
+
+    static final int CPU_CORES = 48;
+    static final int PAGE_FAULTS_RATE = 49;
+    static final int MAJOR_FAULTS_RATE = 50;
+    static final int FD_GROWTH_RATE = 51;
+
+    static final int FIELDS = 52;
+
+    /**
+     * The largest encoded sample without its id: the flags and a varint of at most 10 bytes, plus a tag byte, per field.
+     */
+    static final int MAX_SAMPLE_SIZE = 1 + FIELDS * 11;
+
+    private ProcessStateCodec()
+    {
+    }
+
+    public static byte[] encode(Iterable<ProcessState> samples)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (ProcessStateEncoder encoder = new ProcessStateEncoder(out))
+        {
+            for (ProcessState sample : samples)
+            {
+                encoder.write(sample);
+            }
+        }
+        catch (IOException e)
+        {
+            // a byte array stream does not fail
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    public static List<ProcessState> decode(byte[] bytes) throws IOException
+    {
+        ImmutableList.Builder<ProcessState> samples = ImmutableList.builder();
+
+        try (ProcessStateDecoder decoder = new ProcessStateDecoder(new ByteArrayInputStream(bytes)))
+        {
+            ProcessState sample;
+            while ((sample = decoder.read()) != null)
+            {
+                samples.add(sample);
+            }
+        }
+        return samples.build();
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.codec;
+
+import static io.airlift.command.codec.ProcessStateCodec.CPU_CORES;
+import static io.airlift.command.codec.ProcessStateCodec.CPU_DATETIME;
+import static io.airlift.command.codec.ProcessStateCodec.CPU_LAST_TIME;
+import static io.airlift.command.codec.ProcessStateCodec.CPU_PERCENT;
+import static io.airlift.command.codec.ProcessStateCodec.CPU_PID;
+import static io.airlift.command.codec.ProcessStateCodec.CPU_START_TIME;
+import static io.airlift.command.codec.ProcessStateCodec.CPU_STATE;
+import static io.airlift.command.codec.ProcessStateCodec.CPU_SYS;
+import static io.airlift.command.codec.ProcessStateCodec.CPU_TIME;
+import static io.airlift.command.codec.ProcessStateCodec.CPU_TOTAL;
+import static io.airlift.command.codec.ProcessStateCodec.CPU_USER;
+import static io.airlift.command.codec.ProcessStateCodec.DATETIME;
+import static io.airlift.command.codec.ProcessStateCodec.FD;
+import static io.airlift.command.codec.ProcessStateCodec.FD_GROWTH_RATE;
+import static io.airlift.command.codec.ProcessStateCodec.FIELDS;
+import static io.airlift.command.codec.ProcessStateCodec.ID_CHANGED;
+import static io.airlift.command.codec.ProcessStateCodec.IO_DATETIME;
+import static io.airlift.command.codec.ProcessStateCodec.IO_INVOLUNTARY_SWITCHES;
+import static io.airlift.command.codec.ProcessStateCodec.IO_INVOLUNTARY_SWITCHES_RATE;
+import static io.airlift.command.codec.ProcessStateCodec.IO_PID;
+import static io.airlift.command.codec.ProcessStateCodec.IO_READ_BYTES;
+import static io.airlift.command.codec.ProcessStateCodec.IO_READ_BYTES_RATE;
+import static io.airlift.command.codec.ProcessStateCodec.IO_READ_SYSCALLS;
+import static io.airlift.command.codec.ProcessStateCodec.IO_READ_SYSCALLS_RATE;
+import static io.airlift.command.codec.ProcessStateCodec.IO_RUN_QUEUE_DELAY;
+import static io.airlift.command.codec.ProcessStateCodec.IO_RUN_QUEUE_DELAY_RATE;
+import static io.airlift.command.codec.ProcessStateCodec.IO_STATE;
+import static io.airlift.command.codec.ProcessStateCodec.IO_VOLUNTARY_SWITCHES;
+import static io.airlift.command.codec.ProcessStateCodec.IO_VOLUNTARY_SWITCHES_RATE;
+import static io.airlift.command.codec.ProcessStateCodec.IO_WRITE_BYTES;
+import static io.airlift.command.codec.ProcessStateCodec.IO_WRITE_BYTES_RATE;
+import static io.airlift.command.codec.ProcessStateCodec.IO_WRITE_SYSCALLS;
+import static io.airlift.command.codec.ProcessStateCodec.IO_WRITE_SYSCALLS_RATE;
+import static io.airlift.command.codec.ProcessStateCodec.KERNEL_SCHEDULING_PRIORITY;
+import static io.airlift.command.codec.ProcessStateCodec.MAGIC;
+import static io.airlift.command.codec.ProcessStateCodec.MAJOR_FAULTS_RATE;
+import static io.airlift.command.codec.ProcessStateCodec.MEMORY_DATETIME;
+import static io.airlift.command.codec.ProcessStateCodec.MEMORY_MAJOR_FAULTS;
+import static io.airlift.command.codec.ProcessStateCodec.MEMORY_MINOR_FAULTS;
+import static io.airlift.command.codec.ProcessStateCodec.MEMORY_PAGE_FAULTS;
+import static io.airlift.command.codec.ProcessStateCodec.MEMORY_PID;
+import static io.airlift.command.codec.ProcessStateCodec.MEMORY_RESIDENT;
+import static io.airlift.command.codec.ProcessStateCodec.MEMORY_SHARE;
+import static io.airlift.command.codec.ProcessStateCodec.MEMORY_SIZE;
+import static io.airlift.command.codec.ProcessStateCodec.MEMORY_STATE;
+import static io.airlift.command.codec.ProcessStateCodec.MEMORY_TIME;
+import static io.airlift.command.codec.ProcessStateCodec.NICE;
+import static io.airlift.command.codec.ProcessStateCodec.NULL_ID;
+import static io.airlift.command.codec.ProcessStateCodec.PAGE_FAULTS_RATE;
+import static io.airlift.command.codec.ProcessStateCodec.PID;
+import static io.airlift.command.codec.ProcessStateCodec.PRIORITY;
+import static io.airlift.command.codec.ProcessStateCodec.PROCESSOR;
+import static io.airlift.command.codec.ProcessStateCodec.PROCESS_TIME;
+import static io.airlift.command.codec.ProcessStateCodec.STATE;
+import static io.airlift.command.codec.ProcessStateCodec.THREADS;
+import static io.airlift.command.codec.ProcessStateCodec.TIME_DATETIME;
+import static io.airlift.command.codec.ProcessStateCodec.TIME_PID;
+import static io.airlift.command.codec.ProcessStateCodec.TIME_START_TIME;
+import static io.airlift.command.codec.ProcessStateCodec.TIME_SYS;
+import static io.airlift.command.codec.ProcessStateCodec.TIME_TOTAL;
+import static io.airlift.command.codec.ProcessStateCodec.TIME_USER;
+import static io.airlift.command.codec.ProcessStateCodec.TTY;
+import static io.airlift.command.codec.ProcessStateCodec.VERSION;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import io.airlift.command.ProcessCpuState;
+import io.airlift.command.ProcessIoState;
+import io.airlift.command.ProcessMemoryState;
+import io.airlift.command.ProcessState;
+import io.airlift.command.ProcessState.ProcState;
+import io.airlift.command.ProcessTime;
+
+/**
+ * Reads the {@link ProcessState} samples written by a {@link ProcessStateEncoder}, one at a time.
+ */
+@NotThreadSafe
+public class ProcessStateDecoder
+        implements Closeable
+{
+    private static final int BUFFER_SIZE = 8192;
+    private static final ProcState[] STATES = ProcState.values();
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final long[] previous = new long[FIELDS];
+    private int position;
+    private int limit;
+    private String previousId;
+    /**
+     * The version of the stream, zero until its header is read.
+     */
+    private int version;
+
+    public ProcessStateDecoder(InputStream in)
+    {
+        this.in = requireNonNull(in, "in is null");
+    }
+
+    /**
+     * @return the next sample, or <code>null</code> at the end of the stream
+     * @throws IOException if the stream is not in a supported format, or ends in the middle of a sample
+     */
+    public ProcessState read() throws IOException
+    {
+        if (version == 0)
+        {
+            readHeader();
+        }
+
+        if (position == limit && !fill())
+        {
+            return null;
+        }
+
+        int flags = readByte();
+
+        String id = previousId;
+        if ((flags & ID_CHANGED) != 0)
+        {
+            id = readString();
+        }
+        else if ((flags & NULL_ID) != 0)
+        {
+            id = null;
+        }
+        previousId = id;
+
+        ProcessState sample = new ProcessState()
+                .setId(id)
+                .setPid(readLong(PID))
+                .setDatetime(readLong(DATETIME))
+                .setNumberOfActiveThreads(readLong(THREADS))
+                .setKernelSchedulingPriority((int) readLong(KERNEL_SCHEDULING_PRIORITY))
+                .setTty((int) readLong(TTY))
+                .setProcessor((int) readLong(PROCESSOR))
+                .setPriority((int) readLong(PRIORITY))
+                .setNice((int) readLong(NICE))
+                .setFd(readLong(FD))
+                .setState(readState());
+
+        if ((flags & CPU_STATE) != 0)
+        {
+            sample.setCpuState(new ProcessCpuState()
+                    .setPid(readLong(CPU_PID))
+                    .setDatetime((flags & CPU_DATETIME) != 0 ? new Date(readLong(CPU_TIME)) : null)
+                    .setUser(readDouble(CPU_USER))
+                    .setLastTime(readLong(CPU_LAST_TIME))
+                    .setPercent(readDouble(CPU_PERCENT))
+                    .setStartTime(readLong(CPU_START_TIME))
+                    .setTotal(readDouble(CPU_TOTAL))
+                    .setSys(readDouble(CPU_SYS)));
+        }
+
+        if ((flags & MEMORY_STATE) != 0)
+        {
+            sample.setMemoryState(new ProcessMemoryState()
+                    .setPid(readLong(MEMORY_PID))
+                    .setDatetime((flags & MEMORY_DATETIME) != 0 ? new Date(readLong(MEMORY_TIME)) : null)
+                    .setResident(readDouble(MEMORY_RESIDENT))
+                    .setPageFaults(readDouble(MEMORY_PAGE_FAULTS))
+                    .setMajorFaults(readDouble(MEMORY_MAJOR_FAULTS))
+                    .setShare(readDouble(MEMORY_SHARE))
+                    .setMinorFaults(readDouble(MEMORY_MINOR_FAULTS))
+                    .setSize(readDouble(MEMORY_SIZE)));
+        }
+
+        if ((flags & PROCESS_TIME) != 0)
+        {
+            sample.setProcessTime(new ProcessTime()
+                    .setPid(readLong(TIME_PID))
+                    .setDatetime(readLong(TIME_DATETIME))
+                    .setUser(readLong(TIME_USER))
+                    .setStartTime(readLong(TIME_START_TIME))
+                    .setTotal(readLong(TIME_TOTAL))
+                    .setSys(readLong(TIME_SYS)));
+        }
+
+        if ((flags & IO_STATE) != 0)
+        {
+            sample.setIoState(new ProcessIoState()
+                    .setPid(readLong(IO_PID))
+                    .setDatetime(readLong(IO_DATETIME))
+                    .setReadBytes(readLong(IO_READ_BYTES))
+                    .setWriteBytes(readLong(IO_WRITE_BYTES))
+                    .setReadSyscalls(readLong(IO_READ_SYSCALLS))
+                    .setWriteSyscalls(readLong(IO_WRITE_SYSCALLS))
+                    .setVoluntaryContextSwitches(readLong(IO_VOLUNTARY_SWITCHES))
+                    .setInvoluntaryContextSwitches(readLong(IO_INVOLUNTARY_SWITCHES))
+                    .setRunQueueDelay(readLong(IO_RUN_QUEUE_DELAY))
+                    .setReadBytesPerSecond(readDouble(IO_READ_BYTES_RATE))
+                    .setWriteBytesPerSecond(readDouble(IO_WRITE_BYTES_RATE))
+                    .setReadSyscallsPerSecond(readDouble(IO_READ_SYSCALLS_RATE))
+                    .setWriteSyscallsPerSecond(readDouble(IO_WRITE_SYSCALLS_RATE))
+                    .setVoluntaryContextSwitchesPerSecond(readDouble(IO_VOLUNTARY_SWITCHES_RATE))
+                    .setInvoluntaryContextSwitchesPerSecond(readDouble(IO_INVOLUNTARY_SWITCHES_RATE))
+                    .setRunQueueDelayPerSecond(readDouble(IO_RUN_QUEUE_DELAY_RATE)));
+        }
+
+        if (version >= 3)
+        {
+            sample.setCpuCores(readDouble(CPU_CORES))
+                    .setPageFaultsPerSecond(readDouble(PAGE_FAULTS_RATE))
+                    .setMajorFaultsPerSecond(readDouble(MAJOR_FAULTS_RATE))
+                    .setFdGrowthPerSecond(readDouble(FD_GROWTH_RATE));
+        }
+        return sample;
+    }
+
+    private void readHeader() throws IOException
+    {
+        for (byte magic : MAGIC)
+        {
+            if (readByte() != (magic & 0xFF))
+            {
+                throw new IOException("not a stream of process state samples");
+            }
+        }
+
+        int version = readByte();
+        if (version < 1 || version > VERSION)
+        {
+            throw new IOException(format("unsupported version %s of the process state format", version));
+        }
+        this.version = version;
+    }
+
+    private ProcState readState() throws IOException
+    {
+        long state = readLong(STATE);
+        if (state < 0 || state > STATES.length)
+        {
+            throw new IOException(format("invalid process state %s", state));
+        }
+        return state == 0 ? null : STATES[(int) state - 1];
+    }
+
+    private long readLong(int field) throws IOException
+    {
+        long zigzag = readVarint();
+        long value = previous[field] + ((zigzag >>> 1) ^ -(zigzag & 1));
+        previous[field] = value;
+        return value;
+    }
+
+    private double readDouble(int field) throws IOException
+    {
+        double last = Double.longBitsToDouble(previous[field]);
+        long tagged = readVarint();
+        double value;
+
+        if ((tagged & 1) == 0)
+        {
+            long zigzag = tagged >>> 1;
+            value = (ProcessStateEncoder.isIntegral(last) ? (long) last : 0) + ((zigzag >>> 1) ^ -(zigzag & 1));
+        }
+        else if (tagged == 1)
+        {
+            value = Double.longBitsToDouble(Long.reverse(readVarint()) ^ previous[field]);
+        }
+        else
+        {
+            throw new IOException(format("invalid floating point tag %s", tagged));
+        }
+
+        previous[field] = Double.doubleToLongBits(value);
+        return value;
+    }
+
+    private long readVarint() throws IOException
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+
+    private String readString() throws IOException
+    {
+        long length = readVarint();
+        if (length < 0 || length > Integer.MAX_VALUE)
+        {
+            throw new IOException(format("invalid string length %s", length));
+        }
+
+        byte[] bytes = new byte[(int) length];
+        int offset = 0;
+        while (offset < bytes.length)
+        {
+            if (position == limit && !fill())
+            {
+                throw new EOFException("truncated process state sample");
+            }
+
+            int count = Math.min(bytes.length - offset, limit - position);
+            System.arraycopy(buffer, position, bytes, offset, count);
+            position += count;
+            offset += count;
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    private int readByte() throws IOException
+    {
+        if (position == limit && !fill())
+        {
+            throw new EOFException("truncated process state sample");
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException
+    {
+        int read = in.read(buffer);
+        if (read <= 0)
+        {
+            return false;
+        }
+
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        in.close();
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.codec;
+
+import static io.airlift.command.codec.ProcessStateCodec.CPU_CORES;
+import static io.airlift.command.codec.ProcessStateCodec.CPU_DATETIME;
+import static io.airlift.command.codec.ProcessStateCodec.CPU_LAST_TIME;
+import static io.airlift.command.codec.ProcessStateCodec.CPU_PERCENT;
+import static io.airlift.command.codec.ProcessStateCodec.CPU_PID;
+import static io.airlift.command.codec.ProcessStateCodec.CPU_START_TIME;
+import static io.airlift.command.codec.ProcessStateCodec.CPU_STATE;
+import static io.airlift.command.codec.ProcessStateCodec.CPU_SYS;
+import static io.airlift.command.codec.ProcessStateCodec.CPU_TIME;
+import static io.airlift.command.codec.ProcessStateCodec.CPU_TOTAL;
+import static io.airlift.command.codec.ProcessStateCodec.CPU_USER;
+import static io.airlift.command.codec.ProcessStateCodec.DATETIME;
+import static io.airlift.command.codec.ProcessStateCodec.FD;
+import static io.airlift.command.codec.ProcessStateCodec.FD_GROWTH_RATE;
+import static io.airlift.command.codec.ProcessStateCodec.FIELDS;
+import static io.airlift.command.codec.ProcessStateCodec.ID_CHANGED;
+import static io.airlift.command.codec.ProcessStateCodec.IO_DATETIME;
+import static io.airlift.command.codec.ProcessStateCodec.IO_INVOLUNTARY_SWITCHES;
+import static io.airlift.command.codec.ProcessStateCodec.IO_INVOLUNTARY_SWITCHES_RATE;
+import static io.airlift.command.codec.ProcessStateCodec.IO_PID;
+import static io.airlift.command.codec.ProcessStateCodec.IO_READ_BYTES;
+import static io.airlift.command.codec.ProcessStateCodec.IO_READ_BYTES_RATE;
+import static io.airlift.command.codec.ProcessStateCodec.IO_READ_SYSCALLS;
+import static io.airlift.command.codec.ProcessStateCodec.IO_READ_SYSCALLS_RATE;
+import static io.airlift.command.codec.ProcessStateCodec.IO_RUN_QUEUE_DELAY;
+import static io.airlift.command.codec.ProcessStateCodec.IO_RUN_QUEUE_DELAY_RATE;
+import static io.airlift.command.codec.ProcessStateCodec.IO_STATE;
+import static io.airlift.command.codec.ProcessStateCodec.IO_VOLUNTARY_SWITCHES;
+import static io.airlift.command.codec.ProcessStateCodec.IO_VOLUNTARY_SWITCHES_RATE;
+import static io.airlift.command.codec.ProcessStateCodec.IO_WRITE_BYTES;
+import static io.airlift.command.codec.ProcessStateCodec.IO_WRITE_BYTES_RATE;
+import static io.airlift.command.codec.ProcessStateCodec.IO_WRITE_SYSCALLS;
+import static io.airlift.command.codec.ProcessStateCodec.IO_WRITE_SYSCALLS_RATE;
+import static io.airlift.command.codec.ProcessStateCodec.KERNEL_SCHEDULING_PRIORITY;
+import static io.airlift.command.codec.ProcessStateCodec.MAGIC;
+import static io.airlift.command.codec.ProcessStateCodec.MAJOR_FAULTS_RATE;
+import static io.airlift.command.codec.ProcessStateCodec.MAX_SAMPLE_SIZE;
+import static io.airlift.command.codec.ProcessStateCodec.MEMORY_DATETIME;
+import static io.airlift.command.codec.ProcessStateCodec.MEMORY_MAJOR_FAULTS;
+import static io.airlift.command.codec.ProcessStateCodec.MEMORY_MINOR_FAULTS;
+import static io.airlift.command.codec.ProcessStateCodec.MEMORY_PAGE_FAULTS;
+import static io.airlift.command.codec.ProcessStateCodec.MEMORY_PID;
+import static io.airlift.command.codec.ProcessStateCodec.MEMORY_RESIDENT;
+import static io.airlift.command.codec.ProcessStateCodec.MEMORY_SHARE;
+import static io.airlift.command.codec.ProcessStateCodec.MEMORY_SIZE;
+import static io.airlift.command.codec.ProcessStateCodec.MEMORY_STATE;
+import static io.airlift.command.codec.ProcessStateCodec.MEMORY_TIME;
+import static io.airlift.command.codec.ProcessStateCodec.NICE;
+import static io.airlift.command.codec.ProcessStateCodec.NULL_ID;
+import static io.airlift.command.codec.ProcessStateCodec.PAGE_FAULTS_RATE;
+import static io.airlift.command.codec.ProcessStateCodec.PID;
+import static io.airlift.command.codec.ProcessStateCodec.PRIORITY;
+import static io.airlift.command.codec.ProcessStateCodec.PROCESSOR;
+import static io.airlift.command.codec.ProcessStateCodec.PROCESS_TIME;
+import static io.airlift.command.codec.ProcessStateCodec.STATE;
+import static io.airlift.command.codec.ProcessStateCodec.THREADS;
+import static io.airlift.command.codec.ProcessStateCodec.TIME_DATETIME;
+import static io.airlift.command.codec.ProcessStateCodec.TIME_PID;
+import static io.airlift.command.codec.ProcessStateCodec.TIME_START_TIME;
+import static io.airlift.command.codec.ProcessStateCodec.TIME_SYS;
+import static io.airlift.command.codec.ProcessStateCodec.TIME_TOTAL;
+import static io.airlift.command.codec.ProcessStateCodec.TIME_USER;
+import static io.airlift.command.codec.ProcessStateCodec.TTY;
+import static io.airlift.command.codec.ProcessStateCodec.VERSION;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.Objects;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import io.airlift.command.ProcessCpuState;
+import io.airlift.command.ProcessIoState;
+import io.airlift.command.ProcessMemoryState;
+import io.airlift.command.ProcessState;
+import io.airlift.command.ProcessTime;
+
+/**
+ * Writes {@link ProcessState} samples to a stream in the format of {@link ProcessStateCodec}. Each sample is encoded against the previous
+ * one, so the samples of a stream should come from the same process, in time order, for the best compression.
+ * <p>
+ * The samples are buffered: call {@link #flush()} to push them to the stream.
+ */
+@NotThreadSafe
+public class ProcessStateEncoder
+        implements Closeable, Flushable
+{
+    private static final int BUFFER_SIZE = 8192;
+    private static final double MAX_INTEGRAL = 1L << 53;
+    private static final long NEGATIVE_ZERO = Double.doubleToRawLongBits(-0.0);
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final long[] previous = new long[FIELDS];
+    private int position;
+    private String previousId;
+
+    public ProcessStateEncoder(OutputStream out) throws IOException
+    {
+        this.out = requireNonNull(out, "out is null");
+
+        System.arraycopy(MAGIC, 0, buffer, 0, MAGIC.length);
+        buffer[MAGIC.length] = VERSION;
+        position = MAGIC.length + 1;
+    }
+
+    public void write(ProcessState sample) throws IOException
+    {
+        requireNonNull(sample, "sample is null");
+
+        String id = sample.getId();
+        ProcessCpuState cpu = sample.getCpuState();
+        ProcessMemoryState memory = sample.getMemoryState();
+        ProcessTime time = sample.getProcessTime();
+        ProcessIoState io = sample.getIoState();
+
+        int flags = 0;
+        if (!Objects.equals(id, previousId))
+        {
+            flags |= id == null ? NULL_ID : ID_CHANGED;
+        }
+        if (cpu != null)
+        {
+            flags |= CPU_STATE | (cpu.getDatetime() != null ? CPU_DATETIME : 0);
+        }
+        if (memory != null)
+        {
+            flags |= MEMORY_STATE | (memory.getDatetime() != null ? MEMORY_DATETIME : 0);
+        }
+        if (time != null)
+        {
+            flags |= PROCESS_TIME;
+        }
+
+        if (io != null)
+        {
+            flags |= IO_STATE;
+        }
+
+        ensureCapacity(MAX_SAMPLE_SIZE);
+        buffer[position++] = (byte) flags;
+
+        if ((flags & ID_CHANGED) != 0)
+        {
+            writeString(id);
+        }
+        previousId = id;
+
+        writeLong(PID, sample.getPid());
+        writeLong(DATETIME, sample.getDatetime());
+        writeLong(THREADS, sample.getNumberOfActiveThreads());
+        writeLong(KERNEL_SCHEDULING_PRIORITY, sample.getKernelSchedulingPriority());
+        writeLong(TTY, sample.getTty());
+        writeLong(PROCESSOR, sample.getProcessor());
+        writeLong(PRIORITY, sample.getPriority());
+        writeLong(NICE, sample.getNice());
+        writeLong(FD, sample.getFd());
+        writeLong(STATE, sample.getState() == null ? 0 : sample.getState().ordinal() + 1);
+
+        if (cpu != null)
+        {
+            writeLong(CPU_PID, cpu.getPid());
+            writeDate(CPU_TIME, cpu.getDatetime());
+            writeDouble(CPU_USER, cpu.getUser());
+            writeLong(CPU_LAST_TIME, cpu.getLastTime());
+            writeDouble(CPU_PERCENT, cpu.getPercent());
+            writeLong(CPU_START_TIME, cpu.getStartTime());
+            writeDouble(CPU_TOTAL, cpu.getTotal());
+            writeDouble(CPU_SYS, cpu.getSys());
+        }
+
+        if (memory != null)
+        {
+            writeLong(MEMORY_PID, memory.getPid());
+            writeDate(MEMORY_TIME, memory.getDatetime());
+            writeDouble(MEMORY_RESIDENT, memory.getResident());
+            writeDouble(MEMORY_PAGE_FAULTS, memory.getPageFaults());
+            writeDouble(MEMORY_MAJOR_FAULTS, memory.getMajorFaults());
+            writeDouble(MEMORY_SHARE, memory.getShare());
+            writeDouble(MEMORY_MINOR_FAULTS, memory.getMinorFaults());
+            writeDouble(MEMORY_SIZE, memory.getSize());
+        }
+
+        if (time != null)
+        {
+            writeLong(TIME_PID, time.getPid());
+            writeLong(TIME_DATETIME, time.getDatetime());
+            writeLong(TIME_USER, time.getUser());
+            writeLong(TIME_START_TIME, time.getStartTime());
+            writeLong(TIME_TOTAL, time.getTotal());
+            writeLong(TIME_SYS, time.getSys());
+        }
+
+        if (io != null)
+        {
+            writeLong(IO_PID, io.getPid());
+            writeLong(IO_DATETIME, io.getDatetime());
+            writeLong(IO_READ_BYTES, io.getReadBytes());
+            writeLong(IO_WRITE_BYTES, io.getWriteBytes());
+            writeLong(IO_READ_SYSCALLS, io.getReadSyscalls());
+            writeLong(IO_WRITE_SYSCALLS, io.getWriteSyscalls());
+            writeLong(IO_VOLUNTARY_SWITCHES, io.getVoluntaryContextSwitches());
+            writeLong(IO_INVOLUNTARY_SWITCHES, io.getInvoluntaryContextSwitches());
+            writeLong(IO_RUN_QUEUE_DELAY, io.getRunQueueDelay());
+            writeDouble(IO_READ_BYTES_RATE, io.getReadBytesPerSecond());
+            writeDouble(IO_WRITE_BYTES_RATE, io.getWriteBytesPerSecond());
+            writeDouble(IO_READ_SYSCALLS_RATE, io.getReadSyscallsPerSecond());
+            writeDouble(IO_WRITE_SYSCALLS_RATE, io.getWriteSyscallsPerSecond());
+            writeDouble(IO_VOLUNTARY_SWITCHES_RATE, io.getVoluntaryContextSwitchesPerSecond());
+            writeDouble(IO_INVOLUNTARY_SWITCHES_RATE, io.getInvoluntaryContextSwitchesPerSecond());
+            writeDouble(IO_RUN_QUEUE_DELAY_RATE, io.getRunQueueDelayPerSecond());
+        }
+
+        writeDouble(CPU_CORES, sample.getCpuCores());
+        writeDouble(PAGE_FAULTS_RATE, sample.getPageFaultsPerSecond());
+        writeDouble(MAJOR_FAULTS_RATE, sample.getMajorFaultsPerSecond());
+        writeDouble(FD_GROWTH_RATE, sample.getFdGrowthPerSecond());
+    }
+
+    private void writeLong(int field, long value)
+    {
+        long delta = value - previous[field];
+        previous[field] = value;
+        writeVarint((delta << 1) ^ (delta >> 63));
+    }
+
+    private void writeDate(int field, Date value)
+    {
+        if (value != null)
+        {
+            writeLong(field, value.getTime());
+        }
+    }
+
+    private void writeDouble(int field, double value)
+    {
+        long bits = Double.doubleToLongBits(value);
+        double last = Double.longBitsToDouble(previous[field]);
+        previous[field] = bits;
+
+        if (isIntegral(value))
+        {
+            // most sizes and counters are whole numbers: write them like longs, with the low bit clear
+            long delta = (long) value - (isIntegral(last) ? (long) last : 0);
+            writeVarint(((delta << 1) ^ (delta >> 63)) << 1);
+        }
+        else
+        {
+            buffer[position++] = 1;
+            writeVarint(Long.reverse(bits ^ Double.doubleToLongBits(last)));
+        }
+    }
+
+    static boolean isIntegral(double value)
+    {
+        return Math.abs(value) < MAX_INTEGRAL && value == Math.rint(value) && Double.doubleToRawLongBits(value) != NEGATIVE_ZERO;
+    }
+
+    private void writeVarint(long value)
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeString(String value) throws IOException
+    {
+        byte[] bytes = value.getBytes(UTF_8);
+
+        ensureCapacity(5);
+        writeVarint(bytes.length);
+
+        if (bytes.length > buffer.length - position - MAX_SAMPLE_SIZE)
+        {
+            flushBuffer();
+            out.write(bytes);
+        }
+        else
+        {
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+        ensureCapacity(MAX_SAMPLE_SIZE);
+    }
+
+    private void ensureCapacity(int size) throws IOException
+    {
+        if (buffer.length - position < size)
+        {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException
+    {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            flushBuffer();
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
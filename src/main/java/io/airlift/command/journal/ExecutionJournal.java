@@ -0,0 +1,273 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.journal;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Objects.requireNonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import io.airlift.command.Command;
+import io.airlift.command.CommandFailedException;
+import io.airlift.command.CommandInstrumentation;
+import io.airlift.command.CommandResult;
+import io.airlift.command.CommandTimeoutException;
+import io.airlift.command.CommandTimings;
+import io.airlift.command.journal.JournalEvent.Type;
+
+/**
+ * Records the executions of the commands it instruments in a memory-mapped file, for post-mortem analysis with
+ * {@link ExecutionJournalReader}.
+ * <p>
+ * The file holds a fixed number of fixed-size records and is written as a ring, so it always keeps the latest events. Appending an event
+ * claims a slot with a single atomic increment and writes a few fields to the mapped memory: it neither locks, allocates nor makes a system
+ * call. The operating system writes the pages to disk on its own, so the journal survives a crash of the JVM; {@link #close()} forces them.
+ * <p>
+ * A record is stamped with its sequence before and after its fields are written, and a reader only takes the record if both stamps agree
+ * and did not change while it read the fields. A writer that laps the ring while an older one still writes the same slot waits for it, and
+ * an event older than the one already in its slot is dropped, so two writers never write a slot at once.
+ * <p>
+ * Command ids are stored as ASCII, truncated to {@link #MAX_ID_LENGTH} characters.
+ */
+@ThreadSafe
+public class ExecutionJournal
+        implements CommandInstrumentation, Closeable
+{
+    public static final int MAX_ID_LENGTH = 56;
+
+    static final long MAGIC = 0x434d444a524e4c31L; // CMDJRNL1
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 128;
+
+    // header layout
+    static final int HEADER_MAGIC = 0;
+    static final int HEADER_VERSION = 8;
+    static final int HEADER_RECORD_SIZE = 12;
+    static final int HEADER_CAPACITY = 16;
+
+    // record layout
+    static final int TYPE = 0;
+    static final int ID_LENGTH = 1;
+    static final int PID = 4;
+    static final int SEQUENCE = 8;
+    static final int WALL_TIME = 16;
+    static final int NANO_TIME = 24;
+    static final int EXIT_CODE = 32;
+    static final int END_STAMP = 36;
+    static final int QUEUE_TIME = 40;
+    static final int SPAWN_TIME = 48;
+    static final int RUN_TIME = 56;
+    static final int TOTAL_TIME = 64;
+    static final int COMMAND_ID = 72;
+
+    private final MappedByteBuffer mapped;
+    private final ByteBuffer records;
+    private final int capacity;
+    private final AtomicLong sequence = new AtomicLong();
+    // per slot: 0 when empty, 2 * sequence + 1 while the event is written, 2 * sequence + 2 once it is
+    private final AtomicLongArray slots;
+
+    /**
+     * Creates the journal file. An existing journal is kept as the {@link #previous(Path) previous} one, replacing the one kept before.
+     *
+     * @param capacity the number of events kept; the file takes 128 bytes per event
+     */
+    public ExecutionJournal(Path file, int capacity) throws IOException
+    {
+        requireNonNull(file, "file is null");
+        checkArgument(capacity > 0, "capacity must be positive");
+        checkArgument(capacity <= (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE, "capacity is too large");
+
+        this.capacity = capacity;
+        this.slots = new AtomicLongArray(capacity);
+
+        if (Files.exists(file))
+        {
+            Files.move(file, previous(file), REPLACE_EXISTING);
+        }
+
+        try (FileChannel channel = FileChannel.open(file, CREATE_NEW, READ, WRITE))
+        {
+            this.mapped = channel.map(MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+        }
+
+        this.records = mapped.order(ByteOrder.LITTLE_ENDIAN);
+        records.putLong(HEADER_MAGIC, MAGIC);
+        records.putInt(HEADER_VERSION, VERSION);
+        records.putInt(HEADER_RECORD_SIZE, RECORD_SIZE);
+        records.putInt(HEADER_CAPACITY, capacity);
+    }
+
+    /**
+     * @return where the journal that was in the given file before the last one was created is kept
+     */
+    public static Path previous(Path file)
+    {
+        return file.resolveSibling(file.getFileName() + ".1");
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * @return the number of events appended so far, including those overwritten since
+     */
+    public long getEventCount()
+    {
+        return sequence.get();
+    }
+
+    @Override
+    public void onStarted(Command command)
+    {
+        append(Type.STARTED, command.getId(), -1, -1, 0, 0, 0, 0);
+    }
+
+    @Override
+    public void onSpawned(Command command, int pid)
+    {
+        append(Type.SPAWNED, command.getId(), pid, -1, 0, 0, 0, 0);
+    }
+
+    @Override
+    public void onKilled(Command command, int pid)
+    {
+        append(Type.KILLED, command.getId(), pid, -1, 0, 0, 0, 0);
+    }
+
+    @Override
+    public void onCompleted(Command command, CommandResult result)
+    {
+        CommandTimings timings = result.getTimings();
+        append(Type.COMPLETED, command.getId(), intValue(result.getPid()), intValue(result.getExitCode()),
+                timings.getQueueTime(), timings.getSpawnTime(), timings.getRunTime(), timings.getTotalTime());
+    }
+
+    @Override
+    public void onFailed(Command command, CommandFailedException failure)
+    {
+        Type type = failure instanceof CommandTimeoutException ? Type.TIMED_OUT : Type.FAILED;
+        append(type, command.getId(), intValue(failure.getPid()), intValue(failure.getExitCode()), 0, 0, 0, 0);
+    }
+
+    private void append(Type type, String commandId, int pid, int exitCode, long queueTime, long spawnTime, long runTime, long totalTime)
+    {
+        long next = sequence.getAndIncrement();
+        int slot = (int) (next % capacity);
+
+        if (!claim(slot, next))
+        {
+            return;
+        }
+
+        int offset = HEADER_SIZE + slot * RECORD_SIZE;
+
+        // the type is cleared first and written last, and the sequence stamps the record on both sides of its fields, so a reader never
+        // takes a partially written record for a valid one
+        records.put(offset + TYPE, (byte) 0);
+        records.putLong(offset + SEQUENCE, next);
+        fence(slot);
+
+        records.putInt(offset + PID, pid);
+        records.putLong(offset + WALL_TIME, System.currentTimeMillis());
+        records.putLong(offset + NANO_TIME, System.nanoTime());
+        records.putInt(offset + EXIT_CODE, exitCode);
+        records.putLong(offset + QUEUE_TIME, queueTime);
+        records.putLong(offset + SPAWN_TIME, spawnTime);
+        records.putLong(offset + RUN_TIME, runTime);
+        records.putLong(offset + TOTAL_TIME, totalTime);
+
+        int length = Math.min(commandId.length(), MAX_ID_LENGTH);
+        for (int i = 0; i < length; i++)
+        {
+            char c = commandId.charAt(i);
+            records.put(offset + COMMAND_ID + i, c < 0x80 ? (byte) c : (byte) '?');
+        }
+        records.put(offset + ID_LENGTH, (byte) length);
+        records.putInt(offset + END_STAMP, (int) next);
+        fence(slot);
+
+        records.put(offset + TYPE, type.code());
+        slots.set(slot, 2 * next + 2);
+    }
+
+    /**
+     * Takes the slot for the event with the given sequence, waiting for an older event still written to it.
+     *
+     * @return <code>false</code> if a newer event took the slot, in which case the event is dropped as the ring already moved past it
+     */
+    private boolean claim(int slot, long next)
+    {
+        while (true)
+        {
+            long state = slots.get(slot);
+
+            if (state != 0 && (state - 1) / 2 >= next)
+            {
+                return false;
+            }
+
+            if (state % 2 == 1)
+            {
+                Thread.yield();
+            }
+            else if (slots.compareAndSet(slot, state, 2 * next + 1))
+            {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Keeps the writes to the mapped memory on either side in order, as a volatile write followed by a volatile read of the same variable.
+     */
+    private void fence(int slot)
+    {
+        slots.set(slot, slots.get(slot));
+        slots.get(slot);
+    }
+
+    private static int intValue(Number value)
+    {
+        return value == null ? -1 : value.intValue();
+    }
+
+    /**
+     * Writes the journal to disk. Events appended afterwards still reach the mapped file.
+     */
+    @Override
+    public void close()
+    {
+        mapped.force();
+    }
+}
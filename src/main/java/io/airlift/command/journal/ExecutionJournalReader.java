@@ -0,0 +1,180 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.journal;
+
+import static io.airlift.command.journal.ExecutionJournal.COMMAND_ID;
+import static io.airlift.command.journal.ExecutionJournal.END_STAMP;
+import static io.airlift.command.journal.ExecutionJournal.EXIT_CODE;
+import static io.airlift.command.journal.ExecutionJournal.HEADER_CAPACITY;
+import static io.airlift.command.journal.ExecutionJournal.HEADER_MAGIC;
+import static io.airlift.command.journal.ExecutionJournal.HEADER_RECORD_SIZE;
+import static io.airlift.command.journal.ExecutionJournal.HEADER_SIZE;
+import static io.airlift.command.journal.ExecutionJournal.HEADER_VERSION;
+import static io.airlift.command.journal.ExecutionJournal.ID_LENGTH;
+import static io.airlift.command.journal.ExecutionJournal.MAGIC;
+import static io.airlift.command.journal.ExecutionJournal.MAX_ID_LENGTH;
+import static io.airlift.command.journal.ExecutionJournal.NANO_TIME;
+import static io.airlift.command.journal.ExecutionJournal.PID;
+import static io.airlift.command.journal.ExecutionJournal.QUEUE_TIME;
+import static io.airlift.command.journal.ExecutionJournal.RECORD_SIZE;
+import static io.airlift.command.journal.ExecutionJournal.RUN_TIME;
+import static io.airlift.command.journal.ExecutionJournal.SEQUENCE;
+import static io.airlift.command.journal.ExecutionJournal.SPAWN_TIME;
+import static io.airlift.command.journal.ExecutionJournal.TOTAL_TIME;
+import static io.airlift.command.journal.ExecutionJournal.TYPE;
+import static io.airlift.command.journal.ExecutionJournal.VERSION;
+import static io.airlift.command.journal.ExecutionJournal.WALL_TIME;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+import io.airlift.command.journal.JournalEvent.Type;
+
+/**
+ * Reads the events of an {@link ExecutionJournal} file, while it is written or after the fact.
+ * <p>
+ * Run it with the path of a journal to print its events, oldest first.
+ */
+public final class ExecutionJournalReader
+{
+    private ExecutionJournalReader()
+    {
+    }
+
+    /**
+     * @return the events of the journal ordered by sequence; records being written, or rewritten while they are read, are skipped
+     */
+    public static List<JournalEvent> read(Path file) throws IOException
+    {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            if (channel.size() < HEADER_SIZE)
+            {
+                throw new IOException(format("%s is not an execution journal", file));
+            }
+            buffer = channel.map(MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        if (buffer.getLong(HEADER_MAGIC) != MAGIC)
+        {
+            throw new IOException(format("%s is not an execution journal", file));
+        }
+
+        if (buffer.getInt(HEADER_VERSION) != VERSION || buffer.getInt(HEADER_RECORD_SIZE) != RECORD_SIZE)
+        {
+            throw new IOException(format("%s has an unsupported version %s", file, buffer.getInt(HEADER_VERSION)));
+        }
+
+        int capacity = buffer.getInt(HEADER_CAPACITY);
+        if (buffer.capacity() < HEADER_SIZE + (long) capacity * RECORD_SIZE)
+        {
+            throw new IOException(format("%s is truncated", file));
+        }
+
+        List<JournalEvent> events = new ArrayList<>();
+        byte[] id = new byte[MAX_ID_LENGTH];
+
+        for (int slot = 0; slot < capacity; slot++)
+        {
+            int offset = HEADER_SIZE + slot * RECORD_SIZE;
+            // read in the reverse order of the writes: the stamp written last first, the stamp written first last
+            int endStamp = buffer.getInt(offset + END_STAMP);
+            byte code = buffer.get(offset + TYPE);
+            Type type = Type.fromCode(code);
+
+            if (type == null)
+            {
+                continue;
+            }
+
+            int length = Math.min(buffer.get(offset + ID_LENGTH) & 0xFF, MAX_ID_LENGTH);
+            for (int i = 0; i < length; i++)
+            {
+                id[i] = buffer.get(offset + COMMAND_ID + i);
+            }
+
+            int pid = buffer.getInt(offset + PID);
+            int exitCode = buffer.getInt(offset + EXIT_CODE);
+            long wallTime = buffer.getLong(offset + WALL_TIME);
+            long nanoTime = buffer.getLong(offset + NANO_TIME);
+            long queueTime = buffer.getLong(offset + QUEUE_TIME);
+            long spawnTime = buffer.getLong(offset + SPAWN_TIME);
+            long runTime = buffer.getLong(offset + RUN_TIME);
+            long totalTime = buffer.getLong(offset + TOTAL_TIME);
+            long sequence = buffer.getLong(offset + SEQUENCE);
+
+            // the record is only whole if it is stamped with the same sequence on both sides of its fields, which a writer that started to
+            // rewrite it while it was read would have changed
+            if ((int) sequence != endStamp || buffer.get(offset + TYPE) != code)
+            {
+                continue;
+            }
+
+            events.add(new JournalEvent(
+                    sequence,
+                    type,
+                    new String(id, 0, length, US_ASCII),
+                    pid,
+                    exitCode,
+                    wallTime,
+                    nanoTime,
+                    queueTime,
+                    spawnTime,
+                    runTime,
+                    totalTime));
+        }
+
+        events.sort(Comparator.comparingLong(JournalEvent::getSequence));
+        return ImmutableList.copyOf(events);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 1)
+        {
+            System.err.println("usage: ExecutionJournalReader <journal file>");
+            System.exit(1);
+        }
+
+        for (JournalEvent event : read(Paths.get(args[0])))
+        {
+            System.out.println(format("%d %s %-9s %s pid=%d exit=%d queue=%dns spawn=%dns run=%dns total=%dns",
+                    event.getSequence(),
+                    Instant.ofEpochMilli(event.getWallTime()),
+                    event.getType(),
+                    event.getCommandId(),
+                    event.getPid(),
+                    event.getExitCode(),
+                    event.getQueueTime(),
+                    event.getSpawnTime(),
+                    event.getRunTime(),
+                    event.getTotalTime()));
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.journal;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Objects;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * An event read back from an {@link ExecutionJournal}. Times are in nanoseconds, except for the wall clock time.
+ */
+@Immutable
+public class JournalEvent
+{
+    public enum Type
+    {
+        STARTED, SPAWNED, COMPLETED, FAILED, TIMED_OUT, KILLED;
+
+        private static final Type[] TYPES = values();
+
+        byte code()
+        {
+            // zero marks an empty, or partially written, record
+            return (byte) (ordinal() + 1);
+        }
+
+        static Type fromCode(byte code)
+        {
+            return code > 0 && code <= TYPES.length ? TYPES[code - 1] : null;
+        }
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final String commandId;
+    private final int pid;
+    private final int exitCode;
+    private final long wallTime;
+    private final long nanoTime;
+    private final long queueTime;
+    private final long spawnTime;
+    private final long runTime;
+    private final long totalTime;
+
+    public JournalEvent(long sequence, Type type, String commandId, int pid, int exitCode, long wallTime, long nanoTime, long queueTime, long spawnTime, long runTime, long totalTime)
+    {
+        this.sequence = sequence;
+        this.type = requireNonNull(type, "type is null");
+        this.commandId = requireNonNull(commandId, "commandId is null");
+        this.pid = pid;
+        this.exitCode = exitCode;
+        this.wallTime = wallTime;
+        this.nanoTime = nanoTime;
+        this.queueTime = queueTime;
+        this.spawnTime = spawnTime;
+        this.runTime = runTime;
+        this.totalTime = totalTime;
+    }
+
+    /**
+     * @return the position of the event in the journal, which orders the events across threads
+     */
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    public Type getType()
+    {
+        return type;
+    }
+
+    /**
+     * @return the id of the command, truncated to {@link ExecutionJournal#MAX_ID_LENGTH} characters
+     */
+    public String getCommandId()
+    {
+        return commandId;
+    }
+
+    /**
+     * @return the PID of the process, or -1 if unknown
+     */
+    public int getPid()
+    {
+        return pid;
+    }
+
+    /**
+     * @return the exit code of the process, or -1 if it did not exit
+     */
+    public int getExitCode()
+    {
+        return exitCode;
+    }
+
+    /**
+     * @return the wall clock time of the event in milliseconds since the epoch
+     */
+    public long getWallTime()
+    {
+        return wallTime;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} of the event, to measure precisely the time between events of the same JVM
+     */
+    public long getNanoTime()
+    {
+        return nanoTime;
+    }
+
+    public long getQueueTime()
+    {
+        return queueTime;
+    }
+
+    public long getSpawnTime()
+    {
+        return spawnTime;
+    }
+
+    public long getRunTime()
+    {
+        return runTime;
+    }
+
+    public long getTotalTime()
+    {
+        return totalTime;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj)
+        {
+            return true;
+        }
+
+        if (obj == null || getClass() != obj.getClass())
+        {
+            return false;
+        }
+
+        JournalEvent other = (JournalEvent) obj;
+        return sequence == other.sequence &&
+               type == other.type &&
+               Objects.equals(commandId, other.commandId) &&
+               nanoTime == other.nanoTime;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(sequence, type, commandId, nanoTime);
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("sequence", sequence)
+                .add("type", type)
+                .add("commandId", commandId)
+                .add("pid", pid)
+                .add("exitCode", exitCode)
+                .add("wallTime", wallTime)
+                .add("queueTime", queueTime)
+                .add("spawnTime", spawnTime)
+                .add("runTime", runTime)
+                .add("totalTime", totalTime)
+                .toString();
+    }
+}
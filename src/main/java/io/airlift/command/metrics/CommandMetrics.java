@@ -0,0 +1,225 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.metrics;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.collect.ImmutableSortedMap;
+
+import io.airlift.command.Command;
+import io.airlift.command.CommandFailedException;
+import io.airlift.command.CommandInstrumentation;
+import io.airlift.command.CommandResult;
+import io.airlift.command.CommandTimeoutException;
+import io.airlift.command.CommandTimings;
+
+/**
+ * Counts the executions of the commands it instruments and records their latencies. Recording only touches striped counters and
+ * {@link LatencyHistogram}s, so many threads can share one instance without contention.
+ * <p>
+ * The latency histograms only include the commands that completed, as failed commands have no timing breakdown.
+ */
+@ThreadSafe
+public class CommandMetrics implements CommandInstrumentation, CommandMetricsMXBean
+{
+    private final LongAdder started = new LongAdder();
+    private final LongAdder spawned = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder finished = new LongAdder();
+    private final LongAdder outputBytes = new LongAdder();
+    private final ConcurrentMap<Integer, LongAdder> exitCodes = new ConcurrentHashMap<>();
+
+    private final LatencyHistogram queueTime = new LatencyHistogram();
+    private final LatencyHistogram spawnTime = new LatencyHistogram();
+    private final LatencyHistogram runTime = new LatencyHistogram();
+    private final LatencyHistogram totalTime = new LatencyHistogram();
+
+    @Override
+    public void onStarted(Command command)
+    {
+        started.increment();
+    }
+
+    @Override
+    public void onSpawned(Command command, int pid)
+    {
+        spawned.increment();
+    }
+
+    @Override
+    public void onCompleted(Command command, CommandResult result)
+    {
+        completed.increment();
+        finished.increment();
+        outputBytes.add(result.getOutputSize());
+        countExitCode(result.getExitCode());
+
+        CommandTimings timings = result.getTimings();
+        queueTime.record(timings.getQueueTime());
+        spawnTime.record(timings.getSpawnTime());
+        runTime.record(timings.getRunTime());
+        totalTime.record(timings.getTotalTime());
+    }
+
+    @Override
+    public void onFailed(Command command, CommandFailedException failure)
+    {
+        if (failure instanceof CommandTimeoutException)
+        {
+            timedOut.increment();
+        }
+        else
+        {
+            failed.increment();
+        }
+        finished.increment();
+
+        if (failure.exited())
+        {
+            countExitCode(failure.getExitCode());
+        }
+    }
+
+    private void countExitCode(Integer exitCode)
+    {
+        if (exitCode != null)
+        {
+            exitCodes.computeIfAbsent(exitCode, code -> new LongAdder()).increment();
+        }
+    }
+
+    @Override
+    public long getStarted()
+    {
+        return started.sum();
+    }
+
+    @Override
+    public long getSpawned()
+    {
+        return spawned.sum();
+    }
+
+    @Override
+    public long getCompleted()
+    {
+        return completed.sum();
+    }
+
+    /**
+     * @return the number of commands that failed to start, exited with an unexpected code or were interrupted; timeouts are not included
+     */
+    @Override
+    public long getFailed()
+    {
+        return failed.sum();
+    }
+
+    @Override
+    public long getTimedOut()
+    {
+        return timedOut.sum();
+    }
+
+    @Override
+    public long getInFlight()
+    {
+        return Math.max(0, started.sum() - finished.sum());
+    }
+
+    /**
+     * @return the total size of the output of the completed commands
+     */
+    @Override
+    public long getOutputBytes()
+    {
+        return outputBytes.sum();
+    }
+
+    /**
+     * @return the number of exits by exit code, whether the command considered the code successful or not
+     */
+    @Override
+    public Map<Integer, Long> getExitCodes()
+    {
+        ImmutableSortedMap.Builder<Integer, Long> counts = ImmutableSortedMap.naturalOrder();
+        exitCodes.forEach((code, count) -> counts.put(code, count.sum()));
+        return counts.build();
+    }
+
+    @Override
+    public LatencySnapshot getQueueTime()
+    {
+        return queueTime.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getSpawnTime()
+    {
+        return spawnTime.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getRunTime()
+    {
+        return runTime.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getTotalTime()
+    {
+        return totalTime.snapshot();
+    }
+
+    public LatencyHistogram getQueueTimeHistogram()
+    {
+        return queueTime;
+    }
+
+    public LatencyHistogram getSpawnTimeHistogram()
+    {
+        return spawnTime;
+    }
+
+    public LatencyHistogram getRunTimeHistogram()
+    {
+        return runTime;
+    }
+
+    public LatencyHistogram getTotalTimeHistogram()
+    {
+        return totalTime;
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("started", getStarted())
+                .add("completed", getCompleted())
+                .add("failed", getFailed())
+                .add("timedOut", getTimedOut())
+                .add("inFlight", getInFlight())
+                .toString();
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.metrics;
+
+import java.util.Map;
+
+/**
+ * The attributes of {@link CommandMetrics} exposed over JMX. Latencies are in nanoseconds.
+ */
+public interface CommandMetricsMXBean
+{
+    long getStarted();
+
+    long getSpawned();
+
+    long getCompleted();
+
+    long getFailed();
+
+    long getTimedOut();
+
+    long getInFlight();
+
+    long getOutputBytes();
+
+    Map<Integer, Long> getExitCodes();
+
+    LatencySnapshot getQueueTime();
+
+    LatencySnapshot getSpawnTime();
+
+    LatencySnapshot getRunTime();
+
+    LatencySnapshot getTotalTime();
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.metrics;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.google.common.base.Strings;
+
+/**
+ * Publishes {@link CommandMetrics} as MXBeans named <code>&lt;domain&gt;:type=CommandMetrics,name=&lt;name&gt;</code>, so they can be read
+ * with any JMX console without an external service.
+ */
+@ThreadSafe
+public class JmxExporter
+{
+    public static final String DEFAULT_DOMAIN = "io.airlift.command";
+
+    private final MBeanServer server;
+    private final String domain;
+    private final Map<String, ObjectName> exported = new ConcurrentHashMap<>();
+
+    public JmxExporter()
+    {
+        this(ManagementFactory.getPlatformMBeanServer(), DEFAULT_DOMAIN);
+    }
+
+    public JmxExporter(MBeanServer server, String domain)
+    {
+        checkArgument(!Strings.isNullOrEmpty(domain), "domain is null or empty");
+
+        this.server = requireNonNull(server, "server is null");
+        this.domain = domain;
+    }
+
+    public ObjectName export(String name, CommandMetrics metrics)
+    {
+        requireNonNull(metrics, "metrics is null");
+
+        ObjectName objectName = objectName(name);
+        try
+        {
+            server.registerMBean(metrics, objectName);
+        }
+        catch (JMException e)
+        {
+            throw new IllegalStateException("could not export " + objectName, e);
+        }
+
+        exported.put(name, objectName);
+        return objectName;
+    }
+
+    /**
+     * Exports the metrics of the registry that are not exported yet.
+     */
+    public void export(MetricsRegistry registry)
+    {
+        registry.getMetrics().forEach((name, metrics) ->
+        {
+            if (!exported.containsKey(name))
+            {
+                export(name, metrics);
+            }
+        });
+    }
+
+    public void unexport(String name)
+    {
+        ObjectName objectName = exported.remove(name);
+
+        if (objectName != null)
+        {
+            try
+            {
+                server.unregisterMBean(objectName);
+            }
+            catch (JMException ignored)
+            {
+                // already unregistered by someone else
+            }
+        }
+    }
+
+    public void unexportAll()
+    {
+        exported.keySet().forEach(this::unexport);
+    }
+
+    public ObjectName objectName(String name)
+    {
+        checkArgument(!Strings.isNullOrEmpty(name), "name is null or empty");
+        try
+        {
+            return new ObjectName(domain + ":type=CommandMetrics,name=" + ObjectName.quote(name));
+        }
+        catch (JMException e)
+        {
+            throw new IllegalArgumentException("invalid name: " + name, e);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.metrics;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * A histogram of latencies in nanoseconds with log-linear buckets, like an HDR histogram: every power of two is split into 64 buckets,
+ * so any recorded value is known within 1/64 (about 1.6%) of its magnitude, from one nanosecond to centuries, in a fixed 30 KB.
+ * <p>
+ * Recording is lock free and never allocates. Reads are not atomic with respect to concurrent recordings, which is fine for monitoring.
+ */
+@ThreadSafe
+public final class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+    /**
+     * @param value a latency in nanoseconds; negative values, which a skewed clock could produce, are recorded as zero
+     */
+    public void record(long value)
+    {
+        long latency = Math.max(0, value);
+
+        counts.incrementAndGet(bucketOf(latency));
+        count.increment();
+        sum.add(latency);
+        min.accumulate(latency);
+        max.accumulate(latency);
+    }
+
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    /**
+     * @return the smallest recorded value, or zero if none was recorded
+     */
+    public long getMin()
+    {
+        return getCount() == 0 ? 0 : min.get();
+    }
+
+    /**
+     * @return the largest recorded value, or zero if none was recorded
+     */
+    public long getMax()
+    {
+        return getCount() == 0 ? 0 : max.get();
+    }
+
+    public double getMean()
+    {
+        long count = getCount();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the highest value of the bucket holding the given percentile, capped by the largest recorded value, or zero if none was recorded
+     */
+    public long getPercentile(double percentile)
+    {
+        checkArgument(percentile >= 0 && percentile <= 100, "percentile must be between 0 and 100");
+
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+
+        if (total == 0)
+        {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            seen += snapshot[i];
+            if (seen >= rank)
+            {
+                return Math.min(highestValueOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    public LatencySnapshot snapshot()
+    {
+        return new LatencySnapshot(getCount(), getMin(), getMax(), getMean(), getPercentile(50), getPercentile(90), getPercentile(99), getPercentile(99.9));
+    }
+
+    @VisibleForTesting
+    static int bucketOf(long value)
+    {
+        if (value < SUB_BUCKETS)
+        {
+            return (int) value;
+        }
+
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    @VisibleForTesting
+    static long lowestValueOf(int bucket)
+    {
+        if (bucket < SUB_BUCKETS)
+        {
+            return bucket;
+        }
+
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return subBucket << shift;
+    }
+
+    @VisibleForTesting
+    static long highestValueOf(int bucket)
+    {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowestValueOf(bucket + 1) - 1;
+    }
+}
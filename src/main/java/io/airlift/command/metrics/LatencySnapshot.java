@@ -0,0 +1,101 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.metrics;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The summary of a {@link LatencyHistogram} at some point in time, in nanoseconds.
+ */
+@Immutable
+public class LatencySnapshot
+{
+    private final long count;
+    private final long min;
+    private final long max;
+    private final double mean;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long p999;
+
+    public LatencySnapshot(long count, long min, long max, double mean, long p50, long p90, long p99, long p999)
+    {
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.p999 = p999;
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    public long getMin()
+    {
+        return min;
+    }
+
+    public long getMax()
+    {
+        return max;
+    }
+
+    public double getMean()
+    {
+        return mean;
+    }
+
+    public long getP50()
+    {
+        return p50;
+    }
+
+    public long getP90()
+    {
+        return p90;
+    }
+
+    public long getP99()
+    {
+        return p99;
+    }
+
+    public long getP999()
+    {
+        return p999;
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("count", count)
+                .add("min", min)
+                .add("max", max)
+                .add("mean", mean)
+                .add("p50", p50)
+                .add("p90", p90)
+                .add("p99", p99)
+                .add("p999", p999)
+                .toString();
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.metrics;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSortedMap;
+
+/**
+ * Keeps the {@link CommandMetrics} of an application in memory, by name. A name usually groups the commands of one kind, or of one tenant.
+ */
+@ThreadSafe
+public class MetricsRegistry
+{
+    private final ConcurrentMap<String, CommandMetrics> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * @return the metrics registered with the given name, created on the first call
+     */
+    public CommandMetrics get(String name)
+    {
+        checkArgument(!Strings.isNullOrEmpty(name), "name is null or empty");
+        return metrics.computeIfAbsent(name, key -> new CommandMetrics());
+    }
+
+    /**
+     * @return the metrics removed, or <code>null</code> if none was registered with the given name
+     */
+    public CommandMetrics remove(String name)
+    {
+        return metrics.remove(name);
+    }
+
+    public Map<String, CommandMetrics> getMetrics()
+    {
+        return ImmutableSortedMap.copyOf(metrics);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.supervisor;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.Objects.requireNonNull;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.collect.ImmutableList;
+
+import io.airlift.command.Command;
+import io.airlift.units.Duration;
+
+/**
+ * Keeps long-running commands, such as sidecar helpers, alive by restarting them according to their {@link RestartPolicy}.
+ * <p>
+ * All the supervised processes share one scheduler for their restarts and their probes: supervising adds no thread of its own, and a
+ * process only uses the threads of the executor its command runs on.
+ */
+@ThreadSafe
+public class ProcessSupervisor implements Closeable
+{
+    private final Executor executor;
+    private final ScheduledExecutorService scheduler;
+    private final Duration probePeriod;
+    private final ConcurrentMap<String, SupervisedProcess> processes = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    /**
+     * Creates a supervisor that does not sample its processes.
+     */
+    public ProcessSupervisor(Executor executor, ScheduledExecutorService scheduler)
+    {
+        this(executor, scheduler, null);
+    }
+
+    /**
+     * @param probePeriod the period at which every process is sampled, or <code>null</code> to not sample them
+     */
+    public ProcessSupervisor(Executor executor, ScheduledExecutorService scheduler, Duration probePeriod)
+    {
+        this.executor = requireNonNull(executor, "executor is null");
+        this.scheduler = requireNonNull(scheduler, "scheduler is null");
+        this.probePeriod = probePeriod;
+    }
+
+    /**
+     * Starts the given command and keeps it running. The id of the command identifies the process in this supervisor.
+     *
+     * @throws IllegalArgumentException if a command with the same id is already supervised
+     */
+    public SupervisedProcess supervise(Command command, RestartPolicy policy)
+    {
+        requireNonNull(command, "command is null");
+        requireNonNull(policy, "policy is null");
+        checkState(!closed, "supervisor is closed");
+
+        SupervisedProcess process = new SupervisedProcess(command, policy, executor, scheduler, probePeriod);
+        checkArgument(processes.putIfAbsent(command.getId(), process) == null, "command %s is already supervised", command.getId());
+        process.start();
+        return process;
+    }
+
+    public Optional<SupervisedProcess> getProcess(String id)
+    {
+        return Optional.ofNullable(processes.get(id));
+    }
+
+    public Collection<SupervisedProcess> getProcesses()
+    {
+        return ImmutableList.copyOf(processes.values());
+    }
+
+    /**
+     * Stops supervising the process of the given id and asks it to terminate.
+     *
+     * @return whether the process was supervised
+     */
+    public boolean stop(String id)
+    {
+        SupervisedProcess process = processes.remove(id);
+        if (process == null)
+        {
+            return false;
+        }
+        process.stop();
+        return true;
+    }
+
+    /**
+     * Stops all the processes. The executor and the scheduler are left running.
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+        processes.keySet().forEach(this::stop);
+    }
+}
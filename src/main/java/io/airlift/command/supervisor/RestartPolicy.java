@@ -0,0 +1,170 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.supervisor;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.Immutable;
+
+import io.airlift.units.Duration;
+
+/**
+ * Tells a {@link ProcessSupervisor} when and how fast to restart a process.
+ * <p>
+ * The delay before a restart starts at the initial backoff and is multiplied after every restart, up to the maximum backoff; it goes back to
+ * the initial backoff once a process ran for the reset time. On top of that, at most <code>maxRestarts</code> restarts happen in any
+ * <code>restartWindow</code>: a process crashing faster than that is restarted only when the oldest restart leaves the window.
+ */
+@Immutable
+public final class RestartPolicy
+{
+    private static final RestartPolicy ON_FAILURE = new RestartPolicy(
+            false,
+            new Duration(100, TimeUnit.MILLISECONDS),
+            new Duration(30, TimeUnit.SECONDS),
+            2,
+            new Duration(1, TimeUnit.MINUTES),
+            10,
+            new Duration(1, TimeUnit.MINUTES));
+
+    private final boolean restartOnSuccess;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final double multiplier;
+    private final Duration resetAfter;
+    private final int maxRestarts;
+    private final Duration restartWindow;
+
+    private RestartPolicy(boolean restartOnSuccess, Duration initialBackoff, Duration maxBackoff, double multiplier, Duration resetAfter, int maxRestarts,
+            Duration restartWindow)
+    {
+        this.restartOnSuccess = restartOnSuccess;
+        this.initialBackoff = requireNonNull(initialBackoff, "initialBackoff is null");
+        this.maxBackoff = requireNonNull(maxBackoff, "maxBackoff is null");
+        this.multiplier = multiplier;
+        this.resetAfter = requireNonNull(resetAfter, "resetAfter is null");
+        this.maxRestarts = maxRestarts;
+        this.restartWindow = requireNonNull(restartWindow, "restartWindow is null");
+
+        checkArgument(initialBackoff.compareTo(maxBackoff) <= 0, "initialBackoff is greater than maxBackoff");
+        checkArgument(multiplier >= 1, "multiplier is less than one");
+        checkArgument(maxRestarts > 0, "maxRestarts must be positive");
+    }
+
+    /**
+     * @return a policy restarting processes that fail, that is exit with an unsuccessful code or cannot be started, but not those that
+     *         complete, with a backoff from 100 milliseconds to 30 seconds, reset after one minute of run, and at most 10 restarts per minute
+     */
+    public static RestartPolicy onFailure()
+    {
+        return ON_FAILURE;
+    }
+
+    /**
+     * @return a policy like {@link #onFailure()} but restarting the processes that complete as well
+     */
+    public static RestartPolicy always()
+    {
+        return ON_FAILURE.withRestartOnSuccess(true);
+    }
+
+    public RestartPolicy withRestartOnSuccess(boolean restartOnSuccess)
+    {
+        return new RestartPolicy(restartOnSuccess, initialBackoff, maxBackoff, multiplier, resetAfter, maxRestarts, restartWindow);
+    }
+
+    public RestartPolicy withBackoff(Duration initialBackoff, Duration maxBackoff, double multiplier)
+    {
+        return new RestartPolicy(restartOnSuccess, initialBackoff, maxBackoff, multiplier, resetAfter, maxRestarts, restartWindow);
+    }
+
+    /**
+     * @param resetAfter the run time after which a process is considered healthy, so its next restart uses the initial backoff again
+     */
+    public RestartPolicy withResetAfter(Duration resetAfter)
+    {
+        return new RestartPolicy(restartOnSuccess, initialBackoff, maxBackoff, multiplier, resetAfter, maxRestarts, restartWindow);
+    }
+
+    /**
+     * @param maxRestarts the maximum number of restarts in any window of the given duration
+     */
+    public RestartPolicy withMaxRestarts(int maxRestarts, Duration restartWindow)
+    {
+        return new RestartPolicy(restartOnSuccess, initialBackoff, maxBackoff, multiplier, resetAfter, maxRestarts, restartWindow);
+    }
+
+    public boolean isRestartOnSuccess()
+    {
+        return restartOnSuccess;
+    }
+
+    public Duration getInitialBackoff()
+    {
+        return initialBackoff;
+    }
+
+    public Duration getMaxBackoff()
+    {
+        return maxBackoff;
+    }
+
+    public double getMultiplier()
+    {
+        return multiplier;
+    }
+
+    public Duration getResetAfter()
+    {
+        return resetAfter;
+    }
+
+    public int getMaxRestarts()
+    {
+        return maxRestarts;
+    }
+
+    public Duration getRestartWindow()
+    {
+        return restartWindow;
+    }
+
+    /**
+     * @param attempt the number of restarts since the process was last healthy, zero for the first one
+     * @return the backoff before the given restart in nanoseconds
+     */
+    long backoffNanos(int attempt)
+    {
+        double backoff = initialBackoff.roundTo(TimeUnit.NANOSECONDS) * Math.pow(multiplier, attempt);
+        return (long) Math.min(backoff, maxBackoff.roundTo(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("restartOnSuccess", restartOnSuccess)
+                .add("initialBackoff", initialBackoff)
+                .add("maxBackoff", maxBackoff)
+                .add("multiplier", multiplier)
+                .add("resetAfter", resetAfter)
+                .add("maxRestarts", maxRestarts)
+                .add("restartWindow", restartWindow)
+                .toString();
+    }
+}
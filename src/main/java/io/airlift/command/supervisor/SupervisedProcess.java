@@ -0,0 +1,353 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.supervisor;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayDeque;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.Futures;
+
+import io.airlift.command.Command;
+import io.airlift.command.CommandFailedException;
+import io.airlift.command.ProcessState;
+import io.airlift.command.RunningCommand;
+import io.airlift.units.Duration;
+
+/**
+ * A command kept running by a {@link ProcessSupervisor}.
+ * <p>
+ * Every incarnation of the process is sampled under the id of the command, so the samples posted to the listeners of this process, or
+ * recorded by a {@link io.airlift.command.tsdb.ProcessMetricsStore} listening to them, form one series across restarts.
+ */
+@ThreadSafe
+public class SupervisedProcess
+{
+    private static final Logger LOG = LoggerFactory.getLogger(SupervisedProcess.class);
+
+    public enum State
+    {
+        /**
+         * The process is started or running.
+         */
+        RUNNING,
+        /**
+         * The process exited, or could not be started, and waits for its restart.
+         */
+        BACKING_OFF,
+        /**
+         * The process completed and its policy does not restart completed processes.
+         */
+        COMPLETED,
+        /**
+         * The process was stopped.
+         */
+        STOPPED
+    }
+
+    private final Command command;
+    private final RestartPolicy policy;
+    private final Executor executor;
+    private final ScheduledExecutorService scheduler;
+    private final Duration probePeriod;
+    private final EventBus listeners;
+
+    @GuardedBy("this")
+    private State state = State.RUNNING;
+
+    @GuardedBy("this")
+    private RunningCommand current;
+
+    @GuardedBy("this")
+    private long launchedAt;
+
+    @GuardedBy("this")
+    private ScheduledFuture<?> pendingRestart;
+
+    /**
+     * The number of restarts since the process was last healthy.
+     */
+    @GuardedBy("this")
+    private int attempt;
+
+    /**
+     * The {@link System#nanoTime()} of the restarts in the current window, oldest first.
+     */
+    @GuardedBy("this")
+    private final ArrayDeque<Long> recentRestarts = new ArrayDeque<>();
+
+    @GuardedBy("this")
+    private int restarts;
+
+    @GuardedBy("this")
+    private CommandFailedException lastFailure;
+
+    private volatile ProcessState latestState;
+
+    SupervisedProcess(Command command, RestartPolicy policy, Executor executor, ScheduledExecutorService scheduler, Duration probePeriod)
+    {
+        this.command = requireNonNull(command, "command is null");
+        this.policy = requireNonNull(policy, "policy is null");
+        this.executor = requireNonNull(executor, "executor is null");
+        this.scheduler = requireNonNull(scheduler, "scheduler is null");
+        this.probePeriod = probePeriod;
+        this.listeners = new EventBus("supervised-" + command.getId());
+    }
+
+    synchronized void start()
+    {
+        launch();
+    }
+
+    /**
+     * Starts a new incarnation of the process. A process that cannot be started, for instance because the executor rejects it, backs off
+     * as if it failed, so the supervisor keeps trying.
+     */
+    @GuardedBy("this")
+    private void launch()
+    {
+        pendingRestart = null;
+        launchedAt = System.nanoTime();
+
+        RunningCommand running;
+        try
+        {
+            running = command.start(executor);
+        }
+        catch (RuntimeException e)
+        {
+            CommandFailedException failure = new CommandFailedException(command, "failed to start", e);
+            lastFailure = failure;
+            backOff(failure);
+            return;
+        }
+
+        // the exit listener may run right away, so the incarnation is current and running first
+        current = running;
+        state = State.RUNNING;
+
+        if (probePeriod != null)
+        {
+            running.getReadiness().addListener(() -> running.monitor(scheduler, probePeriod, ImmutableList.of(this)), directExecutor());
+        }
+        running.getFuture().addListener(() -> exited(running), directExecutor());
+    }
+
+    private synchronized void exited(RunningCommand running)
+    {
+        if (running != current || state != State.RUNNING)
+        {
+            return;
+        }
+
+        CommandFailedException failure = failureOf(running);
+        if (failure != null)
+        {
+            lastFailure = failure;
+        }
+        else if (!policy.isRestartOnSuccess())
+        {
+            state = State.COMPLETED;
+            return;
+        }
+
+        backOff(failure);
+    }
+
+    /**
+     * Schedules the restart of the process after the delay of its policy.
+     *
+     * @param failure the failure of the last incarnation, or <code>null</code> if it completed
+     */
+    @GuardedBy("this")
+    private void backOff(CommandFailedException failure)
+    {
+        long now = System.nanoTime();
+        if (now - launchedAt >= policy.getResetAfter().roundTo(TimeUnit.NANOSECONDS))
+        {
+            attempt = 0;
+        }
+
+        long delay = policy.backoffNanos(attempt);
+        attempt = Math.min(attempt + 1, Integer.MAX_VALUE - 1);
+
+        long window = policy.getRestartWindow().roundTo(TimeUnit.NANOSECONDS);
+        forgetRestartsBefore(now - window);
+        if (recentRestarts.size() >= policy.getMaxRestarts())
+        {
+            delay = Math.max(delay, recentRestarts.peekFirst() + window - now);
+        }
+
+        LOG.debug("Restarting {} in {}", command.getId(), Duration.succinctNanos(delay), failure);
+        state = State.BACKING_OFF;
+        pendingRestart = scheduler.schedule(this::restart, delay, TimeUnit.NANOSECONDS);
+    }
+
+    private synchronized void restart()
+    {
+        if (state != State.BACKING_OFF)
+        {
+            return;
+        }
+
+        long now = System.nanoTime();
+        forgetRestartsBefore(now - policy.getRestartWindow().roundTo(TimeUnit.NANOSECONDS));
+        recentRestarts.addLast(now);
+        restarts++;
+
+        launch();
+    }
+
+    @GuardedBy("this")
+    private void forgetRestartsBefore(long time)
+    {
+        while (!recentRestarts.isEmpty() && recentRestarts.peekFirst() - time <= 0)
+        {
+            recentRestarts.removeFirst();
+        }
+    }
+
+    private CommandFailedException failureOf(RunningCommand running)
+    {
+        try
+        {
+            Futures.getDone(running.getFuture());
+            return null;
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof CommandFailedException)
+            {
+                return (CommandFailedException) e.getCause();
+            }
+            return new CommandFailedException(command, "unexpected exception", e.getCause());
+        }
+        catch (CancellationException e)
+        {
+            return new CommandFailedException(command, "cancelled", e);
+        }
+    }
+
+    /**
+     * Stops restarting the process and asks it to terminate.
+     */
+    public synchronized void stop()
+    {
+        if (state == State.STOPPED)
+        {
+            return;
+        }
+
+        state = State.STOPPED;
+        if (pendingRestart != null)
+        {
+            pendingRestart.cancel(false);
+            pendingRestart = null;
+        }
+        if (current != null)
+        {
+            current.terminate();
+        }
+    }
+
+    /**
+     * @param listener receives the {@link ProcessState} samples of every incarnation of the process
+     */
+    public void registerListener(Object listener)
+    {
+        listeners.register(requireNonNull(listener, "listener is null"));
+    }
+
+    @Subscribe
+    public void onProcessState(ProcessState state)
+    {
+        latestState = state;
+        listeners.post(state);
+    }
+
+    public Command getCommand()
+    {
+        return command;
+    }
+
+    public RestartPolicy getPolicy()
+    {
+        return policy;
+    }
+
+    public synchronized State getState()
+    {
+        return state;
+    }
+
+    /**
+     * @return the handle on the current incarnation of the process, which is the last one when the process is backing off or done
+     */
+    public synchronized RunningCommand getCurrent()
+    {
+        return current;
+    }
+
+    /**
+     * @return the number of times the process was restarted
+     */
+    public synchronized int getRestarts()
+    {
+        return restarts;
+    }
+
+    /**
+     * @return the failure of the last incarnation that failed
+     */
+    public synchronized Optional<CommandFailedException> getLastFailure()
+    {
+        return Optional.ofNullable(lastFailure);
+    }
+
+    /**
+     * @return the last sample of the process, which may come from a previous incarnation
+     */
+    public Optional<ProcessState> getLatestState()
+    {
+        return Optional.ofNullable(latestState);
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return toStringHelper(this)
+                .add("command", command)
+                .add("state", state)
+                .add("restarts", restarts)
+                .toString();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.system.stats;
+
+import java.util.Objects;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * A point-in-time reading of how busy the host is.
+ */
+@Immutable
+public final class HostLoad
+{
+	private final int cpus;
+	private final double loadAverage;
+	private final long totalMemory;
+	private final long availableMemory;
+
+	public HostLoad(int cpus, double loadAverage, long totalMemory, long availableMemory)
+	{
+		this.cpus = cpus;
+		this.loadAverage = loadAverage;
+		this.totalMemory = totalMemory;
+		this.availableMemory = availableMemory;
+	}
+
+	/**
+	 * @return the number of processors available to the JVM
+	 */
+	public int getCpus()
+	{
+		return cpus;
+	}
+
+	/**
+	 * @return the one-minute load average, or a negative value if it is not available
+	 */
+	public double getLoadAverage()
+	{
+		return loadAverage;
+	}
+
+	/**
+	 * @return the one-minute load average divided by the number of processors
+	 */
+	public double getLoadPerCpu()
+	{
+		return loadAverage < 0 ? 0 : loadAverage / Math.max(1, cpus);
+	}
+
+	/**
+	 * @return the total physical memory in bytes, or zero if it is not available
+	 */
+	public long getTotalMemory()
+	{
+		return totalMemory;
+	}
+
+	/**
+	 * @return the memory in bytes that can be allocated without swapping, including reclaimable caches
+	 */
+	public long getAvailableMemory()
+	{
+		return availableMemory;
+	}
+
+	/**
+	 * @return the fraction of physical memory that is available, or one if the total is unknown
+	 */
+	public double getAvailableMemoryRatio()
+	{
+		return totalMemory <= 0 ? 1.0 : (double) availableMemory / totalMemory;
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+		{
+			return true;
+		}
+
+		if (obj == null || getClass() != obj.getClass())
+		{
+			return false;
+		}
+
+		HostLoad other = (HostLoad) obj;
+
+		return cpus == other.cpus &&
+			   Double.compare(loadAverage, other.loadAverage) == 0 &&
+			   totalMemory == other.totalMemory &&
+			   availableMemory == other.availableMemory;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Objects.hash(cpus, loadAverage, totalMemory, availableMemory);
+	}
+
+	@Override
+	public String toString()
+	{
+		return MoreObjects.toStringHelper(this)
+				.add("cpus", cpus)
+				.add("loadAverage", loadAverage)
+				.add("totalMemory", totalMemory)
+				.add("availableMemory", availableMemory)
+				.toString();
+	}
+}
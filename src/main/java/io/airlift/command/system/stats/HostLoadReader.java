@@ -0,0 +1,145 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.system.stats;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.hyperic.sigar.Mem;
+import org.hyperic.sigar.SigarException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the {@link HostLoad} from SIGAR when it is available, from <code>/proc</code> on Linux, or from the JVM's
+ * {@link java.lang.management.OperatingSystemMXBean} otherwise (in which case the memory is unknown).
+ */
+@Singleton
+public class HostLoadReader
+{
+	private static final Logger LOG = LoggerFactory.getLogger(HostLoadReader.class);
+
+	private static final Path PROC_LOADAVG = Paths.get("/proc/loadavg");
+	private static final Path PROC_MEMINFO = Paths.get("/proc/meminfo");
+
+	private final SigarService sigarService;
+	private final boolean procfs;
+
+	@Inject
+	public HostLoadReader(SigarService sigarService)
+	{
+		this.sigarService = requireNonNull(sigarService, "sigarService is null");
+		this.procfs = Files.isReadable(PROC_LOADAVG) && Files.isReadable(PROC_MEMINFO);
+	}
+
+	public HostLoad read()
+	{
+		int cpus = Runtime.getRuntime().availableProcessors();
+
+		if (sigarService.isReady())
+		{
+			try
+			{
+				Mem mem = sigarService.sigar().getMem();
+				return new HostLoad(cpus, sigarService.sigar().getLoadAverage()[0], mem.getTotal(), mem.getActualFree());
+			}
+			catch (SigarException | UnsupportedOperationException exception)
+			{
+				LOG.debug("Error on reading the host load with SIGAR", exception);
+			}
+		}
+
+		if (procfs)
+		{
+			try
+			{
+				return readProcfs(cpus);
+			}
+			catch (IOException | RuntimeException exception)
+			{
+				LOG.debug("Error on reading the host load from /proc", exception);
+			}
+		}
+
+		return new HostLoad(cpus, ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage(), 0, 0);
+	}
+
+	private static HostLoad readProcfs(int cpus) throws IOException
+	{
+		String loadavg = new String(Files.readAllBytes(PROC_LOADAVG), US_ASCII);
+		double loadAverage = Double.parseDouble(loadavg.substring(0, loadavg.indexOf(' ')));
+
+		long total = 0;
+		long available = -1;
+		long free = 0;
+		long cached = 0;
+
+		List<String> lines = Files.readAllLines(PROC_MEMINFO, US_ASCII);
+
+		for (String line : lines)
+		{
+			if (line.startsWith("MemTotal:"))
+			{
+				total = kilobytes(line);
+			}
+			else if (line.startsWith("MemAvailable:"))
+			{
+				available = kilobytes(line);
+			}
+			else if (line.startsWith("MemFree:"))
+			{
+				free = kilobytes(line);
+			}
+			else if (line.startsWith("Cached:"))
+			{
+				cached = kilobytes(line);
+			}
+		}
+
+		// MemAvailable only exists since Linux 3.14
+		return new HostLoad(cpus, loadAverage, total, available >= 0 ? available : free + cached);
+	}
+
+	/**
+	 * Parses a <code>/proc/meminfo</code> line such as <code>MemTotal:  16318024 kB</code>, returning the value in bytes.
+	 */
+	static long kilobytes(String line)
+	{
+		int start = line.indexOf(':') + 1;
+
+		while (line.charAt(start) == ' ')
+		{
+			start++;
+		}
+
+		int end = start;
+
+		while (end < line.length() && Character.isDigit(line.charAt(end)))
+		{
+			end++;
+		}
+
+		return Long.parseLong(line.substring(start, end)) * 1024;
+	}
+}
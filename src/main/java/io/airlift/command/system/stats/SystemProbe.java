@@ -0,0 +1,421 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.system.stats;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.hyperic.sigar.CpuPerc;
+import org.hyperic.sigar.Mem;
+import org.hyperic.sigar.SigarException;
+import org.hyperic.sigar.Swap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
+
+/**
+ * Samples the host-wide CPU, load, memory, swap and disk activity, as a {@link io.airlift.command.system.stats.process.ProcessProbe} does
+ * for a process: the samples are taken on a shared scheduler and posted as {@link SystemState}s to the registered listeners.
+ * <p>
+ * On Linux the probe reads a few small files of <code>/proc</code>, which costs some microseconds per sample and no native call; elsewhere
+ * it uses SIGAR when it is available (without the disk rates), or the JVM's {@link java.lang.management.OperatingSystemMXBean} (load only).
+ * <p>
+ * The last sample is kept, so that commands can be tagged with the state of the host when they start and end without reading it again;
+ * see {@link io.airlift.command.Command#setSystemProbe(SystemProbe)}.
+ */
+@ThreadSafe
+public class SystemProbe
+{
+	private static final Logger LOG = LoggerFactory.getLogger(SystemProbe.class);
+
+	private static final Path PROC_STAT = Paths.get("/proc/stat");
+	private static final Path PROC_LOADAVG = Paths.get("/proc/loadavg");
+	private static final Path PROC_MEMINFO = Paths.get("/proc/meminfo");
+	private static final Path PROC_DISKSTATS = Paths.get("/proc/diskstats");
+	private static final Path SYS_BLOCK = Paths.get("/sys/block");
+
+	private static final int SECTOR_SIZE = 512;
+
+	/**
+	 * The fields of the <code>cpu</code> line of <code>/proc/stat</code> used by the probe: user, nice, system, idle, iowait, irq,
+	 * softirq and steal.
+	 */
+	private static final int CPU_FIELDS = 8;
+
+	private final SigarService sigarService;
+	private final ScheduledExecutorService scheduler;
+	private final EventBus subscribers = new EventBus("probe-system");
+	private final boolean procfs;
+	private final Set<String> disks;
+
+	private volatile SystemState latest;
+
+	/**
+	 * The CPU ticks of the previous sample; zero at first, so the first sample covers the time since boot.
+	 */
+	@GuardedBy("this")
+	private long[] previousCpu = new long[CPU_FIELDS];
+
+	@GuardedBy("this")
+	private long previousSampleTime;
+
+	@GuardedBy("this")
+	private long previousDiskRead = -1;
+
+	@GuardedBy("this")
+	private long previousDiskWritten = -1;
+
+	private volatile Future<?> monitorHandle;
+
+	public SystemProbe(SigarService sigarService, ScheduledExecutorService scheduler)
+	{
+		this.sigarService = requireNonNull(sigarService, "sigarService is null");
+		this.scheduler = requireNonNull(scheduler, "scheduler is null");
+		this.procfs = Files.isReadable(PROC_STAT) && Files.isReadable(PROC_LOADAVG) && Files.isReadable(PROC_MEMINFO);
+		this.disks = procfs ? physicalDisks() : ImmutableSet.of();
+	}
+
+	/**
+	 * Samples the host every <code>period</code> until {@link #cancel()} is called.
+	 */
+	public synchronized void start(long initialDelay, long period, TimeUnit unit)
+	{
+		if (monitorHandle == null)
+		{
+			monitorHandle = scheduler.scheduleAtFixedRate(this::systemStats, initialDelay, period, unit);
+		}
+	}
+
+	public synchronized void cancel()
+	{
+		if (monitorHandle != null)
+		{
+			monitorHandle.cancel(false);
+			monitorHandle = null;
+		}
+	}
+
+	public void stop()
+	{
+		cancel();
+	}
+
+	public void registerListener(Object listener)
+	{
+		if (listener != null)
+		{
+			subscribers.register(listener);
+		}
+	}
+
+	/**
+	 * Samples the host now and posts the sample to the listeners.
+	 */
+	public Optional<SystemState> systemStats()
+	{
+		SystemState state;
+		try
+		{
+			state = sample();
+		}
+		catch (RuntimeException exception)
+		{
+			LOG.warn("Error on sampling the system stats", exception);
+			return Optional.empty();
+		}
+
+		subscribers.post(state);
+		return Optional.of(state);
+	}
+
+	/**
+	 * @return the last sample if the probe is started, so at most one period old, otherwise a new reading of the host without the CPU usage
+	 *         and the disk rates, which are only measured between the samples of the probe
+	 */
+	public SystemState latest()
+	{
+		SystemState state = latest;
+		if (state != null && monitorHandle != null)
+		{
+			return state;
+		}
+		// a reading outside of the samples must not move the baseline of the rates of the next sample
+		return read(System.currentTimeMillis(), false);
+	}
+
+	private synchronized SystemState sample()
+	{
+		long now = System.currentTimeMillis();
+		SystemState state = read(now, true);
+
+		previousSampleTime = now;
+		latest = state;
+		return state;
+	}
+
+	/**
+	 * @param rates whether to measure the CPU usage and the disk rates since the previous sample, which needs the lock
+	 */
+	private SystemState read(long now, boolean rates)
+	{
+		int cpus = Runtime.getRuntime().availableProcessors();
+		SystemState state = null;
+
+		if (procfs)
+		{
+			try
+			{
+				state = readProcfs(now, cpus, rates);
+			}
+			catch (IOException | RuntimeException exception)
+			{
+				LOG.debug("Error on reading the system stats from /proc", exception);
+			}
+		}
+
+		if (state == null && sigarService.isReady())
+		{
+			try
+			{
+				state = readSigar(now, cpus, rates);
+			}
+			catch (SigarException | UnsupportedOperationException exception)
+			{
+				LOG.debug("Error on reading the system stats with SIGAR", exception);
+			}
+		}
+
+		if (state == null)
+		{
+			double load = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+			state = new SystemState(now, cpus, -1, -1, -1, -1, load, -1, -1, 0, 0, 0, 0, 0, 0);
+		}
+		return state;
+	}
+
+	@GuardedBy("this")
+	private SystemState readProcfs(long now, int cpus, boolean rates) throws IOException
+	{
+		double[] usage = {-1, -1, -1, -1};
+		if (rates)
+		{
+			long[] cpu = parseCpu(firstLine(PROC_STAT));
+			usage = cpuUsage(previousCpu, cpu);
+			previousCpu = cpu;
+		}
+
+		String[] loadavg = firstLine(PROC_LOADAVG).split(" ");
+
+		long total = 0;
+		long available = -1;
+		long free = 0;
+		long cached = 0;
+		long swapTotal = 0;
+		long swapFree = 0;
+
+		for (String line : Files.readAllLines(PROC_MEMINFO, US_ASCII))
+		{
+			if (line.startsWith("MemTotal:"))
+			{
+				total = HostLoadReader.kilobytes(line);
+			}
+			else if (line.startsWith("MemAvailable:"))
+			{
+				available = HostLoadReader.kilobytes(line);
+			}
+			else if (line.startsWith("MemFree:"))
+			{
+				free = HostLoadReader.kilobytes(line);
+			}
+			else if (line.startsWith("Cached:"))
+			{
+				cached = HostLoadReader.kilobytes(line);
+			}
+			else if (line.startsWith("SwapTotal:"))
+			{
+				swapTotal = HostLoadReader.kilobytes(line);
+			}
+			else if (line.startsWith("SwapFree:"))
+			{
+				swapFree = HostLoadReader.kilobytes(line);
+			}
+		}
+
+		double readRate = 0;
+		double writeRate = 0;
+
+		if (rates && !disks.isEmpty() && Files.isReadable(PROC_DISKSTATS))
+		{
+			long[] io = parseDiskStats(Files.readAllLines(PROC_DISKSTATS, US_ASCII), disks);
+			double seconds = (now - previousSampleTime) / 1000.0;
+
+			if (previousDiskRead >= 0 && seconds > 0)
+			{
+				readRate = Math.max(0, io[0] - previousDiskRead) / seconds;
+				writeRate = Math.max(0, io[1] - previousDiskWritten) / seconds;
+			}
+			previousDiskRead = io[0];
+			previousDiskWritten = io[1];
+		}
+
+		return new SystemState(now, cpus, usage[0], usage[1], usage[2], usage[3],
+				Double.parseDouble(loadavg[0]), Double.parseDouble(loadavg[1]), Double.parseDouble(loadavg[2]),
+				total, available >= 0 ? available : free + cached, swapTotal, swapFree, readRate, writeRate);
+	}
+
+	@GuardedBy("this")
+	private SystemState readSigar(long now, int cpus, boolean rates) throws SigarException
+	{
+		double[] load = sigarService.sigar().getLoadAverage();
+		Mem mem = sigarService.sigar().getMem();
+		Swap swap = sigarService.sigar().getSwap();
+
+		if (!rates)
+		{
+			return new SystemState(now, cpus, -1, -1, -1, -1, load[0], load[1], load[2], mem.getTotal(), mem.getActualFree(), swap.getTotal(), swap.getFree(), 0, 0);
+		}
+
+		// SIGAR computes the CPU percentages since its previous call
+		CpuPerc cpu = sigarService.sigar().getCpuPerc();
+		return new SystemState(now, cpus, (cpu.getUser() + cpu.getNice()) * 100, (cpu.getSys() + cpu.getIrq() + cpu.getSoftIrq()) * 100, cpu.getWait() * 100,
+				cpu.getIdle() * 100, load[0], load[1], load[2], mem.getTotal(), mem.getActualFree(), swap.getTotal(), swap.getFree(), 0, 0);
+	}
+
+	private static String firstLine(Path file) throws IOException
+	{
+		byte[] bytes = Files.readAllBytes(file);
+		int end = 0;
+
+		while (end < bytes.length && bytes[end] != '\n')
+		{
+			end++;
+		}
+		return new String(bytes, 0, end, US_ASCII);
+	}
+
+	/**
+	 * Parses the aggregated line of <code>/proc/stat</code>, such as <code>cpu  31750 0 2113 141014 110 0 7 970 0 0</code>, into the
+	 * ticks spent in each state since boot; states unknown to older kernels are zero.
+	 */
+	@VisibleForTesting
+	static long[] parseCpu(String line)
+	{
+		String[] parts = line.trim().split(" +");
+		long[] ticks = new long[CPU_FIELDS];
+
+		for (int i = 0; i < CPU_FIELDS && i + 1 < parts.length; i++)
+		{
+			ticks[i] = Long.parseLong(parts[i + 1]);
+		}
+		return ticks;
+	}
+
+	/**
+	 * @return the percentages of user, system, iowait and idle time between the two readings of {@link #parseCpu(String)}
+	 */
+	@VisibleForTesting
+	static double[] cpuUsage(long[] previous, long[] current)
+	{
+		long[] delta = new long[CPU_FIELDS];
+		long total = 0;
+
+		for (int i = 0; i < CPU_FIELDS; i++)
+		{
+			delta[i] = Math.max(0, current[i] - previous[i]);
+			total += delta[i];
+		}
+
+		if (total == 0)
+		{
+			return new double[] {0, 0, 0, 100};
+		}
+
+		double percent = 100.0 / total;
+		return new double[] {
+				(delta[0] + delta[1]) * percent,
+				(delta[2] + delta[5] + delta[6]) * percent,
+				delta[4] * percent,
+				delta[3] * percent};
+	}
+
+	/**
+	 * Sums the sectors read and written by the given disks in the lines of <code>/proc/diskstats</code>, such as
+	 * <code>253 0 vda 4589 1234 402178 2016 5121 3361 150304 5732 0 3388 7748</code>.
+	 *
+	 * @return the bytes read and the bytes written since boot
+	 */
+	@VisibleForTesting
+	static long[] parseDiskStats(List<String> lines, Set<String> disks)
+	{
+		long read = 0;
+		long written = 0;
+
+		for (String line : lines)
+		{
+			String[] parts = line.trim().split(" +");
+
+			if (parts.length >= 10 && disks.contains(parts[2]))
+			{
+				read += Long.parseLong(parts[5]) * SECTOR_SIZE;
+				written += Long.parseLong(parts[9]) * SECTOR_SIZE;
+			}
+		}
+		return new long[] {read, written};
+	}
+
+	/**
+	 * @return the whole disks of the host, leaving out their partitions and the virtual devices stacked on them, whose I/O would be counted twice
+	 */
+	private static Set<String> physicalDisks()
+	{
+		ImmutableSet.Builder<String> disks = ImmutableSet.builder();
+
+		try (DirectoryStream<Path> devices = Files.newDirectoryStream(SYS_BLOCK))
+		{
+			for (Path device : devices)
+			{
+				String name = device.getFileName().toString();
+
+				if (!name.startsWith("loop") && !name.startsWith("ram") && !name.startsWith("dm-") && !name.startsWith("md") && !name.startsWith("zram"))
+				{
+					disks.add(name);
+				}
+			}
+		}
+		catch (IOException exception)
+		{
+			LOG.debug("Error on listing the block devices, the disk rates are not available", exception);
+		}
+		return disks.build();
+	}
+}
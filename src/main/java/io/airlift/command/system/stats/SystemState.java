@@ -0,0 +1,236 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.system.stats;
+
+import java.util.Objects;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * A sample of the host-wide CPU, load, memory, swap and disk activity taken by a {@link SystemProbe}. The CPU percentages and disk rates
+ * cover the time since the previous sample of the probe.
+ */
+@Immutable
+public final class SystemState
+{
+	private final long datetime;
+	private final int cpus;
+	private final double cpuUser;
+	private final double cpuSystem;
+	private final double cpuIoWait;
+	private final double cpuIdle;
+	private final double loadAverage;
+	private final double loadAverage5;
+	private final double loadAverage15;
+	private final long totalMemory;
+	private final long availableMemory;
+	private final long totalSwap;
+	private final long freeSwap;
+	private final double diskReadBytesPerSecond;
+	private final double diskWriteBytesPerSecond;
+
+	public SystemState(long datetime, int cpus, double cpuUser, double cpuSystem, double cpuIoWait, double cpuIdle, double loadAverage, double loadAverage5,
+			double loadAverage15, long totalMemory, long availableMemory, long totalSwap, long freeSwap, double diskReadBytesPerSecond, double diskWriteBytesPerSecond)
+	{
+		this.datetime = datetime;
+		this.cpus = cpus;
+		this.cpuUser = cpuUser;
+		this.cpuSystem = cpuSystem;
+		this.cpuIoWait = cpuIoWait;
+		this.cpuIdle = cpuIdle;
+		this.loadAverage = loadAverage;
+		this.loadAverage5 = loadAverage5;
+		this.loadAverage15 = loadAverage15;
+		this.totalMemory = totalMemory;
+		this.availableMemory = availableMemory;
+		this.totalSwap = totalSwap;
+		this.freeSwap = freeSwap;
+		this.diskReadBytesPerSecond = diskReadBytesPerSecond;
+		this.diskWriteBytesPerSecond = diskWriteBytesPerSecond;
+	}
+
+	/**
+	 * @return the time of the sample in milliseconds since the epoch
+	 */
+	public long getDatetime()
+	{
+		return datetime;
+	}
+
+	public int getCpus()
+	{
+		return cpus;
+	}
+
+	/**
+	 * @return the percentage of the time of all the CPUs spent in user mode, including nice, or a negative value if it is not available
+	 */
+	public double getCpuUser()
+	{
+		return cpuUser;
+	}
+
+	/**
+	 * @return the percentage of the time of all the CPUs spent in the kernel, including interrupts, or a negative value if it is not available
+	 */
+	public double getCpuSystem()
+	{
+		return cpuSystem;
+	}
+
+	/**
+	 * @return the percentage of the time of all the CPUs spent idle waiting for I/O, or a negative value if it is not available
+	 */
+	public double getCpuIoWait()
+	{
+		return cpuIoWait;
+	}
+
+	/**
+	 * @return the percentage of the time of all the CPUs spent idle, or a negative value if it is not available
+	 */
+	public double getCpuIdle()
+	{
+		return cpuIdle;
+	}
+
+	/**
+	 * @return the one-minute load average, or a negative value if it is not available
+	 */
+	public double getLoadAverage()
+	{
+		return loadAverage;
+	}
+
+	public double getLoadAverage5()
+	{
+		return loadAverage5;
+	}
+
+	public double getLoadAverage15()
+	{
+		return loadAverage15;
+	}
+
+	/**
+	 * @return the total physical memory in bytes, or zero if it is not available
+	 */
+	public long getTotalMemory()
+	{
+		return totalMemory;
+	}
+
+	/**
+	 * @return the memory in bytes that can be allocated without swapping, including reclaimable caches
+	 */
+	public long getAvailableMemory()
+	{
+		return availableMemory;
+	}
+
+	public long getTotalSwap()
+	{
+		return totalSwap;
+	}
+
+	public long getFreeSwap()
+	{
+		return freeSwap;
+	}
+
+	/**
+	 * @return the bytes read per second from the disks, or zero if it is not available
+	 */
+	public double getDiskReadBytesPerSecond()
+	{
+		return diskReadBytesPerSecond;
+	}
+
+	/**
+	 * @return the bytes written per second to the disks, or zero if it is not available
+	 */
+	public double getDiskWriteBytesPerSecond()
+	{
+		return diskWriteBytesPerSecond;
+	}
+
+	/**
+	 * @return the load and memory of this sample, as read by the {@link HostLoadReader}
+	 */
+	public HostLoad getHostLoad()
+	{
+		return new HostLoad(cpus, loadAverage, totalMemory, availableMemory);
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+		{
+			return true;
+		}
+
+		if (obj == null || getClass() != obj.getClass())
+		{
+			return false;
+		}
+
+		SystemState other = (SystemState) obj;
+
+		return datetime == other.datetime &&
+			   cpus == other.cpus &&
+			   Double.compare(cpuUser, other.cpuUser) == 0 &&
+			   Double.compare(cpuSystem, other.cpuSystem) == 0 &&
+			   Double.compare(cpuIoWait, other.cpuIoWait) == 0 &&
+			   Double.compare(cpuIdle, other.cpuIdle) == 0 &&
+			   Double.compare(loadAverage, other.loadAverage) == 0 &&
+			   Double.compare(loadAverage5, other.loadAverage5) == 0 &&
+			   Double.compare(loadAverage15, other.loadAverage15) == 0 &&
+			   totalMemory == other.totalMemory &&
+			   availableMemory == other.availableMemory &&
+			   totalSwap == other.totalSwap &&
+			   freeSwap == other.freeSwap &&
+			   Double.compare(diskReadBytesPerSecond, other.diskReadBytesPerSecond) == 0 &&
+			   Double.compare(diskWriteBytesPerSecond, other.diskWriteBytesPerSecond) == 0;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Objects.hash(datetime, cpus, cpuUser, cpuSystem, cpuIoWait, cpuIdle, loadAverage, loadAverage5, loadAverage15, totalMemory, availableMemory,
+				totalSwap, freeSwap, diskReadBytesPerSecond, diskWriteBytesPerSecond);
+	}
+
+	@Override
+	public String toString()
+	{
+		return MoreObjects.toStringHelper(this)
+				.add("datetime", datetime)
+				.add("cpus", cpus)
+				.add("cpuUser", cpuUser)
+				.add("cpuSystem", cpuSystem)
+				.add("cpuIoWait", cpuIoWait)
+				.add("cpuIdle", cpuIdle)
+				.add("loadAverage", loadAverage)
+				.add("totalMemory", totalMemory)
+				.add("availableMemory", availableMemory)
+				.add("totalSwap", totalSwap)
+				.add("freeSwap", freeSwap)
+				.add("diskReadBytesPerSecond", diskReadBytesPerSecond)
+				.add("diskWriteBytesPerSecond", diskWriteBytesPerSecond)
+				.toString();
+	}
+}
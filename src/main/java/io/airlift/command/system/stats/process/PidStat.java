@@ -22,6 +22,10 @@ import static java.time.Instant.now;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
@@ -31,6 +35,7 @@ import java.util.Date;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 import com.google.common.base.Throwables;
 import com.google.common.collect.Collections2;
@@ -43,11 +48,24 @@ import io.airlift.command.ProcessState;
 
 public class PidStat extends ProcessProbeBase 
 {
+	private static final int INTERVAL_SECONDS = 1;
+	
 	private Thread handle;
+	private final ProcessIoReader ioReader;
+	private final RateTracker fdRate = new RateTracker(1);
+	private final Path fdDirectory;
+	
+	// pidstat reports the CPU as percentages of its interval, SIGAR as the milliseconds used so far: the percentages are summed up into
+	// the same units, from the first report on; only the reader thread updates them
+	private double userMillis;
+	private double sysMillis;
+	private double totalMillis;
 	
 	public PidStat(String id, long pid, ScheduledExecutorService scheduler) 
 	{
 		super(id, pid, scheduler);
+		this.ioReader = new ProcessIoReader(pid);
+		this.fdDirectory = Paths.get("/proc", String.valueOf(pid), "fd");
 	}
 	
 	@Override
@@ -59,7 +77,7 @@ public class PidStat extends ProcessProbeBase
 	@Override
 	protected void monitor(final String id, final long pid, final EventBus bus) 
 	{
-		ProcessBuilder processBuilder = new ProcessBuilder("bash", "-c", format("pidstat -p %s -rud -h %s", pid, 1));
+		ProcessBuilder processBuilder = new ProcessBuilder("bash", "-c", format("pidstat -p %s -rud -h %s", pid, INTERVAL_SECONDS));
         processBuilder.redirectErrorStream(true);
         
         try 
@@ -85,25 +103,45 @@ public class PidStat extends ProcessProbeBase
                     		
                     		if (parts.length == 17)
                     		{
+                        		userMillis += cpuMillis(parseDouble(parts[3]));
+                        		sysMillis += cpuMillis(parseDouble(parts[4]));
+                        		totalMillis += cpuMillis(parseDouble(parts[6]));
+                        		
                         		ProcessCpuState cpuState = new ProcessCpuState()
                         				.setDatetime(new Date(Instant.ofEpochSecond(parseLong(parts[0])).toEpochMilli()))
                         				.setPid(parseLong(parts[2]))
-                        				.setUser(parseDouble(parts[3]))
-                        				.setSys(parseDouble(parts[4]))
-                        				.setTotal(parseDouble(parts[6]));
+                        				.setUser(userMillis)
+                        				.setSys(sysMillis)
+                        				.setTotal(totalMillis)
+                        				.setPercent(parseDouble(parts[6]));
                         		
+                        		// pidstat reports the sizes in kilobytes, SIGAR in bytes
                         		ProcessMemoryState memState = new ProcessMemoryState()
                         				.setPid(cpuState.getPid())
                         				.setDatetime(cpuState.getDatetime())
-                        				.setSize(parseDouble(parts[12]));
+                        				.setSize(parseDouble(parts[10]) * 1024)
+                        				.setResident(parseDouble(parts[11]) * 1024);
                         		
+                        		// pidstat already reports the CPU and the page faults as rates over its interval
                         		ProcessState data = new ProcessState()
                         				.setCpuState(cpuState)
                         				.setMemoryState(memState)
                         				.setPid(pid)
                         				.setDatetime(now().atZone(ZoneOffset.UTC).toInstant().toEpochMilli())
+                        				.setCpuCores(parseDouble(parts[6]) / 100)
+                        				.setPageFaultsPerSecond(parseDouble(parts[8]) + parseDouble(parts[9]))
+                        				.setMajorFaultsPerSecond(parseDouble(parts[9]))
                         				.setId(id);
                         		
+                        		data.setIoState(ioReader.read(data.getDatetime()));
+                        		
+                        		long fds = openFileDescriptors();
+                        		if (fds >= 0)
+                        		{
+                        			fdRate.tick(System.nanoTime());
+                        			data.setFd(fds).setFdGrowthPerSecond(fdRate.rate(0, fds));
+                        		}
+                        		
                         		bus.post(data);
                     		}
                     	}
@@ -134,6 +172,29 @@ public class PidStat extends ProcessProbeBase
 		}
 	}
 	
+	/**
+	 * @return the milliseconds of CPU used over an interval of pidstat, given the percentage of the interval it reported
+	 */
+	private static double cpuMillis(double percent)
+	{
+		return percent / 100 * TimeUnit.SECONDS.toMillis(INTERVAL_SECONDS);
+	}
+	
+	/**
+	 * @return the number of open file descriptors of the process, or -1 if <code>/proc</code> is not available
+	 */
+	private long openFileDescriptors()
+	{
+		try (Stream<Path> fds = Files.list(fdDirectory))
+		{
+			return fds.count();
+		}
+		catch (IOException | UncheckedIOException exception)
+		{
+			return -1;
+		}
+	}
+	
 	static class NonNullAndNonEmptyStringPredicate implements Predicate<String>, com.google.common.base.Predicate<String>
 	{
 		@Override
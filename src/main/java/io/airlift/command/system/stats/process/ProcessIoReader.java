@@ -0,0 +1,209 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.system.stats.process;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import io.airlift.command.ProcessIoState;
+
+/**
+ * Reads the {@link ProcessIoState} of a process from <code>/proc</code>, and computes its rates against the previous reading.
+ * <p>
+ * The I/O counters come from <code>/proc/&lt;pid&gt;/io</code>, which covers the whole process. The context switches and the run queue delay
+ * are kept per thread by the kernel, so they are summed over <code>/proc/&lt;pid&gt;/task</code>: the counts of the threads that exited between
+ * two samples are lost, and a rate that would be negative is reported as zero.
+ */
+@NotThreadSafe
+final class ProcessIoReader
+{
+	private static final Logger LOG = LoggerFactory.getLogger(ProcessIoReader.class);
+
+	// the slots of the counters in the rate tracker
+	private static final int READ_BYTES = 0;
+	private static final int WRITE_BYTES = 1;
+	private static final int READ_SYSCALLS = 2;
+	private static final int WRITE_SYSCALLS = 3;
+	private static final int VOLUNTARY_SWITCHES = 4;
+	private static final int INVOLUNTARY_SWITCHES = 5;
+	private static final int RUN_QUEUE_DELAY = 6;
+
+	private final long pid;
+	private final Path process;
+	private final boolean available;
+
+	private final RateTracker rates = new RateTracker(7);
+
+	ProcessIoReader(long pid)
+	{
+		this.pid = pid;
+		this.process = Paths.get("/proc", String.valueOf(pid));
+		this.available = Files.isReadable(process.resolve("io"));
+	}
+
+	/**
+	 * @param datetime the time of the sample, in milliseconds since the epoch
+	 * @return the activity of the process, or <code>null</code> if it cannot be read, because the host is not Linux or the process exited
+	 */
+	ProcessIoState read(long datetime)
+	{
+		if (!available)
+		{
+			return null;
+		}
+
+		try
+		{
+			long[] io = parseIo(Files.readAllLines(process.resolve("io"), US_ASCII));
+			long[] scheduler = new long[3];
+
+			try (DirectoryStream<Path> tasks = Files.newDirectoryStream(process.resolve("task")))
+			{
+				for (Path task : tasks)
+				{
+					try
+					{
+						long[] switches = parseContextSwitches(Files.readAllLines(task.resolve("status"), US_ASCII));
+						scheduler[0] += switches[0];
+						scheduler[1] += switches[1];
+						scheduler[2] += parseRunQueueDelay(new String(Files.readAllBytes(task.resolve("schedstat")), US_ASCII));
+					}
+					catch (NoSuchFileException exited)
+					{
+						// the thread exited while listing the tasks
+					}
+				}
+			}
+
+			rates.tick(System.nanoTime());
+			return new ProcessIoState()
+					.setPid(pid)
+					.setDatetime(datetime)
+					.setReadBytes(io[0])
+					.setWriteBytes(io[1])
+					.setReadSyscalls(io[2])
+					.setWriteSyscalls(io[3])
+					.setVoluntaryContextSwitches(scheduler[0])
+					.setInvoluntaryContextSwitches(scheduler[1])
+					.setRunQueueDelay(scheduler[2])
+					.setReadBytesPerSecond(rate(READ_BYTES, io[0]))
+					.setWriteBytesPerSecond(rate(WRITE_BYTES, io[1]))
+					.setReadSyscallsPerSecond(rate(READ_SYSCALLS, io[2]))
+					.setWriteSyscallsPerSecond(rate(WRITE_SYSCALLS, io[3]))
+					.setVoluntaryContextSwitchesPerSecond(rate(VOLUNTARY_SWITCHES, scheduler[0]))
+					.setInvoluntaryContextSwitchesPerSecond(rate(INVOLUNTARY_SWITCHES, scheduler[1]))
+					.setRunQueueDelayPerSecond(rate(RUN_QUEUE_DELAY, scheduler[2]));
+		}
+		catch (IOException | RuntimeException exception)
+		{
+			LOG.debug("Error on reading the I/O stats of process [{}]", pid, exception);
+			return null;
+		}
+	}
+
+	/**
+	 * @return the rate of a counter, which only goes down when a thread exits, so never negative
+	 */
+	private double rate(int counter, long value)
+	{
+		return Math.max(0, rates.rate(counter, value));
+	}
+
+	/**
+	 * Parses <code>/proc/&lt;pid&gt;/io</code>.
+	 *
+	 * @return the bytes read and written from storage, and the read and write system calls
+	 */
+	@VisibleForTesting
+	static long[] parseIo(List<String> lines)
+	{
+		long[] io = new long[4];
+
+		for (String line : lines)
+		{
+			if (line.startsWith("read_bytes:"))
+			{
+				io[0] = valueOf(line);
+			}
+			else if (line.startsWith("write_bytes:"))
+			{
+				io[1] = valueOf(line);
+			}
+			else if (line.startsWith("syscr:"))
+			{
+				io[2] = valueOf(line);
+			}
+			else if (line.startsWith("syscw:"))
+			{
+				io[3] = valueOf(line);
+			}
+		}
+		return io;
+	}
+
+	/**
+	 * Parses the <code>status</code> of a thread.
+	 *
+	 * @return the voluntary and involuntary context switches
+	 */
+	@VisibleForTesting
+	static long[] parseContextSwitches(List<String> lines)
+	{
+		long[] switches = new long[2];
+
+		for (String line : lines)
+		{
+			if (line.startsWith("voluntary_ctxt_switches:"))
+			{
+				switches[0] = valueOf(line);
+			}
+			else if (line.startsWith("nonvoluntary_ctxt_switches:"))
+			{
+				switches[1] = valueOf(line);
+			}
+		}
+		return switches;
+	}
+
+	/**
+	 * Parses the <code>schedstat</code> of a thread, such as <code>1234567 89012 42</code>: the time on the CPU and the time waiting for it,
+	 * in nanoseconds, and the number of time slices.
+	 *
+	 * @return the time waiting for a CPU in nanoseconds
+	 */
+	@VisibleForTesting
+	static long parseRunQueueDelay(String schedstat)
+	{
+		return Long.parseLong(schedstat.trim().split(" ")[1]);
+	}
+
+	private static long valueOf(String line)
+	{
+		return Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+	}
+}
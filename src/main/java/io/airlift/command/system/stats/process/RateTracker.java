@@ -0,0 +1,74 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.system.stats.process;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Turns the cumulative counters of the samples of one process into rates per second, against the previous sample.
+ * <p>
+ * The tracker keeps only the previous value of each counter, in a fixed array, so a probe can use one tracker for the life of its process
+ * without allocating anything per sample. Intervals are measured on {@link System#nanoTime()}, so they are not affected by changes of the
+ * wall clock.
+ * <p>
+ * Usage: call {@link #tick(long)} once per sample, then {@link #rate(int, double)} for each counter, always with the same slots.
+ */
+@NotThreadSafe
+final class RateTracker
+{
+	private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+	private final double[] previous;
+	private final boolean[] known;
+	private long previousTime;
+	private double seconds;
+	private boolean started;
+
+	/**
+	 * @param counters the number of counters tracked
+	 */
+	RateTracker(int counters)
+	{
+		checkArgument(counters > 0, "counters must be positive");
+		this.previous = new double[counters];
+		this.known = new boolean[counters];
+	}
+
+	/**
+	 * Starts a new sample.
+	 *
+	 * @param nanoTime the {@link System#nanoTime()} at which the sample was taken
+	 */
+	void tick(long nanoTime)
+	{
+		seconds = started ? (nanoTime - previousTime) / NANOS_PER_SECOND : 0;
+		previousTime = nanoTime;
+		started = true;
+	}
+
+	/**
+	 * @param counter the slot of the counter
+	 * @param value the value of the counter in the current sample
+	 * @return the change per second of the counter since the previous sample, or zero on the first sample of the counter
+	 */
+	double rate(int counter, double value)
+	{
+		double rate = known[counter] && seconds > 0 ? (value - previous[counter]) / seconds : 0;
+		previous[counter] = value;
+		known[counter] = true;
+		return rate;
+	}
+}
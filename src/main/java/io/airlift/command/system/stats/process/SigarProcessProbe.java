@@ -45,12 +45,21 @@ import static java.time.Instant.now;
 @Singleton
 public class SigarProcessProbe extends ProcessProbeBase
 {
+	// the counters whose rates are derived from consecutive samples
+	private static final int CPU_TIME = 0;
+	private static final int PAGE_FAULTS = 1;
+	private static final int MAJOR_FAULTS = 2;
+	private static final int FDS = 3;
+
 	private final SigarService sigarService;
+	private final ProcessIoReader ioReader;
+	private final RateTracker rates = new RateTracker(4);
 	
 	public SigarProcessProbe (String id, long pid, SigarService sigarService, ScheduledExecutorService scheduler)
 	{
 		super(id, pid, scheduler);
 		this.sigarService = requireNonNull(sigarService, "sigar service is null");
+		this.ioReader = new ProcessIoReader(pid);
 	}
 
 	@Override
@@ -67,6 +76,7 @@ public class SigarProcessProbe extends ProcessProbeBase
 				ProcMem mem = sigarService.sigar().getProcMem(pid);
 				ProcTime time = sigarService.sigar().getProcTime(pid);
 				ProcFd procFd = sigarService.sigar().getProcFd(pid);
+				long sampledAt = System.nanoTime();
 				
 
 				ProcessMemoryState memoryState = new ProcessMemoryState()
@@ -76,7 +86,7 @@ public class SigarProcessProbe extends ProcessProbeBase
 						.setPageFaults(mem.getPageFaults())
 						.setMajorFaults(mem.getMajorFaults())
 						.setShare(mem.getShare())
-						.setMajorFaults(mem.getMinorFaults())
+						.setMinorFaults(mem.getMinorFaults())
 						.setSize(mem.getSize());
 				
 
@@ -100,6 +110,7 @@ public class SigarProcessProbe extends ProcessProbeBase
 
 				ProcessState data = new ProcessState()
 						.setPid(pid)
+						.setDatetime(instant.toEpochMilli())
 						.setNumberOfActiveThreads(procState.getThreads())
 						.setTty(procState.getTty())
 						.setProcessor(procState.getProcessor())
@@ -113,6 +124,18 @@ public class SigarProcessProbe extends ProcessProbeBase
 						.setProcessTime(processTime)
 						.setId(id);
 
+				// the I/O reader keeps the previous counters to compute its rates, like the tracker, so overlapping samples take turns
+				synchronized (rates)
+				{
+					data.setIoState(ioReader.read(instant.toEpochMilli()));
+					rates.tick(sampledAt);
+					// SIGAR reports the CPU time in milliseconds
+					data.setCpuCores(rates.rate(CPU_TIME, cpuState.getTotal()) / 1000)
+							.setPageFaultsPerSecond(rates.rate(PAGE_FAULTS, mem.getPageFaults()))
+							.setMajorFaultsPerSecond(rates.rate(MAJOR_FAULTS, mem.getMajorFaults()))
+							.setFdGrowthPerSecond(rates.rate(FDS, procFd.getTotal()));
+				}
+
 				subscribers.post(data);
 
 			} 
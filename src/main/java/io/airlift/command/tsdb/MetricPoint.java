@@ -0,0 +1,174 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.tsdb;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Objects;
+
+import javax.annotation.concurrent.Immutable;
+
+import io.airlift.command.ProcessCpuState;
+import io.airlift.command.ProcessMemoryState;
+import io.airlift.command.ProcessState;
+
+/**
+ * The CPU and memory usage of a command at some point in time. A rollup point summarizes the {@link #getCount()} samples of its bucket:
+ * the CPU percentage and the memory sizes are averaged, while the CPU time, the threads and the file descriptors keep their maximum.
+ */
+@Immutable
+public class MetricPoint
+{
+    private final String commandId;
+    private final long timestamp;
+    private final int count;
+    private final double cpuPercent;
+    private final double cpuTime;
+    private final double residentMemory;
+    private final double virtualMemory;
+    private final long threads;
+    private final long fileDescriptors;
+
+    public MetricPoint(String commandId, long timestamp, int count, double cpuPercent, double cpuTime, double residentMemory, double virtualMemory, long threads, long fileDescriptors)
+    {
+        this.commandId = requireNonNull(commandId, "commandId is null");
+        this.timestamp = timestamp;
+        this.count = count;
+        this.cpuPercent = cpuPercent;
+        this.cpuTime = cpuTime;
+        this.residentMemory = residentMemory;
+        this.virtualMemory = virtualMemory;
+        this.threads = threads;
+        this.fileDescriptors = fileDescriptors;
+    }
+
+    /**
+     * @param timestamp used when the sample has no time of its own
+     */
+    static MetricPoint of(ProcessState sample, long timestamp)
+    {
+        ProcessCpuState cpu = sample.getCpuState();
+        ProcessMemoryState memory = sample.getMemoryState();
+
+        return new MetricPoint(
+                sample.getId(),
+                sample.getDatetime() > 0 ? sample.getDatetime() : timestamp,
+                1,
+                cpu != null ? cpu.getPercent() : 0,
+                cpu != null ? cpu.getTotal() : 0,
+                memory != null ? memory.getResident() : 0,
+                memory != null ? memory.getSize() : 0,
+                sample.getNumberOfActiveThreads(),
+                sample.getFd());
+    }
+
+    public String getCommandId()
+    {
+        return commandId;
+    }
+
+    /**
+     * @return the time of the sample, or the start of the bucket of a rollup, in milliseconds since the epoch
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    /**
+     * @return the number of raw samples summarized by the point
+     */
+    public int getCount()
+    {
+        return count;
+    }
+
+    public double getCpuPercent()
+    {
+        return cpuPercent;
+    }
+
+    public double getCpuTime()
+    {
+        return cpuTime;
+    }
+
+    public double getResidentMemory()
+    {
+        return residentMemory;
+    }
+
+    public double getVirtualMemory()
+    {
+        return virtualMemory;
+    }
+
+    public long getThreads()
+    {
+        return threads;
+    }
+
+    public long getFileDescriptors()
+    {
+        return fileDescriptors;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj)
+        {
+            return true;
+        }
+
+        if (obj == null || getClass() != obj.getClass())
+        {
+            return false;
+        }
+
+        MetricPoint other = (MetricPoint) obj;
+        return Objects.equals(commandId, other.commandId) &&
+               timestamp == other.timestamp &&
+               count == other.count &&
+               Double.compare(cpuPercent, other.cpuPercent) == 0 &&
+               Double.compare(cpuTime, other.cpuTime) == 0 &&
+               Double.compare(residentMemory, other.residentMemory) == 0 &&
+               Double.compare(virtualMemory, other.virtualMemory) == 0 &&
+               threads == other.threads &&
+               fileDescriptors == other.fileDescriptors;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(commandId, timestamp, count, cpuPercent, cpuTime, residentMemory, virtualMemory, threads, fileDescriptors);
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("commandId", commandId)
+                .add("timestamp", timestamp)
+                .add("count", count)
+                .add("cpuPercent", cpuPercent)
+                .add("cpuTime", cpuTime)
+                .add("residentMemory", residentMemory)
+                .add("virtualMemory", virtualMemory)
+                .add("threads", threads)
+                .add("fileDescriptors", fileDescriptors)
+                .toString();
+    }
+}
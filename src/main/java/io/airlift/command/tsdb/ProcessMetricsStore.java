@@ -0,0 +1,253 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.tsdb;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.eventbus.Subscribe;
+
+import io.airlift.command.ProcessState;
+import io.airlift.units.Duration;
+
+/**
+ * Keeps the history of the CPU and memory usage of commands in a local directory, so it outlives their {@link io.airlift.command.CommandResult}.
+ * <p>
+ * Register the store on a process probe, or pass it among the listeners of a command, to record every {@link ProcessState} sample.
+ * Samples are appended to the raw series; a background task started with {@link #start(ScheduledExecutorService, Duration)} rolls them up
+ * into 10 second and 1 minute series, so long histories can be read cheaply. A bucket is rolled up once the wall clock is one bucket width
+ * past its end, which leaves late samples time to arrive; a sample arriving after its bucket was rolled up is only kept in the raw series.
+ * Without the background task, or when it falls behind, the thread recording a sample rolls up once {@link #DEFAULT_MAX_PENDING_SAMPLES}
+ * samples are pending, so they never pile up in memory.
+ * <p>
+ * Each series is stored as described in {@link SegmentLog}, and can be queried by command id and time range.
+ */
+@ThreadSafe
+public class ProcessMetricsStore
+        implements Closeable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(ProcessMetricsStore.class);
+
+    public static final int DEFAULT_BLOCK_SIZE = 512;
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+    public static final int DEFAULT_MAX_PENDING_SAMPLES = 64 * 1024;
+
+    private final Map<Resolution, SegmentLog> series = new EnumMap<>(Resolution.class);
+    private final Queue<MetricPoint> unrolled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final int maxPendingSamples;
+
+    @GuardedBy("this")
+    private final Rollup tenSeconds = new Rollup(Resolution.TEN_SECONDS);
+
+    @GuardedBy("this")
+    private final Rollup oneMinute = new Rollup(Resolution.ONE_MINUTE);
+
+    @GuardedBy("this")
+    private ScheduledFuture<?> rollups;
+
+    public ProcessMetricsStore(Path directory) throws IOException
+    {
+        this(directory, DEFAULT_BLOCK_SIZE, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param blockSize the number of points compressed together
+     * @param segmentSize the size in bytes after which a new segment file is started
+     */
+    public ProcessMetricsStore(Path directory, int blockSize, long segmentSize) throws IOException
+    {
+        this(directory, blockSize, segmentSize, DEFAULT_MAX_PENDING_SAMPLES);
+    }
+
+    /**
+     * @param maxPendingSamples the number of samples waiting to be rolled up past which the recording thread rolls them up
+     */
+    ProcessMetricsStore(Path directory, int blockSize, long segmentSize, int maxPendingSamples) throws IOException
+    {
+        requireNonNull(directory, "directory is null");
+        checkArgument(blockSize > 0, "blockSize must be positive");
+        checkArgument(segmentSize > 0, "segmentSize must be positive");
+        checkArgument(maxPendingSamples > 0, "maxPendingSamples must be positive");
+
+        this.maxPendingSamples = maxPendingSamples;
+        Files.createDirectories(directory);
+        for (Resolution resolution : Resolution.values())
+        {
+            series.put(resolution, new SegmentLog(directory, resolution, blockSize, segmentSize));
+        }
+    }
+
+    /**
+     * Records a sample; samples without a command id are ignored.
+     */
+    @Subscribe
+    public void record(ProcessState sample)
+    {
+        if (sample == null || sample.getId() == null)
+        {
+            return;
+        }
+
+        MetricPoint point = MetricPoint.of(sample, System.currentTimeMillis());
+        try
+        {
+            series.get(Resolution.RAW).append(point);
+            unrolled.add(point);
+        }
+        catch (IOException e)
+        {
+            LOG.warn("Error on recording the sample of command {}", sample.getId(), e);
+            return;
+        }
+
+        if (pending.incrementAndGet() > maxPendingSamples)
+        {
+            rollup();
+        }
+    }
+
+    /**
+     * @return the points of the command with a timestamp in [from, to), in milliseconds since the epoch, in time order
+     */
+    public List<MetricPoint> query(String commandId, long from, long to, Resolution resolution) throws IOException
+    {
+        requireNonNull(commandId, "commandId is null");
+        requireNonNull(resolution, "resolution is null");
+
+        return series.get(resolution).query(commandId, from, to);
+    }
+
+    /**
+     * Rolls up the samples every <code>period</code> until {@link #stop()} is called.
+     */
+    public synchronized ProcessMetricsStore start(ScheduledExecutorService scheduler, Duration period)
+    {
+        requireNonNull(scheduler, "scheduler is null");
+        requireNonNull(period, "period is null");
+
+        if (rollups == null)
+        {
+            rollups = scheduler.scheduleWithFixedDelay(this::rollup, period.toMillis(), period.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    public synchronized void stop()
+    {
+        if (rollups != null)
+        {
+            rollups.cancel(false);
+            rollups = null;
+        }
+    }
+
+    public void rollup()
+    {
+        try
+        {
+            rollup(System.currentTimeMillis());
+        }
+        catch (IOException e)
+        {
+            LOG.warn("Error on rolling up the samples", e);
+        }
+    }
+
+    synchronized void rollup(long now) throws IOException
+    {
+        int late = 0;
+        MetricPoint point;
+        while ((point = unrolled.poll()) != null)
+        {
+            pending.decrementAndGet();
+            if (!tenSeconds.add(point))
+            {
+                late++;
+            }
+        }
+
+        if (late > 0)
+        {
+            LOG.debug("Dropped {} samples from the rollups, which arrived after their bucket was rolled up", late);
+        }
+
+        SegmentLog tenSecondSeries = series.get(Resolution.TEN_SECONDS);
+        for (MetricPoint rolledUp : tenSeconds.close(watermarkOf(now, Resolution.TEN_SECONDS)))
+        {
+            tenSecondSeries.append(rolledUp);
+            oneMinute.add(rolledUp);
+        }
+
+        SegmentLog oneMinuteSeries = series.get(Resolution.ONE_MINUTE);
+        for (MetricPoint rolledUp : oneMinute.close(watermarkOf(now, Resolution.ONE_MINUTE)))
+        {
+            oneMinuteSeries.append(rolledUp);
+        }
+    }
+
+    private static long watermarkOf(long now, Resolution resolution)
+    {
+        return now == Long.MAX_VALUE ? Long.MAX_VALUE : now - resolution.getWidthMillis();
+    }
+
+    /**
+     * Writes the buffered points of every series to disk.
+     */
+    public void flush() throws IOException
+    {
+        for (SegmentLog log : series.values())
+        {
+            log.flush();
+        }
+    }
+
+    /**
+     * Stops the rollups, rolls up every pending sample, including those of the current buckets, and writes everything to disk.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        synchronized (this)
+        {
+            stop();
+            rollup(Long.MAX_VALUE);
+        }
+
+        for (SegmentLog log : series.values())
+        {
+            log.close();
+        }
+    }
+}
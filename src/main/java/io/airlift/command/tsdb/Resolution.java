@@ -0,0 +1,56 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.tsdb;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The resolutions kept by a {@link ProcessMetricsStore}: the raw samples, and their 10 second and 1 minute rollups.
+ */
+public enum Resolution
+{
+    RAW("raw", 0),
+    TEN_SECONDS("10s", TimeUnit.SECONDS.toMillis(10)),
+    ONE_MINUTE("1m", TimeUnit.MINUTES.toMillis(1));
+
+    private final String name;
+    private final long widthMillis;
+
+    Resolution(String name, long widthMillis)
+    {
+        this.name = name;
+        this.widthMillis = widthMillis;
+    }
+
+    /**
+     * @return the name of the resolution, which prefixes its segment files
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return the width of a rollup bucket in milliseconds, zero for the raw samples
+     */
+    public long getWidthMillis()
+    {
+        return widthMillis;
+    }
+
+    long bucketOf(long timestamp)
+    {
+        return timestamp - Math.floorMod(timestamp, widthMillis);
+    }
+}
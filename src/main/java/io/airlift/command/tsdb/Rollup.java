@@ -0,0 +1,140 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.tsdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Aggregates points into the buckets of a {@link Resolution}, per command. Points are weighted by their count, so rolling up rollups gives
+ * the same result as rolling up the raw samples.
+ */
+@NotThreadSafe
+final class Rollup
+{
+    private final Resolution resolution;
+    private final Map<Key, Bucket> open = new HashMap<>();
+    private long closedUpTo = Long.MIN_VALUE;
+
+    Rollup(Resolution resolution)
+    {
+        this.resolution = resolution;
+    }
+
+    /**
+     * @return <code>false</code> if the point is too late, its bucket having been closed already, in which case it is dropped rather than
+     *         rolled up into a second point for the same bucket
+     */
+    boolean add(MetricPoint point)
+    {
+        long start = resolution.bucketOf(point.getTimestamp());
+        if (start + resolution.getWidthMillis() <= closedUpTo)
+        {
+            return false;
+        }
+
+        open.computeIfAbsent(new Key(point.getCommandId(), start), key -> new Bucket()).add(point);
+        return true;
+    }
+
+    /**
+     * @return the points of the buckets ending at or before the watermark, which are not updated anymore
+     */
+    List<MetricPoint> close(long watermark)
+    {
+        List<MetricPoint> closed = new ArrayList<>();
+        closedUpTo = Math.max(closedUpTo, watermark);
+
+        for (Iterator<Map.Entry<Key, Bucket>> buckets = open.entrySet().iterator(); buckets.hasNext(); )
+        {
+            Map.Entry<Key, Bucket> bucket = buckets.next();
+            if (bucket.getKey().start + resolution.getWidthMillis() <= watermark)
+            {
+                closed.add(bucket.getValue().toPoint(bucket.getKey()));
+                buckets.remove();
+            }
+        }
+
+        closed.sort((a, b) -> Long.compare(a.getTimestamp(), b.getTimestamp()));
+        return closed;
+    }
+
+    private static final class Key
+    {
+        private final String commandId;
+        private final long start;
+
+        Key(String commandId, long start)
+        {
+            this.commandId = commandId;
+            this.start = start;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+
+            if (!(obj instanceof Key))
+            {
+                return false;
+            }
+
+            Key other = (Key) obj;
+            return start == other.start && commandId.equals(other.commandId);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(commandId, start);
+        }
+    }
+
+    private static final class Bucket
+    {
+        private int count;
+        private double cpuPercent;
+        private double cpuTime;
+        private double residentMemory;
+        private double virtualMemory;
+        private long threads;
+        private long fileDescriptors;
+
+        void add(MetricPoint point)
+        {
+            count += point.getCount();
+            cpuPercent += point.getCpuPercent() * point.getCount();
+            cpuTime = Math.max(cpuTime, point.getCpuTime());
+            residentMemory += point.getResidentMemory() * point.getCount();
+            virtualMemory += point.getVirtualMemory() * point.getCount();
+            threads = Math.max(threads, point.getThreads());
+            fileDescriptors = Math.max(fileDescriptors, point.getFileDescriptors());
+        }
+
+        MetricPoint toPoint(Key key)
+        {
+            return new MetricPoint(key.commandId, key.start, count, cpuPercent / count, cpuTime, residentMemory / count, virtualMemory / count, threads, fileDescriptors);
+        }
+    }
+}
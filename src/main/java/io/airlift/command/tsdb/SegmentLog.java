@@ -0,0 +1,357 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.tsdb;
+
+import static java.lang.String.format;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The points of one {@link Resolution}, stored in append-only segment files named <code>&lt;resolution&gt;-&lt;number&gt;.seg</code>.
+ * <p>
+ * Points are buffered in memory and written in compressed blocks. A block starts with an uncompressed header holding the number of
+ * points, their time range and the ids of their commands, followed by the deflated points. The index, from command id to the blocks
+ * holding its points, is kept in memory and rebuilt from the block headers when the store is opened; a block cut short by a crash is
+ * dropped at that point.
+ */
+@ThreadSafe
+final class SegmentLog
+{
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentLog.class);
+
+    private static final int BLOCK_MAGIC = 0x54534442; // TSDB
+    private static final String SUFFIX = ".seg";
+
+    private final Path directory;
+    private final Resolution resolution;
+    private final int blockSize;
+    private final long segmentSize;
+
+    @GuardedBy("this")
+    private final Map<String, List<Block>> index = new HashMap<>();
+
+    @GuardedBy("this")
+    private final TreeMap<Integer, Path> segments = new TreeMap<>();
+
+    @GuardedBy("this")
+    private final List<MetricPoint> pending = new ArrayList<>();
+
+    @GuardedBy("this")
+    private RandomAccessFile current;
+
+    SegmentLog(Path directory, Resolution resolution, int blockSize, long segmentSize) throws IOException
+    {
+        this.directory = directory;
+        this.resolution = resolution;
+        this.blockSize = blockSize;
+        this.segmentSize = segmentSize;
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, resolution.getName() + "-*" + SUFFIX))
+        {
+            for (Path file : files)
+            {
+                String name = file.getFileName().toString();
+                try
+                {
+                    segments.put(Integer.parseInt(name.substring(resolution.getName().length() + 1, name.length() - SUFFIX.length())), file);
+                }
+                catch (NumberFormatException e)
+                {
+                    LOG.warn("Ignoring unexpected file {}", file);
+                }
+            }
+        }
+
+        synchronized (this)
+        {
+            for (Map.Entry<Integer, Path> segment : segments.entrySet())
+            {
+                scan(segment.getKey(), segment.getValue());
+            }
+        }
+    }
+
+    @GuardedBy("this")
+    private void scan(int segment, Path file) throws IOException
+    {
+        try (RandomAccessFile in = new RandomAccessFile(file.toFile(), "rw"))
+        {
+            long position = 0;
+            long length = in.length();
+
+            while (position < length)
+            {
+                try
+                {
+                    in.seek(position);
+                    if (in.readInt() != BLOCK_MAGIC)
+                    {
+                        throw new EOFException("bad block magic");
+                    }
+
+                    int count = in.readInt();
+                    long minTime = in.readLong();
+                    long maxTime = in.readLong();
+                    int ids = in.readInt();
+                    List<String> commandIds = new ArrayList<>(ids);
+                    for (int i = 0; i < ids; i++)
+                    {
+                        commandIds.add(in.readUTF());
+                    }
+                    int compressedLength = in.readInt();
+                    long payload = in.getFilePointer();
+
+                    if (payload + compressedLength > length)
+                    {
+                        throw new EOFException("truncated block");
+                    }
+
+                    addToIndex(new Block(segment, payload, compressedLength, count, minTime, maxTime, commandIds));
+                    position = payload + compressedLength;
+                }
+                catch (EOFException e)
+                {
+                    LOG.warn("Dropping the incomplete block at {} of {}", position, file);
+                    in.setLength(position);
+                    break;
+                }
+            }
+        }
+    }
+
+    synchronized void append(MetricPoint point) throws IOException
+    {
+        pending.add(point);
+
+        if (pending.size() >= blockSize)
+        {
+            flush();
+        }
+    }
+
+    synchronized void flush() throws IOException
+    {
+        if (pending.isEmpty())
+        {
+            return;
+        }
+
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(compressed, deflater)))
+        {
+            for (MetricPoint point : pending)
+            {
+                Integer id = ids.computeIfAbsent(point.getCommandId(), key -> ids.size());
+                minTime = Math.min(minTime, point.getTimestamp());
+                maxTime = Math.max(maxTime, point.getTimestamp());
+
+                out.writeInt(id);
+                out.writeLong(point.getTimestamp());
+                out.writeInt(point.getCount());
+                out.writeDouble(point.getCpuPercent());
+                out.writeDouble(point.getCpuTime());
+                out.writeDouble(point.getResidentMemory());
+                out.writeDouble(point.getVirtualMemory());
+                out.writeLong(point.getThreads());
+                out.writeLong(point.getFileDescriptors());
+            }
+        }
+        finally
+        {
+            deflater.end();
+        }
+
+        ByteArrayOutputStream block = new ByteArrayOutputStream(compressed.size() + 64);
+        DataOutputStream header = new DataOutputStream(block);
+        header.writeInt(BLOCK_MAGIC);
+        header.writeInt(pending.size());
+        header.writeLong(minTime);
+        header.writeLong(maxTime);
+        header.writeInt(ids.size());
+        for (String id : ids.keySet())
+        {
+            header.writeUTF(id);
+        }
+        header.writeInt(compressed.size());
+        int headerLength = block.size();
+        compressed.writeTo(block);
+
+        RandomAccessFile file = currentSegment();
+        long position = file.length();
+        file.seek(position);
+        file.write(block.toByteArray());
+
+        addToIndex(new Block(segments.lastKey(), position + headerLength, compressed.size(), pending.size(), minTime, maxTime, ids.keySet()));
+        pending.clear();
+    }
+
+    @GuardedBy("this")
+    private RandomAccessFile currentSegment() throws IOException
+    {
+        if (current != null && current.length() >= segmentSize)
+        {
+            current.close();
+            current = null;
+        }
+
+        if (current == null)
+        {
+            if (segments.isEmpty() || Files.size(segments.lastEntry().getValue()) >= segmentSize)
+            {
+                int next = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+                segments.put(next, directory.resolve(format("%s-%06d%s", resolution.getName(), next, SUFFIX)));
+            }
+            current = new RandomAccessFile(segments.lastEntry().getValue().toFile(), "rw");
+        }
+        return current;
+    }
+
+    @GuardedBy("this")
+    private void addToIndex(Block block)
+    {
+        for (String id : block.commandIds)
+        {
+            index.computeIfAbsent(id, key -> new ArrayList<>()).add(block);
+        }
+    }
+
+    /**
+     * @return the points of the command with a timestamp in [from, to), in time order
+     */
+    synchronized List<MetricPoint> query(String commandId, long from, long to) throws IOException
+    {
+        List<MetricPoint> points = new ArrayList<>();
+
+        for (Block block : index.getOrDefault(commandId, ImmutableList.of()))
+        {
+            if (block.maxTime >= from && block.minTime < to)
+            {
+                read(block, commandId, from, to, points);
+            }
+        }
+
+        for (MetricPoint point : pending)
+        {
+            if (point.getCommandId().equals(commandId) && point.getTimestamp() >= from && point.getTimestamp() < to)
+            {
+                points.add(point);
+            }
+        }
+
+        points.sort((a, b) -> Long.compare(a.getTimestamp(), b.getTimestamp()));
+        return points;
+    }
+
+    @GuardedBy("this")
+    private void read(Block block, String commandId, long from, long to, List<MetricPoint> points) throws IOException
+    {
+        byte[] compressed = new byte[block.length];
+        try (RandomAccessFile file = new RandomAccessFile(segments.get(block.segment).toFile(), "r"))
+        {
+            file.seek(block.offset);
+            file.readFully(compressed);
+        }
+
+        Inflater inflater = new Inflater();
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(compressed), inflater)))
+        {
+            for (int i = 0; i < block.count; i++)
+            {
+                String id = block.commandIds.get(in.readInt());
+                long timestamp = in.readLong();
+                int count = in.readInt();
+                double cpuPercent = in.readDouble();
+                double cpuTime = in.readDouble();
+                double residentMemory = in.readDouble();
+                double virtualMemory = in.readDouble();
+                long threads = in.readLong();
+                long fileDescriptors = in.readLong();
+
+                if (id.equals(commandId) && timestamp >= from && timestamp < to)
+                {
+                    points.add(new MetricPoint(id, timestamp, count, cpuPercent, cpuTime, residentMemory, virtualMemory, threads, fileDescriptors));
+                }
+            }
+        }
+        finally
+        {
+            inflater.end();
+        }
+    }
+
+    synchronized void close() throws IOException
+    {
+        flush();
+
+        if (current != null)
+        {
+            current.close();
+            current = null;
+        }
+    }
+
+    private static final class Block
+    {
+        private final int segment;
+        private final long offset;
+        private final int length;
+        private final int count;
+        private final long minTime;
+        private final long maxTime;
+        private final List<String> commandIds;
+
+        Block(int segment, long offset, int length, int count, long minTime, long maxTime, Iterable<String> commandIds)
+        {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.count = count;
+            this.minTime = minTime;
+            this.maxTime = maxTime;
+            this.commandIds = ImmutableList.copyOf(commandIds);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the time to start and reap a short command with the {@link ProcessLauncher#preferred() preferred launcher}, which is the one
+ * provided as a service on the class path if any, and with {@link ProcessLauncher#PROCESS_BUILDER}, as the heap the JVM has touched grows.
+ * <p>
+ * Run through {@link #main(String[])}, the benchmarks are repeated with every launch mechanism the JDK has on Linux, <code>posix_spawn</code>
+ * included from Java 12, which are the alternatives to compare when no launcher is provided; the preferred launcher is then
+ * {@link ProcessLauncher#PROCESS_BUILDER} itself and its benchmark is skipped.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class BenchmarkProcessLauncher
+{
+    private static final int MEGABYTE = 1024 * 1024;
+
+    /**
+     * The size in megabytes of the heap allocated and touched before the runs, as a larger JVM is slower to fork.
+     */
+    @Param({"0", "1024"})
+    public int ballastMegabytes;
+
+    private byte[][] ballast;
+    private ProcessBuilder processBuilder;
+
+    @Setup
+    public void setup()
+    {
+        ballast = new byte[ballastMegabytes][];
+        for (int i = 0; i < ballastMegabytes; i++)
+        {
+            ballast[i] = new byte[MEGABYTE];
+            for (int page = 0; page < MEGABYTE; page += 4096)
+            {
+                ballast[i][page] = 1;
+            }
+        }
+
+        processBuilder = ProcessCallable.newProcessBuilder(new Command("true", "true"));
+    }
+
+    @Benchmark
+    public int processBuilder() throws IOException, InterruptedException
+    {
+        return ProcessLauncher.PROCESS_BUILDER.launch(processBuilder).waitFor();
+    }
+
+    @Benchmark
+    public int preferred() throws IOException, InterruptedException
+    {
+        return ProcessLauncher.preferred().launch(processBuilder).waitFor();
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        boolean launcherProvided = ProcessLauncher.preferred() != ProcessLauncher.PROCESS_BUILDER;
+
+        for (String mechanism : launchMechanisms())
+        {
+            System.out.printf("jdk.lang.Process.launchMechanism=%s, preferred launcher: %s%n", mechanism, ProcessLauncher.preferred());
+
+            // the arguments given here replace those of the @Fork annotation
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .verbosity(VerboseMode.NORMAL)
+                    .include(".*" + BenchmarkProcessLauncher.class.getSimpleName() + ".*")
+                    .jvmArgsAppend("-Xmx2g", "-Djdk.lang.Process.launchMechanism=" + mechanism);
+
+            if (!launcherProvided)
+            {
+                options.exclude(".*" + BenchmarkProcessLauncher.class.getSimpleName() + ".preferred");
+            }
+
+            new Runner(options.build()).run();
+        }
+    }
+
+    private static List<String> launchMechanisms()
+    {
+        List<String> mechanisms = new ArrayList<>();
+        mechanisms.add("VFORK");
+        mechanisms.add("FORK");
+
+        // "1.8" before Java 9, then the major version
+        String version = System.getProperty("java.specification.version");
+        if (!version.startsWith("1.") && Integer.parseInt(version) >= 12)
+        {
+            mechanisms.add("POSIX_SPAWN");
+        }
+        return mechanisms;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares spawning a process with an environment prepared once, as an {@link EnvironmentSnapshot}, with spawning it the way every
+ * spawn used to set the environment of its {@link ProcessBuilder}: copying the environment of the JVM, clearing it when it is not
+ * inherited, and putting the variables of the command into it. The <code>prepare</code> benchmarks measure the environment alone,
+ * without the spawn.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class BenchmarkProcessSpawn
+{
+    /**
+     * The environment of the command: the one of the JVM, the one of the JVM with a variable added, or a single variable.
+     */
+    @Param({"inherited", "inheritedWith", "only"})
+    public String environment;
+
+    private Command command;
+    private Command snapshotCommand;
+
+    @Setup
+    public void setup()
+    {
+        command = new Command("true", "true");
+        if (environment.equals("inheritedWith"))
+        {
+            command = command.addEnvironment("BENCHMARK", "value");
+        }
+        else if (environment.equals("only"))
+        {
+            command = command.addEnvironment("BENCHMARK", "value").excludeEnvironmentVariables();
+        }
+
+        snapshotCommand = command.setEnvironment(command.getEnvironmentSnapshot());
+    }
+
+    @Benchmark
+    public ProcessBuilder prepareCopied()
+    {
+        ProcessBuilder processBuilder = new ProcessBuilder(command.getCommand());
+        copyEnvironment(command, processBuilder);
+        return processBuilder;
+    }
+
+    @Benchmark
+    public ProcessBuilder prepareSnapshot()
+    {
+        return ProcessCallable.newProcessBuilder(snapshotCommand);
+    }
+
+    @Benchmark
+    public int spawnCopied() throws IOException, InterruptedException
+    {
+        ProcessBuilder processBuilder = new ProcessBuilder(command.getCommand());
+        copyEnvironment(command, processBuilder);
+        return processBuilder.start().waitFor();
+    }
+
+    @Benchmark
+    public int spawnSnapshot() throws IOException, InterruptedException
+    {
+        return ProcessCallable.newProcessBuilder(snapshotCommand).start().waitFor();
+    }
+
+    private static void copyEnvironment(Command command, ProcessBuilder processBuilder)
+    {
+        if (!command.isIncludeEnvironmentVariables())
+        {
+            processBuilder.environment().clear();
+        }
+        processBuilder.environment().putAll(command.getEnvironment());
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        Options options = new OptionsBuilder()
+                .verbosity(VerboseMode.NORMAL)
+                .include(".*" + BenchmarkProcessSpawn.class.getSimpleName() + ".*")
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import io.airlift.command.system.stats.HostLoad;
+import io.airlift.command.system.stats.HostLoadReader;
+import io.airlift.command.system.stats.SigarService;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestAdaptiveConcurrencyLimiter
+{
+    private static final HostLoad IDLE = new HostLoad(4, 0.5, 1000, 900);
+    private static final HostLoad BUSY = new HostLoad(4, 8.0, 1000, 900);
+    private static final HostLoad LOW_MEMORY = new HostLoad(4, 0.5, 1000, 10);
+
+    @Test
+    public void growsWhileHostIsIdle()
+    {
+        AdaptiveConcurrencyLimiter limiter = newLimiter();
+
+        for (int i = 0; i < 5; i++)
+        {
+            limiter.onDispatched(limiter.getLimit());
+            limiter.onCompleted(100, false);
+            limiter.update(IDLE);
+        }
+
+        assertEquals(limiter.getLimit(), 15);
+    }
+
+    @Test
+    public void doesNotGrowBelowTheLimit()
+    {
+        AdaptiveConcurrencyLimiter limiter = newLimiter();
+
+        limiter.onDispatched(9);
+        limiter.onCompleted(100, false);
+        limiter.update(IDLE);
+        assertEquals(limiter.getLimit(), 10);
+
+        // reaching the limit counts for the period it happened in only
+        limiter.onDispatched(10);
+        limiter.update(IDLE);
+        limiter.onCompleted(100, false);
+        limiter.update(IDLE);
+        assertEquals(limiter.getLimit(), 10);
+    }
+
+    @Test
+    public void tellsListenersOfChanges()
+    {
+        AdaptiveConcurrencyLimiter limiter = newLimiter();
+        AtomicInteger changes = new AtomicInteger();
+        limiter.addListener(changes::incrementAndGet);
+
+        limiter.update(IDLE);
+        assertEquals(changes.get(), 0);
+
+        limiter.onDispatched(10);
+        limiter.onCompleted(100, false);
+        limiter.update(IDLE);
+        assertEquals(changes.get(), 1);
+
+        limiter.update(BUSY);
+        assertEquals(changes.get(), 2);
+    }
+
+    @Test
+    public void doesNotGrowWithoutWork()
+    {
+        AdaptiveConcurrencyLimiter limiter = newLimiter();
+        limiter.update(IDLE);
+        assertEquals(limiter.getLimit(), 10);
+    }
+
+    @Test
+    public void backsOffWhenHostIsSaturated()
+    {
+        AdaptiveConcurrencyLimiter limiter = newLimiter();
+
+        limiter.update(BUSY);
+        assertEquals(limiter.getLimit(), 9);
+
+        limiter.update(LOW_MEMORY);
+        assertEquals(limiter.getLimit(), 8);
+    }
+
+    @Test
+    public void backsOffOnTimeoutsAndLatency()
+    {
+        AdaptiveConcurrencyLimiter limiter = newLimiter();
+
+        limiter.onCompleted(100, true);
+        limiter.update(IDLE);
+        assertEquals(limiter.getLimit(), 9);
+
+        limiter.onDispatched(9);
+        limiter.onCompleted(100, false);
+        limiter.update(IDLE);
+        assertEquals(limiter.getLimit(), 10);
+
+        for (int i = 0; i < 10; i++)
+        {
+            limiter.onCompleted(10_000, false);
+        }
+        limiter.update(IDLE);
+        assertEquals(limiter.getLimit(), 9);
+    }
+
+    @Test
+    public void staysWithinBounds()
+    {
+        AdaptiveConcurrencyLimiter limiter = newLimiter();
+
+        for (int i = 0; i < 100; i++)
+        {
+            limiter.update(BUSY);
+        }
+        assertEquals(limiter.getLimit(), 2);
+
+        for (int i = 0; i < 100; i++)
+        {
+            limiter.onDispatched(limiter.getLimit());
+            limiter.onCompleted(100, false);
+            limiter.update(IDLE);
+        }
+        assertEquals(limiter.getLimit(), 20);
+    }
+
+    @Test
+    public void readsHostLoad()
+    {
+        HostLoad load = new HostLoadReader(new SigarService()).read();
+        assertTrue(load.getCpus() > 0);
+        assertTrue(load.getAvailableMemoryRatio() > 0);
+    }
+
+    private static AdaptiveConcurrencyLimiter newLimiter()
+    {
+        return new AdaptiveConcurrencyLimiter(new HostLoadReader(new SigarService()), 10, 2, 20);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+public class TestBufferPool
+{
+    @Test
+    public void sizeClasses()
+    {
+        assertEquals(BufferPool.sizeClassOf(0), 0);
+        assertEquals(BufferPool.sizeClassOf(4096), 0);
+        assertEquals(BufferPool.sizeClassOf(4097), 1);
+        assertEquals(BufferPool.sizeClassOf(8192), 1);
+        assertEquals(BufferPool.sizeClassOf(256 * 1024), 6);
+    }
+
+    @Test
+    public void reusesReleasedBuffers()
+    {
+        BufferPool pool = new BufferPool(1024 * 1024);
+
+        byte[] buffer = pool.acquire(5000);
+        assertEquals(buffer.length, 8192);
+        assertEquals(pool.getBuffersInUse(), 1);
+
+        pool.release(buffer);
+        assertEquals(pool.getRetainedBuffers(), 1);
+        assertEquals(pool.getRetainedBytes(), 8192);
+
+        assertSame(pool.acquire(8000), buffer);
+        assertEquals(pool.getAllocated(), 1);
+        assertEquals(pool.getAcquired(), 2);
+    }
+
+    @Test
+    public void boundsRetainedBytes()
+    {
+        // one 256 KiB buffer per class at most
+        BufferPool pool = new BufferPool(7 * 256 * 1024);
+
+        byte[] first = pool.acquire(256 * 1024);
+        byte[] second = pool.acquire(256 * 1024);
+        pool.release(first);
+        pool.release(second);
+        pool.release(pool.acquire(1024 * 1024));
+
+        assertEquals(pool.getRetainedBuffers(), 1);
+        assertEquals(pool.getDiscarded(), 2);
+        assertEquals(pool.getBuffersInUse(), 0);
+    }
+
+    @Test
+    public void zeroSizeRetainsNothing()
+    {
+        BufferPool pool = new BufferPool(0);
+
+        pool.release(pool.acquire(4096));
+        pool.release(pool.acquire(256 * 1024));
+
+        assertEquals(pool.getRetainedBuffers(), 0);
+        assertEquals(pool.getRetainedBytes(), 0);
+        assertEquals(pool.getDiscarded(), 2);
+    }
+
+    @Test
+    public void pooledOutputBuffer()
+    {
+        BufferPool pool = new BufferPool(16 * 1024 * 1024);
+        PooledOutputBuffer output = new PooledOutputBuffer(pool);
+
+        byte[] expected = new byte[1_000_000];
+        new Random(42).nextBytes(expected);
+
+        for (int offset = 0; offset < expected.length; offset += 3000)
+        {
+            output.write(expected, offset, Math.min(3000, expected.length - offset));
+        }
+
+        assertEquals(output.size(), expected.length);
+        assertEquals(output.toByteArray(), expected);
+
+        output.release();
+        assertEquals(pool.getBuffersInUse(), 0);
+        assertEquals(output.toByteArray().length, 0);
+    }
+}
@@ -15,20 +15,33 @@ package io.airlift.command;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
 import io.airlift.units.Duration;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import static io.airlift.concurrent.Threads.daemonThreadsNamed;
 import static io.airlift.testing.EquivalenceTester.equivalenceTester;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.concurrent.Executors.newCachedThreadPool;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.fail;
 
 import static java.util.UUID.randomUUID;
 
@@ -60,6 +73,27 @@ public class TestCommand
         assertNotSame(command.setTimeLimit(new Duration(2, TimeUnit.SECONDS)), command);
     }
 
+    @Test
+    public void nullCommandSpawnsNothing() throws Exception
+    {
+        assertEquals(Command.NULL_COMMAND.execute(executor).getCommandOutput(), "NULL_OUTPUT");
+        assertEquals(Command.NULL_COMMAND.start(executor).getResult().getCommandOutput(), "NULL_OUTPUT");
+        assertEquals(new CommandScheduler(executor, 1).submit(Command.NULL_COMMAND).get(5, TimeUnit.SECONDS).getCommandOutput(), "NULL_OUTPUT");
+
+        try (ExecutionEngine engine = new ExecutionEngine(executor))
+        {
+            assertEquals(Command.NULL_COMMAND.execute(engine).getCommandOutput(), "NULL_OUTPUT");
+            try
+            {
+                engine.submit(Command.NULL_COMMAND);
+                fail("expected IllegalArgumentException");
+            }
+            catch (IllegalArgumentException expected)
+            {
+            }
+        }
+    }
+
     @Test
     public void buildCommand() throws Exception
     {
@@ -125,6 +159,166 @@ public class TestCommand
         assertEquals(result.getCommandOutput(), "hello\n");
     }
 
+    @Test
+    public void execOutputBytes() throws Exception
+    {
+        CommandResult result = new Command(randomUUID().toString(), "bash", "-c", "printf 'caf\\xc3\\xa9'")
+                .setTimeLimit(1, TimeUnit.SECONDS)
+                .execute(executor);
+
+        byte[] expected = "caf\u00e9".getBytes(UTF_8);
+
+        assertTrue(result.hasOutput());
+        assertEquals(result.getOutputSize(), expected.length);
+        assertEquals(result.getOutputBytes(), expected);
+        assertEquals(ByteStreams.toByteArray(result.asInputStream()), expected);
+        assertEquals(result.getCommandOutput(), "caf\u00e9");
+
+        CommandResult empty = new Command(randomUUID().toString(), "true")
+                .setTimeLimit(1, TimeUnit.SECONDS)
+                .execute(executor);
+
+        assertFalse(empty.hasOutput());
+        assertEquals(empty.getCommandOutput(), "");
+    }
+
+    @Test
+    public void execWithInput() throws Exception
+    {
+        CommandResult result = new Command(randomUUID().toString(), "cat")
+                .setTimeLimit(1, TimeUnit.SECONDS)
+                .setInput("hello".getBytes(UTF_8))
+                .execute(executor);
+
+        assertEquals(result.getCommandOutput(), "hello");
+    }
+
+    @Test
+    public void execWithoutInputClosesStandardInput() throws Exception
+    {
+        CommandResult result = new Command(randomUUID().toString(), "cat")
+                .setTimeLimit(1, TimeUnit.SECONDS)
+                .execute(executor);
+
+        assertEquals(result.getCommandOutput(), "");
+    }
+
+    @Test
+    public void execWithLargeStreamingInput() throws Exception
+    {
+        // much larger than the pipe buffers in both directions
+        byte[] chunk = new byte[64 * 1024];
+        Arrays.fill(chunk, (byte) 'x');
+
+        CommandResult result = new Command(randomUUID().toString(), "cat")
+                .setTimeLimit(5, TimeUnit.SECONDS)
+                .setInput(CommandInput.ofWriter(out ->
+                {
+                    for (int i = 0; i < 64; i++)
+                    {
+                        out.write(chunk);
+                    }
+                }))
+                .execute(executor);
+
+        assertEquals(result.getOutputSize(), 64 * chunk.length);
+    }
+
+    @Test
+    public void execWithUnreadInput() throws Exception
+    {
+        byte[] chunk = new byte[64 * 1024];
+        Arrays.fill(chunk, (byte) 'x');
+
+        // the process exits without reading most of the input, which breaks the pipe the input is written to
+        CommandResult result = new Command(randomUUID().toString(), "head", "-c", "1")
+                .setTimeLimit(5, TimeUnit.SECONDS)
+                .setInput(CommandInput.ofWriter(out ->
+                {
+                    for (int i = 0; i < 64; i++)
+                    {
+                        out.write(chunk);
+                    }
+                }))
+                .execute(executor);
+
+        assertEquals(result.getCommandOutput(), "x");
+    }
+
+    @Test
+    public void execWithFailingInput() throws Exception
+    {
+        try
+        {
+            new Command(randomUUID().toString(), "cat")
+                    .setTimeLimit(5, TimeUnit.SECONDS)
+                    .setInput(CommandInput.ofWriter(out ->
+                    {
+                        out.write("partial".getBytes(UTF_8));
+                        throw new IOException("source failed");
+                    }))
+                    .execute(executor);
+            fail("expected CommandFailedException");
+        }
+        catch (CommandFailedException e)
+        {
+            assertEquals(e.getCause().getMessage(), "source failed");
+        }
+    }
+
+    @Test
+    public void execWithFileInput() throws Exception
+    {
+        Path file = Files.createTempFile("command", ".txt");
+
+        try
+        {
+            Files.write(file, "from file".getBytes(UTF_8));
+
+            CommandResult result = new Command(randomUUID().toString(), "cat")
+                    .setTimeLimit(1, TimeUnit.SECONDS)
+                    .setInput(file)
+                    .execute(executor);
+
+            assertEquals(result.getCommandOutput(), "from file");
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void fileInputCanBeStreamed() throws Exception
+    {
+        Path file = Files.createTempFile("command", ".txt");
+
+        try
+        {
+            Files.write(file, "from file".getBytes(UTF_8));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            CommandInput.ofFile(file).writeTo(out);
+
+            assertEquals(new String(out.toByteArray(), UTF_8), "from file");
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void execWithStreamInput() throws Exception
+    {
+        CommandResult result = new Command(randomUUID().toString(), "cat")
+                .setTimeLimit(1, TimeUnit.SECONDS)
+                .setInput(CommandInput.ofStream(new ByteArrayInputStream("streamed".getBytes(UTF_8))))
+                .execute(executor);
+
+        assertEquals(result.getCommandOutput(), "streamed");
+    }
+
     @Test
     public void execReadEnvironmentVariable() throws Exception
     {
@@ -137,6 +331,63 @@ public class TestCommand
         assertEquals(result.getCommandOutput(), "hello\n");
     }
 
+    @Test
+    public void execLineListener() throws Exception
+    {
+        List<String> lines = new ArrayList<>();
+
+        CommandResult result = new Command(randomUUID().toString(), "bash", "-c", "printf 'one\\ntwo\\r\\n\\nthree'")
+                .setTimeLimit(1, TimeUnit.SECONDS)
+                .setLineListener(lines::add)
+                .execute(executor);
+
+        assertEquals(lines, ImmutableList.of("one", "two", "", "three"));
+        assertEquals(result.getCommandOutput(), "one\ntwo\r\n\nthree");
+    }
+
+    @Test
+    public void execLineListenerTruncatesLines() throws Exception
+    {
+        List<String> lines = new ArrayList<>();
+
+        CommandResult result = new Command(randomUUID().toString(), "bash", "-c", "echo 0123456789; echo abc")
+                .setTimeLimit(1, TimeUnit.SECONDS)
+                .setLineListener(lines::add)
+                .setMaxLineLength(4)
+                .execute(executor);
+
+        assertEquals(lines, ImmutableList.of("0123", "abc"));
+        assertEquals(result.getCommandOutput(), "0123456789\nabc\n");
+    }
+
+    @Test
+    public void execTimings() throws Exception
+    {
+        CommandResult result = new Command(randomUUID().toString(), "bash", "-c", "sleep 0.2; echo foo")
+                .setTimeLimit(1, TimeUnit.SECONDS)
+                .execute(executor);
+
+        CommandTimings timings = result.getTimings();
+        assertTrue(timings.getQueueTime() >= 0);
+        assertTrue(timings.getSpawnTime() > 0);
+        assertTrue(timings.getTimeToFirstOutput() >= TimeUnit.MILLISECONDS.toNanos(200));
+        assertTrue(timings.getTimeToFirstOutput() <= timings.getRunTime());
+        assertTrue(timings.getDrainTime() >= 0);
+        assertTrue(timings.getTotalTime() >= timings.getQueueTime() + timings.getSpawnTime() + timings.getRunTime() + timings.getDrainTime());
+        assertEquals(result.getElapsedTime().longValue(), timings.getRunTime());
+        assertEquals(result.getQueueTime().longValue(), timings.getQueueTime());
+    }
+
+    @Test
+    public void execTimingsWithoutOutput() throws Exception
+    {
+        CommandResult result = new Command(randomUUID().toString(), "true")
+                .setTimeLimit(1, TimeUnit.SECONDS)
+                .execute(executor);
+
+        assertEquals(result.getTimings().getTimeToFirstOutput(), CommandTimings.NO_OUTPUT);
+    }
+
     @Test(expectedExceptions = CommandTimeoutException.class)
     public void execTimeout() throws Exception
     {
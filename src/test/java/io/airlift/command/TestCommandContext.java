@@ -0,0 +1,193 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import io.airlift.units.Duration;
+
+public class TestCommandContext
+{
+    private static final Command SLEEP = Command.newBashCommand("exec sleep 30");
+
+    private ExecutorService executor;
+
+    @BeforeClass
+    public void setUp()
+    {
+        executor = newCachedThreadPool(daemonThreadsNamed("command-context-%s"));
+    }
+
+    @AfterClass
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void cancelStopsAllCommands() throws Exception
+    {
+        CommandContext context = CommandContext.create();
+        CommandContext child = context.newChild();
+
+        Future<CommandResult> executed = executor.submit(() -> SLEEP.execute(executor, context));
+        Future<PipelineResult> piped = executor.submit(() -> new CommandPipeline(SLEEP, Command.newBashCommand("cat")).execute(executor, child));
+        RunningCommand running = SLEEP.start(executor, child);
+        running.awaitReady(new Duration(10, TimeUnit.SECONDS));
+
+        long start = System.nanoTime();
+        assertTrue(context.cancel());
+        assertFalse(context.cancel());
+
+        assertFailure(executed, CommandCancelledException.class);
+        assertFailure(piped, CommandCancelledException.class);
+        try
+        {
+            running.getResult();
+            fail("expected CommandCancelledException");
+        }
+        catch (CommandCancelledException expected)
+        {
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        waitFor(() -> !running.isAlive());
+
+        assertTrue(child.isCancelled());
+        assertFalse(child.isDeadlineExceeded());
+    }
+
+    @Test
+    public void cancelledContextFailsNewCommands()
+    {
+        CommandContext context = CommandContext.create();
+        context.close();
+
+        try
+        {
+            SLEEP.execute(executor, context);
+            fail("expected CommandCancelledException");
+        }
+        catch (CommandFailedException e)
+        {
+            assertTrue(e instanceof CommandCancelledException, e.toString());
+        }
+        assertTrue(context.newChild().isCancelled());
+    }
+
+    @Test
+    public void deadline()
+    {
+        CommandContext context = CommandContext.withTimeout(new Duration(200, TimeUnit.MILLISECONDS));
+        assertTrue(context.getRemainingTime().isPresent());
+
+        try
+        {
+            SLEEP.execute(executor, context.newChild());
+            fail("expected CommandTimeoutException");
+        }
+        catch (CommandFailedException e)
+        {
+            assertTrue(e instanceof CommandTimeoutException, e.toString());
+        }
+        assertTrue(context.isDeadlineExceeded());
+        assertEquals(context.getRemainingTime().get().toMillis(), 0);
+    }
+
+    @Test
+    public void childDeadlines()
+    {
+        CommandContext parent = CommandContext.withTimeout(new Duration(1, TimeUnit.HOURS));
+
+        CommandContext shorter = parent.newChild(new Duration(1, TimeUnit.MINUTES));
+        assertTrue(shorter.getRemainingTime().get().compareTo(new Duration(1, TimeUnit.MINUTES)) <= 0);
+
+        CommandContext longer = parent.newChild(new Duration(1, TimeUnit.DAYS));
+        assertTrue(longer.getRemainingTime().get().compareTo(new Duration(1, TimeUnit.HOURS)) <= 0);
+
+        assertFalse(CommandContext.create().newChild().getRemainingTime().isPresent());
+
+        shorter.cancel();
+        assertFalse(parent.isCancelled());
+        assertFalse(longer.isCancelled());
+
+        parent.cancel();
+        assertTrue(longer.isCancelled());
+    }
+
+    @Test
+    public void queuedCommands() throws Exception
+    {
+        CommandScheduler scheduler = new CommandScheduler(executor, 1);
+        CommandContext context = CommandContext.create();
+
+        ListenableFuture<CommandResult> running = scheduler.submit(SLEEP, context);
+        ListenableFuture<CommandResult> queued = scheduler.submit(SLEEP, context);
+        waitFor(() -> scheduler.getRunningCommands() == 1 && scheduler.getQueuedCommands() == 1);
+
+        context.cancel();
+
+        assertFailure(queued, CommandCancelledException.class);
+        assertFailure(running, CommandCancelledException.class);
+        assertEquals(scheduler.getQueuedCommands(), 0);
+        waitFor(() -> scheduler.getRunningCommands() == 0);
+    }
+
+    private static void assertFailure(Future<?> future, Class<? extends CommandFailedException> type) throws InterruptedException
+    {
+        try
+        {
+            future.get(10, TimeUnit.SECONDS);
+            fail("expected " + type.getSimpleName());
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(type.isInstance(e.getCause()), e.getCause().toString());
+        }
+        catch (TimeoutException e)
+        {
+            fail("not stopped in time");
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean())
+        {
+            if (System.nanoTime() > deadline)
+            {
+                fail("condition not met in time");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import com.google.common.collect.ImmutableList;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.UUID.randomUUID;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestCommandPipeline
+{
+    private ExecutorService executor;
+
+    @BeforeClass
+    public void setUp() throws Exception
+    {
+        executor = newCachedThreadPool(daemonThreadsNamed("process-pipeline-%s"));
+    }
+
+    @AfterClass
+    public void tearDown() throws Exception
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void execPipeline() throws Exception
+    {
+        assertThreeStages(pipeline());
+    }
+
+    @Test
+    public void execRelayedPipeline() throws Exception
+    {
+        assertThreeStages(pipeline().withRelayedPipes());
+    }
+
+    @Test
+    public void execPipelineWithInput() throws Exception
+    {
+        PipelineResult result = new CommandPipeline(
+                new Command(randomUUID().toString(), "cat").setInput("b\na\nc\n".getBytes(UTF_8)),
+                new Command(randomUUID().toString(), "sort"))
+                .setTimeLimit(1, TimeUnit.SECONDS)
+                .execute(executor);
+
+        assertEquals(result.getCommandOutput(), "a\nb\nc\n");
+    }
+
+    @Test
+    public void execRelayedPipelineWithLargeData() throws Exception
+    {
+        // much larger than the pipe buffers between the stages
+        byte[] chunk = new byte[64 * 1024];
+        Arrays.fill(chunk, (byte) 'x');
+
+        PipelineResult result = new CommandPipeline(
+                new Command(randomUUID().toString(), "cat").setInput(CommandInput.ofWriter(out ->
+                {
+                    for (int i = 0; i < 64; i++)
+                    {
+                        out.write(chunk);
+                    }
+                })),
+                new Command(randomUUID().toString(), "cat"),
+                new Command(randomUUID().toString(), "wc", "-c"))
+                .setTimeLimit(5, TimeUnit.SECONDS)
+                .withRelayedPipes()
+                .execute(executor);
+
+        assertEquals(result.getCommandOutput().trim(), String.valueOf(64 * chunk.length));
+    }
+
+    @Test(expectedExceptions = CommandFailedException.class)
+    public void execPipelineFailingStage() throws Exception
+    {
+        new CommandPipeline(
+                new Command(randomUUID().toString(), "echo", "foo"),
+                new Command(randomUUID().toString(), "bash", "-c", "cat > /dev/null; exit 33"),
+                new Command(randomUUID().toString(), "cat"))
+                .setTimeLimit(1, TimeUnit.SECONDS)
+                .execute(executor);
+    }
+
+    @Test
+    public void execPipelineMissingStage() throws Exception
+    {
+        Command missing = new Command(randomUUID().toString(), "no-such-program-" + randomUUID());
+        CommandPipeline pipeline = new CommandPipeline(
+                new Command(randomUUID().toString(), "echo", "foo"),
+                missing,
+                new Command(randomUUID().toString(), "cat"))
+                .setTimeLimit(1, TimeUnit.SECONDS);
+
+        for (CommandPipeline attempt : ImmutableList.of(pipeline, pipeline.withRelayedPipes()))
+        {
+            try
+            {
+                attempt.execute(executor);
+                fail("expected CommandFailedException");
+            }
+            catch (CommandFailedException e)
+            {
+                assertSame(e.getCommand(), missing);
+            }
+        }
+    }
+
+    @Test
+    public void execPipelineNonZeroSuccess() throws Exception
+    {
+        PipelineResult result = new CommandPipeline(
+                new Command(randomUUID().toString(), "echo", "foo"),
+                new Command(randomUUID().toString(), "grep", "bar").setSuccessfulExitCodes(0, 1))
+                .setTimeLimit(1, TimeUnit.SECONDS)
+                .execute(executor);
+
+        assertEquals(result.getExitCodes(), ImmutableList.of(0, 1));
+        assertEquals(result.getCommandOutput(), "");
+    }
+
+    @Test(expectedExceptions = CommandTimeoutException.class)
+    public void execPipelineTimeout() throws Exception
+    {
+        new CommandPipeline(
+                new Command(randomUUID().toString(), "sleep", "15"),
+                new Command(randomUUID().toString(), "cat"))
+                .setTimeLimit(1, TimeUnit.SECONDS)
+                .execute(executor);
+    }
+
+    @Test
+    public void execPipelineKeepsErrorsOutOfNextStage() throws Exception
+    {
+        PipelineResult result = new CommandPipeline(
+                new Command(randomUUID().toString(), "bash", "-c", "echo out; echo err >&2"),
+                new Command(randomUUID().toString(), "cat"))
+                .setTimeLimit(1, TimeUnit.SECONDS)
+                .execute(executor);
+
+        assertEquals(result.getCommandOutput(), "out\n");
+        assertEquals(result.getStageResults().get(0).getCommandOutput(), "err\n");
+    }
+
+    @Test
+    public void execPipelineTimesEveryStageExit() throws Exception
+    {
+        // the last stage exits as soon as the first closes its output, long before the first exits
+        PipelineResult result = new CommandPipeline(
+                new Command(randomUUID().toString(), "bash", "-c", "exec >&-; sleep 0.5"),
+                new Command(randomUUID().toString(), "cat"))
+                .setTimeLimit(2, TimeUnit.SECONDS)
+                .execute(executor);
+
+        long first = result.getStageResults().get(0).getTimings().getRunTime();
+        long last = result.getStageResults().get(1).getTimings().getRunTime();
+        assertTrue(last < first, "last stage exit " + last + " not before first stage exit " + first);
+    }
+
+    private static CommandPipeline pipeline()
+    {
+        return new CommandPipeline(
+                new Command(randomUUID().toString(), "printf", "c\\nb\\na\\nb\\n"),
+                new Command(randomUUID().toString(), "sort", "-u"))
+                .pipe(new Command(randomUUID().toString(), "tr", "a-z", "A-Z"))
+                .setTimeLimit(1, TimeUnit.SECONDS);
+    }
+
+    private void assertThreeStages(CommandPipeline pipeline) throws CommandFailedException
+    {
+        PipelineResult result = pipeline.execute(executor);
+
+        assertEquals(result.getCommandOutput(), "A\nB\nC\n");
+        assertEquals(result.getExitCodes(), ImmutableList.of(0, 0, 0));
+        assertEquals(result.getStageResults().size(), 3);
+        assertEquals(result.getPids().stream().distinct().count(), 3L);
+
+        for (CommandResult stage : result.getStageResults())
+        {
+            assertNotEquals(stage.getPid(), 0L);
+            assertTrue(stage.getElapsedTime() <= result.getElapsedTime());
+        }
+        assertEquals(result.getStageResults().get(0).getCommandOutput(), "");
+    }
+}
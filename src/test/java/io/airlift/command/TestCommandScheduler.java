@@ -0,0 +1,335 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.airlift.command.system.stats.HostLoad;
+import io.airlift.command.system.stats.HostLoadReader;
+import io.airlift.command.system.stats.SigarService;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.util.UUID.randomUUID;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestCommandScheduler
+{
+    private ExecutorService executor;
+
+    @BeforeClass
+    public void setUp() throws Exception
+    {
+        executor = newCachedThreadPool(daemonThreadsNamed("process-input-reader-%s"));
+    }
+
+    @AfterClass
+    public void tearDown() throws Exception
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void execSimple() throws Exception
+    {
+        CommandScheduler scheduler = new CommandScheduler(executor, 2);
+
+        CommandResult result = scheduler.execute(Command.newBashCommand("echo hello").setTimeLimit(1, TimeUnit.SECONDS));
+
+        assertEquals(result.getExitCode(), Integer.valueOf(0));
+        assertEquals(result.getCommandOutput(), "hello\n");
+        assertEquals(scheduler.getRunningCommands(), 0);
+    }
+
+    @Test
+    public void rejectedOutputReaderFreesItsSlot() throws Exception
+    {
+        AtomicInteger submitted = new AtomicInteger();
+        // the first command runs on the executor, which then rejects the task draining its output
+        Executor rejectingSecond = task -> {
+            if (submitted.getAndIncrement() == 1)
+            {
+                throw new RejectedExecutionException("full");
+            }
+            executor.execute(task);
+        };
+        CommandScheduler scheduler = new CommandScheduler(rejectingSecond, 1);
+
+        ListenableFuture<CommandResult> failed = scheduler.submit(Command.newBashCommand("echo failed"));
+        ListenableFuture<CommandResult> next = scheduler.submit(Command.newBashCommand("echo next"));
+
+        try
+        {
+            failed.get(5, TimeUnit.SECONDS);
+            fail("expected the output reader of the first command to be rejected");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof CommandFailedException, e.getCause().toString());
+        }
+        assertEquals(next.get(5, TimeUnit.SECONDS).getCommandOutput(), "next\n");
+        assertEquals(scheduler.getRunningCommands(), 0);
+    }
+
+    @Test
+    public void fixedPoolOfTwoThreadsPerCommand() throws Exception
+    {
+        // no thread waits for a command, so the process and its output reader are all the pool runs
+        ExecutorService pool = newFixedThreadPool(4, daemonThreadsNamed("scheduler-pool-%s"));
+        try
+        {
+            CommandScheduler scheduler = new CommandScheduler(pool, 2);
+            List<ListenableFuture<CommandResult>> results = new ArrayList<>();
+            for (int i = 0; i < 6; i++)
+            {
+                results.add(scheduler.submit(new Command("head", "head", "-c", "1000000", "/dev/zero")));
+            }
+
+            for (ListenableFuture<CommandResult> result : results)
+            {
+                assertEquals(result.get(10, TimeUnit.SECONDS).getOutputSize(), 1_000_000);
+            }
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void growingLimitDispatchesQueuedCommands() throws Exception
+    {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(new HostLoadReader(new SigarService()), 1, 1, 2);
+        CommandScheduler scheduler = new CommandScheduler(executor, limiter);
+
+        ListenableFuture<CommandResult> blocker = scheduler.submit(Command.newBashCommand("sleep 10"));
+        ListenableFuture<CommandResult> queued = scheduler.submit(Command.newBashCommand("echo queued"));
+
+        try
+        {
+            // the scheduler ran as many commands as the limit allowed, so the limit grows on the next update
+            limiter.onCompleted(100, false);
+            limiter.update(new HostLoad(4, 0.5, 1000, 900));
+
+            assertEquals(queued.get(5, TimeUnit.SECONDS).getCommandOutput(), "queued\n");
+            assertFalse(blocker.isDone());
+        }
+        finally
+        {
+            blocker.cancel(true);
+        }
+    }
+
+    @Test
+    public void rejectedCommandFreesItsSlot() throws Exception
+    {
+        AtomicInteger submitted = new AtomicInteger();
+        Executor rejectingFirst = task -> {
+            if (submitted.getAndIncrement() == 0)
+            {
+                throw new RejectedExecutionException("full");
+            }
+            executor.execute(task);
+        };
+        CommandScheduler scheduler = new CommandScheduler(rejectingFirst, 1);
+
+        ListenableFuture<CommandResult> blocker = scheduler.submit(Command.newBashCommand("sleep 0.2"));
+        ListenableFuture<CommandResult> rejected = scheduler.submit(Command.newBashCommand("echo rejected"));
+        ListenableFuture<CommandResult> next = scheduler.submit(Command.newBashCommand("echo next"));
+
+        try
+        {
+            blocker.get(5, TimeUnit.SECONDS);
+            fail("expected the first command to be rejected");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof CommandFailedException, e.getCause().toString());
+        }
+        assertEquals(rejected.get(5, TimeUnit.SECONDS).getCommandOutput(), "rejected\n");
+        assertEquals(next.get(5, TimeUnit.SECONDS).getCommandOutput(), "next\n");
+        assertEquals(scheduler.getRunningCommands(), 0);
+    }
+
+    @Test
+    public void highPriorityIsDispatchedFirst() throws Exception
+    {
+        CommandScheduler scheduler = new CommandScheduler(executor, 1);
+        List<String> completed = Collections.synchronizedList(new ArrayList<>());
+
+        ListenableFuture<CommandResult> blocker = scheduler.submit(Command.newBashCommand("sleep 0.3"));
+        ListenableFuture<CommandResult> low = track(scheduler.submit(command("low", CommandPriority.LOW, "a")), completed);
+        ListenableFuture<CommandResult> high = track(scheduler.submit(command("high", CommandPriority.HIGH, "a")), completed);
+
+        assertEquals(scheduler.getQueuedCommands(), 2);
+
+        blocker.get(5, TimeUnit.SECONDS);
+        low.get(5, TimeUnit.SECONDS);
+        high.get(5, TimeUnit.SECONDS);
+
+        awaitSize(completed, 2);
+        assertEquals(completed, ImmutableList.of("high", "low"));
+        assertTrue(low.get().getQueueTime() >= TimeUnit.MILLISECONDS.toNanos(250));
+    }
+
+    @Test
+    public void tenantsShareByWeight() throws Exception
+    {
+        CommandScheduler scheduler = new CommandScheduler(executor, 1).setTenantWeight("heavy", 2);
+        List<String> completed = Collections.synchronizedList(new ArrayList<>());
+
+        ListenableFuture<CommandResult> blocker = scheduler.submit(Command.newBashCommand("sleep 0.3"));
+        List<ListenableFuture<CommandResult>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++)
+        {
+            futures.add(track(scheduler.submit(command("light", CommandPriority.NORMAL, "light")), completed));
+        }
+
+        for (int i = 0; i < 3; i++)
+        {
+            futures.add(track(scheduler.submit(command("heavy", CommandPriority.NORMAL, "heavy")), completed));
+        }
+
+        blocker.get(5, TimeUnit.SECONDS);
+
+        for (ListenableFuture<CommandResult> future : futures)
+        {
+            future.get(5, TimeUnit.SECONDS);
+        }
+
+        awaitSize(completed, 6);
+        assertEquals(completed.subList(0, 3).stream().filter("heavy"::equals).count(), 2L);
+    }
+
+    @Test
+    public void tenantQueueingOneAtATimeKeepsItsShare() throws Exception
+    {
+        CommandScheduler scheduler = new CommandScheduler(executor, 1).setTenantWeight("busy", 3);
+        List<String> completed = Collections.synchronizedList(new ArrayList<>());
+
+        ListenableFuture<CommandResult> blocker = scheduler.submit(Command.newBashCommand("sleep 0.3"));
+        List<ListenableFuture<CommandResult>> busy = new ArrayList<>();
+
+        for (int i = 0; i < 12; i++)
+        {
+            busy.add(track(scheduler.submit(command("busy", CommandPriority.NORMAL, "busy")), completed));
+        }
+        // resubmits from the result of its previous command, before the scheduler dispatches the next one
+        submitInLoop(scheduler, 12, completed);
+
+        blocker.get(5, TimeUnit.SECONDS);
+        for (ListenableFuture<CommandResult> future : busy)
+        {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        List<String> first = ImmutableList.copyOf(completed.subList(0, 8));
+        assertTrue(first.stream().filter("loop"::equals).count() <= 3, first.toString());
+    }
+
+    @Test
+    public void classLimitLeavesRoomForOtherClasses() throws Exception
+    {
+        CommandScheduler scheduler = new CommandScheduler(executor, 2).setMaxConcurrentCommands(CommandPriority.LOW, 1);
+
+        ListenableFuture<CommandResult> first = scheduler.submit(Command.newBashCommand("sleep 0.3").setPriority(CommandPriority.LOW));
+        ListenableFuture<CommandResult> second = scheduler.submit(Command.newBashCommand("sleep 0.3").setPriority(CommandPriority.LOW));
+
+        assertEquals(scheduler.getRunningCommands(CommandPriority.LOW), 1);
+        assertEquals(scheduler.getQueuedCommands(CommandPriority.LOW), 1);
+
+        CommandResult high = scheduler.execute(command("high", CommandPriority.HIGH, "a"));
+        assertEquals(high.getCommandOutput(), "high\n");
+        assertTrue(!first.isDone());
+
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void cancelQueuedCommand() throws Exception
+    {
+        CommandScheduler scheduler = new CommandScheduler(executor, 1);
+
+        ListenableFuture<CommandResult> blocker = scheduler.submit(Command.newBashCommand("sleep 0.2"));
+        ListenableFuture<CommandResult> queued = scheduler.submit(Command.newBashCommand("echo never"));
+
+        queued.cancel(true);
+        assertEquals(scheduler.getQueuedCommands(), 0);
+
+        blocker.get(5, TimeUnit.SECONDS);
+        assertEquals(scheduler.getRunningCommands(), 0);
+    }
+
+    private static Command command(String output, CommandPriority priority, String tenant)
+    {
+        return new Command(randomUUID().toString(), "bash", "-c", "echo " + output)
+                .setPriority(priority)
+                .setTenant(tenant)
+                .setTimeLimit(5, TimeUnit.SECONDS);
+    }
+
+    private static void submitInLoop(CommandScheduler scheduler, int times, List<String> completed)
+    {
+        if (times == 0)
+        {
+            return;
+        }
+        ListenableFuture<CommandResult> future = track(scheduler.submit(command("loop", CommandPriority.NORMAL, "loop")), completed);
+        future.addListener(() -> submitInLoop(scheduler, times - 1, completed), directExecutor());
+    }
+
+    private static void awaitSize(List<String> completed, int size) throws InterruptedException
+    {
+        // listeners run after get() returns
+        for (int i = 0; i < 100 && completed.size() < size; i++)
+        {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    private static ListenableFuture<CommandResult> track(ListenableFuture<CommandResult> future, List<String> completed)
+    {
+        future.addListener(() ->
+        {
+            try
+            {
+                completed.add(future.get().getCommandOutput().trim());
+            }
+            catch (Exception ignored)
+            {
+            }
+        }, directExecutor());
+        return future;
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class TestCommandTemplate
+{
+    private ExecutorService executor;
+
+    @BeforeClass
+    public void setUp()
+    {
+        executor = newCachedThreadPool(daemonThreadsNamed("template-%s"));
+    }
+
+    @AfterClass
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void bind()
+    {
+        Command command = new Command("convert", "convert", "{input}", "-resize", "{size}x{size}", "out/{input}.png")
+                .addEnvironment("MODE", "fast")
+                .setSuccessfulExitCodes(0, 2);
+        CommandTemplate template = CommandTemplate.of(command);
+
+        assertEquals(template.getPlaceholders(), ImmutableList.of("input", "size"));
+
+        Command bound = template.bind("a.jpg", "64");
+        assertEquals(bound.getCommand(), ImmutableList.of("convert", "a.jpg", "-resize", "64x64", "out/a.jpg.png"));
+        assertEquals(bound.getSuccessfulExitCodes(), command.getSuccessfulExitCodes());
+        assertTrue(bound.getId().startsWith("convert-"));
+
+        // the constant parts of the command are shared rather than copied
+        assertSame(bound.getCommand().get(0), command.getCommand().get(0));
+        assertSame(bound.getEnvironment(), command.getEnvironment());
+        assertSame(bound.getSuccessfulExitCodes(), command.getSuccessfulExitCodes());
+
+        Command byName = template.bind(ImmutableMap.of("size", "32", "input", "b.jpg"));
+        assertEquals(byName.getCommand(), ImmutableList.of("convert", "b.jpg", "-resize", "32x32", "out/b.jpg.png"));
+        assertNotEquals(byName.getId(), bound.getId());
+    }
+
+    @Test
+    public void bindEnvironment()
+    {
+        CommandTemplate template = CommandTemplate.of(new Command("env", "env").addEnvironment("TARGET", "{host}:{port}").addEnvironment("MODE", "fast"));
+
+        assertEquals(template.getPlaceholders(), ImmutableList.of("host", "port"));
+        assertEquals(template.bind("localhost", "80").getEnvironment(), ImmutableMap.of("TARGET", "localhost:80", "MODE", "fast"));
+    }
+
+    @Test
+    public void otherBracesAreKept()
+    {
+        CommandTemplate template = CommandTemplate.of("shell", "bash", "-c", "for i in {1..3}; do { echo {name}; }; done", "{}", "{ x}");
+
+        assertEquals(template.getPlaceholders(), ImmutableList.of("name"));
+        assertEquals(template.bind("a").getCommand(), ImmutableList.of("bash", "-c", "for i in {1..3}; do { echo a; }; done", "{}", "{ x}"));
+    }
+
+    @Test
+    public void shellParametersAreKept()
+    {
+        CommandTemplate template = CommandTemplate.of("shell", "bash", "-c", "cp {file} ${HOME}/${name}");
+
+        assertEquals(template.getPlaceholders(), ImmutableList.of("file"));
+        assertEquals(template.bind("a").getCommand(), ImmutableList.of("bash", "-c", "cp a ${HOME}/${name}"));
+    }
+
+    @Test
+    public void escapedBraces()
+    {
+        CommandTemplate template = CommandTemplate.of("awk", "awk", "{{print}}", "{{file}}", "{file}");
+
+        assertEquals(template.getPlaceholders(), ImmutableList.of("file"));
+        assertEquals(template.bind("a").getCommand(), ImmutableList.of("awk", "{print}", "{file}", "a"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void missingValue()
+    {
+        CommandTemplate.of("echo", "echo", "{a}", "{b}").bind(ImmutableMap.of("a", "1"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void unknownValue()
+    {
+        CommandTemplate.of("echo", "echo", "{a}").bind(ImmutableMap.of("a", "1", "b", "2"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void wrongNumberOfValues()
+    {
+        CommandTemplate.of("echo", "echo", "{a}", "{b}").bind("1");
+    }
+
+    @Test
+    public void stream() throws Exception
+    {
+        CommandTemplate template = CommandTemplate.of("echo", "echo", "{value}");
+        StreamingCommandExecutor streaming = new StreamingCommandExecutor(executor, 4);
+
+        Map<String, String> outputs = new ConcurrentHashMap<>();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        // counts the elements pulled but not yet reported, which the executor bounds
+        Iterator<String[]> values = IntStream.range(0, 200)
+                .mapToObj(i -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    return new String[] { String.valueOf(i) };
+                })
+                .iterator();
+
+        long count = streaming.execute(values, template::bind, new CommandResultHandler<String[]>()
+        {
+            @Override
+            public void onCompleted(String[] parameters, CommandResult result)
+            {
+                outputs.put(parameters[0], result.getCommandOutput().trim());
+                running.decrementAndGet();
+            }
+
+            @Override
+            public void onFailed(String[] parameters, CommandFailedException failure)
+            {
+                fail("unexpected failure: " + failure);
+            }
+        }, null);
+
+        assertEquals(count, 200);
+        assertEquals(outputs.size(), 200);
+        outputs.forEach((value, output) -> assertEquals(output, value));
+        assertTrue(maxRunning.get() <= 4, "pulled " + maxRunning.get() + " elements ahead");
+    }
+
+    @Test
+    public void failuresAreReported() throws Exception
+    {
+        CommandTemplate template = CommandTemplate.of("exit", "bash", "-c", "exit {code}");
+        List<Integer> failed = new CopyOnWriteArrayList<>();
+        AtomicInteger completed = new AtomicInteger();
+
+        long count = new StreamingCommandExecutor(executor, 2).execute(IntStream.range(0, 10).mapToObj(i -> new String[] { String.valueOf(i % 3) }),
+                template::bind, new CommandResultHandler<String[]>()
+                {
+                    @Override
+                    public void onCompleted(String[] parameters, CommandResult result)
+                    {
+                        completed.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onFailed(String[] parameters, CommandFailedException failure)
+                    {
+                        failed.add(failure.getExitCode());
+                    }
+                });
+
+        assertEquals(count, 10);
+        assertEquals(completed.get(), 4);
+        assertEquals(failed.size(), 6);
+        assertTrue(failed.stream().allMatch(code -> code == 1 || code == 2), failed.toString());
+    }
+
+    @Test
+    public void cancel() throws Exception
+    {
+        CommandTemplate template = CommandTemplate.of("sleep", "sleep", "{seconds}");
+        AtomicInteger cancelled = new AtomicInteger();
+
+        try (CommandContext context = CommandContext.create())
+        {
+            Iterator<String[]> values = IntStream.range(0, 100).mapToObj(i -> new String[] { "30" }).iterator();
+            executor.execute(() -> {
+                try
+                {
+                    Thread.sleep(200);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                context.cancel();
+            });
+
+            long start = System.nanoTime();
+            long count = new StreamingCommandExecutor(executor, 3).execute(values, template::bind, new CommandResultHandler<String[]>()
+            {
+                @Override
+                public void onCompleted(String[] parameters, CommandResult result)
+                {
+                    fail("unexpected result");
+                }
+
+                @Override
+                public void onFailed(String[] parameters, CommandFailedException failure)
+                {
+                    assertTrue(failure instanceof CommandCancelledException, failure.toString());
+                    cancelled.incrementAndGet();
+                }
+            }, context);
+
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(20));
+            assertEquals(count, 3);
+            assertEquals(cancelled.get(), 3);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class TestEnvironmentSnapshot
+{
+    private ExecutorService executor;
+
+    @BeforeClass
+    public void setUp()
+    {
+        executor = newCachedThreadPool(daemonThreadsNamed("environment-%s"));
+    }
+
+    @AfterClass
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void inherited()
+    {
+        EnvironmentSnapshot inherited = EnvironmentSnapshot.inherited();
+
+        assertTrue(inherited.isInherited());
+        assertTrue(inherited.getChanges().isEmpty());
+        assertEquals(inherited.getVariables(), System.getenv());
+        assertSame(EnvironmentSnapshot.inheritedWith(ImmutableMap.of()), inherited);
+        assertSame(new Command("true", "true").getEnvironmentSnapshot(), inherited);
+    }
+
+    @Test
+    public void inheritedWith()
+    {
+        // a variable the JVM already has with the same value is not a change
+        Map.Entry<String, String> existing = System.getenv().entrySet().iterator().next();
+        EnvironmentSnapshot snapshot = EnvironmentSnapshot.inheritedWith(ImmutableMap.of(existing.getKey(), existing.getValue(), "SNAPSHOT_TEST", "value"));
+
+        assertEquals(snapshot.getChanges(), ImmutableMap.of("SNAPSHOT_TEST", "value"));
+        assertEquals(snapshot.getVariables().get("SNAPSHOT_TEST"), "value");
+        assertEquals(snapshot.getVariables().size(), System.getenv().size() + 1);
+    }
+
+    @Test
+    public void only()
+    {
+        EnvironmentSnapshot snapshot = EnvironmentSnapshot.of(ImmutableMap.of("A", "1", "BB", "é"));
+
+        assertFalse(snapshot.isInherited());
+        assertEquals(snapshot.getVariables(), ImmutableMap.of("A", "1", "BB", "é"));
+        // A=1\0 and BB=é\0
+        assertEquals(snapshot.getEncodedSize(), 4 + 6);
+        assertEquals(new Command("env", "env").addEnvironment("A", "1").excludeEnvironmentVariables().getEnvironmentSnapshot(),
+                EnvironmentSnapshot.of(ImmutableMap.of("A", "1")));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void invalidName()
+    {
+        EnvironmentSnapshot.of(ImmutableMap.of("A=B", "1"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void invalidValue()
+    {
+        EnvironmentSnapshot.inheritedWith(ImmutableMap.of("A", "1\u00002"));
+    }
+
+    @Test
+    public void spawn() throws Exception
+    {
+        Command command = new Command("env", "/usr/bin/env").setEnvironment(EnvironmentSnapshot.of(ImmutableMap.of("SNAPSHOT_TEST", "value")));
+
+        assertFalse(command.isIncludeEnvironmentVariables());
+        assertEquals(command.getEnvironment(), ImmutableMap.of("SNAPSHOT_TEST", "value"));
+        assertEquals(command.execute(executor).getCommandOutput(), "SNAPSHOT_TEST=value\n");
+        assertEquals(command.execute(executor).getCommandOutput(), "SNAPSHOT_TEST=value\n");
+
+        String inherited = new Command("env", "/usr/bin/env").setEnvironment(EnvironmentSnapshot.inheritedWith(ImmutableMap.of("SNAPSHOT_TEST", "value")))
+                .execute(executor)
+                .getCommandOutput();
+        assertTrue(inherited.contains("SNAPSHOT_TEST=value\n"), inherited);
+        assertTrue(inherited.contains("PATH="), inherited);
+    }
+
+    @Test
+    public void sharedByTemplate()
+    {
+        CommandTemplate template = CommandTemplate.of(new Command("echo", "echo", "{value}").addEnvironment("MODE", "fast"));
+
+        assertSame(template.bind("a").getEnvironmentSnapshot(), template.getCommand().getEnvironmentSnapshot());
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class TestExecutionEngine
+{
+    private ExecutorService executor;
+    private ExecutionEngine engine;
+
+    @BeforeClass
+    public void setUp()
+    {
+        executor = newCachedThreadPool(daemonThreadsNamed("engine-input-%s"));
+        engine = new ExecutionEngine(executor);
+    }
+
+    @AfterClass
+    public void tearDown()
+    {
+        engine.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void execute() throws Exception
+    {
+        CommandResult result = new Command("echo", "echo", "hello").execute(engine);
+
+        assertEquals(result.getCommandOutput(), "hello\n");
+        assertEquals(result.getExitCode(), Integer.valueOf(0));
+        assertTrue(result.getPid() > 0);
+        assertTrue(result.getTimings().getRunTime() > 0);
+    }
+
+    @Test
+    public void manyAtOnce() throws Exception
+    {
+        List<ListenableFuture<CommandResult>> results = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+        {
+            results.add(engine.submit(Command.newBashCommand("sleep 0.$((RANDOM % 5)); echo " + i)));
+        }
+
+        for (int i = 0; i < results.size(); i++)
+        {
+            assertEquals(results.get(i).get().getCommandOutput(), i + "\n");
+        }
+        assertEquals(engine.getRunning(), 0);
+    }
+
+    @Test
+    public void largeOutput() throws Exception
+    {
+        CommandResult result = engine.execute(new Command("head", "head", "-c", "5000000", "/dev/zero"));
+
+        assertEquals(result.getOutputSize(), 5_000_000);
+    }
+
+    @Test
+    public void linesAndInput() throws Exception
+    {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        Command command = new Command("cat", "cat")
+                .setInput("one\ntwo\nthree".getBytes(UTF_8))
+                .setLineListener(lines::add);
+
+        assertEquals(engine.execute(command).getCommandOutput(), "one\ntwo\nthree");
+        assertEquals(lines, ImmutableList.of("one", "two", "three"));
+    }
+
+    @Test
+    public void failingInput()
+    {
+        Command command = new Command("cat", "cat")
+                .setInput(CommandInput.ofWriter(out ->
+                {
+                    out.write("partial".getBytes(UTF_8));
+                    throw new IOException("source failed");
+                }));
+
+        try
+        {
+            engine.execute(command);
+            fail("expected CommandFailedException");
+        }
+        catch (CommandFailedException e)
+        {
+            assertEquals(e.getCause().getMessage(), "source failed");
+        }
+    }
+
+    @Test
+    public void failure()
+    {
+        try
+        {
+            engine.execute(Command.newBashCommand("echo failing; exit 3"));
+            fail("expected CommandFailedException");
+        }
+        catch (CommandFailedException e)
+        {
+            assertEquals(e.getExitCode(), Integer.valueOf(3));
+        }
+    }
+
+    @Test(expectedExceptions = CommandFailedException.class)
+    public void failedToStart() throws Exception
+    {
+        engine.execute(new Command("missing", "/no/such/command"));
+    }
+
+    @Test
+    public void timeLimit() throws Exception
+    {
+        long start = System.nanoTime();
+        try
+        {
+            engine.execute(new Command("sleep", "sleep", "30").setTimeLimit(200, TimeUnit.MILLISECONDS));
+            fail("expected CommandTimeoutException");
+        }
+        catch (CommandTimeoutException expected)
+        {
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        waitForNoneRunning();
+    }
+
+    @Test
+    public void cancel() throws Exception
+    {
+        try (CommandContext context = CommandContext.create())
+        {
+            ListenableFuture<CommandResult> result = engine.submit(new Command("sleep", "sleep", "30"), context);
+            context.cancel();
+
+            try
+            {
+                result.get(10, TimeUnit.SECONDS);
+                fail("expected CommandCancelledException");
+            }
+            catch (ExecutionException e)
+            {
+                assertTrue(e.getCause() instanceof CommandCancelledException, e.getCause().toString());
+            }
+        }
+        waitForNoneRunning();
+    }
+
+    @Test
+    public void close() throws Exception
+    {
+        ExecutionEngine closing = new ExecutionEngine(executor);
+        ListenableFuture<CommandResult> result = closing.submit(new Command("sleep", "sleep", "30"));
+
+        closing.close();
+
+        try
+        {
+            result.get(10, TimeUnit.SECONDS);
+            fail("expected CommandFailedException");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof CommandFailedException, e.getCause().toString());
+        }
+    }
+
+    @Test
+    public void closeWhileSubmitting() throws Exception
+    {
+        for (int round = 0; round < 20; round++)
+        {
+            ExecutionEngine closing = new ExecutionEngine(executor);
+            List<ListenableFuture<CommandResult>> results = new CopyOnWriteArrayList<>();
+
+            Future<?> submitter = executor.submit(() ->
+            {
+                try
+                {
+                    while (true)
+                    {
+                        results.add(closing.submit(new Command("sleep", "sleep", "30")));
+                    }
+                }
+                catch (IllegalStateException closed)
+                {
+                    // the engine is closed
+                }
+            });
+
+            Thread.sleep(5);
+            closing.close();
+            submitter.get(10, TimeUnit.SECONDS);
+
+            // every command registered before the engine was closed is failed by it, and its process destroyed
+            for (ListenableFuture<CommandResult> result : results)
+            {
+                try
+                {
+                    result.get(10, TimeUnit.SECONDS);
+                    fail("expected CommandFailedException");
+                }
+                catch (ExecutionException e)
+                {
+                    assertTrue(e.getCause() instanceof CommandFailedException, e.getCause().toString());
+                }
+            }
+            // a process is released right after its command is failed
+            for (int i = 0; i < 100 && closing.getRunning() > 0; i++)
+            {
+                Thread.sleep(20);
+            }
+            assertEquals(closing.getRunning(), 0);
+        }
+    }
+
+    private void waitForNoneRunning() throws InterruptedException
+    {
+        // the loop destroys the process of a failed command on its next pass
+        for (int i = 0; i < 100 && engine.getRunning() > 0; i++)
+        {
+            Thread.sleep(20);
+        }
+        assertEquals(engine.getRunning(), 0);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+
+public class TestLineDecoder
+{
+    @Test
+    public void multiByteCharactersSplitAcrossChunks()
+    {
+        byte[] bytes = "h\u00e9llo \u20ac\nw\ud83d\ude00rld\n".getBytes(UTF_8);
+
+        for (int chunk = 1; chunk <= bytes.length; chunk++)
+        {
+            List<String> lines = new ArrayList<>();
+            LineDecoder decoder = new LineDecoder(lines::add, 0);
+
+            for (int offset = 0; offset < bytes.length; offset += chunk)
+            {
+                decoder.decode(bytes, offset, Math.min(chunk, bytes.length - offset));
+            }
+            decoder.finish();
+
+            assertEquals(lines, ImmutableList.of("h\u00e9llo \u20ac", "w\ud83d\ude00rld"), "chunk size " + chunk);
+        }
+    }
+
+    @Test
+    public void linesLongerThanTheBuffer()
+    {
+        String line = Strings.repeat("x", 20_000);
+        List<String> lines = new ArrayList<>();
+        LineDecoder decoder = new LineDecoder(lines::add, 0);
+
+        byte[] bytes = (line + "\n" + line).getBytes(UTF_8);
+        decoder.decode(bytes, 0, bytes.length);
+        decoder.finish();
+
+        assertEquals(lines, ImmutableList.of(line, line));
+    }
+
+    @Test
+    public void failingListenerDoesNotStopDecoding()
+    {
+        List<String> lines = new ArrayList<>();
+        LineDecoder decoder = new LineDecoder(line ->
+        {
+            lines.add(line);
+            throw new IllegalStateException(line);
+        }, 0);
+
+        byte[] bytes = "a\nb\n".getBytes(UTF_8);
+        decoder.decode(bytes, 0, bytes.length);
+        decoder.finish();
+
+        assertEquals(lines, ImmutableList.of("a", "b"));
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class TestProcessLauncher
+{
+    private ExecutorService executor;
+
+    @BeforeClass
+    public void setUp()
+    {
+        executor = newCachedThreadPool(daemonThreadsNamed("launcher-%s"));
+    }
+
+    @AfterClass
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void preferredFallsBackToProcessBuilder()
+    {
+        // no launcher is provided as a service on the test class path
+        assertSame(ProcessLauncher.preferred(), ProcessLauncher.PROCESS_BUILDER);
+        assertSame(new Command("true", "true").getLauncher(), ProcessLauncher.PROCESS_BUILDER);
+    }
+
+    @Test
+    public void execute() throws Exception
+    {
+        CountingLauncher launcher = new CountingLauncher();
+        Command command = new Command("echo", "echo", "hello").setLauncher(launcher);
+
+        CommandResult result = command.execute(executor);
+
+        assertEquals(result.getCommandOutput(), "hello\n");
+        assertTrue(result.getPid() > 0);
+        assertEquals(launcher.launched.get(), 1);
+        assertSame(command.setTimeLimit(command.getTimeLimit()).getLauncher(), launcher);
+    }
+
+    @Test
+    public void pipeline() throws Exception
+    {
+        CountingLauncher launcher = new CountingLauncher();
+        CommandPipeline pipeline = new CommandPipeline(new Command("echo", "echo", "a b c"), new Command("wc", "wc", "-w").setLauncher(launcher));
+
+        assertEquals(pipeline.execute(executor).getCommandOutput().trim(), "3");
+        assertEquals(launcher.launched.get(), 1);
+    }
+
+    @Test
+    public void failedLaunch()
+    {
+        Command command = new Command("fail", "true").setLauncher(processBuilder -> {
+            throw new IOException("no launch");
+        });
+
+        try
+        {
+            command.execute(executor);
+            fail("expected CommandFailedException");
+        }
+        catch (CommandFailedException e)
+        {
+            assertEquals(e.getCause().getMessage(), "no launch");
+        }
+    }
+
+    private static class CountingLauncher implements ProcessLauncher
+    {
+        private final AtomicInteger launched = new AtomicInteger();
+
+        @Override
+        public Process launch(ProcessBuilder processBuilder) throws IOException
+        {
+            launched.incrementAndGet();
+            return processBuilder.start();
+        }
+    }
+}
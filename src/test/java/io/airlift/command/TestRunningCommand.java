@@ -0,0 +1,372 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.UUID.randomUUID;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Strings;
+
+import io.airlift.units.Duration;
+
+public class TestRunningCommand
+{
+    private ExecutorService executor;
+    private ScheduledExecutorService scheduler;
+
+    @BeforeClass
+    public void setUp()
+    {
+        executor = newCachedThreadPool(daemonThreadsNamed("running-command-%s"));
+        scheduler = newSingleThreadScheduledExecutor(daemonThreadsNamed("readiness-%s"));
+    }
+
+    @AfterClass
+    public void tearDown()
+    {
+        executor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void result() throws Exception
+    {
+        RunningCommand running = Command.newBashCommand("echo hello").start(executor);
+
+        CommandResult result = running.getResult();
+        assertEquals(result.getCommandOutput(), "hello\n");
+        assertTrue(running.isDone());
+        assertFalse(running.isAlive());
+        assertEquals(running.getPid().getAsInt(), result.getPid().intValue());
+        assertEquals(running.getOutputTail(), "hello\n");
+        assertEquals(running.getOutputSize(), 6);
+        assertTrue(running.getRunTime().isPresent());
+
+        Duration elapsed = running.getElapsedTime();
+        Thread.sleep(20);
+        assertEquals(running.getElapsedTime(), elapsed, "the elapsed time of a finished command is frozen");
+    }
+
+    @Test
+    public void liveOutput() throws Exception
+    {
+        RunningCommand running = Command.newBashCommand("echo started; sleep 30").start(executor);
+        try
+        {
+            waitFor(() -> running.getOutputTail().equals("started\n"));
+            assertTrue(running.isAlive());
+            assertFalse(running.isDone());
+            assertTrue(running.getPid().isPresent());
+        }
+        finally
+        {
+            running.kill();
+        }
+    }
+
+    @Test
+    public void tailKeepsTheEnd() throws Exception
+    {
+        RunningCommand running = Command.newBashCommand("printf '%0100d' 0; printf end").start(executor, 16);
+        running.getResult();
+
+        assertEquals(running.getOutputTail(), Strings.repeat("0", 13) + "end");
+        assertEquals(running.getOutputSize(), 103);
+    }
+
+    @Test
+    public void terminate() throws Exception
+    {
+        AtomicReference<CommandFailedException> failure = new AtomicReference<>();
+        RunningCommand running = Command.newBashCommand("echo started; exec sleep 30")
+                .setInstrumentation(new CommandInstrumentation()
+                {
+                    @Override
+                    public void onFailed(Command command, CommandFailedException e)
+                    {
+                        failure.set(e);
+                    }
+                })
+                .start(executor);
+
+        waitFor(() -> running.getOutputSize() > 0);
+        assertTrue(running.terminate());
+
+        try
+        {
+            running.getResult();
+            fail("expected CommandFailedException");
+        }
+        catch (CommandFailedException e)
+        {
+            assertEquals(e.getExitCode(), Integer.valueOf(143));
+        }
+        assertFalse(running.terminate());
+
+        // the instrumentation is called back once the future completes, possibly after getResult() returned
+        waitFor(() -> failure.get() != null);
+        assertEquals(failure.get().getExitCode(), Integer.valueOf(143));
+    }
+
+    @Test
+    public void rejectedOutputReaderIsReportedAsFailure() throws Exception
+    {
+        AtomicReference<CommandFailedException> failure = new AtomicReference<>();
+        AtomicInteger submitted = new AtomicInteger();
+        // the command runs on the executor, which then rejects the task draining its output
+        Executor rejectingSecond = task -> {
+            if (submitted.getAndIncrement() == 1)
+            {
+                throw new RejectedExecutionException("full");
+            }
+            executor.execute(task);
+        };
+        RunningCommand running = Command.newBashCommand("echo started")
+                .setInstrumentation(new CommandInstrumentation()
+                {
+                    @Override
+                    public void onFailed(Command command, CommandFailedException e)
+                    {
+                        failure.set(e);
+                    }
+                })
+                .start(rejectingSecond);
+
+        try
+        {
+            running.getResult();
+            fail("expected RejectedExecutionException");
+        }
+        catch (RejectedExecutionException e)
+        {
+            // unchecked exceptions are propagated as is, like by execute()
+        }
+
+        waitFor(() -> failure.get() != null);
+        assertTrue(failure.get().getCause() instanceof RejectedExecutionException, failure.get().toString());
+    }
+
+    @Test
+    public void kill() throws Exception
+    {
+        RunningCommand running = Command.newBashCommand("echo started; exec sleep 30").start(executor);
+
+        waitFor(() -> running.getOutputSize() > 0);
+        assertTrue(running.kill());
+
+        try
+        {
+            running.getResult();
+            fail("expected CommandFailedException");
+        }
+        catch (CommandFailedException e)
+        {
+            assertEquals(e.getExitCode(), Integer.valueOf(137));
+        }
+    }
+
+    @Test
+    public void timeLimit() throws Exception
+    {
+        RunningCommand running = Command.newBashCommand("exec sleep 30").setTimeLimit(200, TimeUnit.MILLISECONDS).start(executor);
+
+        try
+        {
+            running.getResult();
+            fail("expected CommandTimeoutException");
+        }
+        catch (CommandTimeoutException expected)
+        {
+        }
+        waitFor(running::isDone);
+        assertFalse(running.isAlive());
+    }
+
+    @Test
+    public void readyOnceSpawned() throws Exception
+    {
+        RunningCommand running = Command.newBashCommand("exec sleep 30").start(executor);
+        try
+        {
+            running.awaitReady(new Duration(10, TimeUnit.SECONDS));
+            assertTrue(running.isReady());
+            assertTrue(running.getPid().isPresent());
+        }
+        finally
+        {
+            running.kill();
+        }
+    }
+
+    @Test
+    public void readyWhenOutputMatches() throws Exception
+    {
+        RunningCommand running = Command.newBashCommand("echo starting; sleep 0.2; echo 'listening on port 8080'; exec sleep 30")
+                .setLineListener(line -> { })
+                .start(executor, scheduler, ReadinessCheck.outputMatches("listening on port \\d+"));
+        try
+        {
+            assertFalse(running.isReady());
+            Duration readyAfter = running.awaitReady(new Duration(10, TimeUnit.SECONDS));
+
+            assertTrue(running.isReady());
+            assertTrue(readyAfter.toMillis() >= 200, "ready after " + readyAfter);
+            assertTrue(running.isAlive());
+        }
+        finally
+        {
+            running.kill();
+        }
+    }
+
+    @Test
+    public void readyDespiteFailingLineListener() throws Exception
+    {
+        RunningCommand running = Command.newBashCommand("echo 'listening on port 8080'; exec sleep 30")
+                .setLineListener(line -> {
+                    throw new IllegalStateException("listener failed");
+                })
+                .start(executor, scheduler, ReadinessCheck.outputMatches("listening on port \\d+"));
+        try
+        {
+            running.awaitReady(new Duration(10, TimeUnit.SECONDS));
+            assertTrue(running.isReady());
+        }
+        finally
+        {
+            running.kill();
+        }
+    }
+
+    @Test
+    public void readyWhenPortOpens() throws Exception
+    {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress()))
+        {
+            port = socket.getLocalPort();
+        }
+
+        ServerSocket server = null;
+        RunningCommand running = Command.newBashCommand("exec sleep 30")
+                .start(executor, scheduler, ReadinessCheck.portOpen(port).withPollInterval(new Duration(5, TimeUnit.MILLISECONDS)));
+        try
+        {
+            Thread.sleep(100);
+            assertFalse(running.isReady());
+
+            server = new ServerSocket(port, 1, InetAddress.getLoopbackAddress());
+            running.awaitReady(new Duration(10, TimeUnit.SECONDS));
+            assertTrue(running.isReady());
+        }
+        finally
+        {
+            running.kill();
+            if (server != null)
+            {
+                server.close();
+            }
+        }
+    }
+
+    @Test
+    public void exitBeforeReady() throws Exception
+    {
+        RunningCommand running = Command.newBashCommand("echo never").start(executor, scheduler, ReadinessCheck.outputMatches("ready"));
+
+        try
+        {
+            running.awaitReady(new Duration(10, TimeUnit.SECONDS));
+            fail("expected CommandFailedException");
+        }
+        catch (CommandFailedException expected)
+        {
+            assertTrue(expected.getMessage().contains("exited before it was ready"), expected.getMessage());
+        }
+        assertFalse(running.isReady());
+        assertEquals(running.getResult().getCommandOutput(), "never\n");
+    }
+
+    @Test
+    public void notReadyInTime() throws Exception
+    {
+        RunningCommand running = Command.newBashCommand("exec sleep 30").start(executor, scheduler, ReadinessCheck.outputMatches("ready"));
+        try
+        {
+            running.awaitReady(new Duration(50, TimeUnit.MILLISECONDS));
+            fail("expected CommandFailedException");
+        }
+        catch (CommandFailedException expected)
+        {
+            assertTrue(running.isAlive(), "the process is left running");
+        }
+        finally
+        {
+            running.kill();
+        }
+    }
+
+    @Test
+    public void tailDoesNotSplitCharacters()
+    {
+        OutputTail tail = new OutputTail(4);
+        byte[] bytes = "aéé".getBytes(UTF_8);
+        tail.write(bytes, 0, bytes.length);
+
+        assertEquals(tail.getWritten(), 5);
+        assertEquals(new String(tail.toByteArray(), UTF_8), "éé");
+
+        tail.write(bytes, 0, 1);
+        assertEquals(new String(tail.toByteArray(), UTF_8), "éa");
+    }
+
+    private static void waitFor(Condition condition) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.test())
+        {
+            if (System.nanoTime() > deadline)
+            {
+                fail("condition not met in time");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private interface Condition
+    {
+        boolean test();
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static com.google.common.util.concurrent.Uninterruptibles.awaitUninterruptibly;
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+
+import io.airlift.units.Duration;
+
+public class TestTimeoutService
+{
+    private static final Duration TICK = new Duration(10, TimeUnit.MILLISECONDS);
+
+    @Test
+    public void expiresOnTheTickOfTheDeadline()
+    {
+        ManualTicker ticker = new ManualTicker();
+        TimeoutService service = new TimeoutService(TICK, ticker);
+        List<String> expired = new ArrayList<>();
+
+        service.schedule(() -> expired.add("a"), 25, TimeUnit.MILLISECONDS);
+        service.schedule(() -> expired.add("b"), 30, TimeUnit.MILLISECONDS);
+        assertEquals(service.getPending(), 2);
+
+        ticker.advance(29, TimeUnit.MILLISECONDS);
+        assertEquals(service.expire(), 0);
+
+        ticker.advance(1, TimeUnit.MILLISECONDS);
+        assertEquals(service.expire(), 2);
+        assertEquals(expired, ImmutableList.of("a", "b"));
+        assertEquals(service.getPending(), 0);
+    }
+
+    @Test
+    public void expiresAcrossLevels()
+    {
+        ManualTicker ticker = new ManualTicker();
+        TimeoutService service = new TimeoutService(TICK, ticker);
+
+        // one deadline per level, plus deadlines right on the boundaries between levels
+        long[] ticks = {1, 63, 64, 65, 4095, 4096, 4097, 300_000, 20_000_000, 1_000_000_000L};
+        long[] expiredAt = new long[ticks.length];
+        long[] now = new long[1];
+        for (int i = 0; i < ticks.length; i++)
+        {
+            int index = i;
+            service.schedule(() -> expiredAt[index] = now[0], ticks[i] * 10, TimeUnit.MILLISECONDS);
+        }
+
+        // jump from deadline to deadline, checking nothing expires a tick early
+        for (long tick : ticks)
+        {
+            ticker.set(tick - 1, TICK);
+            now[0] = tick - 1;
+            service.expire();
+
+            ticker.set(tick, TICK);
+            now[0] = tick;
+            assertEquals(service.expire(), 1, "at tick " + tick);
+        }
+
+        for (int i = 0; i < ticks.length; i++)
+        {
+            assertEquals(expiredAt[i], ticks[i]);
+        }
+        assertEquals(service.getPending(), 0);
+    }
+
+    @Test
+    public void deadlinesBeyondTheWheel()
+    {
+        ManualTicker ticker = new ManualTicker();
+        TimeoutService service = new TimeoutService(new Duration(1, TimeUnit.NANOSECONDS), ticker);
+        boolean[] expired = new boolean[1];
+
+        long wheel = 1L << 36;
+        service.schedule(() -> expired[0] = true, wheel + 100, TimeUnit.NANOSECONDS);
+        service.schedule(() -> { }, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+        ticker.set(wheel + 99, new Duration(1, TimeUnit.NANOSECONDS));
+        service.expire();
+        assertFalse(expired[0]);
+
+        ticker.advance(1, TimeUnit.NANOSECONDS);
+        service.expire();
+        assertTrue(expired[0]);
+        assertEquals(service.getPending(), 1);
+    }
+
+    @Test
+    public void cancel()
+    {
+        ManualTicker ticker = new ManualTicker();
+        TimeoutService service = new TimeoutService(TICK, ticker);
+        List<String> expired = new ArrayList<>();
+
+        TimeoutService.Timeout a = service.schedule(() -> expired.add("a"), 1, TimeUnit.SECONDS);
+        TimeoutService.Timeout b = service.schedule(() -> expired.add("b"), 1, TimeUnit.SECONDS);
+        assertTrue(a.cancel());
+        assertFalse(a.cancel());
+        assertEquals(service.getPending(), 1);
+
+        ticker.advance(1, TimeUnit.SECONDS);
+        service.expire();
+        assertEquals(expired, ImmutableList.of("b"));
+        assertFalse(b.cancel());
+    }
+
+    @Test
+    public void pastDeadlinesExpireOnTheNextTick()
+    {
+        ManualTicker ticker = new ManualTicker();
+        TimeoutService service = new TimeoutService(TICK, ticker);
+
+        ticker.advance(100, TimeUnit.MILLISECONDS);
+        service.expire();
+
+        service.schedule(() -> { }, 0, TimeUnit.MILLISECONDS);
+        assertEquals(service.expire(), 0);
+        ticker.advance(10, TimeUnit.MILLISECONDS);
+        assertEquals(service.expire(), 1);
+    }
+
+    @Test
+    public void thread() throws Exception
+    {
+        TimeoutService service = new TimeoutService(new Duration(1, TimeUnit.MILLISECONDS), daemonThreadsNamed("test-timeouts-%s"));
+        CountDownLatch latch = new CountDownLatch(2);
+
+        long start = System.nanoTime();
+        service.schedule(latch::countDown, 20, TimeUnit.MILLISECONDS);
+        Thread.sleep(50);
+        service.schedule(latch::countDown, 20, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(70));
+    }
+
+    @Test
+    public void slowTasksDoNotDelayOtherDeadlines() throws Exception
+    {
+        ExecutorService executor = Executors.newCachedThreadPool(daemonThreadsNamed("test-timeout-tasks-%s"));
+        try
+        {
+            ManualTicker ticker = new ManualTicker();
+            TimeoutService service = new TimeoutService(TICK, ticker, executor);
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch fast = new CountDownLatch(1);
+
+            service.schedule(() -> awaitUninterruptibly(release), 10, TimeUnit.MILLISECONDS);
+            service.schedule(fast::countDown, 20, TimeUnit.MILLISECONDS);
+
+            ticker.advance(10, TimeUnit.MILLISECONDS);
+            assertEquals(service.expire(), 1);
+            ticker.advance(10, TimeUnit.MILLISECONDS);
+            assertEquals(service.expire(), 1);
+
+            assertTrue(fast.await(10, TimeUnit.SECONDS));
+            release.countDown();
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private static class ManualTicker
+            extends Ticker
+    {
+        private long nanos;
+
+        @Override
+        public long read()
+        {
+            return nanos;
+        }
+
+        void advance(long value, TimeUnit unit)
+        {
+            nanos += unit.toNanos(value);
+        }
+
+        void set(long ticks, Duration tick)
+        {
+            nanos = ticks * tick.roundTo(TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command;
+
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+
+public class TestXargsExecutor
+{
+    private ExecutorService executor;
+
+    @BeforeClass
+    public void setUp()
+    {
+        executor = newCachedThreadPool(daemonThreadsNamed("xargs-%s"));
+    }
+
+    @AfterClass
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void partitionByCount()
+    {
+        ArgumentPartitioner partitioner = new ArgumentPartitioner(Long.MAX_VALUE, 2);
+
+        assertEquals(partitioner.partition(ImmutableList.of("a", "b", "c", "d", "e")),
+                ImmutableList.of(ImmutableList.of("a", "b"), ImmutableList.of("c", "d"), ImmutableList.of("e")));
+        assertEquals(partitioner.partition(ImmutableList.of()), ImmutableList.of());
+    }
+
+    @Test
+    public void partitionBySize()
+    {
+        // "aaa" costs 3 + 1 + 8 bytes, "é" 2 + 1 + 8
+        assertEquals(ArgumentPartitioner.sizeOf("aaa"), 12);
+        assertEquals(ArgumentPartitioner.sizeOf("é"), 11);
+
+        ArgumentPartitioner partitioner = new ArgumentPartitioner(24, 100);
+        assertEquals(partitioner.partition(ImmutableList.of("aaa", "aaa", "aaa", "é", "é", "aaaa", "aaaaaaaaaaaa")),
+                ImmutableList.of(ImmutableList.of("aaa", "aaa"), ImmutableList.of("aaa", "é"), ImmutableList.of("é", "aaaa"), ImmutableList.of("aaaaaaaaaaaa")));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void argumentTooLong()
+    {
+        new ArgumentPartitioner(Long.MAX_VALUE, 10).partition(ImmutableList.of("a", Strings.repeat("a", ArgumentPartitioner.MAX_ARGUMENT_SIZE)));
+    }
+
+    @Test
+    public void partitionForCommand()
+    {
+        assertTrue(ArgumentPartitioner.argMax() >= 4096, "ARG_MAX is " + ArgumentPartitioner.argMax());
+
+        Command command = new Command("echo", "echo").excludeEnvironmentVariables();
+        ArgumentPartitioner partitioner = ArgumentPartitioner.forCommand(command, 10);
+        long withoutEnvironment = partitioner.getMaxBytes();
+        assertTrue(withoutEnvironment < ArgumentPartitioner.argMax());
+
+        long withEnvironment = ArgumentPartitioner.forCommand(command.addEnvironment("NAME", Strings.repeat("v", 1000)), 10).getMaxBytes();
+        assertEquals(withEnvironment, withoutEnvironment - 1014);
+    }
+
+    @Test
+    public void runsInOrder() throws Exception
+    {
+        List<String> arguments = IntStream.range(0, 1000).mapToObj(String::valueOf).collect(Collectors.toList());
+        XargsExecutor xargs = new XargsExecutor(executor, 4, 64);
+
+        XargsResult result = xargs.execute(new Command("printf", "printf", "%s\\n"), arguments);
+
+        assertEquals(result.getResults().size(), 16);
+        assertEquals(result.getCommandOutput(), arguments.stream().map(argument -> argument + "\n").collect(Collectors.joining()));
+        assertEquals(new String(result.getOutputBytes(), UTF_8), result.getCommandOutput());
+    }
+
+    @Test
+    public void exceedsArgMax() throws Exception
+    {
+        // more than ARG_MAX in total, so a single command line could not hold them
+        String argument = Strings.repeat("x", 1000);
+        int count = (int) (ArgumentPartitioner.argMax() / 1000) + 100;
+        List<String> arguments = IntStream.range(0, count).mapToObj(i -> argument).collect(Collectors.toList());
+
+        XargsResult result = new XargsExecutor(executor, 2, Integer.MAX_VALUE).execute(Command.newBashCommand("echo $#", "echo $#").addArgs("count"), arguments);
+
+        assertTrue(result.getResults().size() > 1);
+        int total = result.getResults().stream().mapToInt(run -> Integer.parseInt(run.getCommandOutput().trim())).sum();
+        assertEquals(total, count);
+    }
+
+    @Test
+    public void firstFailureStopsTheOthers() throws Exception
+    {
+        Command command = new Command("fail", "bash", "-c", "for a; do if [ $a = 7 ]; then exit 3; fi; done; exec sleep 30", "sh");
+        List<String> arguments = IntStream.range(0, 20).mapToObj(String::valueOf).collect(Collectors.toList());
+
+        long start = System.nanoTime();
+        try
+        {
+            new XargsExecutor(executor, 10, 2).execute(command, arguments);
+            fail("expected CommandFailedException");
+        }
+        catch (CommandFailedException e)
+        {
+            assertEquals(e.getExitCode(), Integer.valueOf(3));
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(20));
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.codec;
+
+import io.airlift.command.ProcessState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the binary codec with the JAXB and Java serialization forms of the same samples. The size of every form is printed before the run.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@OperationsPerInvocation(BenchmarkProcessStateCodec.SAMPLES)
+public class BenchmarkProcessStateCodec
+{
+    static final int SAMPLES = 1000;
+
+    private List<ProcessState> samples;
+    private JAXBContext jaxbContext;
+
+    private byte[] encoded;
+    private byte[] serialized;
+    private List<byte[]> marshalled;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        samples = ProcessStateSamples.samples(SAMPLES);
+        jaxbContext = JAXBContext.newInstance(ProcessState.class);
+
+        encoded = encodeBinary();
+        serialized = serializeJava();
+        marshalled = marshalJaxb();
+    }
+
+    @Benchmark
+    public byte[] encodeBinary()
+    {
+        return ProcessStateCodec.encode(samples);
+    }
+
+    @Benchmark
+    public List<ProcessState> decodeBinary() throws IOException
+    {
+        return ProcessStateCodec.decode(encoded);
+    }
+
+    @Benchmark
+    public byte[] serializeJava() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(new ArrayList<>(samples));
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public Object deserializeJava() throws IOException, ClassNotFoundException
+    {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized)))
+        {
+            return in.readObject();
+        }
+    }
+
+    @Benchmark
+    public List<byte[]> marshalJaxb() throws JAXBException
+    {
+        Marshaller marshaller = jaxbContext.createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+
+        List<byte[]> documents = new ArrayList<>(samples.size());
+        for (ProcessState sample : samples)
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            marshaller.marshal(sample, out);
+            documents.add(out.toByteArray());
+        }
+        return documents;
+    }
+
+    @Benchmark
+    public List<Object> unmarshalJaxb() throws JAXBException
+    {
+        Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
+
+        List<Object> samples = new ArrayList<>(marshalled.size());
+        for (byte[] document : marshalled)
+        {
+            samples.add(unmarshaller.unmarshal(new ByteArrayInputStream(document)));
+        }
+        return samples;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        BenchmarkProcessStateCodec benchmark = new BenchmarkProcessStateCodec();
+        benchmark.setup();
+
+        System.out.printf("bytes per sample: binary %.1f, java serialization %.1f, jaxb %.1f%n",
+                (double) benchmark.encoded.length / SAMPLES,
+                (double) benchmark.serialized.length / SAMPLES,
+                benchmark.marshalled.stream().mapToInt(document -> document.length).sum() / (double) SAMPLES);
+
+        Options options = new OptionsBuilder()
+                .verbosity(VerboseMode.NORMAL)
+                .include(".*" + BenchmarkProcessStateCodec.class.getSimpleName() + ".*")
+                .build();
+
+        new Runner(options).run();
+    }
+}
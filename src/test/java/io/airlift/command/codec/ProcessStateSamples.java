@@ -0,0 +1,89 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.codec;
+
+import io.airlift.command.ProcessCpuState;
+import io.airlift.command.ProcessIoState;
+import io.airlift.command.ProcessMemoryState;
+import io.airlift.command.ProcessState;
+import io.airlift.command.ProcessState.ProcState;
+import io.airlift.command.ProcessTime;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+final class ProcessStateSamples
+{
+    private ProcessStateSamples()
+    {
+    }
+
+    /**
+     * @return samples of one process taken every second, as the probes produce them
+     */
+    static List<ProcessState> samples(int count)
+    {
+        Random random = new Random(42);
+        List<ProcessState> samples = new ArrayList<>(count);
+
+        long pid = 4242;
+        long start = 1_500_000_000_000L;
+        long cpuTime = 0;
+        double resident = 64 * 1024 * 1024;
+        long readBytes = 0;
+        long switches = 0;
+
+        for (int i = 0; i < count; i++)
+        {
+            long now = start + i * 1000L;
+            int cpu = random.nextInt(1000);
+            cpuTime += cpu;
+            resident += random.nextInt(3) == 0 ? 4096 * random.nextInt(16) : 0;
+            long read = 4096 * random.nextInt(64);
+            readBytes += read;
+            switches += random.nextInt(100);
+
+            samples.add(new ProcessState(
+                    "command-" + pid,
+                    pid,
+                    now,
+                    4 + random.nextInt(2),
+                    0,
+                    random.nextInt(8),
+                    20,
+                    0,
+                    12 + random.nextInt(3),
+                    20,
+                    i % 10 == 0 ? ProcState.S : ProcState.R,
+                    new ProcessCpuState(pid, new Date(now), cpuTime * 4 / 5, now, random.nextInt(10000) / 100.0, start, cpuTime, cpuTime / 5),
+                    new ProcessMemoryState(pid, now, resident, 1000 + i, 3, 8 * 1024 * 1024, 997 + i, resident * 4),
+                    new ProcessTime(pid, now, cpuTime * 4 / 5, start, cpuTime, cpuTime / 5))
+                    .setIoState(new ProcessIoState()
+                            .setPid(pid)
+                            .setDatetime(now)
+                            .setReadBytes(readBytes)
+                            .setReadSyscalls(readBytes / 4096)
+                            .setVoluntaryContextSwitches(switches)
+                            .setRunQueueDelay(switches * 1000)
+                            .setReadBytesPerSecond(read)
+                            .setReadSyscallsPerSecond(read / 4096))
+                    .setCpuCores(cpu / 1000.0)
+                    .setPageFaultsPerSecond(i == 0 ? 0 : 1)
+                    .setFdGrowthPerSecond(i == 0 ? 0 : random.nextInt(3) - 1));
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.codec;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.command.ProcessCpuState;
+import io.airlift.command.ProcessMemoryState;
+import io.airlift.command.ProcessState;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TestProcessStateCodec
+{
+    @Test
+    public void roundTrip() throws Exception
+    {
+        List<ProcessState> samples = ProcessStateSamples.samples(1000);
+
+        List<ProcessState> decoded = ProcessStateCodec.decode(ProcessStateCodec.encode(samples));
+
+        assertEquals(decoded, samples);
+        for (int i = 0; i < samples.size(); i++)
+        {
+            assertExactlyEqual(decoded.get(i), samples.get(i));
+        }
+    }
+
+    @Test
+    public void roundTripOptionalParts() throws Exception
+    {
+        List<ProcessState> samples = ImmutableList.of(
+                new ProcessState().setId("a").setPid(1).setDatetime(1000).setNice(-20),
+                new ProcessState().setPid(2).setDatetime(500).setFd(-3)
+                        .setCpuState(new ProcessCpuState().setPercent(Double.NaN).setUser(-1.5))
+                        .setMemoryState(new ProcessMemoryState().setResident(Double.MAX_VALUE)),
+                new ProcessState().setId("\u00e9t\u00e9").setPid(Long.MAX_VALUE).setDatetime(Long.MIN_VALUE));
+
+        List<ProcessState> decoded = ProcessStateCodec.decode(ProcessStateCodec.encode(samples));
+        assertEquals(decoded.size(), 3);
+
+        assertEquals(decoded.get(0).getId(), "a");
+        assertEquals(decoded.get(0).getNice(), -20);
+        assertNull(decoded.get(0).getCpuState());
+        assertNull(decoded.get(0).getState());
+
+        assertNull(decoded.get(1).getId());
+        assertEquals(decoded.get(1).getFd(), -3);
+        assertNull(decoded.get(1).getCpuState().getDatetime());
+        assertTrue(Double.isNaN(decoded.get(1).getCpuState().getPercent()));
+        assertEquals(decoded.get(1).getCpuState().getUser(), -1.5, 0);
+        assertEquals(decoded.get(1).getMemoryState().getResident(), Double.MAX_VALUE, 0);
+        assertNull(decoded.get(1).getProcessTime());
+
+        assertEquals(decoded.get(2).getId(), "\u00e9t\u00e9");
+        assertEquals(decoded.get(2).getPid(), Long.MAX_VALUE);
+        assertEquals(decoded.get(2).getDatetime(), Long.MIN_VALUE);
+    }
+
+    @Test
+    public void longIds() throws Exception
+    {
+        char[] id = new char[20_000];
+        Arrays.fill(id, 'x');
+
+        List<ProcessState> samples = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+        {
+            samples.add(new ProcessState().setId(new String(id, 0, id.length - i)).setPid(i));
+        }
+
+        List<ProcessState> decoded = ProcessStateCodec.decode(ProcessStateCodec.encode(samples));
+        for (int i = 0; i < 3; i++)
+        {
+            assertEquals(decoded.get(i).getId(), samples.get(i).getId());
+        }
+    }
+
+    @Test
+    public void streaming() throws Exception
+    {
+        List<ProcessState> samples = ProcessStateSamples.samples(100);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (ProcessStateEncoder encoder = new ProcessStateEncoder(out))
+        {
+            for (ProcessState sample : samples)
+            {
+                encoder.write(sample);
+            }
+        }
+
+        try (ProcessStateDecoder decoder = new ProcessStateDecoder(new ByteArrayInputStream(out.toByteArray())))
+        {
+            for (ProcessState sample : samples)
+            {
+                assertExactlyEqual(decoder.read(), sample);
+            }
+            assertNull(decoder.read());
+        }
+    }
+
+    @Test
+    public void emptyStream() throws Exception
+    {
+        assertEquals(ProcessStateCodec.decode(ProcessStateCodec.encode(ImmutableList.of())), ImmutableList.of());
+    }
+
+    @Test
+    public void compact() throws Exception
+    {
+        List<ProcessState> samples = ProcessStateSamples.samples(1000);
+
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(serialized))
+        {
+            out.writeObject(new ArrayList<>(samples));
+        }
+
+        byte[] encoded = ProcessStateCodec.encode(samples);
+        assertTrue(encoded.length * 4 < serialized.size(), encoded.length + " bytes encoded, " + serialized.size() + " bytes serialized");
+    }
+
+    @Test(expectedExceptions = EOFException.class)
+    public void truncatedStream() throws Exception
+    {
+        byte[] encoded = ProcessStateCodec.encode(ProcessStateSamples.samples(2));
+        ProcessStateCodec.decode(Arrays.copyOf(encoded, encoded.length - 1));
+    }
+
+    @Test(expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = ".*unsupported version.*")
+    public void unsupportedVersion() throws Exception
+    {
+        byte[] encoded = ProcessStateCodec.encode(ProcessStateSamples.samples(1));
+        encoded[3] = 99;
+        ProcessStateCodec.decode(encoded);
+    }
+
+    @Test
+    public void readOlderVersions() throws Exception
+    {
+        ProcessState sample = ProcessStateSamples.samples(1).get(0).setCpuCores(0);
+
+        // version 2 streams are those of version 3 without the trailing rates, which take a byte each when they are zero
+        byte[] encoded = ProcessStateCodec.encode(ImmutableList.of(sample));
+        byte[] version2 = Arrays.copyOf(encoded, encoded.length - 4);
+        version2[3] = 2;
+        assertEquals(ProcessStateCodec.decode(version2), ImmutableList.of(sample));
+
+        // version 1 streams have no I/O state either
+        sample.setIoState(null);
+        encoded = ProcessStateCodec.encode(ImmutableList.of(sample));
+        byte[] version1 = Arrays.copyOf(encoded, encoded.length - 4);
+        version1[3] = 1;
+        assertEquals(ProcessStateCodec.decode(version1), ImmutableList.of(sample));
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void notAStream() throws Exception
+    {
+        ProcessStateCodec.decode(new byte[] {1, 2, 3, 4});
+    }
+
+    /**
+     * {@link ProcessState#equals(Object)} truncates the timestamps to the second.
+     */
+    private static void assertExactlyEqual(ProcessState actual, ProcessState expected)
+    {
+        assertEquals(actual, expected);
+        assertEquals(actual.getDatetime(), expected.getDatetime());
+        assertEquals(actual.getCpuState().getDatetime(), expected.getCpuState().getDatetime());
+        assertEquals(actual.getMemoryState().getDatetime(), expected.getMemoryState().getDatetime());
+        assertEquals(actual.getProcessTime().getDatetime(), expected.getProcessTime().getDatetime());
+        assertEquals(actual.getIoState().getDatetime(), expected.getIoState().getDatetime());
+    }
+}
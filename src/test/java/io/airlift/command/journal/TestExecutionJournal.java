@@ -0,0 +1,227 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.journal;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.command.Command;
+import io.airlift.command.CommandFailedException;
+import io.airlift.command.CommandInstrumentation;
+import io.airlift.command.journal.JournalEvent.Type;
+import io.airlift.command.metrics.CommandMetrics;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.stream.Collectors.toList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestExecutionJournal
+{
+    private ExecutorService executor;
+    private Path file;
+
+    @BeforeMethod
+    public void setUp() throws Exception
+    {
+        executor = newCachedThreadPool(daemonThreadsNamed("process-journal-%s"));
+        file = Files.createTempFile("journal", ".bin");
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception
+    {
+        executor.shutdownNow();
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(ExecutionJournal.previous(file));
+    }
+
+    @Test
+    public void recordExecutions() throws Exception
+    {
+        try (ExecutionJournal journal = new ExecutionJournal(file, 16))
+        {
+            CommandMetrics metrics = new CommandMetrics();
+            CommandInstrumentation instrumentation = CommandInstrumentation.combine(journal, metrics);
+
+            new Command("echo", "echo", "foo")
+                    .setInstrumentation(instrumentation)
+                    .setTimeLimit(1, TimeUnit.SECONDS)
+                    .execute(executor);
+
+            try
+            {
+                new Command("exit", "bash", "-c", "exit 3")
+                        .setInstrumentation(instrumentation)
+                        .setTimeLimit(1, TimeUnit.SECONDS)
+                        .execute(executor);
+                fail("expected the command to fail");
+            }
+            catch (CommandFailedException expected)
+            {
+            }
+
+            assertEquals(metrics.getStarted(), 2);
+        }
+
+        List<JournalEvent> events = ExecutionJournalReader.read(file);
+
+        assertEquals(events.stream().map(JournalEvent::getType).collect(toList()),
+                ImmutableList.of(Type.STARTED, Type.SPAWNED, Type.COMPLETED, Type.STARTED, Type.SPAWNED, Type.FAILED));
+        assertEquals(events.stream().map(JournalEvent::getCommandId).collect(toList()),
+                ImmutableList.of("echo", "echo", "echo", "exit", "exit", "exit"));
+
+        JournalEvent completed = events.get(2);
+        assertEquals(completed.getExitCode(), 0);
+        assertEquals(completed.getPid(), events.get(1).getPid());
+        assertTrue(completed.getRunTime() > 0);
+        assertTrue(completed.getTotalTime() >= completed.getRunTime());
+        assertTrue(completed.getNanoTime() >= events.get(0).getNanoTime());
+
+        assertEquals(events.get(5).getExitCode(), 3);
+    }
+
+    @Test
+    public void recordTimeoutAndKill() throws Exception
+    {
+        try (ExecutionJournal journal = new ExecutionJournal(file, 16))
+        {
+            try
+            {
+                new Command("sleep", "sleep", "15")
+                        .setInstrumentation(journal)
+                        .setTimeLimit(100, TimeUnit.MILLISECONDS)
+                        .execute(executor);
+                fail("expected the command to time out");
+            }
+            catch (CommandFailedException expected)
+            {
+            }
+
+            // the process is killed on the thread running it
+            for (int i = 0; i < 100 && journal.getEventCount() < 4; i++)
+            {
+                Thread.sleep(10);
+            }
+        }
+
+        List<Type> types = ExecutionJournalReader.read(file).stream().map(JournalEvent::getType).collect(toList());
+        assertTrue(types.contains(Type.TIMED_OUT), types.toString());
+        assertTrue(types.contains(Type.KILLED), types.toString());
+    }
+
+    @Test
+    public void keepLatestEvents() throws Exception
+    {
+        try (ExecutionJournal journal = new ExecutionJournal(file, 4))
+        {
+            for (int i = 0; i < 10; i++)
+            {
+                journal.onStarted(new Command("command-" + i, "true"));
+            }
+            assertEquals(journal.getEventCount(), 10);
+        }
+
+        List<JournalEvent> events = ExecutionJournalReader.read(file);
+        assertEquals(events.stream().map(JournalEvent::getCommandId).collect(toList()),
+                ImmutableList.of("command-6", "command-7", "command-8", "command-9"));
+        assertEquals(events.get(0).getSequence(), 6);
+    }
+
+    @Test
+    public void truncateLongIds() throws Exception
+    {
+        String id = "x" + new String(new char[100]).replace('\0', 'y');
+
+        try (ExecutionJournal journal = new ExecutionJournal(file, 4))
+        {
+            journal.onStarted(new Command(id, "true"));
+        }
+
+        assertEquals(ExecutionJournalReader.read(file).get(0).getCommandId(), id.substring(0, ExecutionJournal.MAX_ID_LENGTH));
+    }
+
+    @Test
+    public void keepPreviousJournal() throws Exception
+    {
+        try (ExecutionJournal journal = new ExecutionJournal(file, 4))
+        {
+            journal.onStarted(new Command("first", "true"));
+        }
+
+        try (ExecutionJournal journal = new ExecutionJournal(file, 4))
+        {
+            journal.onStarted(new Command("second", "true"));
+        }
+
+        assertEquals(ExecutionJournalReader.read(file).stream().map(JournalEvent::getCommandId).collect(toList()), ImmutableList.of("second"));
+        assertEquals(ExecutionJournalReader.read(ExecutionJournal.previous(file)).stream().map(JournalEvent::getCommandId).collect(toList()),
+                ImmutableList.of("first"));
+    }
+
+    @Test
+    public void keepRecordsWholeWhenWritersLapTheRing() throws Exception
+    {
+        int threads = 8;
+        int events = 10_000;
+
+        try (ExecutionJournal journal = new ExecutionJournal(file, 2))
+        {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++)
+            {
+                String id = "writer-" + thread;
+                writers.add(executor.submit(() ->
+                {
+                    Command command = new Command(id, "true");
+                    for (int i = 0; i < events; i++)
+                    {
+                        journal.onSpawned(command, id.hashCode());
+                    }
+                }));
+            }
+
+            for (Future<?> writer : writers)
+            {
+                writer.get();
+            }
+            assertEquals(journal.getEventCount(), (long) threads * events);
+        }
+
+        // every record read has the pid matching its id, so none mixes the fields of two events
+        for (JournalEvent event : ExecutionJournalReader.read(file))
+        {
+            assertEquals(event.getPid(), event.getCommandId().hashCode(), event.toString());
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void rejectOtherFiles() throws Exception
+    {
+        Files.write(file, new byte[256]);
+        ExecutionJournalReader.read(file);
+    }
+}
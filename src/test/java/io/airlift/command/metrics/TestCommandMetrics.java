@@ -0,0 +1,137 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.metrics;
+
+import com.google.common.collect.ImmutableMap;
+import io.airlift.command.Command;
+import io.airlift.command.CommandFailedException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.util.UUID.randomUUID;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestCommandMetrics
+{
+    private ExecutorService executor;
+
+    @BeforeClass
+    public void setUp() throws Exception
+    {
+        executor = newCachedThreadPool(daemonThreadsNamed("process-metrics-%s"));
+    }
+
+    @AfterClass
+    public void tearDown() throws Exception
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void recordExecutions() throws Exception
+    {
+        CommandMetrics metrics = new CommandMetrics();
+
+        new Command(randomUUID().toString(), "echo", "foo")
+                .setInstrumentation(metrics)
+                .setTimeLimit(1, TimeUnit.SECONDS)
+                .execute(executor);
+
+        new Command(randomUUID().toString(), "bash", "-c", "exit 3")
+                .setInstrumentation(metrics)
+                .setSuccessfulExitCodes(3)
+                .setTimeLimit(1, TimeUnit.SECONDS)
+                .execute(executor);
+
+        assertFails(new Command(randomUUID().toString(), "bash", "-c", "exit 7")
+                .setInstrumentation(metrics)
+                .setTimeLimit(1, TimeUnit.SECONDS));
+
+        assertFails(new Command(randomUUID().toString(), "sleep", "15")
+                .setInstrumentation(metrics)
+                .setTimeLimit(100, TimeUnit.MILLISECONDS));
+
+        assertEquals(metrics.getStarted(), 4);
+        assertEquals(metrics.getSpawned(), 4);
+        assertEquals(metrics.getCompleted(), 2);
+        assertEquals(metrics.getFailed(), 1);
+        assertEquals(metrics.getTimedOut(), 1);
+        assertEquals(metrics.getInFlight(), 0);
+        assertEquals(metrics.getOutputBytes(), 4);
+        assertEquals(metrics.getExitCodes(), ImmutableMap.of(0, 1L, 3, 1L, 7, 1L));
+        assertEquals(metrics.getTotalTime().getCount(), 2);
+        assertTrue(metrics.getSpawnTime().getMin() > 0);
+    }
+
+    @Test
+    public void registry()
+    {
+        MetricsRegistry registry = new MetricsRegistry();
+
+        CommandMetrics metrics = registry.get("build");
+        assertTrue(registry.get("build") == metrics);
+        assertEquals(registry.getMetrics(), ImmutableMap.of("build", metrics));
+
+        assertTrue(registry.remove("build") == metrics);
+        assertTrue(registry.getMetrics().isEmpty());
+    }
+
+    @Test
+    public void exportToJmx() throws Exception
+    {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        JmxExporter exporter = new JmxExporter(server, "test");
+        MetricsRegistry registry = new MetricsRegistry();
+
+        new Command(randomUUID().toString(), "echo", "foo")
+                .setInstrumentation(registry.get("echo"))
+                .setTimeLimit(1, TimeUnit.SECONDS)
+                .execute(executor);
+
+        exporter.export(registry);
+        ObjectName name = exporter.objectName("echo");
+
+        assertEquals(server.getAttribute(name, "Completed"), 1L);
+        assertEquals(((CompositeData) server.getAttribute(name, "RunTime")).get("count"), 1L);
+
+        exporter.unexportAll();
+        assertFalse(server.isRegistered(name));
+    }
+
+    private void assertFails(Command command)
+    {
+        try
+        {
+            command.execute(executor);
+            fail("expected the command to fail");
+        }
+        catch (CommandFailedException expected)
+        {
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.metrics;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestLatencyHistogram
+{
+    @Test
+    public void bucketsCoverAllValues()
+    {
+        for (long value : new long[] {0, 1, 63, 64, 65, 127, 128, 1000, 1_000_000, Long.MAX_VALUE / 3, Long.MAX_VALUE})
+        {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(LatencyHistogram.lowestValueOf(bucket) <= value, "value " + value);
+            assertTrue(LatencyHistogram.highestValueOf(bucket) >= value, "value " + value);
+        }
+
+        for (int bucket = 1; bucket < LatencyHistogram.bucketOf(Long.MAX_VALUE); bucket++)
+        {
+            assertEquals(LatencyHistogram.lowestValueOf(bucket), LatencyHistogram.highestValueOf(bucket - 1) + 1);
+        }
+    }
+
+    @Test
+    public void percentiles()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1000; i++)
+        {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+
+        assertEquals(histogram.getCount(), 1000);
+        assertEquals(histogram.getMin(), TimeUnit.MICROSECONDS.toNanos(1));
+        assertEquals(histogram.getMax(), TimeUnit.MICROSECONDS.toNanos(1000));
+        assertEquals(histogram.getMean(), TimeUnit.MICROSECONDS.toNanos(1) * 500.5, 0.001);
+
+        assertWithinPrecision(histogram.getPercentile(50), TimeUnit.MICROSECONDS.toNanos(500));
+        assertWithinPrecision(histogram.getPercentile(99), TimeUnit.MICROSECONDS.toNanos(990));
+        assertEquals(histogram.getPercentile(100), histogram.getMax());
+    }
+
+    @Test
+    public void empty()
+    {
+        LatencySnapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertEquals(snapshot.getCount(), 0);
+        assertEquals(snapshot.getMin(), 0);
+        assertEquals(snapshot.getMax(), 0);
+        assertEquals(snapshot.getP99(), 0);
+    }
+
+    @Test
+    public void negativeValuesAreRecordedAsZero()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+
+        assertEquals(histogram.getMin(), 0);
+        assertEquals(histogram.getPercentile(50), 0);
+    }
+
+    @Test
+    public void concurrentRecording() throws Exception
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        ExecutorService executor = newFixedThreadPool(4);
+
+        try
+        {
+            for (int thread = 0; thread < 4; thread++)
+            {
+                executor.execute(() ->
+                {
+                    for (int i = 0; i < 100_000; i++)
+                    {
+                        histogram.record(i);
+                    }
+                });
+            }
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        assertEquals(histogram.getCount(), 400_000);
+        assertEquals(histogram.getMax(), 99_999);
+    }
+
+    private static void assertWithinPrecision(long actual, long expected)
+    {
+        assertTrue(Math.abs(actual - expected) <= expected / 64, "expected " + expected + " but was " + actual);
+    }
+}
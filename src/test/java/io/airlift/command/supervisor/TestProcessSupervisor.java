@@ -0,0 +1,235 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.supervisor;
+
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.google.common.eventbus.Subscribe;
+
+import io.airlift.command.Command;
+import io.airlift.command.ProcessState;
+import io.airlift.command.RunningCommand;
+import io.airlift.command.supervisor.SupervisedProcess.State;
+import io.airlift.units.Duration;
+
+public class TestProcessSupervisor
+{
+    private static final RestartPolicy FAST = RestartPolicy.onFailure()
+            .withBackoff(new Duration(1, TimeUnit.MILLISECONDS), new Duration(10, TimeUnit.MILLISECONDS), 2)
+            .withMaxRestarts(1000, new Duration(1, TimeUnit.MINUTES));
+
+    private ExecutorService executor;
+    private ScheduledExecutorService scheduler;
+
+    @BeforeClass
+    public void setUp()
+    {
+        executor = newCachedThreadPool(daemonThreadsNamed("supervised-%s"));
+        scheduler = newSingleThreadScheduledExecutor(daemonThreadsNamed("supervisor-%s"));
+    }
+
+    @AfterClass
+    public void tearDown()
+    {
+        executor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void restartsOnFailure() throws Exception
+    {
+        try (ProcessSupervisor supervisor = new ProcessSupervisor(executor, scheduler))
+        {
+            SupervisedProcess process = supervisor.supervise(Command.newBashCommand("exit 3"), FAST);
+
+            waitFor(() -> process.getRestarts() >= 3);
+            assertEquals(process.getLastFailure().get().getExitCode(), Integer.valueOf(3));
+        }
+    }
+
+    @Test
+    public void doesNotRestartCompleted() throws Exception
+    {
+        try (ProcessSupervisor supervisor = new ProcessSupervisor(executor, scheduler))
+        {
+            SupervisedProcess process = supervisor.supervise(Command.newBashCommand("true"), FAST);
+
+            waitFor(() -> process.getState() == State.COMPLETED);
+            Thread.sleep(50);
+            assertEquals(process.getRestarts(), 0);
+            assertFalse(process.getLastFailure().isPresent());
+        }
+    }
+
+    @Test
+    public void restartsCompletedWhenAsked() throws Exception
+    {
+        try (ProcessSupervisor supervisor = new ProcessSupervisor(executor, scheduler))
+        {
+            SupervisedProcess process = supervisor.supervise(Command.newBashCommand("true"), FAST.withRestartOnSuccess(true));
+
+            waitFor(() -> process.getRestarts() >= 2);
+            assertFalse(process.getLastFailure().isPresent());
+        }
+    }
+
+    @Test
+    public void retriesFailedStarts() throws Exception
+    {
+        AtomicInteger rejections = new AtomicInteger(3);
+        Executor rejecting = task ->
+        {
+            if (rejections.getAndDecrement() > 0)
+            {
+                throw new RejectedExecutionException("rejected");
+            }
+            executor.execute(task);
+        };
+
+        try (ProcessSupervisor supervisor = new ProcessSupervisor(rejecting, scheduler))
+        {
+            SupervisedProcess process = supervisor.supervise(Command.newBashCommand("sleep 15"), FAST);
+
+            waitFor(() -> process.getState() == State.RUNNING && process.getCurrent() != null);
+            assertEquals(process.getRestarts(), 3);
+            assertTrue(process.getLastFailure().get().getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    @Test
+    public void capsRestartRate() throws Exception
+    {
+        RestartPolicy policy = FAST.withMaxRestarts(2, new Duration(1, TimeUnit.MINUTES));
+
+        try (ProcessSupervisor supervisor = new ProcessSupervisor(executor, scheduler))
+        {
+            SupervisedProcess process = supervisor.supervise(Command.newBashCommand("exit 1"), policy);
+
+            waitFor(() -> process.getRestarts() == 2 && process.getState() == State.BACKING_OFF);
+            Thread.sleep(200);
+            assertEquals(process.getRestarts(), 2);
+            assertEquals(process.getState(), State.BACKING_OFF);
+        }
+    }
+
+    @Test
+    public void backoff()
+    {
+        RestartPolicy policy = RestartPolicy.onFailure().withBackoff(new Duration(100, TimeUnit.MILLISECONDS), new Duration(1, TimeUnit.SECONDS), 3);
+
+        assertEquals(policy.backoffNanos(0), TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(policy.backoffNanos(1), TimeUnit.MILLISECONDS.toNanos(300));
+        assertEquals(policy.backoffNanos(2), TimeUnit.MILLISECONDS.toNanos(900));
+        assertEquals(policy.backoffNanos(3), TimeUnit.SECONDS.toNanos(1));
+        assertEquals(policy.backoffNanos(Integer.MAX_VALUE - 1), TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void stop() throws Exception
+    {
+        ProcessSupervisor supervisor = new ProcessSupervisor(executor, scheduler);
+        SupervisedProcess process = supervisor.supervise(Command.newBashCommand("exec sleep 30"), FAST);
+        RunningCommand running = process.getCurrent();
+        running.getReadiness().get(10, TimeUnit.SECONDS);
+
+        assertTrue(supervisor.stop(process.getCommand().getId()));
+        assertFalse(supervisor.getProcess(process.getCommand().getId()).isPresent());
+        assertEquals(process.getState(), State.STOPPED);
+
+        waitFor(running::isDone);
+        Thread.sleep(50);
+        assertEquals(process.getRestarts(), 0);
+        assertTrue(process.getCurrent() == running);
+    }
+
+    @Test
+    public void uniqueIds()
+    {
+        try (ProcessSupervisor supervisor = new ProcessSupervisor(executor, scheduler))
+        {
+            Command command = Command.newBashCommand("exec sleep 30");
+            supervisor.supervise(command, FAST);
+            try
+            {
+                supervisor.supervise(command, FAST);
+                fail("expected IllegalArgumentException");
+            }
+            catch (IllegalArgumentException expected)
+            {
+            }
+        }
+    }
+
+    @Test
+    public void samplesAcrossRestarts() throws Exception
+    {
+        try (ProcessSupervisor supervisor = new ProcessSupervisor(executor, scheduler))
+        {
+            SupervisedProcess process = supervisor.supervise(Command.newBashCommand("exit 1"), FAST);
+            Samples samples = new Samples();
+            process.registerListener(samples);
+
+            process.onProcessState(new ProcessState().setId(process.getCommand().getId()).setPid(1));
+            waitFor(() -> process.getRestarts() >= 1);
+            process.onProcessState(new ProcessState().setId(process.getCommand().getId()).setPid(2));
+
+            assertEquals(samples.samples.size(), 2);
+            assertEquals(process.getLatestState().get().getPid(), 2);
+        }
+    }
+
+    public static class Samples
+    {
+        private final List<ProcessState> samples = new CopyOnWriteArrayList<>();
+
+        @Subscribe
+        public void onProcessState(ProcessState state)
+        {
+            samples.add(state);
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean())
+        {
+            if (System.nanoTime() > deadline)
+            {
+                fail("condition not met in time");
+            }
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.system.stats;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.Subscribe;
+import io.airlift.command.Command;
+import io.airlift.command.CommandResult;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+public class TestSystemProbe
+{
+    private ExecutorService executor;
+    private ScheduledExecutorService scheduler;
+    private SystemProbe probe;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        executor = newCachedThreadPool(daemonThreadsNamed("process-input-%s"));
+        scheduler = newSingleThreadScheduledExecutor(daemonThreadsNamed("probe-system-%s"));
+        probe = new SystemProbe(new SigarService(), scheduler);
+    }
+
+    @AfterMethod
+    public void tearDown()
+    {
+        probe.stop();
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void parseCpu()
+    {
+        long[] ticks = SystemProbe.parseCpu("cpu  31750 12 2113 141014 110 3 7 970 0 0");
+        assertEquals(ticks.length, 8);
+        assertEquals(ticks[0], 31750);
+        assertEquals(ticks[3], 141014);
+        assertEquals(ticks[7], 970);
+
+        // kernels before 2.6.11 have no steal time
+        assertEquals(SystemProbe.parseCpu("cpu 10 0 5 100 1 0 0")[7], 0);
+    }
+
+    @Test
+    public void cpuUsage()
+    {
+        long[] previous = {100, 0, 50, 1000, 10, 0, 0, 0};
+        long[] current = {160, 20, 60, 1100, 20, 5, 5, 30};
+
+        double[] usage = SystemProbe.cpuUsage(previous, current);
+        assertEquals(usage[0], 80 * 100.0 / 240, 0.0001);
+        assertEquals(usage[1], 20 * 100.0 / 240, 0.0001);
+        assertEquals(usage[2], 10 * 100.0 / 240, 0.0001);
+        assertEquals(usage[3], 100 * 100.0 / 240, 0.0001);
+
+        assertEquals(SystemProbe.cpuUsage(current, current)[3], 100, 0.0001);
+    }
+
+    @Test
+    public void parseDiskStats()
+    {
+        List<String> lines = ImmutableList.of(
+                "   7       0 loop0 10 0 80 0 0 0 0 0 0 0 0",
+                " 253       0 vda 4589 1234 402178 2016 5121 3361 150304 5732 0 3388 7748",
+                " 253       1 vda1 4000 1000 400000 2000 5000 3000 150000 5700 0 3300 7700",
+                " 253      16 vdb 10 0 100 1 20 0 200 2 0 3 3");
+
+        long[] io = SystemProbe.parseDiskStats(lines, ImmutableSet.of("vda", "vdb"));
+        assertEquals(io[0], (402178 + 100) * 512L);
+        assertEquals(io[1], (150304 + 200) * 512L);
+    }
+
+    @Test
+    public void sample()
+    {
+        List<SystemState> samples = new CopyOnWriteArrayList<>();
+        probe.registerListener(new Object()
+        {
+            @Subscribe
+            public void onSample(SystemState state)
+            {
+                samples.add(state);
+            }
+        });
+
+        SystemState state = probe.systemStats().get();
+        assertEquals(samples, ImmutableList.of(state));
+        assertEquals(state.getCpus(), Runtime.getRuntime().availableProcessors());
+        assertTrue(state.getDatetime() > 0);
+        assertTrue(state.getDiskReadBytesPerSecond() >= 0);
+
+        if (state.getCpuIdle() >= 0)
+        {
+            double total = state.getCpuUser() + state.getCpuSystem() + state.getCpuIoWait() + state.getCpuIdle();
+            assertTrue(total <= 100.0001, "total CPU is " + total);
+        }
+    }
+
+    @Test
+    public void scheduledSampling() throws Exception
+    {
+        List<SystemState> samples = new CopyOnWriteArrayList<>();
+        probe.registerListener(new Object()
+        {
+            @Subscribe
+            public void onSample(SystemState state)
+            {
+                samples.add(state);
+            }
+        });
+
+        probe.start(0, 10, TimeUnit.MILLISECONDS);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (samples.size() < 3 && System.nanoTime() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertTrue(samples.size() >= 3, "expected periodic samples");
+
+        probe.cancel();
+        int count = samples.size();
+        Thread.sleep(50);
+        assertTrue(samples.size() <= count + 1);
+    }
+
+    @Test
+    public void latestWithoutMonitor()
+    {
+        List<SystemState> samples = new CopyOnWriteArrayList<>();
+        probe.registerListener(new Object()
+        {
+            @Subscribe
+            public void onSample(SystemState state)
+            {
+                samples.add(state);
+            }
+        });
+
+        SystemState state = probe.latest();
+        assertTrue(state.getDatetime() > 0);
+        assertTrue(samples.isEmpty(), "a reading without the monitor is not a sample");
+
+        // the rates are only measured between samples
+        assertTrue(state.getCpuIdle() < 0, "CPU usage of " + state);
+        assertEquals(state.getDiskReadBytesPerSecond(), 0.0);
+        assertEquals(state.getDiskWriteBytesPerSecond(), 0.0);
+    }
+
+    @Test
+    public void tagCommandResults() throws Exception
+    {
+        CommandResult result = new Command("sleep", "sleep", "0.1")
+                .setSystemProbe(probe)
+                .setTimeLimit(5, TimeUnit.SECONDS)
+                .execute(executor);
+
+        assertNotNull(result.getHostStateAtStart());
+        assertNotNull(result.getHostStateAtEnd());
+        assertTrue(result.getHostStateAtEnd().getDatetime() >= result.getHostStateAtStart().getDatetime() + 90);
+
+        CommandResult untagged = new Command("echo", "echo", "foo").execute(executor);
+        assertEquals(untagged.getHostStateAtStart(), null);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.system.stats.process;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.command.ProcessIoState;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TestProcessIoReader
+{
+    @Test
+    public void parseIo()
+    {
+        long[] io = ProcessIoReader.parseIo(ImmutableList.of(
+                "rchar: 3980",
+                "wchar: 120",
+                "syscr: 9",
+                "syscw: 2",
+                "read_bytes: 8192",
+                "write_bytes: 4096",
+                "cancelled_write_bytes: 0"));
+
+        assertEquals(io[0], 8192);
+        assertEquals(io[1], 4096);
+        assertEquals(io[2], 9);
+        assertEquals(io[3], 2);
+    }
+
+    @Test
+    public void parseContextSwitches()
+    {
+        long[] switches = ProcessIoReader.parseContextSwitches(ImmutableList.of(
+                "Name:\tjava",
+                "Threads:\t1",
+                "voluntary_ctxt_switches:\t150",
+                "nonvoluntary_ctxt_switches:\t7"));
+
+        assertEquals(switches[0], 150);
+        assertEquals(switches[1], 7);
+    }
+
+    @Test
+    public void parseRunQueueDelay()
+    {
+        assertEquals(ProcessIoReader.parseRunQueueDelay("1234567 89012 42\n"), 89012);
+    }
+
+    @Test
+    public void readOwnProcess() throws Exception
+    {
+        long pid = Long.parseLong(Paths.get("/proc/self").toRealPath().getFileName().toString());
+        if (!Files.isReadable(Paths.get("/proc", String.valueOf(pid), "io")))
+        {
+            throw new SkipException("/proc/<pid>/io is not available");
+        }
+
+        ProcessIoReader reader = new ProcessIoReader(pid);
+        ProcessIoState first = reader.read(1000);
+        assertNotNull(first);
+        assertEquals(first.getPid(), pid);
+        assertEquals(first.getDatetime(), 1000);
+        assertEquals(first.getReadSyscallsPerSecond(), 0.0, 0);
+        assertTrue(first.getVoluntaryContextSwitches() > 0);
+
+        readFile();
+        Thread.sleep(20);
+
+        ProcessIoState second = reader.read(2000);
+        assertTrue(second.getReadSyscalls() > first.getReadSyscalls());
+        assertTrue(second.getReadSyscallsPerSecond() > 0);
+        assertTrue(second.getVoluntaryContextSwitchesPerSecond() > 0);
+    }
+
+    @Test
+    public void exitedProcess()
+    {
+        assertNull(new ProcessIoReader(Integer.MAX_VALUE).read(1000));
+    }
+
+    private static void readFile() throws IOException
+    {
+        Path file = Files.createTempFile("io", ".bin");
+        try (RandomAccessFile in = new RandomAccessFile(file.toFile(), "rw"))
+        {
+            in.write(new byte[4096]);
+            in.seek(0);
+            for (int i = 0; i < 16; i++)
+            {
+                in.seek(0);
+                in.read(new byte[256]);
+            }
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.system.stats.process;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+
+public class TestRateTracker
+{
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void rates()
+    {
+        RateTracker rates = new RateTracker(2);
+
+        rates.tick(10 * SECOND);
+        assertEquals(rates.rate(0, 1000), 0.0, 0);
+        assertEquals(rates.rate(1, 5), 0.0, 0);
+
+        rates.tick(12 * SECOND);
+        assertEquals(rates.rate(0, 3000), 1000.0, 0.0001);
+        assertEquals(rates.rate(1, 4), -0.5, 0.0001);
+
+        rates.tick(12 * SECOND + SECOND / 2);
+        assertEquals(rates.rate(0, 3500), 1000.0, 0.0001);
+        assertEquals(rates.rate(1, 4), 0.0, 0.0001);
+    }
+
+    @Test
+    public void counterMissingFromSomeSamples()
+    {
+        RateTracker rates = new RateTracker(2);
+
+        rates.tick(0);
+        rates.rate(0, 10);
+
+        // the first value of a counter has no rate, even after the first sample
+        rates.tick(SECOND);
+        assertEquals(rates.rate(0, 20), 10.0, 0.0001);
+        assertEquals(rates.rate(1, 100), 0.0, 0);
+
+        rates.tick(2 * SECOND);
+        assertEquals(rates.rate(1, 150), 50.0, 0.0001);
+    }
+
+    @Test
+    public void sameTime()
+    {
+        RateTracker rates = new RateTracker(1);
+
+        rates.tick(SECOND);
+        rates.rate(0, 10);
+        rates.tick(SECOND);
+        assertEquals(rates.rate(0, 20), 0.0, 0);
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.command.tsdb;
+
+import com.google.common.eventbus.EventBus;
+import io.airlift.command.ProcessCpuState;
+import io.airlift.command.ProcessMemoryState;
+import io.airlift.command.ProcessState;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestProcessMetricsStore
+{
+    private static final long START = 1_500_000_000_000L;
+
+    private Path directory;
+
+    @BeforeMethod
+    public void setUp() throws Exception
+    {
+        directory = Files.createTempDirectory("tsdb");
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception
+    {
+        try (Stream<Path> files = Files.walk(directory))
+        {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+            {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void queryByCommandAndTimeRange() throws Exception
+    {
+        try (ProcessMetricsStore store = new ProcessMetricsStore(directory, 16, 1024))
+        {
+            for (int i = 0; i < 100; i++)
+            {
+                store.record(sample("a", START + i * 1000L, i));
+                store.record(sample("b", START + i * 1000L, 100 + i));
+            }
+
+            List<MetricPoint> points = store.query("a", START + 10_000, START + 20_000, Resolution.RAW);
+            assertEquals(points.size(), 10);
+            for (int i = 0; i < 10; i++)
+            {
+                assertEquals(points.get(i), new MetricPoint("a", START + (10 + i) * 1000L, 1, 10 + i, 10 + i, 1024 * (10 + i), 2048 * (10 + i), 4, 12));
+            }
+
+            assertEquals(store.query("b", START, START + 100_000, Resolution.RAW).size(), 100);
+            assertTrue(store.query("c", START, START + 100_000, Resolution.RAW).isEmpty());
+        }
+
+        assertTrue(listSegments().size() > 1, "expected the points to span several segments");
+    }
+
+    @Test
+    public void ignoreSamplesWithoutCommandId() throws Exception
+    {
+        try (ProcessMetricsStore store = new ProcessMetricsStore(directory))
+        {
+            store.record(sample(null, START, 1));
+            store.flush();
+        }
+
+        assertTrue(listSegments().stream().allMatch(file -> file.toFile().length() == 0));
+    }
+
+    @Test
+    public void reopen() throws Exception
+    {
+        try (ProcessMetricsStore store = new ProcessMetricsStore(directory, 8, 1024))
+        {
+            for (int i = 0; i < 50; i++)
+            {
+                store.record(sample("a", START + i * 1000L, i));
+            }
+        }
+
+        try (ProcessMetricsStore store = new ProcessMetricsStore(directory, 8, 1024))
+        {
+            assertEquals(store.query("a", START, START + 50_000, Resolution.RAW).size(), 50);
+
+            store.record(sample("a", START + 50_000, 50));
+            assertEquals(store.query("a", START, START + 60_000, Resolution.RAW).size(), 51);
+        }
+    }
+
+    @Test
+    public void dropTruncatedBlock() throws Exception
+    {
+        try (ProcessMetricsStore store = new ProcessMetricsStore(directory, 10, 1024 * 1024))
+        {
+            for (int i = 0; i < 20; i++)
+            {
+                store.record(sample("a", START + i * 1000L, i));
+            }
+            store.flush();
+        }
+
+        Path raw = directory.resolve("raw-000000.seg");
+        try (RandomAccessFile file = new RandomAccessFile(raw.toFile(), "rw"))
+        {
+            file.setLength(file.length() - 5);
+        }
+
+        try (ProcessMetricsStore store = new ProcessMetricsStore(directory, 10, 1024 * 1024))
+        {
+            assertEquals(store.query("a", START, START + 20_000, Resolution.RAW).size(), 10);
+
+            store.record(sample("a", START + 20_000, 20));
+            store.flush();
+        }
+
+        try (ProcessMetricsStore store = new ProcessMetricsStore(directory, 10, 1024 * 1024))
+        {
+            assertEquals(store.query("a", START, START + 30_000, Resolution.RAW).size(), 11);
+        }
+    }
+
+    @Test
+    public void rollups() throws Exception
+    {
+        try (ProcessMetricsStore store = new ProcessMetricsStore(directory))
+        {
+            // two minutes of samples, one per second
+            for (int i = 0; i < 120; i++)
+            {
+                store.record(sample("a", START + i * 1000L, i % 10));
+            }
+
+            // only the buckets one width past their end are rolled up
+            store.rollup(START + 30_000);
+            List<MetricPoint> tenSeconds = store.query("a", START, START + 120_000, Resolution.TEN_SECONDS);
+            assertEquals(tenSeconds.size(), 2);
+            assertEquals(tenSeconds.get(0).getTimestamp(), Resolution.TEN_SECONDS.bucketOf(START));
+            assertTrue(store.query("a", START, START + 120_000, Resolution.ONE_MINUTE).isEmpty());
+
+            store.rollup(START + 180_000);
+            tenSeconds = store.query("a", START, START + 120_000, Resolution.TEN_SECONDS);
+            assertEquals(tenSeconds.stream().mapToInt(MetricPoint::getCount).sum(), 120);
+
+            List<MetricPoint> oneMinute = store.query("a", START, START + 120_000, Resolution.ONE_MINUTE);
+            assertEquals(oneMinute.stream().mapToInt(MetricPoint::getCount).sum(), 120);
+            for (MetricPoint point : oneMinute)
+            {
+                assertEquals(point.getTimestamp() % 60_000, 0);
+                assertEquals(point.getThreads(), 4);
+                assertEquals(point.getFileDescriptors(), 12);
+            }
+        }
+    }
+
+    @Test
+    public void rollupAveragesAndMaximums() throws Exception
+    {
+        try (ProcessMetricsStore store = new ProcessMetricsStore(directory))
+        {
+            store.record(sample("a", START, 10));
+            store.record(sample("a", START + 1000, 20));
+            store.record(sample("a", START + 2000, 60));
+        }
+
+        try (ProcessMetricsStore store = new ProcessMetricsStore(directory))
+        {
+            List<MetricPoint> tenSeconds = store.query("a", START - 10_000, START + 10_000, Resolution.TEN_SECONDS);
+            assertEquals(tenSeconds, store.query("a", START - 60_000, START + 60_000, Resolution.ONE_MINUTE).stream()
+                    .map(point -> new MetricPoint(point.getCommandId(), tenSeconds.get(0).getTimestamp(), point.getCount(), point.getCpuPercent(), point.getCpuTime(),
+                            point.getResidentMemory(), point.getVirtualMemory(), point.getThreads(), point.getFileDescriptors()))
+                    .collect(Collectors.toList()));
+
+            MetricPoint point = tenSeconds.get(0);
+            assertEquals(point.getCount(), 3);
+            assertEquals(point.getCpuPercent(), 30.0, 0.0001);
+            assertEquals(point.getCpuTime(), 60.0, 0.0001);
+            assertEquals(point.getResidentMemory(), 1024 * 30.0, 0.0001);
+        }
+    }
+
+    @Test
+    public void dropLateSamplesFromRollups() throws Exception
+    {
+        try (ProcessMetricsStore store = new ProcessMetricsStore(directory))
+        {
+            store.record(sample("a", START, 10));
+            store.record(sample("a", START + 1000, 20));
+            store.rollup(START + 30_000);
+
+            // its bucket is already rolled up, so it would make a second point for the same bucket
+            store.record(sample("a", START + 2000, 60));
+            store.rollup(START + 60_000);
+
+            List<MetricPoint> tenSeconds = store.query("a", START - 10_000, START + 10_000, Resolution.TEN_SECONDS);
+            assertEquals(tenSeconds.size(), 1);
+            assertEquals(tenSeconds.get(0).getCount(), 2);
+            assertEquals(store.query("a", START - 10_000, START + 10_000, Resolution.RAW).size(), 3);
+        }
+    }
+
+    @Test
+    public void rollUpWhenTooManySamplesArePending() throws Exception
+    {
+        try (ProcessMetricsStore store = new ProcessMetricsStore(directory, ProcessMetricsStore.DEFAULT_BLOCK_SIZE, ProcessMetricsStore.DEFAULT_SEGMENT_SIZE, 10))
+        {
+            // no rollup is scheduled, and the samples are long past their buckets
+            for (int i = 0; i < 11; i++)
+            {
+                store.record(sample("a", START + i * 1000L, i));
+            }
+
+            List<MetricPoint> tenSeconds = store.query("a", START - 10_000, START + 20_000, Resolution.TEN_SECONDS);
+            assertEquals(tenSeconds.stream().mapToInt(MetricPoint::getCount).sum(), 11);
+        }
+    }
+
+    @Test
+    public void subscribeToProbeEvents() throws Exception
+    {
+        EventBus bus = new EventBus();
+        try (ProcessMetricsStore store = new ProcessMetricsStore(directory))
+        {
+            bus.register(store);
+            bus.post(sample("a", START, 1));
+            bus.post(sample("a", START + 1000, 2));
+
+            assertEquals(store.query("a", START, START + 2000, Resolution.RAW).size(), 2);
+        }
+    }
+
+    private List<Path> listSegments() throws IOException
+    {
+        try (Stream<Path> files = Files.list(directory))
+        {
+            return files.collect(Collectors.toList());
+        }
+    }
+
+    private static ProcessState sample(String id, long timestamp, int value)
+    {
+        return new ProcessState()
+                .setId(id)
+                .setPid(4242)
+                .setDatetime(timestamp)
+                .setNumberOfActiveThreads(4)
+                .setFd(12)
+                .setCpuState(new ProcessCpuState().setPercent(value).setTotal(value))
+                .setMemoryState(new ProcessMemoryState().setResident(1024 * value).setSize(2048 * value));
+    }
+}